@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Measures the XPath accessors of {@link APIResponse} the session uses to
+ * read every response, on a listing of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class APIResponseBenchmark
+{
+   /** The number of SiteSummary elements of the response. */
+   @Param({"1", "1000", "100000"})
+   public int sites;
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Setup
+   public void setUp()
+   {
+      m_response = new APIResponse(SyntheticData.parse(SyntheticData.siteListing(sites)));
+   }
+
+   @Benchmark
+   public String grab() throws APIException
+   {
+      return m_response.grab("/SiteListingResponse/@success");
+   }
+
+   @Benchmark
+   public int grabInt() throws APIException
+   {
+      return m_response.grabInt("/SiteListingResponse/SiteSummary[1]/@id");
+   }
+
+   @Benchmark
+   public boolean grabBoolean() throws APIException
+   {
+      return m_response.grabBoolean("/SiteListingResponse/@success");
+   }
+
+   @Benchmark
+   public long grabLong() throws APIException
+   {
+      return m_response.grabLong("/SiteListingResponse/SiteSummary[1]/@id");
+   }
+
+   @Benchmark
+   public Node grabNodeFailure() throws APIException
+   {
+      // Every listing call checks for a failure before reading the results.
+      return m_response.grabNode("//Failure");
+   }
+
+   @Benchmark
+   public NodeList grabNodes() throws APIException
+   {
+      return m_response.grabNodes("/SiteListingResponse/SiteSummary");
+   }
+
+   @Benchmark
+   public String getResponse() throws APIException
+   {
+      return m_response.getResponse();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private APIResponse m_response;
+}
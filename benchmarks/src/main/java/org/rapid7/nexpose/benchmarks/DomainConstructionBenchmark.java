@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.domain.SiteSummary;
+import org.rapid7.nexpose.api.domain.TicketSummary;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Measures the construction of domain objects out of already parsed
+ * response elements, reported per object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DomainConstructionBenchmark
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Setup
+   public void setUp()
+   {
+      m_sites = elements(SyntheticData.parse(SyntheticData.siteListing(ELEMENTS))
+         .getElementsByTagName("SiteSummary"));
+      m_tickets = elements(SyntheticData.parse(SyntheticData.ticketListing(ELEMENTS))
+         .getElementsByTagName("TicketSummary"));
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public void siteSummary(Blackhole blackhole) throws APIException
+   {
+      for (Element element : m_sites)
+      {
+         blackhole.consume(new SiteSummary(element));
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ELEMENTS)
+   public void ticketSummary(Blackhole blackhole) throws APIException
+   {
+      for (Element element : m_tickets)
+      {
+         blackhole.consume(new TicketSummary(element));
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Copies the elements out of the node list, so that the benchmarks do not
+    * measure the (lazy) DOM node list.
+    */
+   private static Element[] elements(NodeList nodes)
+   {
+      Element[] elements = new Element[nodes.getLength()];
+      for (int i = 0; i < elements.length; i++)
+      {
+         elements[i] = (Element) nodes.item(i);
+      }
+      return elements;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The number of elements of each kind built per invocation. */
+   private static final int ELEMENTS = 1000;
+
+   private Element[] m_sites;
+   private Element[] m_tickets;
+}
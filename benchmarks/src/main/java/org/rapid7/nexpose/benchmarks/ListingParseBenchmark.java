@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.domain.SiteSummary;
+import org.rapid7.nexpose.api.domain.TicketSummary;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares the way the session reads listings today (DOM parse, XPath
+ * selection, one domain object per element) with a streaming (StAX) pass
+ * that reads the same attributes without building a tree, for listings of
+ * one thousand to one million elements.
+ * <P>
+ * Run with {@code -prof gc} to also compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ListingParseBenchmark
+{
+   /** The listing to parse: SiteListingResponse or TicketListingResponse. */
+   @Param({"site", "ticket"})
+   public String listing;
+
+   /** The number of summary elements of the listing. */
+   @Param({"1000", "10000", "100000", "1000000"})
+   public int elements;
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Setup
+   public void setUp()
+   {
+      boolean sites = "site".equals(listing);
+      m_document = sites ? SyntheticData.siteListing(elements) : SyntheticData.ticketListing(elements);
+      m_xpath = sites ? "/SiteListingResponse/SiteSummary" : "/TicketListingResponse/TicketSummary";
+      m_element = sites ? "SiteSummary" : "TicketSummary";
+      m_attributes = sites ? SITE_ATTRIBUTES : TICKET_ATTRIBUTES;
+      m_sites = sites;
+   }
+
+   @Benchmark
+   public void dom(Blackhole blackhole) throws Exception
+   {
+      APIResponse response = new APIResponse(SyntheticData.parse(m_document));
+      if (response.grabNode("//Failure") != null)
+      {
+         throw new IllegalStateException("Unexpected failure");
+      }
+      NodeList nodes = response.grabNodes(m_xpath);
+      for (int i = 0; i < nodes.getLength(); i++)
+      {
+         Element element = (Element) nodes.item(i);
+         blackhole.consume(m_sites ? new SiteSummary(element) : new TicketSummary(element));
+      }
+   }
+
+   @Benchmark
+   public void streaming(Blackhole blackhole) throws Exception
+   {
+      XMLStreamReader reader = ms_inputFactory.createXMLStreamReader(new ByteArrayInputStream(m_document));
+      try
+      {
+         while (reader.hasNext())
+         {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT)
+            {
+               String name = reader.getLocalName();
+               if ("Failure".equals(name))
+               {
+                  throw new IllegalStateException("Unexpected failure");
+               }
+               if (m_element.equals(name))
+               {
+                  String[] values = new String[m_attributes.length];
+                  for (int i = 0; i < m_attributes.length; i++)
+                  {
+                     values[i] = reader.getAttributeValue(null, m_attributes[i]);
+                  }
+                  blackhole.consume(values);
+               }
+            }
+         }
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The attributes the domain objects read from each element. */
+   private static final String[] SITE_ATTRIBUTES =
+      {"id", "name", "description", "riskfactor", "riskscore"};
+   private static final String[] TICKET_ATTRIBUTES =
+      {"id", "name", "state", "device-id", "created-on", "author", "priority", "assigned-to"};
+
+   private static final XMLInputFactory ms_inputFactory = XMLInputFactory.newInstance();
+
+   private byte[] m_document;
+   private String m_xpath;
+   private String m_element;
+   private String[] m_attributes;
+   private boolean m_sites;
+}
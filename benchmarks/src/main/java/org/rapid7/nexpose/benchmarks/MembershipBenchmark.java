@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapid7.nexpose.api.assets.DeviceSet;
+import org.rapid7.nexpose.api.generators.AssetGroupSaveRequestDevicesGenerator;
+import org.rapid7.nexpose.api.generators.AssetGroupSaveRequestDevicesGenerator.AssetGroupDevice;
+
+/**
+ * Computes and renders the membership "the devices of sites A and B but those
+ * of group C" over an estate split into four sites, C holding every third
+ * device: with {@code HashSet}s of the device ids of the object lists and a
+ * list of {@link AssetGroupDevice}s for the generator, as callers do today,
+ * against {@link DeviceSet} operations rendered from the bitmap. Run with
+ * {@code -prof gc} for the allocation per membership, e.g.
+ * {@code java -jar benchmarks.jar MembershipBenchmark -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MembershipBenchmark
+{
+   /** The number of devices of the estate. */
+   @Param({"100000", "1000000"})
+   public int devices;
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Setup
+   public void setUp()
+   {
+      final int perSite = devices / 4;
+      m_siteA = new ArrayList<AssetGroupDevice>(perSite);
+      m_siteB = new ArrayList<AssetGroupDevice>(perSite);
+      m_groupC = new ArrayList<AssetGroupDevice>(devices / 3);
+      m_siteASet = new DeviceSet();
+      m_siteBSet = new DeviceSet();
+      m_groupCSet = new DeviceSet();
+      for (int id = 1; id <= devices; id++)
+      {
+         final int site = (id - 1) / perSite + 1;
+         final AssetGroupDevice device = new AssetGroupDevice(String.valueOf(id), String.valueOf(site),
+            "10." + ((id >> 16) & 255) + "." + ((id >> 8) & 255) + "." + (id & 255), "1.0", "100.0", null);
+         if (site == 1)
+         {
+            m_siteA.add(device);
+            m_siteASet.add(id);
+         }
+         else if (site == 2)
+         {
+            m_siteB.add(device);
+            m_siteBSet.add(id);
+         }
+         if (id % 3 == 0)
+         {
+            m_groupC.add(device);
+            m_groupCSet.add(id);
+         }
+      }
+   }
+
+   @Benchmark
+   public int computeHashSet()
+   {
+      return hashSetMembership().size();
+   }
+
+   @Benchmark
+   public int computeDeviceSet()
+   {
+      return deviceSetMembership().size();
+   }
+
+   @Benchmark
+   public int renderHashSet()
+   {
+      final Set<String> ids = hashSetMembership();
+      final List<AssetGroupDevice> members = new ArrayList<AssetGroupDevice>(ids.size());
+      for (String id : ids)
+      {
+         members.add(new AssetGroupDevice(id, null, null, null, null, null));
+      }
+      final AssetGroupSaveRequestDevicesGenerator generator = new AssetGroupSaveRequestDevicesGenerator();
+      generator.setDevices(members);
+      return generator.toString().length();
+   }
+
+   @Benchmark
+   public int renderDeviceSet()
+   {
+      final AssetGroupSaveRequestDevicesGenerator generator = new AssetGroupSaveRequestDevicesGenerator();
+      generator.setDeviceSet(deviceSetMembership());
+      return generator.toString().length();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private Set<String> hashSetMembership()
+   {
+      final Set<String> ids = new HashSet<String>();
+      for (AssetGroupDevice device : m_siteA)
+      {
+         ids.add(device.getDeviceId());
+      }
+      for (AssetGroupDevice device : m_siteB)
+      {
+         ids.add(device.getDeviceId());
+      }
+      final Set<String> excluded = new HashSet<String>();
+      for (AssetGroupDevice device : m_groupC)
+      {
+         excluded.add(device.getDeviceId());
+      }
+      ids.removeAll(excluded);
+      return ids;
+   }
+
+   private DeviceSet deviceSetMembership()
+   {
+      return m_siteASet.union(m_siteBSet).difference(m_groupCSet);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private List<AssetGroupDevice> m_siteA;
+   private List<AssetGroupDevice> m_siteB;
+   private List<AssetGroupDevice> m_groupC;
+   private DeviceSet m_siteASet;
+   private DeviceSet m_siteBSet;
+   private DeviceSet m_groupCSet;
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapid7.nexpose.utils.StringUtils;
+
+/**
+ * Measures the variable expansion every templated request goes through and
+ * the escaping of the values put into the templates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StringUtilsBenchmark
+{
+   /** The request template to expand. */
+   @Param({"SiteListingRequest", "SiteSaveRequest", "ReportAdhocGenerateRequest"})
+   public String template;
+
+   /** The length of the values substituted into the template. */
+   @Param({"16", "1024"})
+   public int valueLength;
+
+   /** The share of the characters of the escaped text needing an entity. */
+   @Param({"0", "10"})
+   public int specialPercent;
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Loads the template and builds the values of its variables.
+    *
+    * @throws IOException when the template cannot be read.
+    */
+   @Setup
+   public void setUp() throws IOException
+   {
+      m_template = readTemplate(template);
+      m_vars = new HashMap<String, String>();
+      String value = text(valueLength, 0);
+      for (int start = m_template.indexOf("${"); start >= 0; start = m_template.indexOf("${", start + 2))
+      {
+         int end = m_template.indexOf('}', start);
+         m_vars.put(m_template.substring(start + 2, end), value);
+      }
+      m_text = text(valueLength, specialPercent);
+   }
+
+   @Benchmark
+   public String expandVariables()
+   {
+      return StringUtils.expandVariables(m_template, m_vars);
+   }
+
+   @Benchmark
+   public String xmlEscape()
+   {
+      return StringUtils.xmlEscape(m_text);
+   }
+
+   @Benchmark
+   public StringWriter xmlEscapeToWriter() throws IOException
+   {
+      StringWriter writer = new StringWriter(m_text.length() + 16);
+      StringUtils.xmlEscape(m_text, writer);
+      return writer;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Reads a request template from the library.
+    */
+   private static String readTemplate(String name) throws IOException
+   {
+      InputStream in = StringUtils.class.getResourceAsStream(
+         "/org/rapid7/nexpose/api/" + name + ".xml");
+      if (in == null)
+      {
+         throw new IOException("No template for " + name);
+      }
+      try
+      {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+         for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+         {
+            bytes.write(buffer, 0, read);
+         }
+         return bytes.toString("UTF-8");
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * Builds a text of the given length, with the given percentage of its
+    * characters being ones the XML escaping replaces.
+    */
+   private static String text(int length, int specialPercent)
+   {
+      StringBuilder text = new StringBuilder(length);
+      for (int i = 0; i < length; i++)
+      {
+         if (specialPercent > 0 && i % (100 / specialPercent) == 0)
+         {
+            text.append(SPECIALS.charAt(i % SPECIALS.length()));
+         }
+         else
+         {
+            text.append((char) ('a' + i % 26));
+         }
+      }
+      return text.toString();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The characters the escaping replaces. */
+   private static final String SPECIALS = "&<>'\"";
+
+   private String m_template;
+   private Map<String, String> m_vars;
+   private String m_text;
+}
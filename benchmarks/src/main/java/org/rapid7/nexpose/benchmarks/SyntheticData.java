@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.rapid7.nexpose.api.SiteSaveRequest;
+import org.rapid7.nexpose.api.generators.SiteSaveRequestHostsGenerator;
+import org.rapid7.nexpose.api.generators.SiteSaveRequestRangesGenerator;
+import org.rapid7.nexpose.api.generators.SiteSaveRequestRangesGenerator.SiteSaveRequestRange;
+import org.w3c.dom.Document;
+
+/**
+ * Builds the synthetic console payloads the benchmarks run against. The
+ * documents mirror the shape of the responses of a real console (element
+ * and attribute names, value lengths) so that parsing costs are
+ * representative, and are deterministic so runs can be compared.
+ */
+public abstract class SyntheticData
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Renders a SiteListingResponse with the given number of SiteSummary
+    * elements.
+    *
+    * @param sites the number of SiteSummary elements.
+    * @return the UTF-8 bytes of the document.
+    */
+   public static byte[] siteListing(int sites)
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(sites * 128 + 64);
+      try
+      {
+         Writer writer = new OutputStreamWriter(bytes, UTF_8);
+         writer.write("<SiteListingResponse success=\"1\">");
+         for (int i = 1; i <= sites; i++)
+         {
+            writer.write("<SiteSummary id=\"");
+            writer.write(Integer.toString(i));
+            writer.write("\" name=\"Site ");
+            writer.write(Integer.toString(i));
+            writer.write("\" description=\"Synthetic site &amp; assets of branch ");
+            writer.write(Integer.toString(i % 97));
+            writer.write("\" riskfactor=\"1.0\" riskscore=\"");
+            writer.write(Integer.toString(i * 37 % 100000));
+            writer.write(".5\"/>");
+         }
+         writer.write("</SiteListingResponse>");
+         writer.flush();
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException(e);
+      }
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Renders a TicketListingResponse with the given number of TicketSummary
+    * elements.
+    *
+    * @param tickets the number of TicketSummary elements.
+    * @return the UTF-8 bytes of the document.
+    */
+   public static byte[] ticketListing(int tickets)
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(tickets * 192 + 64);
+      try
+      {
+         Writer writer = new OutputStreamWriter(bytes, UTF_8);
+         writer.write("<TicketListingResponse success=\"1\">");
+         for (int i = 1; i <= tickets; i++)
+         {
+            writer.write("<TicketSummary id=\"");
+            writer.write(Integer.toString(i));
+            writer.write("\" name=\"Remediate vulnerability ");
+            writer.write(Integer.toString(i % 5000));
+            writer.write("\" state=\"");
+            writer.write(TICKET_STATES[i % TICKET_STATES.length]);
+            writer.write("\" device-id=\"");
+            writer.write(Integer.toString(i % 65536 + 1));
+            writer.write("\" created-on=\"20120315T10");
+            writer.write(Integer.toString(10 + i % 50));
+            writer.write("00123\" author=\"nxadmin\" priority=\"");
+            writer.write(TICKET_PRIORITIES[i % TICKET_PRIORITIES.length]);
+            writer.write("\" assigned-to=\"analyst");
+            writer.write(Integer.toString(i % 20));
+            writer.write("\"/>");
+         }
+         writer.write("</TicketListingResponse>");
+         writer.flush();
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException(e);
+      }
+      return bytes.toByteArray();
+   }
+
+   /**
+    * Renders a multipart message as returned by the console for an ad-hoc
+    * report: the XML response part followed by the base64 encoded report.
+    *
+    * @param reportSize the size of the (decoded) report, in bytes.
+    * @return the message text.
+    */
+   public static String multipartReport(int reportSize)
+   {
+      StringBuilder message = new StringBuilder(reportSize * 4 / 3 + 512);
+      message.append("--").append(BOUNDARY).append("\r\n");
+      message.append("Content-Type: text/xml; name=response.xml\r\n\r\n");
+      message.append("<ReportAdhocGenerateResponse success=\"1\"/>\r\n");
+      message.append("--").append(BOUNDARY).append("\r\n");
+      message.append("Content-Type: application/octet-stream; name=report.xml\r\n");
+      message.append("Content-Transfer-Encoding: base64\r\n\r\n");
+      int line = 0;
+      for (int i = 0; i < reportSize; i += 3)
+      {
+         // Four base64 characters per three bytes, lines of 76 characters.
+         int value = i * 0x9E3779B1;
+         message.append(BASE64[value & 63]);
+         message.append(BASE64[(value >> 6) & 63]);
+         message.append(BASE64[(value >> 12) & 63]);
+         message.append(BASE64[(value >> 18) & 63]);
+         line += 4;
+         if (line == 76)
+         {
+            message.append("\r\n");
+            line = 0;
+         }
+      }
+      message.append("\r\n--").append(BOUNDARY).append("--\r\n");
+      return message.toString();
+   }
+
+   /**
+    * Creates a SiteSaveRequest for a site with the given number of hosts and
+    * as many address ranges.
+    *
+    * @param assets the number of hosts and of ranges of the site.
+    * @return the request.
+    */
+   public static SiteSaveRequest siteSave(int assets)
+   {
+      List<String> hosts = new ArrayList<String>(assets);
+      List<SiteSaveRequestRange> ranges = new ArrayList<SiteSaveRequestRange>(assets);
+      for (int i = 0; i < assets; i++)
+      {
+         hosts.add("host-" + i + ".branch" + (i % 97) + ".example.com");
+         String network = "10." + ((i >> 8) & 255) + "." + (i & 255) + ".";
+         ranges.add(new SiteSaveRequestRange(network + "1", network + "254"));
+      }
+      SiteSaveRequestHostsGenerator hostsGenerator = new SiteSaveRequestHostsGenerator();
+      hostsGenerator.setHosts(hosts);
+      SiteSaveRequestRangesGenerator rangesGenerator = new SiteSaveRequestRangesGenerator();
+      rangesGenerator.setRanges(ranges);
+      return new SiteSaveRequest(
+         SESSION_ID,
+         "benchmark",
+         "-1",
+         "Benchmark <site> & \"assets\"",
+         "Synthetic site used by the benchmarks",
+         "1.0",
+         hostsGenerator,
+         rangesGenerator,
+         null,
+         null,
+         "Full audit",
+         "3",
+         "-1",
+         "full-audit",
+         "2",
+         "1",
+         "0",
+         "daily",
+         "1",
+         "20120315T100000000",
+         "120",
+         null);
+   }
+
+   /**
+    * Parses a document with a fresh DOM parser, the same way the session
+    * parses responses.
+    *
+    * @param bytes the document to parse.
+    * @return the parsed document.
+    */
+   public static Document parse(byte[] bytes)
+   {
+      try
+      {
+         DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+         return builder.parse(new ByteArrayInputStream(bytes));
+      }
+      catch (Exception e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /** A session id of the length of the console ones. */
+   public static final String SESSION_ID = "7F1D8A4C0B2E9F3A6D5C4B3A2F1E0D9C8B7A6F5E";
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The boundary of the multipart messages. */
+   private static final String BOUNDARY = "AxB9sl3299asdjvbA";
+
+   /** The characters of the base64 alphabet. */
+   private static final char[] BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+   /** The states and priorities the ticket listings cycle through. */
+   private static final String[] TICKET_STATES = {"O", "A", "M", "R", "W", "P", "C", "N"};
+   private static final String[] TICKET_PRIORITIES = {"low", "moderate", "normal", "high", "critical"};
+
+   /** The encoding of the documents. */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rapid7.nexpose.api.APIResponse;
+import org.w3c.dom.Document;
+
+/**
+ * Compares parsing and printing a response with factories looked up and
+ * parsers built on every call, as the library used to, against the pooled
+ * per-thread parsers and transformers {@link APIResponse} now uses. Most
+ * responses are small, where the setup dominates; run with {@code -prof gc}
+ * to see the allocation per call, e.g.
+ * {@code java -jar benchmarks.jar XMLFactoryBenchmark -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XMLFactoryBenchmark
+{
+   /** The number of SiteSummary elements of the response. */
+   @Param({"1", "100"})
+   public int sites;
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      m_body = SyntheticData.siteListing(sites);
+      m_document = SyntheticData.parse(m_body);
+   }
+
+   @Benchmark
+   public Document parseFreshFactory() throws Exception
+   {
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(m_body));
+   }
+
+   @Benchmark
+   public Document parsePooled() throws Exception
+   {
+      return new APIResponse(m_body, null).getDocument();
+   }
+
+   @Benchmark
+   public String printFreshFactory() throws Exception
+   {
+      final StringWriter writer = new StringWriter();
+      TransformerFactory.newInstance().newTransformer().transform(new DOMSource(m_document), new StreamResult(writer));
+      return writer.toString();
+   }
+
+   @Benchmark
+   public String printPooled() throws Exception
+   {
+      return new APIResponse(m_document).getResponse();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private byte[] m_body;
+   private Document m_document;
+}
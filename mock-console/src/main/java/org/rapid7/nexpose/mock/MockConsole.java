@@ -0,0 +1,788 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Element;
+
+/**
+ * An in-process stand-in for a NeXpose console, to run integration, load and
+ * memory tests of {@link org.rapid7.nexpose.api.APISession} offline.
+ * <P>
+ * The console listens over HTTPS on the loopback interface (with a
+ * self-signed certificate for "localhost") and serves the /api/1.1/xml and
+ * /api/1.2/xml endpoints. Logins open sessions which the other requests must
+ * use; the requests are then answered by the responder registered for their
+ * name, or by the {@link SyntheticResponder}, whose data volumes are
+ * configurable. Latency and failures can be injected for all requests or
+ * for some request types:
+ * <PRE>
+ * MockConsole console = new MockConsole();
+ * console.getSyntheticResponder().setSites(10000);
+ * console.setLatency(5, 50, TimeUnit.MILLISECONDS);
+ * console.injectFailure("SiteListingRequest", FailureMode.DISCONNECT, 0.05);
+ * console.start();
+ * APISession session = new APISession(console.getURL(), "xml", APISession.APISupportedVersion.V1_2, "user", "password");
+ * ...
+ * console.stop();
+ * </PRE>
+ */
+public class MockConsole implements Closeable
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new mock console, listening on a free port once started.
+    */
+   public MockConsole()
+   {
+      this(0);
+   }
+
+   /**
+    * Creates a new mock console.
+    *
+    * @param port the port to listen on once started, 0 for a free one.
+    */
+   public MockConsole(int port)
+   {
+      m_port = port;
+      m_synthetic = new SyntheticResponder();
+   }
+
+   /**
+    * Starts listening.
+    *
+    * @throws IOException when the console cannot listen on its port.
+    * @throws IllegalStateException when the console is already started.
+    */
+   public synchronized void start() throws IOException
+   {
+      if (m_server != null)
+      {
+         throw new IllegalStateException("The mock console is already started");
+      }
+      HttpsServer server = HttpsServer.create(
+         new InetSocketAddress(InetAddress.getByName(null), m_port),
+         0);
+      server.setHttpsConfigurator(new HttpsConfigurator(sslContext()));
+      server.createContext("/", new HttpHandler()
+      {
+         public void handle(HttpExchange exchange) throws IOException
+         {
+            MockConsole.this.handle(exchange);
+         }
+      });
+      ThreadFactory threads = new ThreadFactory()
+      {
+         public Thread newThread(Runnable runnable)
+         {
+            Thread thread = new Thread(runnable, "mock-console-" + m_threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      };
+      m_executor = m_threads > 0
+         ? Executors.newFixedThreadPool(m_threads, threads)
+         : Executors.newCachedThreadPool(threads);
+      m_stopped = new CountDownLatch(1);
+      server.setExecutor(m_executor);
+      server.start();
+      m_server = server;
+   }
+
+   /**
+    * Stops listening, and releases the requests held by
+    * {@link FailureMode#TIMEOUT} failures. Does nothing if not started.
+    */
+   public synchronized void stop()
+   {
+      if (m_server != null)
+      {
+         m_stopped.countDown();
+         m_server.stop(0);
+         m_executor.shutdownNow();
+         m_server = null;
+         m_executor = null;
+      }
+   }
+
+   /**
+    * Stops the console.
+    *
+    * @see #stop()
+    */
+   public void close()
+   {
+      stop();
+   }
+
+   /**
+    * Retrieves the URL of the console, to create sessions with.
+    *
+    * @return the URL of the console, e.g. "https://localhost:53412".
+    * @throws IllegalStateException when the console is not started.
+    */
+   public synchronized URL getURL()
+   {
+      if (m_server == null)
+      {
+         throw new IllegalStateException("The mock console is not started");
+      }
+      try
+      {
+         return new URL("https", "localhost", m_server.getAddress().getPort(), "");
+      }
+      catch (MalformedURLException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * Sets the number of threads answering requests, which bounds the number
+    * of requests processed concurrently. Takes effect on the next start.
+    *
+    * @param threads the number of threads, 0 (the default) for as many as
+    *        needed.
+    */
+   public void setThreads(int threads)
+   {
+      m_threads = threads;
+   }
+
+   /**
+    * Sets the key store holding the key and certificate of the console,
+    * instead of the self-signed "localhost" one. Takes effect on the next
+    * start.
+    *
+    * @param keyStore the key store.
+    * @param password the password of the key store and of its key.
+    */
+   public void setKeyStore(KeyStore keyStore, char[] password)
+   {
+      m_keyStore = keyStore;
+      m_keyPassword = password;
+   }
+
+   /**
+    * Sets whether requests other than logins must carry the id of a session
+    * opened by a login. Enabled by default.
+    *
+    * @param validate true to reject requests with an unknown session id.
+    */
+   public void setValidateSessions(boolean validate)
+   {
+      m_validateSessions = validate;
+   }
+
+   /**
+    * Sets whether responses are gzip compressed for the clients that accept
+    * it, as a console behind a compressing proxy would. Disabled by default.
+    * Compressed requests are always accepted.
+    *
+    * @param compression true to compress the responses.
+    */
+   public void setCompression(boolean compression)
+   {
+      m_compression = compression;
+   }
+
+   /**
+    * Registers the responder of a type of requests, overriding the default
+    * answer.
+    *
+    * @param requestName the name of the request, e.g. "SiteListingRequest".
+    * @param responder the responder, {@code null} to restore the default
+    *        answer.
+    */
+   public void setResponder(String requestName, IMockResponder responder)
+   {
+      if (responder == null)
+      {
+         m_responders.remove(requestName);
+      }
+      else
+      {
+         m_responders.put(requestName, responder);
+      }
+   }
+
+   /**
+    * Retrieves the responder answering the requests without a registered
+    * responder, to configure its data volumes.
+    *
+    * @return the synthetic responder.
+    */
+   public SyntheticResponder getSyntheticResponder()
+   {
+      return m_synthetic;
+   }
+
+   /**
+    * Sets the latency added to every request, picked uniformly between the
+    * minimum and the maximum.
+    *
+    * @param min the minimum latency.
+    * @param max the maximum latency.
+    * @param unit the unit of the latencies.
+    */
+   public void setLatency(long min, long max, TimeUnit unit)
+   {
+      setLatency(null, min, max, unit);
+   }
+
+   /**
+    * Sets the latency added to a type of requests, overriding the latency of
+    * every request.
+    *
+    * @param requestName the name of the request, {@code null} for all.
+    * @param min the minimum latency.
+    * @param max the maximum latency.
+    * @param unit the unit of the latencies.
+    */
+   public void setLatency(String requestName, long min, long max, TimeUnit unit)
+   {
+      if (min < 0 || max < min)
+      {
+         throw new IllegalArgumentException("Invalid latency: " + min + " to " + max);
+      }
+      m_latencies.put(
+         requestName == null ? ALL_REQUESTS : requestName,
+         new long[] {unit.toNanos(min), unit.toNanos(max)});
+   }
+
+   /**
+    * Injects failures into the answers of every request.
+    *
+    * @param mode the failure.
+    * @param rate the probability of a request to fail this way, between 0
+    *        and 1.
+    */
+   public void injectFailure(FailureMode mode, double rate)
+   {
+      injectFailure(null, mode, rate);
+   }
+
+   /**
+    * Injects failures into the answers of a type of requests. The rules are
+    * evaluated in the order they were injected, the first failure drawn
+    * applies.
+    *
+    * @param requestName the name of the request, {@code null} for all.
+    * @param mode the failure.
+    * @param rate the probability of a request to fail this way, between 0
+    *        and 1.
+    */
+   public void injectFailure(String requestName, FailureMode mode, double rate)
+   {
+      if (mode == null || rate < 0 || rate > 1)
+      {
+         throw new IllegalArgumentException("Invalid failure: " + mode + " at " + rate);
+      }
+      m_failures.add(new FailureRule(requestName, mode, rate));
+   }
+
+   /**
+    * Removes the injected latencies and failures.
+    */
+   public void clearFaults()
+   {
+      m_latencies.clear();
+      m_failures.clear();
+   }
+
+   /**
+    * Retrieves the number of requests received.
+    *
+    * @return the number of requests.
+    */
+   public long getRequestCount()
+   {
+      return m_requests.get();
+   }
+
+   /**
+    * Retrieves the number of requests of a type received.
+    *
+    * @param requestName the name of the request, ReportFile for the
+    *        downloads of generated reports.
+    * @return the number of requests.
+    */
+   public long getRequestCount(String requestName)
+   {
+      AtomicLong count = m_requestsByName.get(requestName);
+      return count == null ? 0 : count.get();
+   }
+
+   /**
+    * Retrieves the highest number of requests processed concurrently.
+    *
+    * @return the highest number of concurrent requests.
+    */
+   public int getMaxConcurrentRequests()
+   {
+      return m_maxInFlight.get();
+   }
+
+   /**
+    * Resets the request counters.
+    */
+   public void resetCounters()
+   {
+      m_requests.set(0);
+      m_requestsByName.clear();
+      m_maxInFlight.set(m_inFlight.get());
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Tells whether the library has a template for the request, that is,
+    * whether the request is part of the API.
+    */
+   static boolean isTemplated(String requestName)
+   {
+      Boolean templated = ms_templated.get(requestName);
+      if (templated == null)
+      {
+         templated = MockConsole.class.getResource(
+            "/org/rapid7/nexpose/api/" + requestName + ".xml") != null;
+         ms_templated.put(requestName, templated);
+      }
+      return templated;
+   }
+
+   /**
+    * Answers an HTTP exchange.
+    */
+   private void handle(HttpExchange exchange) throws IOException
+   {
+      int inFlight = m_inFlight.incrementAndGet();
+      for (int max = m_maxInFlight.get(); inFlight > max; max = m_maxInFlight.get())
+      {
+         if (m_maxInFlight.compareAndSet(max, inFlight))
+         {
+            break;
+         }
+      }
+      try
+      {
+         String path = exchange.getRequestURI().getPath();
+         if (path.startsWith(REPORTS_PATH) && "GET".equals(exchange.getRequestMethod()))
+         {
+            count(REPORT_FILE);
+            send(exchange, reportFile(exchange, path));
+            return;
+         }
+         String version = apiVersion(path);
+         if (version == null)
+         {
+            send(exchange, MockResponse.status(404, "Not found"));
+            return;
+         }
+         if (!"POST".equals(exchange.getRequestMethod()))
+         {
+            send(exchange, MockResponse.status(405, "Method not allowed"));
+            return;
+         }
+         InputStream in = exchange.getRequestBody();
+         if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+         {
+            in = new GZIPInputStream(in);
+         }
+         byte[] body = read(in);
+         Element root;
+         try
+         {
+            root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+               .parse(new ByteArrayInputStream(body))
+               .getDocumentElement();
+         }
+         catch (Exception e)
+         {
+            send(exchange, MockResponse.status(400, "Malformed request: " + e.getMessage()));
+            return;
+         }
+         MockRequest request = new MockRequest(version, new String(body, "UTF-8"), root);
+         count(request.getName());
+         if (!delay(request.getName()))
+         {
+            return;
+         }
+         FailureMode failure = drawFailure(request.getName());
+         if (failure == FailureMode.DISCONNECT)
+         {
+            return;
+         }
+         else if (failure == FailureMode.TIMEOUT)
+         {
+            m_stopped.await();
+            return;
+         }
+         else if (failure == FailureMode.HTTP_ERROR)
+         {
+            send(exchange, MockResponse.status(500, "Internal server error"));
+            return;
+         }
+         else if (failure == FailureMode.API_FAILURE)
+         {
+            send(exchange, MockResponse.failure(request.getResponseName(), "Injected failure"));
+            return;
+         }
+         MockResponse response;
+         try
+         {
+            response = answer(request);
+         }
+         catch (Exception e)
+         {
+            response = MockResponse.status(500, String.valueOf(e));
+         }
+         send(exchange, response);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         m_inFlight.decrementAndGet();
+         exchange.close();
+      }
+   }
+
+   /**
+    * Answers a request: logins and logouts, then the requests of the open
+    * sessions.
+    */
+   private MockResponse answer(MockRequest request) throws Exception
+   {
+      String name = request.getName();
+      if ("LoginRequest".equals(name) || "SiloLoginRequest".equals(name))
+      {
+         String sessionId = newSessionId();
+         m_sessions.put(sessionId, Boolean.TRUE);
+         return MockResponse.xml("<" + request.getResponseName()
+            + " success=\"1\" session-id=\"" + sessionId + "\"/>");
+      }
+      if (m_validateSessions && !m_sessions.containsKey(request.getSessionId()))
+      {
+         return MockResponse.failure(request.getResponseName(), "Invalid session ID");
+      }
+      if ("LogoutRequest".equals(name))
+      {
+         m_sessions.remove(request.getSessionId());
+         return MockResponse.xml("<LogoutResponse success=\"1\"/>");
+      }
+      IMockResponder responder = m_responders.get(name);
+      MockResponse response = responder == null ? null : responder.respond(request);
+      if (response == null)
+      {
+         response = m_synthetic.respond(request);
+      }
+      if (response == null)
+      {
+         response = MockResponse.failure(request.getResponseName(), "Unsupported request " + name);
+      }
+      return response;
+   }
+
+   /**
+    * Answers the download of a generated report, authenticated by the
+    * session cookie as on the console.
+    */
+   private MockResponse reportFile(HttpExchange exchange, String path)
+   {
+      String sessionId = null;
+      String cookies = exchange.getRequestHeaders().getFirst("Cookie");
+      if (cookies != null)
+      {
+         for (String cookie : cookies.split(";"))
+         {
+            cookie = cookie.trim();
+            if (cookie.startsWith(SESSION_COOKIE + "="))
+            {
+               sessionId = cookie.substring(SESSION_COOKIE.length() + 1);
+            }
+         }
+      }
+      if (m_validateSessions && (sessionId == null || !m_sessions.containsKey(sessionId)))
+      {
+         return MockResponse.status(401, "Unauthorized");
+      }
+      MockResponse response = m_synthetic.reportFile(path);
+      return response != null ? response : MockResponse.status(404, "Not found");
+   }
+
+   /**
+    * Retrieves the API version of an API path, {@code null} if the path is
+    * not one the console serves.
+    */
+   private static String apiVersion(String path)
+   {
+      for (String version : API_VERSIONS)
+      {
+         if (path.equals("/api/" + version + "/xml"))
+         {
+            return version;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Applies the injected latency of a request.
+    *
+    * @return false if the console was stopped meanwhile.
+    */
+   private boolean delay(String requestName) throws InterruptedException
+   {
+      long[] latency = m_latencies.get(requestName);
+      if (latency == null)
+      {
+         latency = m_latencies.get(ALL_REQUESTS);
+      }
+      if (latency == null || latency[1] == 0)
+      {
+         return true;
+      }
+      long nanos = latency[0] == latency[1]
+         ? latency[0]
+         : ThreadLocalRandom.current().nextLong(latency[0], latency[1] + 1);
+      return !m_stopped.await(nanos, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Draws the injected failure of a request, {@code null} for none.
+    */
+   private FailureMode drawFailure(String requestName)
+   {
+      for (FailureRule rule : m_failures)
+      {
+         if ((rule.m_requestName == null || rule.m_requestName.equals(requestName))
+            && ThreadLocalRandom.current().nextDouble() < rule.m_rate)
+         {
+            return rule.m_mode;
+         }
+      }
+      return null;
+   }
+
+   private void count(String requestName)
+   {
+      m_requests.incrementAndGet();
+      AtomicLong count = m_requestsByName.get(requestName);
+      if (count == null)
+      {
+         AtomicLong created = new AtomicLong();
+         count = m_requestsByName.putIfAbsent(requestName, created);
+         if (count == null)
+         {
+            count = created;
+         }
+      }
+      count.incrementAndGet();
+   }
+
+   private static byte[] read(InputStream in) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+      {
+         bytes.write(buffer, 0, read);
+      }
+      return bytes.toByteArray();
+   }
+
+   private void send(HttpExchange exchange, MockResponse response) throws IOException
+   {
+      byte[] body = response.getBody();
+      exchange.getResponseHeaders().set("Content-Type", response.getContentType());
+      String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      if (m_compression && body.length > 0 && accepted != null && accepted.contains("gzip"))
+      {
+         ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+         GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+         gzip.write(body);
+         gzip.close();
+         body = compressed.toByteArray();
+         exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+      }
+      exchange.sendResponseHeaders(response.getStatus(), body.length == 0 ? -1 : body.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(body);
+      out.close();
+   }
+
+   /**
+    * Creates a session id: 40 hexadecimal characters, like the console ones.
+    */
+   private static String newSessionId()
+   {
+      StringBuilder sessionId = new StringBuilder(40);
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < 40; i++)
+      {
+         sessionId.append(HEX[random.nextInt(16)]);
+      }
+      return sessionId.toString();
+   }
+
+   /**
+    * Creates the SSL context of the console out of its key store.
+    */
+   private SSLContext sslContext() throws IOException
+   {
+      try
+      {
+         KeyStore keyStore = m_keyStore;
+         char[] password = m_keyPassword;
+         if (keyStore == null)
+         {
+            password = DEFAULT_KEY_PASSWORD.toCharArray();
+            keyStore = KeyStore.getInstance("PKCS12");
+            InputStream in = MockConsole.class.getResourceAsStream(DEFAULT_KEY_STORE);
+            try
+            {
+               keyStore.load(in, password);
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+         KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+         keys.init(keyStore, password);
+         SSLContext context = SSLContext.getInstance("TLS");
+         context.init(keys.getKeyManagers(), null, new SecureRandom());
+         return context;
+      }
+      catch (GeneralSecurityException e)
+      {
+         throw new IOException("Unable to initialize SSL", e);
+      }
+   }
+
+   /**
+    * A failure injected into the answers of some requests.
+    */
+   private static class FailureRule
+   {
+      FailureRule(String requestName, FailureMode mode, double rate)
+      {
+         m_requestName = requestName;
+         m_mode = mode;
+         m_rate = rate;
+      }
+
+      private final String m_requestName;
+      private final FailureMode m_mode;
+      private final double m_rate;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The API versions the console serves. */
+   private static final String[] API_VERSIONS = {"1.1", "1.2"};
+   /** The path of the generated reports, downloaded with the session cookie. */
+   private static final String REPORTS_PATH = "/reports/";
+   private static final String SESSION_COOKIE = "nexposeCCSessionID";
+   /** The name the downloads of reports are counted under. */
+   private static final String REPORT_FILE = "ReportFile";
+   /** The key of the latency of every request. */
+   private static final String ALL_REQUESTS = "";
+   /** The self-signed key store of the console, and its password. */
+   private static final String DEFAULT_KEY_STORE = "/org/rapid7/nexpose/mock/localhost.p12";
+   private static final String DEFAULT_KEY_PASSWORD = "nexpose";
+   private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+   /** Whether the library has a template for a request name. */
+   private static final Map<String, Boolean> ms_templated = new ConcurrentHashMap<String, Boolean>();
+
+   private final int m_port;
+   private final SyntheticResponder m_synthetic;
+   private final ConcurrentHashMap<String, IMockResponder> m_responders =
+      new ConcurrentHashMap<String, IMockResponder>();
+   private final ConcurrentHashMap<String, Boolean> m_sessions = new ConcurrentHashMap<String, Boolean>();
+   private final ConcurrentHashMap<String, long[]> m_latencies = new ConcurrentHashMap<String, long[]>();
+   private final List<FailureRule> m_failures = new CopyOnWriteArrayList<FailureRule>();
+   private final AtomicLong m_requests = new AtomicLong();
+   private final ConcurrentHashMap<String, AtomicLong> m_requestsByName =
+      new ConcurrentHashMap<String, AtomicLong>();
+   private final AtomicInteger m_inFlight = new AtomicInteger();
+   private final AtomicInteger m_maxInFlight = new AtomicInteger();
+   private final AtomicInteger m_threadNumber = new AtomicInteger();
+   private volatile boolean m_validateSessions = true;
+   private volatile boolean m_compression;
+   private volatile int m_threads;
+   private volatile KeyStore m_keyStore;
+   private volatile char[] m_keyPassword;
+   private HttpsServer m_server;
+   private ExecutorService m_executor;
+   /** Released when the console stops, to end the held requests. */
+   private volatile CountDownLatch m_stopped = new CountDownLatch(1);
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * A request received by the {@link MockConsole}.
+ */
+public class MockRequest
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new request.
+    *
+    * @param apiVersion the API version of the URL the request was sent to.
+    * @param body the XML the request was sent with.
+    * @param element the parsed root element of the request.
+    */
+   public MockRequest(String apiVersion, String body, Element element)
+   {
+      m_apiVersion = apiVersion;
+      m_body = body;
+      m_element = element;
+   }
+
+   /**
+    * Retrieves the API version of the URL the request was sent to, e.g.
+    * "1.2".
+    *
+    * @return the API version.
+    */
+   public String getApiVersion()
+   {
+      return m_apiVersion;
+   }
+
+   /**
+    * Retrieves the name of the request, the tag of its root element, e.g.
+    * "SiteListingRequest".
+    *
+    * @return the name of the request.
+    */
+   public String getName()
+   {
+      return m_element.getTagName();
+   }
+
+   /**
+    * Retrieves the name of the matching response, e.g. "SiteListingResponse"
+    * for a SiteListingRequest.
+    *
+    * @return the name of the response.
+    */
+   public String getResponseName()
+   {
+      String name = getName();
+      if (name.endsWith("Request"))
+      {
+         name = name.substring(0, name.length() - "Request".length());
+      }
+      return name + "Response";
+   }
+
+   /**
+    * Retrieves an attribute of the root element of the request.
+    *
+    * @param name the name of the attribute.
+    * @return the value of the attribute, or an empty String if not set.
+    */
+   public String getAttribute(String name)
+   {
+      return m_element.getAttribute(name);
+   }
+
+   /**
+    * Retrieves the session id the request was sent with.
+    *
+    * @return the session id, or an empty String if not set.
+    */
+   public String getSessionId()
+   {
+      return getAttribute("session-id");
+   }
+
+   /**
+    * Retrieves the elements of the request with the given tag, at any depth.
+    *
+    * @param tag the tag of the elements.
+    * @return the elements, in document order.
+    */
+   public List<Element> getElements(String tag)
+   {
+      NodeList nodes = m_element.getElementsByTagName(tag);
+      List<Element> elements = new ArrayList<Element>(nodes.getLength());
+      for (int i = 0; i < nodes.getLength(); i++)
+      {
+         Node node = nodes.item(i);
+         elements.add((Element) node);
+      }
+      return elements;
+   }
+
+   /**
+    * Retrieves the root element of the request.
+    *
+    * @return the root element.
+    */
+   public Element getElement()
+   {
+      return m_element;
+   }
+
+   /**
+    * Retrieves the XML the request was sent with.
+    *
+    * @return the body of the request.
+    */
+   public String getBody()
+   {
+      return m_body;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String m_apiVersion;
+   private final String m_body;
+   private final Element m_element;
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import org.rapid7.nexpose.utils.StringUtils;
+
+/**
+ * A response of the {@link MockConsole}: an XML document, a multipart
+ * message or a bare HTTP status.
+ */
+public class MockResponse
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a successful XML response.
+    *
+    * @param xml the XML document.
+    * @return the response.
+    */
+   public static MockResponse xml(String xml)
+   {
+      return new MockResponse(200, "text/xml; charset=UTF-8", xml.getBytes(UTF_8));
+   }
+
+   /**
+    * Creates a response made of the given XML document bytes.
+    *
+    * @param xml the UTF-8 XML document.
+    * @return the response.
+    */
+   public static MockResponse xml(byte[] xml)
+   {
+      return new MockResponse(200, "text/xml; charset=UTF-8", xml);
+   }
+
+   /**
+    * Creates an API Failure response, as the console answers requests it
+    * cannot process.
+    *
+    * @param responseName the name of the response, e.g.
+    *        "SiteListingResponse".
+    * @param message the message of the failure.
+    * @return the response.
+    */
+   public static MockResponse failure(String responseName, String message)
+   {
+      return xml("<" + responseName + " success=\"0\"><Failure><Exception><message>"
+         + StringUtils.xmlEscape(message)
+         + "</message></Exception></Failure></" + responseName + ">");
+   }
+
+   /**
+    * Creates a multipart response as the console answers ad-hoc reports: the
+    * XML response part followed by the base64 encoded attachment.
+    *
+    * @param xml the XML response.
+    * @param attachment the attachment.
+    * @param attachmentType the content type of the attachment.
+    * @return the response.
+    */
+   public static MockResponse multipart(String xml, byte[] attachment, String attachmentType)
+   {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(attachment.length * 4 / 3 + 512);
+      write(body, "--" + BOUNDARY + "\r\n");
+      write(body, "Content-Type: text/xml; name=response.xml\r\n\r\n");
+      write(body, xml);
+      write(body, "\r\n--" + BOUNDARY + "\r\n");
+      write(body, "Content-Type: " + attachmentType + "; name=report\r\n");
+      write(body, "Content-Transfer-Encoding: base64\r\n\r\n");
+      base64(attachment, body);
+      write(body, "\r\n--" + BOUNDARY + "--\r\n");
+      return new MockResponse(
+         200,
+         "multipart/mixed; boundary=" + BOUNDARY,
+         body.toByteArray());
+   }
+
+   /**
+    * Creates a response holding a file, as the console answers the
+    * downloads of the generated reports.
+    *
+    * @param content the content of the file.
+    * @param contentType the content type of the file.
+    * @return the response.
+    */
+   public static MockResponse file(byte[] content, String contentType)
+   {
+      return new MockResponse(200, contentType, content);
+   }
+
+   /**
+    * Creates a response with the given HTTP status and a plain text body.
+    *
+    * @param status the HTTP status.
+    * @param text the body.
+    * @return the response.
+    */
+   public static MockResponse status(int status, String text)
+   {
+      return new MockResponse(status, "text/plain; charset=UTF-8", text.getBytes(UTF_8));
+   }
+
+   /**
+    * Retrieves the HTTP status of the response.
+    *
+    * @return the HTTP status.
+    */
+   public int getStatus()
+   {
+      return m_status;
+   }
+
+   /**
+    * Retrieves the content type of the response.
+    *
+    * @return the content type.
+    */
+   public String getContentType()
+   {
+      return m_contentType;
+   }
+
+   /**
+    * Retrieves the body of the response.
+    *
+    * @return the body, not to be modified.
+    */
+   public byte[] getBody()
+   {
+      return m_body;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new response.
+    */
+   private MockResponse(int status, String contentType, byte[] body)
+   {
+      m_status = status;
+      m_contentType = contentType;
+      m_body = body;
+   }
+
+   /**
+    * Writes text to the body being built.
+    */
+   private static void write(ByteArrayOutputStream body, String text)
+   {
+      byte[] bytes = text.getBytes(UTF_8);
+      body.write(bytes, 0, bytes.length);
+   }
+
+   /**
+    * Encodes data in base64, in lines of 76 characters.
+    */
+   private static void base64(byte[] data, ByteArrayOutputStream body)
+   {
+      int line = 0;
+      for (int i = 0; i < data.length; i += 3)
+      {
+         int remaining = data.length - i;
+         int bits = (data[i] & 0xff) << 16;
+         if (remaining > 1)
+         {
+            bits |= (data[i + 1] & 0xff) << 8;
+         }
+         if (remaining > 2)
+         {
+            bits |= data[i + 2] & 0xff;
+         }
+         body.write(BASE64[(bits >> 18) & 63]);
+         body.write(BASE64[(bits >> 12) & 63]);
+         body.write(remaining > 1 ? BASE64[(bits >> 6) & 63] : '=');
+         body.write(remaining > 2 ? BASE64[bits & 63] : '=');
+         line += 4;
+         if (line == 76)
+         {
+            body.write('\r');
+            body.write('\n');
+            line = 0;
+         }
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The boundary of the multipart responses. */
+   private static final String BOUNDARY = "AxB9sl3299asdjvbA";
+
+   /** The characters of the base64 alphabet. */
+   private static final byte[] BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(Charset.forName("US-ASCII"));
+
+   /** The encoding of the documents. */
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+   private final int m_status;
+   private final String m_contentType;
+   private final byte[] m_body;
+}
@@ -0,0 +1,1016 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.rapid7.nexpose.utils.StringUtils;
+import org.w3c.dom.Element;
+
+/**
+ * The default responder of the {@link MockConsole}: answers the listing,
+ * details, scan, ticket and report requests with deterministic synthetic
+ * data of configurable volume, and any other templated request with a bare
+ * successful response.
+ * <P>
+ * Ids are 1-based: sites 1 to {@link #getSites()}, assets numbered
+ * consecutively across the sites, tickets 1 to {@link #getTickets()}, and so
+ * on. The same id always yields the same synthetic object. Asset group n
+ * holds the assets whose id is a multiple of n + 1. Site n is scanned by
+ * engine n % engines + 1 until an EngineSaveRequest assigns it elsewhere, and
+ * its past scans lasted (n % 7 + 1) * 10 minutes. Engine pool n holds the
+ * engines whose id minus one is n - 1 modulo the number of pools.
+ */
+public class SyntheticResponder implements IMockResponder
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   public MockResponse respond(MockRequest request)
+   {
+      String name = request.getName();
+      if ("SiteListingRequest".equals(name))
+      {
+         return siteListing();
+      }
+      else if ("SiteDeviceListingRequest".equals(name))
+      {
+         return siteDeviceListing(request);
+      }
+      else if ("SiteScanHistoryRequest".equals(name))
+      {
+         return siteScanHistory(request);
+      }
+      else if ("AssetGroupListingRequest".equals(name))
+      {
+         return assetGroupListing();
+      }
+      else if ("AssetGroupConfigRequest".equals(name))
+      {
+         return assetGroupConfig(request);
+      }
+      else if ("EngineListingRequest".equals(name))
+      {
+         return engineListing();
+      }
+      else if ("UserListingRequest".equals(name))
+      {
+         return userListing();
+      }
+      else if ("TicketListingRequest".equals(name))
+      {
+         return ticketListing();
+      }
+      else if ("TicketDetailsRequest".equals(name))
+      {
+         return ticketDetails(request);
+      }
+      else if ("TicketCreateRequest".equals(name))
+      {
+         return created(request, "id");
+      }
+      else if ("SiteSaveRequest".equals(name))
+      {
+         return created(request, "site-id");
+      }
+      else if ("AssetGroupSaveRequest".equals(name))
+      {
+         return created(request, "group-id");
+      }
+      else if ("SiteScanRequest".equals(name) || "SiteDevicesScanRequest".equals(name))
+      {
+         return scanStarted(request);
+      }
+      else if ("EnginePoolListingRequest".equals(name))
+      {
+         return enginePoolListing();
+      }
+      else if ("EnginePoolDetailsRequest".equals(name))
+      {
+         return enginePoolDetails(request);
+      }
+      else if ("EngineActivityRequest".equals(name))
+      {
+         return engineActivity(request);
+      }
+      else if ("EngineConfigRequest".equals(name))
+      {
+         return engineConfig(request);
+      }
+      else if ("EngineSaveRequest".equals(name))
+      {
+         return engineSaved(request);
+      }
+      else if ("ScanStatisticsRequest".equals(name))
+      {
+         return scanStatistics(request);
+      }
+      else if ("SystemInformationRequest".equals(name))
+      {
+         return systemInformation();
+      }
+      else if ("ReportAdhocGenerateRequest".equals(name))
+      {
+         return report();
+      }
+      else if ("ReportListingRequest".equals(name))
+      {
+         return reportListing();
+      }
+      else if ("ReportGenerateRequest".equals(name))
+      {
+         return reportStarted(request);
+      }
+      else if ("ReportHistoryRequest".equals(name))
+      {
+         return reportHistory(request);
+      }
+      else if (MockConsole.isTemplated(name))
+      {
+         return MockResponse.xml("<" + request.getResponseName() + " success=\"1\"/>");
+      }
+      return null;
+   }
+
+   /**
+    * Retrieves the number of sites of the console.
+    *
+    * @return the number of sites.
+    */
+   public int getSites()
+   {
+      return m_sites;
+   }
+
+   /**
+    * Sets the number of sites of the console.
+    *
+    * @param sites the number of sites.
+    */
+   public void setSites(int sites)
+   {
+      m_sites = sites;
+   }
+
+   /**
+    * Retrieves the number of assets of each site.
+    *
+    * @return the number of assets of each site.
+    */
+   public int getAssetsPerSite()
+   {
+      return m_assetsPerSite;
+   }
+
+   /**
+    * Sets the number of assets of each site.
+    *
+    * @param assetsPerSite the number of assets of each site.
+    */
+   public void setAssetsPerSite(int assetsPerSite)
+   {
+      m_assetsPerSite = assetsPerSite;
+   }
+
+   /**
+    * Retrieves the number of scans in the history of each site.
+    *
+    * @return the number of scans of each site.
+    */
+   public int getScansPerSite()
+   {
+      return m_scansPerSite;
+   }
+
+   /**
+    * Sets the number of scans in the history of each site.
+    *
+    * @param scansPerSite the number of scans of each site.
+    */
+   public void setScansPerSite(int scansPerSite)
+   {
+      m_scansPerSite = scansPerSite;
+   }
+
+   /**
+    * Retrieves the number of tickets of the console.
+    *
+    * @return the number of tickets.
+    */
+   public int getTickets()
+   {
+      return m_tickets;
+   }
+
+   /**
+    * Sets the number of tickets of the console.
+    *
+    * @param tickets the number of tickets.
+    */
+   public void setTickets(int tickets)
+   {
+      m_tickets = tickets;
+   }
+
+   /**
+    * Retrieves the number of scan engines of the console.
+    *
+    * @return the number of engines.
+    */
+   public int getEngines()
+   {
+      return m_engines;
+   }
+
+   /**
+    * Sets the number of scan engines of the console.
+    *
+    * @param engines the number of engines.
+    */
+   public void setEngines(int engines)
+   {
+      m_engines = engines;
+   }
+
+   /**
+    * Retrieves the number of engine pools of the console.
+    *
+    * @return the number of engine pools.
+    */
+   public int getEnginePools()
+   {
+      return m_enginePools;
+   }
+
+   /**
+    * Sets the number of engine pools of the console.
+    *
+    * @param enginePools the number of engine pools.
+    */
+   public void setEnginePools(int enginePools)
+   {
+      m_enginePools = enginePools;
+   }
+
+   /**
+    * Retrieves the number of asset groups of the console.
+    *
+    * @return the number of asset groups.
+    */
+   public int getAssetGroups()
+   {
+      return m_assetGroups;
+   }
+
+   /**
+    * Sets the number of asset groups of the console.
+    *
+    * @param assetGroups the number of asset groups.
+    */
+   public void setAssetGroups(int assetGroups)
+   {
+      m_assetGroups = assetGroups;
+   }
+
+   /**
+    * Retrieves the number of users of the console.
+    *
+    * @return the number of users.
+    */
+   public int getUsers()
+   {
+      return m_users;
+   }
+
+   /**
+    * Sets the number of users of the console.
+    *
+    * @param users the number of users.
+    */
+   public void setUsers(int users)
+   {
+      m_users = users;
+   }
+
+   /**
+    * Retrieves the size of the ad-hoc reports, in bytes.
+    *
+    * @return the size of the reports.
+    */
+   public int getReportSize()
+   {
+      return m_reportSize;
+   }
+
+   /**
+    * Sets the size of the ad-hoc reports, in bytes.
+    *
+    * @param reportSize the size of the reports.
+    */
+   public void setReportSize(int reportSize)
+   {
+      m_reportSize = reportSize;
+   }
+
+   /**
+    * Retrieves the number of report configurations of the console.
+    *
+    * @return the number of report configurations.
+    */
+   public int getReports()
+   {
+      return m_reports;
+   }
+
+   /**
+    * Sets the number of report configurations of the console.
+    *
+    * @param reports the number of report configurations.
+    */
+   public void setReports(int reports)
+   {
+      m_reports = reports;
+   }
+
+   /**
+    * Sets how long the reports take to generate, reported as Started by the
+    * ReportHistoryRequest of their configuration meanwhile. 0, the default,
+    * generates them at once. The generated reports hold
+    * {@link #getReportSize()} bytes.
+    *
+    * @param duration the duration of the generation.
+    * @param unit the unit of the duration.
+    */
+   public void setReportDuration(long duration, TimeUnit unit)
+   {
+      m_reportDuration = unit.toMillis(duration);
+   }
+
+   /**
+    * Retrieves the highest number of reports generated at once.
+    *
+    * @return the highest number of reports being generated.
+    */
+   public int getMaxGeneratingReports()
+   {
+      return m_maxGeneratingReports.get();
+   }
+
+   /**
+    * Answers the download of a generated report.
+    *
+    * @param path the path of the report.
+    * @return the report, {@code null} if there is no such report or it is
+    *         still being generated.
+    */
+   public MockResponse reportFile(String path)
+   {
+      for (GeneratedReport report : m_generatedReports.values())
+      {
+         if (report.uri().equals(path))
+         {
+            return report.m_end <= System.currentTimeMillis()
+               ? MockResponse.file(reportContent(), "text/html")
+               : null;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Sets how long the scans started run, reported by the
+    * EngineActivityRequest of their engine meanwhile. 0, the default, ends
+    * them at once.
+    *
+    * @param duration the duration of the scans.
+    * @param unit the unit of the duration.
+    */
+   public void setScanDuration(long duration, TimeUnit unit)
+   {
+      m_scanDuration = unit.toMillis(duration);
+   }
+
+   /**
+    * Retrieves the engine a site is assigned to.
+    *
+    * @param siteId the id of the site.
+    * @return the id of the engine.
+    */
+   public int getSiteEngine(int siteId)
+   {
+      Integer engine = m_siteEngines.get(siteId);
+      return engine != null ? engine : engine(siteId);
+   }
+
+   /**
+    * Retrieves the number of scans running on an engine.
+    *
+    * @param engineId the id of the engine.
+    * @return the number of scans.
+    */
+   public int getRunningScans(int engineId)
+   {
+      int count = 0;
+      for (RunningScan scan : runningScans())
+      {
+         if (scan.m_engineId == engineId)
+         {
+            count++;
+         }
+      }
+      return count;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private MockResponse siteListing()
+   {
+      int sites = m_sites;
+      StringBuilder xml = new StringBuilder(sites * 128 + 64);
+      xml.append("<SiteListingResponse success=\"1\">");
+      for (int id = 1; id <= sites; id++)
+      {
+         xml.append("<SiteSummary id=\"").append(id)
+            .append("\" name=\"Site ").append(id)
+            .append("\" description=\"Synthetic site ").append(id)
+            .append("\" riskfactor=\"1.0\" riskscore=\"").append(riskScore(id))
+            .append("\"/>");
+      }
+      return MockResponse.xml(xml.append("</SiteListingResponse>").toString());
+   }
+
+   private MockResponse siteDeviceListing(MockRequest request)
+   {
+      int assets = m_assetsPerSite;
+      int first = 1;
+      int last = m_sites;
+      String siteId = request.getAttribute("site-id");
+      if (siteId.length() > 0)
+      {
+         first = Integer.parseInt(siteId);
+         last = first;
+      }
+      StringBuilder xml = new StringBuilder((last - first + 1) * (assets * 96 + 64) + 64);
+      xml.append("<SiteDeviceListingResponse success=\"1\">");
+      for (int site = first; site <= last; site++)
+      {
+         xml.append("<SiteDevices site-id=\"").append(site).append("\">");
+         for (int i = 0; i < assets; i++)
+         {
+            int id = (site - 1) * assets + i + 1;
+            xml.append("<device id=\"").append(id)
+               .append("\" address=\"").append(address(id))
+               .append("\" riskfactor=\"1.0\" riskscore=\"").append(riskScore(id))
+               .append("\"/>");
+         }
+         xml.append("</SiteDevices>");
+      }
+      return MockResponse.xml(xml.append("</SiteDeviceListingResponse>").toString());
+   }
+
+   private MockResponse siteScanHistory(MockRequest request)
+   {
+      int site = Integer.parseInt(request.getAttribute("site-id"));
+      int scans = m_scansPerSite;
+      StringBuilder xml = new StringBuilder(scans * 512 + 64);
+      xml.append("<SiteScanHistoryResponse success=\"1\">");
+      for (int i = 0; i < scans; i++)
+      {
+         int id = (site - 1) * scans + i + 1;
+         xml.append("<ScanSummary scan-id=\"").append(id)
+            .append("\" site-id=\"").append(site)
+            .append("\" engine-id=\"").append(engine(id))
+            .append("\" name=\"Scan ").append(id)
+            .append("\" startTime=\"").append(timestamp(id))
+            .append("\" endTime=\"").append(scanEnd(id, site))
+            .append("\" status=\"finished\">")
+            .append("<tasks pending=\"0\" active=\"0\" completed=\"").append(m_assetsPerSite).append("\"/>")
+            .append("<nodes live=\"").append(m_assetsPerSite)
+            .append("\" dead=\"0\" filtered=\"0\" unresolved=\"0\" other=\"0\"/>")
+            .append("<vulnerabilities status=\"vuln-exploit\" severity=\"9\" count=\"").append(id % 7).append("\"/>")
+            .append("<vulnerabilities status=\"vuln-version\" severity=\"5\" count=\"").append(id % 23).append("\"/>")
+            .append("<vulnerabilities status=\"not-vuln\" count=\"").append(id % 101).append("\"/>")
+            .append("</ScanSummary>");
+      }
+      return MockResponse.xml(xml.append("</SiteScanHistoryResponse>").toString());
+   }
+
+   private MockResponse assetGroupListing()
+   {
+      int groups = m_assetGroups;
+      StringBuilder xml = new StringBuilder(groups * 128 + 64);
+      xml.append("<AssetGroupListingResponse success=\"1\">");
+      for (int id = 1; id <= groups; id++)
+      {
+         xml.append("<AssetGroupSummary id=\"").append(id)
+            .append("\" name=\"Group ").append(id)
+            .append("\" description=\"Synthetic asset group ").append(id)
+            .append("\" riskscore=\"").append(riskScore(id))
+            .append("\"/>");
+      }
+      return MockResponse.xml(xml.append("</AssetGroupListingResponse>").toString());
+   }
+
+   private MockResponse assetGroupConfig(MockRequest request)
+   {
+      int id = Integer.parseInt(request.getAttribute("group-id"));
+      int assets = m_sites * m_assetsPerSite;
+      StringBuilder xml = new StringBuilder(assets / (id + 1) * 112 + 256);
+      xml.append("<AssetGroupConfigResponse success=\"1\">");
+      xml.append("<AssetGroup id=\"").append(id)
+         .append("\" name=\"Group ").append(id)
+         .append("\" description=\"Synthetic asset group ").append(id)
+         .append("\" riskscore=\"").append(riskScore(id))
+         .append("\"><Devices>");
+      for (int device = id + 1; device <= assets; device += id + 1)
+      {
+         xml.append("<device id=\"").append(device)
+            .append("\" site-id=\"").append((device - 1) / m_assetsPerSite + 1)
+            .append("\" address=\"").append(address(device))
+            .append("\" riskfactor=\"1.0\" riskscore=\"").append(riskScore(device))
+            .append("\"/>");
+      }
+      return MockResponse.xml(xml.append("</Devices></AssetGroup></AssetGroupConfigResponse>").toString());
+   }
+
+   private MockResponse engineListing()
+   {
+      int engines = m_engines;
+      StringBuilder xml = new StringBuilder(engines * 128 + 64);
+      xml.append("<EngineListingResponse success=\"1\">");
+      for (int id = 1; id <= engines; id++)
+      {
+         xml.append("<EngineSummary id=\"").append(id)
+            .append("\" name=\"Engine ").append(id)
+            .append("\" address=\"engine").append(id).append(".example.com")
+            .append("\" port=\"40814\" status=\"active\" scope=\"silo\"/>");
+      }
+      return MockResponse.xml(xml.append("</EngineListingResponse>").toString());
+   }
+
+   private MockResponse enginePoolListing()
+   {
+      int pools = m_enginePools;
+      StringBuilder xml = new StringBuilder(pools * 96 + 64);
+      xml.append("<EnginePoolListingResponse success=\"1\">");
+      for (int id = 1; id <= pools; id++)
+      {
+         xml.append("<EnginePoolSummary id=\"").append(id)
+            .append("\" name=\"Pool ").append(id)
+            .append("\" scope=\"silo\"/>");
+      }
+      return MockResponse.xml(xml.append("</EnginePoolListingResponse>").toString());
+   }
+
+   private MockResponse enginePoolDetails(MockRequest request)
+   {
+      String name = request.getElements("EnginePool").get(0).getAttribute("name");
+      int pools = Math.max(1, m_enginePools);
+      int pool = name.startsWith("Pool ") ? Integer.parseInt(name.substring(5)) : 0;
+      if (pool < 1 || pool > m_enginePools)
+      {
+         return MockResponse.failure(request.getResponseName(), "Unknown engine pool " + name);
+      }
+      StringBuilder xml = new StringBuilder(512);
+      xml.append("<EnginePoolDetailsResponse success=\"1\">");
+      xml.append("<EnginePool id=\"").append(pool)
+         .append("\" name=\"Pool ").append(pool)
+         .append("\" scope=\"silo\">");
+      for (int id = pool; id <= m_engines; id += pools)
+      {
+         xml.append("<EngineSummary id=\"").append(id)
+            .append("\" name=\"Engine ").append(id)
+            .append("\" address=\"engine").append(id).append(".example.com")
+            .append("\" port=\"40814\" status=\"active\" scope=\"silo\"/>");
+      }
+      return MockResponse.xml(xml.append("</EnginePool></EnginePoolDetailsResponse>").toString());
+   }
+
+   private MockResponse userListing()
+   {
+      int users = m_users;
+      StringBuilder xml = new StringBuilder(users * 256 + 64);
+      xml.append("<UserListingResponse success=\"1\">");
+      for (int id = 1; id <= users; id++)
+      {
+         xml.append("<UserSummary id=\"").append(id)
+            .append("\" authSource=\"Builtin Administrators\" authModule=\"XML\" userName=\"user").append(id)
+            .append("\" fullName=\"User ").append(id)
+            .append("\" email=\"user").append(id).append("@example.com")
+            .append("\" administrator=\"").append(id == 1 ? 1 : 0)
+            .append("\" disabled=\"0\" locked=\"0\" siteCount=\"").append(m_sites)
+            .append("\" groupCount=\"").append(m_assetGroups)
+            .append("\"/>");
+      }
+      return MockResponse.xml(xml.append("</UserListingResponse>").toString());
+   }
+
+   private MockResponse ticketListing()
+   {
+      int tickets = m_tickets;
+      StringBuilder xml = new StringBuilder(tickets * 192 + 64);
+      xml.append("<TicketListingResponse success=\"1\">");
+      for (int id = 1; id <= tickets; id++)
+      {
+         xml.append("<TicketSummary");
+         ticketAttributes(xml, id);
+         xml.append("/>");
+      }
+      return MockResponse.xml(xml.append("</TicketListingResponse>").toString());
+   }
+
+   private MockResponse ticketDetails(MockRequest request)
+   {
+      StringBuilder xml = new StringBuilder(1024);
+      xml.append("<TicketDetailsResponse success=\"1\">");
+      for (Element ticket : request.getElements("Ticket"))
+      {
+         int id = Integer.parseInt(ticket.getAttribute("id"));
+         xml.append("<TicketInfo");
+         ticketAttributes(xml, id);
+         xml.append("><Vulnerabilities><Vulnerability id=\"")
+            .append(vulnerability(id))
+            .append("\"/></Vulnerabilities><TicketEvents><Event state=\"O\" author=\"nxadmin\" created-on=\"")
+            .append(timestamp(id))
+            .append("\">Created ticket</Event></TicketEvents></TicketInfo>");
+      }
+      return MockResponse.xml(xml.append("</TicketDetailsResponse>").toString());
+   }
+
+   private void ticketAttributes(StringBuilder xml, int id)
+   {
+      int device = id % Math.max(1, m_sites * m_assetsPerSite) + 1;
+      xml.append(" id=\"").append(id)
+         .append("\" name=\"Remediate ").append(StringUtils.xmlEscape(vulnerability(id)))
+         .append(" on ").append(address(device))
+         .append("\" state=\"").append(TICKET_STATES[id % TICKET_STATES.length])
+         .append("\" device-id=\"").append(device)
+         .append("\" created-on=\"").append(timestamp(id))
+         .append("\" author=\"nxadmin\" priority=\"").append(TICKET_PRIORITIES[id % TICKET_PRIORITIES.length])
+         .append("\" assigned-to=\"user").append(id % Math.max(1, m_users) + 1)
+         .append("\"");
+   }
+
+   private MockResponse created(MockRequest request, String idAttribute)
+   {
+      return MockResponse.xml("<" + request.getResponseName() + " success=\"1\" "
+         + idAttribute + "=\"" + m_nextId.incrementAndGet() + "\"/>");
+   }
+
+   private MockResponse scanStarted(MockRequest request)
+   {
+      int scan = m_nextId.incrementAndGet();
+      String site = request.getAttribute("site-id");
+      int engine = site.length() > 0 ? getSiteEngine(Integer.parseInt(site)) : engine(scan);
+      if (m_scanDuration > 0)
+      {
+         long now = System.currentTimeMillis();
+         m_runningScans.put(scan, new RunningScan(scan, site.length() > 0 ? Integer.parseInt(site) : 0,
+            engine, now, now + m_scanDuration));
+      }
+      return MockResponse.xml("<" + request.getResponseName() + " success=\"1\">"
+         + "<Scan scan-id=\"" + scan + "\" engine-id=\"" + engine + "\"/>"
+         + "</" + request.getResponseName() + ">");
+   }
+
+   private MockResponse scanStatistics(MockRequest request)
+   {
+      int scan = Integer.parseInt(request.getAttribute("scan-id"));
+      runningScans();
+      RunningScan running = m_runningScans.get(scan);
+      return MockResponse.xml("<ScanStatisticsResponse success=\"1\"><ScanSummary scan-id=\"" + scan
+         + "\" site-id=\"" + (running != null ? running.m_siteId : 0)
+         + "\" engine-id=\"" + (running != null ? running.m_engineId : engine(scan))
+         + "\" status=\"" + (running != null ? "running" : "finished") + "\"/></ScanStatisticsResponse>");
+   }
+
+   private MockResponse engineConfig(MockRequest request)
+   {
+      int engine = Integer.parseInt(request.getAttribute("engine-id"));
+      StringBuilder xml = new StringBuilder(512);
+      xml.append("<EngineConfigResponse success=\"1\">");
+      xml.append("<EngineConfig id=\"").append(engine)
+         .append("\" name=\"Engine ").append(engine)
+         .append("\" address=\"engine").append(engine).append(".example.com")
+         .append("\" port=\"40814\" scope=\"silo\" priority=\"normal\">");
+      for (int site = 1; site <= m_sites; site++)
+      {
+         if (getSiteEngine(site) == engine)
+         {
+            xml.append("<Site id=\"").append(site).append("\" name=\"Site ").append(site).append("\"/>");
+         }
+      }
+      return MockResponse.xml(xml.append("</EngineConfig></EngineConfigResponse>").toString());
+   }
+
+   private MockResponse engineSaved(MockRequest request)
+   {
+      String id = request.getElements("EngineConfig").get(0).getAttribute("id");
+      int engine = "-1".equals(id) ? m_nextId.incrementAndGet() : Integer.parseInt(id);
+      for (Element site : request.getElements("Site"))
+      {
+         m_siteEngines.put(Integer.parseInt(site.getAttribute("id")), engine);
+      }
+      return MockResponse.xml("<EngineSaveResponse success=\"1\" engine-id=\"" + engine + "\"/>");
+   }
+
+   private MockResponse engineActivity(MockRequest request)
+   {
+      int engine = Integer.parseInt(request.getAttribute("engine-id"));
+      SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmssSSS");
+      long now = System.currentTimeMillis();
+      StringBuilder xml = new StringBuilder(512);
+      xml.append("<EngineActivityResponse success=\"1\">");
+      for (RunningScan scan : runningScans())
+      {
+         if (scan.m_engineId != engine)
+         {
+            continue;
+         }
+         int completed = (int) (m_assetsPerSite * (now - scan.m_start) / Math.max(1, scan.m_end - scan.m_start));
+         xml.append("<ScanSummary scan-id=\"").append(scan.m_scanId)
+            .append("\" site-id=\"").append(scan.m_siteId)
+            .append("\" engine-id=\"").append(engine)
+            .append("\" name=\"Scan ").append(scan.m_scanId)
+            .append("\" startTime=\"").append(format.format(new Date(scan.m_start)))
+            .append("\" endTime=\"\" status=\"running\">")
+            .append("<tasks pending=\"").append(m_assetsPerSite - completed)
+            .append("\" active=\"1\" completed=\"").append(completed).append("\"/>")
+            .append("<nodes live=\"").append(completed)
+            .append("\" dead=\"0\" filtered=\"0\" unresolved=\"0\" other=\"0\"/>")
+            .append("</ScanSummary>");
+      }
+      return MockResponse.xml(xml.append("</EngineActivityResponse>").toString());
+   }
+
+   /**
+    * The scans still running, dropping the ones which ended.
+    */
+   private Iterable<RunningScan> runningScans()
+   {
+      long now = System.currentTimeMillis();
+      for (Iterator<RunningScan> scans = m_runningScans.values().iterator(); scans.hasNext(); )
+      {
+         if (scans.next().m_end <= now)
+         {
+            scans.remove();
+         }
+      }
+      return m_runningScans.values();
+   }
+
+   private MockResponse systemInformation()
+   {
+      return MockResponse.xml("<SystemInformationResponse success=\"1\"><StatisticsInformationSummary>"
+         + "<Statistic name=\"nsc-version\">5.0.0</Statistic>"
+         + "<Statistic name=\"cpu-count\">4</Statistic>"
+         + "<Statistic name=\"ram-total\">8388608</Statistic>"
+         + "<Statistic name=\"os\">Linux</Statistic>"
+         + "</StatisticsInformationSummary></SystemInformationResponse>");
+   }
+
+   private MockResponse report()
+   {
+      return MockResponse.multipart(
+         "<ReportAdhocGenerateResponse success=\"1\"/>",
+         reportContent(),
+         "application/octet-stream");
+   }
+
+   private byte[] reportContent()
+   {
+      int size = m_reportSize;
+      byte[] report = new byte[size];
+      for (int i = 0; i < size; i++)
+      {
+         report[i] = (byte) (' ' + i % 95);
+      }
+      return report;
+   }
+
+   private MockResponse reportListing()
+   {
+      int reports = m_reports;
+      StringBuilder xml = new StringBuilder(reports * 192 + 64);
+      xml.append("<ReportListingResponse success=\"1\">");
+      for (int id = 1; id <= reports; id++)
+      {
+         xml.append("<ReportConfigSummary template-id=\"audit-report\" cfg-id=\"").append(id)
+            .append("\" status=\"Generated\" generated-on=\"").append(timestamp(id))
+            .append("\" report-URI=\"/reports/").append(id).append("/0/report.html")
+            .append("\" scope=\"silo\"/>");
+      }
+      return MockResponse.xml(xml.append("</ReportListingResponse>").toString());
+   }
+
+   private MockResponse reportStarted(MockRequest request)
+   {
+      int config = Integer.parseInt(request.getAttribute("report-id"));
+      if (config < 1 || config > m_reports)
+      {
+         return MockResponse.failure(request.getResponseName(), "Unknown report " + config);
+      }
+      long now = System.currentTimeMillis();
+      GeneratedReport report = new GeneratedReport(m_nextId.incrementAndGet(), config, now + m_reportDuration);
+      m_generatedReports.put(report.m_id, report);
+      int generating = 0;
+      for (GeneratedReport other : m_generatedReports.values())
+      {
+         if (other.m_end > now)
+         {
+            generating++;
+         }
+      }
+      for (int max = m_maxGeneratingReports.get(); generating > max; max = m_maxGeneratingReports.get())
+      {
+         if (m_maxGeneratingReports.compareAndSet(max, generating))
+         {
+            break;
+         }
+      }
+      StringBuilder xml = new StringBuilder(256);
+      xml.append("<ReportGenerateResponse success=\"1\">");
+      reportSummary(xml, report, now);
+      return MockResponse.xml(xml.append("</ReportGenerateResponse>").toString());
+   }
+
+   private MockResponse reportHistory(MockRequest request)
+   {
+      int config = Integer.parseInt(request.getAttribute("reportcfg-id"));
+      long now = System.currentTimeMillis();
+      StringBuilder xml = new StringBuilder(1024);
+      xml.append("<ReportHistoryResponse success=\"1\">");
+      for (GeneratedReport report : m_generatedReports.values())
+      {
+         if (report.m_config == config)
+         {
+            reportSummary(xml, report, now);
+         }
+      }
+      return MockResponse.xml(xml.append("</ReportHistoryResponse>").toString());
+   }
+
+   private static void reportSummary(StringBuilder xml, GeneratedReport report, long now)
+   {
+      boolean generated = report.m_end <= now;
+      xml.append("<ReportSummary id=\"").append(report.m_id)
+         .append("\" cfg-id=\"").append(report.m_config)
+         .append("\" status=\"").append(generated ? "Generated" : "Started")
+         .append("\" generated-on=\"")
+         .append(generated ? new SimpleDateFormat("yyyyMMdd'T'HHmmssSSS").format(new Date(report.m_end)) : "")
+         .append("\" report-URI=\"").append(report.uri())
+         .append("\"/>");
+   }
+
+   /**
+    * The IPv4 address of an asset: 10.0.0.1 and upwards.
+    */
+   private static String address(int id)
+   {
+      return "10." + ((id >> 16) & 255) + "." + ((id >> 8) & 255) + "." + (id & 255);
+   }
+
+   private static String riskScore(int id)
+   {
+      return Integer.toString(id * 37 % 100000) + ".5";
+   }
+
+   private int engine(int id)
+   {
+      return id % Math.max(1, m_engines) + 1;
+   }
+
+   private static String vulnerability(int id)
+   {
+      return "synthetic-vuln-" + id % 5000;
+   }
+
+   private static String timestamp(int id)
+   {
+      return "2012" + (10 + id % 3) + (10 + id % 18) + "T" + (10 + id % 14) + (10 + id % 50) + "00123";
+   }
+
+   /**
+    * The end of a past scan of a site, (site % 7 + 1) * 10 minutes after its
+    * start.
+    */
+   private static String scanEnd(int id, int site)
+   {
+      SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmssSSS");
+      try
+      {
+         return format.format(new Date(format.parse(timestamp(id)).getTime() + (site % 7 + 1) * 600000L));
+      }
+      catch (ParseException e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The states and priorities the tickets cycle through. */
+   private static final String[] TICKET_STATES = {"O", "A", "M", "R", "W", "P", "C", "N"};
+   private static final String[] TICKET_PRIORITIES = {"low", "moderate", "normal", "high", "critical"};
+
+   private volatile int m_sites = 10;
+   private volatile int m_assetsPerSite = 100;
+   private volatile int m_scansPerSite = 5;
+   private volatile int m_tickets = 100;
+   private volatile int m_engines = 3;
+   private volatile int m_enginePools;
+   private volatile int m_assetGroups = 10;
+   private volatile int m_users = 10;
+   private volatile int m_reportSize = 64 * 1024;
+   private volatile long m_scanDuration;
+   private volatile int m_reports = 10;
+   private volatile long m_reportDuration;
+   private final AtomicInteger m_maxGeneratingReports = new AtomicInteger();
+   /** The reports generated through the console, by id. */
+   private final ConcurrentMap<Integer, GeneratedReport> m_generatedReports =
+      new ConcurrentHashMap<Integer, GeneratedReport>();
+   /** The id of the last object created through the console. */
+   private final AtomicInteger m_nextId = new AtomicInteger(100000);
+   /** The engines of the sites assigned through the console, by site id. */
+   private final ConcurrentMap<Integer, Integer> m_siteEngines = new ConcurrentHashMap<Integer, Integer>();
+   /** The scans started which have not ended yet, by id. */
+   private final ConcurrentMap<Integer, RunningScan> m_runningScans = new ConcurrentHashMap<Integer, RunningScan>();
+
+   /**
+    * A report generated through the console.
+    */
+   private static class GeneratedReport
+   {
+      GeneratedReport(int id, int config, long end)
+      {
+         m_id = id;
+         m_config = config;
+         m_end = end;
+      }
+
+      String uri()
+      {
+         return "/reports/" + m_config + "/" + m_id + "/report.html";
+      }
+
+      final int m_id;
+      final int m_config;
+      final long m_end;
+   }
+
+   /**
+    * A scan started through the console.
+    */
+   private static class RunningScan
+   {
+      RunningScan(int scanId, int siteId, int engineId, long start, long end)
+      {
+         m_scanId = scanId;
+         m_siteId = siteId;
+         m_engineId = engineId;
+         m_start = start;
+         m_end = end;
+      }
+
+      final int m_scanId;
+      final int m_siteId;
+      final int m_engineId;
+      final long m_start;
+      final long m_end;
+   }
+}
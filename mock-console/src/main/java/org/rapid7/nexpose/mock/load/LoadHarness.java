@@ -0,0 +1,437 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock.load;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.APISession.APISupportedVersion;
+import org.rapid7.nexpose.api.metrics.LatencyHistogram;
+import org.rapid7.nexpose.api.recording.RecordedExchange;
+import org.rapid7.nexpose.api.recording.RecordingReader;
+import org.rapid7.nexpose.mock.MockConsole;
+
+/**
+ * Replays recorded traffic through an {@link APISession} at a given rate and
+ * concurrency, and reports throughput, latency percentiles, garbage
+ * collection and heap usage.
+ * <P>
+ * The recorded requests (but logins and logouts) are sent in turn, with the
+ * session id of the given session, until the duration or the number of
+ * requests of the run is reached. With a rate, requests are scheduled at
+ * regular intervals whether or not the previous ones completed (an open
+ * workload, limited by the number of worker threads); without one, each
+ * worker sends its next request as soon as its previous one completes.
+ * <P>
+ * From the command line, the harness replays a recording against a
+ * {@link MockConsole} answering with the recorded responses:
+ * <PRE>
+ * java -cp ... org.rapid7.nexpose.mock.load.LoadHarness traffic.xml --rate 200 --concurrency 16 --duration 60 --latency 5-20
+ * </PRE>
+ */
+public class LoadHarness
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new harness.
+    *
+    * @param session the session to send the requests through, logged in.
+    * @param exchanges the recorded exchanges to replay.
+    */
+   public LoadHarness(APISession session, List<RecordedExchange> exchanges)
+   {
+      m_session = session;
+      m_exchanges = new ArrayList<RecordedExchange>();
+      for (RecordedExchange exchange : exchanges)
+      {
+         if (exchange.getRequestXML() != null
+            && !"LoginRequest".equals(exchange.getRequestName())
+            && !"LogoutRequest".equals(exchange.getRequestName()))
+         {
+            m_exchanges.add(exchange);
+         }
+      }
+      if (m_exchanges.isEmpty())
+      {
+         throw new IllegalArgumentException("Nothing to replay");
+      }
+   }
+
+   /**
+    * Sets the rate requests are sent at.
+    *
+    * @param rate the number of requests per second, 0 (the default) to send
+    *        them as fast as the workers can.
+    */
+   public void setRate(double rate)
+   {
+      if (rate < 0)
+      {
+         throw new IllegalArgumentException("rate must not be negative");
+      }
+      m_rate = rate;
+   }
+
+   /**
+    * Sets the number of worker threads, the most requests in progress at
+    * once.
+    *
+    * @param concurrency the number of workers, 1 by default.
+    */
+   public void setConcurrency(int concurrency)
+   {
+      if (concurrency < 1)
+      {
+         throw new IllegalArgumentException("concurrency must be at least 1");
+      }
+      m_concurrency = concurrency;
+   }
+
+   /**
+    * Sets how long the run lasts.
+    *
+    * @param duration the duration, 0 for no limit.
+    * @param unit the unit of the duration.
+    */
+   public void setDuration(long duration, TimeUnit unit)
+   {
+      m_duration = unit.toNanos(duration);
+   }
+
+   /**
+    * Sets the number of requests of the run.
+    *
+    * @param requests the number of requests, 0 (the default) for no limit.
+    */
+   public void setRequests(long requests)
+   {
+      m_requests = requests;
+   }
+
+   /**
+    * Runs the load.
+    *
+    * @return the results of the run.
+    * @throws InterruptedException when interrupted while waiting for the
+    *         workers.
+    */
+   public LoadReport run() throws InterruptedException
+   {
+      if (m_duration == 0 && m_requests == 0)
+      {
+         throw new IllegalStateException("Either a duration or a number of requests is needed");
+      }
+      final LoadReport report = new LoadReport();
+      for (RecordedExchange exchange : m_exchanges)
+      {
+         if (!report.m_latencyByRequest.containsKey(exchange.getRequestName()))
+         {
+            report.m_latencyByRequest.put(exchange.getRequestName(), new LatencyHistogram());
+         }
+      }
+      final AtomicLong next = new AtomicLong();
+      final AtomicLong successes = new AtomicLong();
+      final AtomicLong failures = new AtomicLong();
+      final AtomicLong errors = new AtomicLong();
+      final long gcCount = gcCount();
+      final long gcTime = gcTime();
+      final HeapSampler sampler = new HeapSampler();
+      sampler.start();
+      final long start = System.nanoTime();
+      final long end = m_duration == 0 ? Long.MAX_VALUE : start + m_duration;
+      final Thread[] workers = new Thread[m_concurrency];
+      for (int i = 0; i < workers.length; i++)
+      {
+         workers[i] = new Thread("load-harness-" + (i + 1))
+         {
+            @Override
+            public void run()
+            {
+               work(report, next, start, end, successes, failures, errors);
+            }
+         };
+         workers[i].setDaemon(true);
+         workers[i].start();
+      }
+      try
+      {
+         for (Thread worker : workers)
+         {
+            worker.join();
+         }
+      }
+      finally
+      {
+         for (Thread worker : workers)
+         {
+            worker.interrupt();
+         }
+         sampler.interrupt();
+      }
+      report.m_elapsed = System.nanoTime() - start;
+      sampler.join();
+      report.m_successes = successes.get();
+      report.m_failures = failures.get();
+      report.m_errors = errors.get();
+      report.m_gcCount = gcCount() - gcCount;
+      report.m_gcTime = gcTime() - gcTime;
+      report.m_heapHighWaterMark = sampler.m_highWaterMark;
+      return report;
+   }
+
+   /**
+    * Replays a recording against a mock console answering with the recorded
+    * responses, and prints the report.
+    *
+    * @param args the recording file, then the options: --rate requests per
+    *        second, --concurrency workers, --duration seconds, --requests
+    *        count, --latency min-max milliseconds added by the console.
+    * @throws Exception when the run fails.
+    */
+   public static void main(String[] args) throws Exception
+   {
+      if (args.length == 0 || args.length % 2 == 0)
+      {
+         System.err.println("Usage: LoadHarness <recording> [--rate n] [--concurrency n] "
+            + "[--duration seconds] [--requests n] [--latency min-max]");
+         System.exit(1);
+      }
+      final List<RecordedExchange> exchanges = RecordingReader.readAll(new File(args[0]));
+      final MockConsole console = new MockConsole();
+      new ReplayResponder(exchanges).install(console);
+      console.setValidateSessions(false);
+      double rate = 0;
+      int concurrency = 1;
+      long duration = 60;
+      long requests = 0;
+      for (int i = 1; i < args.length; i += 2)
+      {
+         if ("--rate".equals(args[i]))
+         {
+            rate = Double.parseDouble(args[i + 1]);
+         }
+         else if ("--concurrency".equals(args[i]))
+         {
+            concurrency = Integer.parseInt(args[i + 1]);
+         }
+         else if ("--duration".equals(args[i]))
+         {
+            duration = Long.parseLong(args[i + 1]);
+         }
+         else if ("--requests".equals(args[i]))
+         {
+            requests = Long.parseLong(args[i + 1]);
+            duration = 0;
+         }
+         else if ("--latency".equals(args[i]))
+         {
+            final String[] bounds = args[i + 1].split("-");
+            console.setLatency(
+               Long.parseLong(bounds[0]),
+               Long.parseLong(bounds[bounds.length - 1]),
+               TimeUnit.MILLISECONDS);
+         }
+         else
+         {
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+         }
+      }
+      console.start();
+      try
+      {
+         final APISession session = new APISession(
+            console.getURL(), "xml", APISupportedVersion.V1_2, "load", "load");
+         session.login(null);
+         final LoadHarness harness = new LoadHarness(session, exchanges);
+         harness.setRate(rate);
+         harness.setConcurrency(concurrency);
+         harness.setDuration(duration, TimeUnit.SECONDS);
+         harness.setRequests(requests);
+         System.out.print(harness.run());
+      }
+      finally
+      {
+         console.stop();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * The loop of a worker: takes the next request of the schedule, waits for
+    * its time, sends it and records the outcome.
+    */
+   private void work(
+      LoadReport report,
+      AtomicLong next,
+      long start,
+      long end,
+      AtomicLong successes,
+      AtomicLong failures,
+      AtomicLong errors)
+   {
+      while (!Thread.currentThread().isInterrupted())
+      {
+         final long index = next.getAndIncrement();
+         if (m_requests > 0 && index >= m_requests)
+         {
+            return;
+         }
+         final long scheduled = m_rate > 0 ? start + (long) (index * 1e9 / m_rate) : System.nanoTime();
+         if (scheduled >= end)
+         {
+            return;
+         }
+         for (long wait = scheduled - System.nanoTime(); wait > 0; wait = scheduled - System.nanoTime())
+         {
+            LockSupport.parkNanos(wait);
+            if (Thread.currentThread().isInterrupted())
+            {
+               return;
+            }
+         }
+         final RecordedExchange exchange = m_exchanges.get((int) (index % m_exchanges.size()));
+         final String requestXML = exchange.getRequestXML().replace("${session-id}", m_session.getSessionID());
+         final long sent = System.nanoTime();
+         try
+         {
+            final APIResponse response = m_session.sendRawXMLRequest(requestXML, version(exchange));
+            if (response.grabNode("//Failure") != null)
+            {
+               failures.incrementAndGet();
+            }
+            else
+            {
+               successes.incrementAndGet();
+            }
+         }
+         catch (Exception e)
+         {
+            errors.incrementAndGet();
+         }
+         final long done = System.nanoTime();
+         report.m_latency.record(done - scheduled, TimeUnit.NANOSECONDS);
+         report.m_serviceTime.record(done - sent, TimeUnit.NANOSECONDS);
+         report.m_latencyByRequest.get(exchange.getRequestName()).record(done - scheduled, TimeUnit.NANOSECONDS);
+      }
+   }
+
+   /**
+    * Retrieves the API version a recorded request was sent to.
+    */
+   private static APISupportedVersion version(RecordedExchange exchange)
+   {
+      for (APISupportedVersion version : APISupportedVersion.values())
+      {
+         if (version.getVersion().equals(exchange.getApiVersion()))
+         {
+            return version;
+         }
+      }
+      return APISupportedVersion.V1_2;
+   }
+
+   private static long gcCount()
+   {
+      long count = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+      {
+         count += Math.max(0, collector.getCollectionCount());
+      }
+      return count;
+   }
+
+   private static long gcTime()
+   {
+      long time = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+      {
+         time += Math.max(0, collector.getCollectionTime());
+      }
+      return time;
+   }
+
+   /**
+    * Samples the heap usage until interrupted, keeping the highest one.
+    */
+   private static class HeapSampler extends Thread
+   {
+      HeapSampler()
+      {
+         super("load-harness-heap-sampler");
+         setDaemon(true);
+      }
+
+      @Override
+      public void run()
+      {
+         final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+         while (true)
+         {
+            m_highWaterMark = Math.max(m_highWaterMark, memory.getHeapMemoryUsage().getUsed());
+            try
+            {
+               Thread.sleep(SAMPLING_INTERVAL);
+            }
+            catch (InterruptedException e)
+            {
+               m_highWaterMark = Math.max(m_highWaterMark, memory.getHeapMemoryUsage().getUsed());
+               return;
+            }
+         }
+      }
+
+      private volatile long m_highWaterMark;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The interval between heap usage samples, in milliseconds */
+   private static final long SAMPLING_INTERVAL = 10;
+
+   private final APISession m_session;
+   private final List<RecordedExchange> m_exchanges;
+   private volatile double m_rate;
+   private volatile int m_concurrency = 1;
+   private volatile long m_duration;
+   private volatile long m_requests;
+}
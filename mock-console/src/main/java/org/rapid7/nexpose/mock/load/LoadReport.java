@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock.load;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.rapid7.nexpose.api.metrics.LatencyHistogram;
+
+/**
+ * The results of a {@link LoadHarness} run.
+ * <P>
+ * Latencies are measured from the time each request was scheduled to be
+ * sent, so that a client falling behind the requested rate shows in the
+ * tail latencies instead of being hidden by the requests it did not send in
+ * time (coordinated omission). Service times are measured from the time
+ * each request was actually sent.
+ */
+public class LoadReport
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the duration of the run.
+    *
+    * @param unit the unit of the result.
+    * @return the duration of the run.
+    */
+   public long getElapsed(TimeUnit unit)
+   {
+      return unit.convert(m_elapsed, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Retrieves the number of requests answered successfully.
+    *
+    * @return the number of successes.
+    */
+   public long getSuccesses()
+   {
+      return m_successes;
+   }
+
+   /**
+    * Retrieves the number of requests answered with an API Failure.
+    *
+    * @return the number of failures.
+    */
+   public long getFailures()
+   {
+      return m_failures;
+   }
+
+   /**
+    * Retrieves the number of requests that could not be completed.
+    *
+    * @return the number of errors.
+    */
+   public long getErrors()
+   {
+      return m_errors;
+   }
+
+   /**
+    * Retrieves the number of requests completed (successfully or not) per
+    * second.
+    *
+    * @return the throughput.
+    */
+   public double getThroughput()
+   {
+      return m_elapsed == 0 ? 0 : (m_successes + m_failures + m_errors) * 1e9 / m_elapsed;
+   }
+
+   /**
+    * Retrieves the latencies of all the requests, from their scheduled
+    * start.
+    *
+    * @return the latencies.
+    */
+   public LatencyHistogram getLatency()
+   {
+      return m_latency;
+   }
+
+   /**
+    * Retrieves the service times of all the requests, from their actual
+    * start.
+    *
+    * @return the service times.
+    */
+   public LatencyHistogram getServiceTime()
+   {
+      return m_serviceTime;
+   }
+
+   /**
+    * Retrieves the latencies of each type of request.
+    *
+    * @return the latencies by request name.
+    */
+   public Map<String, LatencyHistogram> getLatencyByRequest()
+   {
+      return Collections.unmodifiableMap(m_latencyByRequest);
+   }
+
+   /**
+    * Retrieves the number of garbage collections during the run.
+    *
+    * @return the number of collections, of all collectors.
+    */
+   public long getGcCount()
+   {
+      return m_gcCount;
+   }
+
+   /**
+    * Retrieves the time spent collecting garbage during the run.
+    *
+    * @param unit the unit of the result.
+    * @return the collection time, of all collectors.
+    */
+   public long getGcTime(TimeUnit unit)
+   {
+      return unit.convert(m_gcTime, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Retrieves the highest heap usage observed during the run.
+    *
+    * @return the heap high-water mark, in bytes.
+    */
+   public long getHeapHighWaterMark()
+   {
+      return m_heapHighWaterMark;
+   }
+
+   @Override
+   public String toString()
+   {
+      final StringBuilder report = new StringBuilder();
+      report.append(String.format("elapsed      %.1f s%n", m_elapsed / 1e9));
+      report.append(String.format("requests     %d ok, %d failed, %d errors%n", m_successes, m_failures, m_errors));
+      report.append(String.format("throughput   %.1f req/s%n", getThroughput()));
+      report.append(String.format("gc           %d collections, %d ms%n", m_gcCount, m_gcTime));
+      report.append(String.format("heap         %.1f MB high-water mark%n", m_heapHighWaterMark / 1048576.0));
+      report.append(String.format("%-40s %8s %8s %8s %8s %8s %8s%n",
+         "latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max"));
+      row(report, "all (from schedule)", m_latency);
+      row(report, "all (service time)", m_serviceTime);
+      for (Map.Entry<String, LatencyHistogram> entry : m_latencyByRequest.entrySet())
+      {
+         row(report, entry.getKey(), entry.getValue());
+      }
+      return report.toString();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private static void row(StringBuilder report, String name, LatencyHistogram histogram)
+   {
+      report.append(String.format("%-40s %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n",
+         name,
+         histogram.getCount(),
+         histogram.getPercentile(50, TimeUnit.MICROSECONDS) / 1000.0,
+         histogram.getPercentile(90, TimeUnit.MICROSECONDS) / 1000.0,
+         histogram.getPercentile(99, TimeUnit.MICROSECONDS) / 1000.0,
+         histogram.getPercentile(99.9, TimeUnit.MICROSECONDS) / 1000.0,
+         histogram.getMax(TimeUnit.MICROSECONDS) / 1000.0));
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Filled in by the harness */
+   long m_elapsed;
+   long m_successes;
+   long m_failures;
+   long m_errors;
+   long m_gcCount;
+   long m_gcTime;
+   long m_heapHighWaterMark;
+   final LatencyHistogram m_latency = new LatencyHistogram();
+   final LatencyHistogram m_serviceTime = new LatencyHistogram();
+   final Map<String, LatencyHistogram> m_latencyByRequest = new TreeMap<String, LatencyHistogram>();
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.mock.load;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import org.rapid7.nexpose.api.recording.RecordedExchange;
+import org.rapid7.nexpose.mock.IMockResponder;
+import org.rapid7.nexpose.mock.MockConsole;
+import org.rapid7.nexpose.mock.MockRequest;
+import org.rapid7.nexpose.mock.MockResponse;
+
+/**
+ * Answers the requests sent to a {@link MockConsole} with the responses of a
+ * recording. A request gets the response recorded for the same request
+ * (ignoring session and sync ids); requests that were not recorded as such
+ * get the responses recorded for their type in turn.
+ */
+public class ReplayResponder implements IMockResponder
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new responder.
+    *
+    * @param exchanges the recorded exchanges, those without a response are
+    *        ignored.
+    */
+   public ReplayResponder(List<RecordedExchange> exchanges)
+   {
+      for (RecordedExchange exchange : exchanges)
+      {
+         if (exchange.getResponseXML() == null || exchange.getRequestXML() == null)
+         {
+            continue;
+         }
+         m_exact.put(normalize(exchange.getRequestXML()), exchange.getResponseXML());
+         List<String> responses = m_byName.get(exchange.getRequestName());
+         if (responses == null)
+         {
+            responses = new ArrayList<String>();
+            m_byName.put(exchange.getRequestName(), responses);
+            m_turns.put(exchange.getRequestName(), new AtomicInteger());
+         }
+         responses.add(exchange.getResponseXML());
+      }
+   }
+
+   /**
+    * Registers this responder on a console for every type of request
+    * recorded, except for logins and logouts which the console handles.
+    *
+    * @param console the console.
+    */
+   public void install(MockConsole console)
+   {
+      for (String requestName : m_byName.keySet())
+      {
+         if (!"LoginRequest".equals(requestName) && !"LogoutRequest".equals(requestName))
+         {
+            console.setResponder(requestName, this);
+         }
+      }
+   }
+
+   public MockResponse respond(MockRequest request)
+   {
+      String response = m_exact.get(normalize(request.getBody()));
+      if (response == null)
+      {
+         List<String> responses = m_byName.get(request.getName());
+         if (responses == null)
+         {
+            return null;
+         }
+         int turn = m_turns.get(request.getName()).getAndIncrement() & Integer.MAX_VALUE;
+         response = responses.get(turn % responses.size());
+      }
+      return MockResponse.xml(response.replace("${session-id}", request.getSessionId()));
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Normalizes a request for matching: blanks out the session and sync ids
+    * and the whitespace between tags.
+    */
+   private static String normalize(String requestXML)
+   {
+      String normalized = IDS.matcher(requestXML).replaceAll("$1\"\"");
+      return BLANKS.matcher(normalized).replaceAll("><").trim();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private static final Pattern IDS =
+      Pattern.compile("(\\s(?:session-id|sync-id)\\s*=\\s*)(\"[^\"]*\"|'[^']*')");
+   private static final Pattern BLANKS = Pattern.compile(">\\s+<");
+
+   /** The recorded responses by normalized request */
+   private final Map<String, String> m_exact = new HashMap<String, String>();
+   /** The recorded responses by request type, and whose turn it is */
+   private final Map<String, List<String>> m_byName = new HashMap<String, List<String>>();
+   private final Map<String, AtomicInteger> m_turns = new HashMap<String, AtomicInteger>();
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder event of an attempt at sending an API request. It
+ * spans the whole attempt on the thread that made it, so the socket reads,
+ * allocations and garbage collections of a recording can be traced back to
+ * the API call that caused them. Only {@link APICallEvents} touches this
+ * class, and only when the JFR API is available.
+ */
+@Name("org.rapid7.nexpose.APICall")
+@Label("Nexpose API Call")
+@Category({ "Nexpose", "API" })
+@Description("An attempt at sending a request to the Nexpose API")
+class APICallEvent extends Event
+{
+   @Label("Request Class")
+   String requestClass;
+
+   @Label("API Version")
+   String apiVersion;
+
+   @Label("Attempt")
+   int attempt;
+
+   @Label("Sync Id")
+   String syncId;
+
+   @Label("Outcome")
+   String outcome;
+
+   @Label("Error")
+   String error;
+
+   @Label("Bytes Sent")
+   @DataAmount
+   long bytesSent;
+
+   @Label("Bytes Received")
+   @DataAmount
+   long bytesReceived;
+
+   @Label("Response Size")
+   @Description("The size of the response once decompressed")
+   @DataAmount
+   long responseSize;
+
+   @Label("Response Encoding")
+   String responseEncoding;
+
+   @Label("Server Duration")
+   @Description("From the end of the upload to the response headers")
+   @Timespan(Timespan.NANOSECONDS)
+   long serverDuration;
+
+   @Label("Parse Duration")
+   @Description("Building the DOM of the response, reading excluded")
+   @Timespan(Timespan.NANOSECONDS)
+   long parseDuration;
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emits an {@link APICallEvent} for every attempt at sending an API request
+ * while a flight recording with the event enabled is in progress. On runtimes
+ * without the JFR API the event class is never loaded and nothing is
+ * emitted.
+ */
+final class APICallEvents
+{
+   /**
+    * Starts the event of an attempt.
+    *
+    * @return the started event, or {@code null} if it is not recorded.
+    */
+   static Object begin()
+   {
+      if (!AVAILABLE)
+      {
+         return null;
+      }
+      final APICallEvent event = new APICallEvent();
+      if (!event.isEnabled())
+      {
+         return null;
+      }
+      event.begin();
+      return event;
+   }
+
+   /**
+    * Completes and commits the event of an attempt.
+    *
+    * @param event the event returned by {@link #begin()}.
+    * @param request the request sent.
+    * @param sample the measurements of the attempt.
+    */
+   static void commit(Object event, TemplateAPIRequest request, RequestSample sample)
+   {
+      final APICallEvent callEvent = (APICallEvent) event;
+      callEvent.end();
+      if (!callEvent.shouldCommit())
+      {
+         return;
+      }
+      callEvent.requestClass = request.getClass().getName();
+      callEvent.apiVersion = sample.getApiVersion();
+      callEvent.attempt = sample.getAttempt();
+      callEvent.syncId = request.get("sync-id");
+      callEvent.outcome = sample.getOutcome().name();
+      if (sample.getError() != null)
+      {
+         callEvent.error = sample.getError().toString();
+      }
+      callEvent.bytesSent = sample.getBytesSent();
+      callEvent.bytesReceived = sample.getBytesReceived();
+      callEvent.responseSize = sample.getResponseSize();
+      callEvent.responseEncoding = sample.getResponseEncoding();
+      callEvent.serverDuration = sample.getDuration(RequestPhase.SERVER, TimeUnit.NANOSECONDS);
+      callEvent.parseDuration = sample.getDuration(RequestPhase.PARSE, TimeUnit.NANOSECONDS);
+      callEvent.commit();
+   }
+
+   private APICallEvents()
+   {
+   }
+
+   /** Whether the runtime provides the JFR API */
+   private static final boolean AVAILABLE;
+   static
+   {
+      boolean available;
+      try
+      {
+         Class.forName("jdk.jfr.Event", false, APICallEvents.class.getClassLoader());
+         available = true;
+      }
+      catch (ClassNotFoundException e)
+      {
+         available = false;
+      }
+      catch (LinkageError e)
+      {
+         available = false;
+      }
+      AVAILABLE = available;
+   }
+}
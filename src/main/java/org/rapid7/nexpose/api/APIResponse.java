@@ -26,24 +26,37 @@
  */
 package org.rapid7.nexpose.api;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
 /**
  * A convenience class for encapsulating and parsing API responses.
+ * <p>
+ * A response may be built from its raw bytes, in which case its document is
+ * only parsed when first needed: lookups of attributes and single elements by
+ * simple paths, like {@code /LoginResponse/@session-id}, are answered by
+ * scanning the bytes, and only node lookups, other expressions and
+ * {@link #getResponse()} build the document.
  *
  * @author Chad Loder
  * @author Leonardo Varela
@@ -85,6 +98,24 @@ public class APIResponse
       m_finalXML = finalXML;
    }
 
+   /**
+    * Constructs a new API response from the raw bytes of its XML, parsed
+    * lazily, and sets the xml that made NeXpose send this response.
+    *
+    * @param body The UTF-8 XML of the API response.
+    * @param finalXML The request that was sent to obtain this response.
+    */
+   public APIResponse(byte[] body, String finalXML)
+   {
+      if (body == null)
+      {
+         throw new IllegalArgumentException("body cannot be null");
+      }
+
+      m_body = body;
+      m_finalXML = finalXML;
+   }
+
    /**
     * Grabs a single XPath expression out of the response.
     *
@@ -95,9 +126,14 @@ public class APIResponse
     */
    public String grab(String xpath) throws APIException
    {
+      final byte[] body = unparsed();
+      if (body != null && ResponseScanner.isSupported(xpath))
+      {
+         return ResponseScanner.grab(body, xpath)[0];
+      }
       try
       {
-         return XPathFactory.newInstance().newXPath().evaluate(xpath, m_doc);
+         return XMLSupport.xpath().evaluate(xpath, getDocument());
       }
       catch (XPathExpressionException e)
       {
@@ -105,6 +141,30 @@ public class APIResponse
       }
    }
 
+   /**
+    * Grabs several XPath expressions out of the response at once. An
+    * unparsed response answers attribute lookups in a single pass.
+    *
+    * @param xpaths The XPath expressions
+    * @return the values of the evaluated expressions, in their order, empty
+    *         for those not found.
+    * @throws APIException when an Xpath expression is invalid.
+    */
+   public String[] grabAll(String... xpaths) throws APIException
+   {
+      final byte[] body = unparsed();
+      if (body != null && ResponseScanner.isSupported(xpaths))
+      {
+         return ResponseScanner.grab(body, xpaths);
+      }
+      final String[] values = new String[xpaths.length];
+      for (int i = 0; i < xpaths.length; i++)
+      {
+         values[i] = grab(xpaths[i]);
+      }
+      return values;
+   }
+
    /**
     * Grabs a single XPath expression out of the response and parses it as an
     * int.
@@ -160,7 +220,7 @@ public class APIResponse
    {
       try
       {
-         return (NodeList)XPathFactory.newInstance().newXPath().evaluate(xpath, m_doc, XPathConstants.NODESET);
+         return (NodeList)XMLSupport.xpath().evaluate(xpath, getDocument(), XPathConstants.NODESET);
       }
       catch (XPathExpressionException e)
       {
@@ -178,9 +238,15 @@ public class APIResponse
     */
    public Node grabNode(String xpath) throws APIException
    {
+      final byte[] body = unparsed();
+      if (body != null && ResponseScanner.isSupported(xpath) && !ResponseScanner.matches(body, xpath))
+      {
+         // nothing to find, no need for the document
+         return null;
+      }
       try
       {
-         return (Node)XPathFactory.newInstance().newXPath().evaluate(xpath, m_doc, XPathConstants.NODE);
+         return (Node)XMLSupport.xpath().evaluate(xpath, getDocument(), XPathConstants.NODE);
       }
       catch (XPathExpressionException e)
       {
@@ -192,19 +258,27 @@ public class APIResponse
     * Retrieves the xml representation of the Document associated with this
     * response.
     *
+    * The XML is the payload as the console sent it when the response has
+    * not been parsed yet or was kept, see
+    * {@link RequestOptions#setResponseRetention(long)}, and the document
+    * serialized again otherwise.
+    *
     * @return the String that represents the Response XML associated with the latest API request.
     * @throws APIException When the Document m_doc cannot be parsed into a String
     */
    public String getResponse() throws APIException
    {
+      final byte[] raw = getRawResponse();
+      if (raw != null)
+      {
+         return new String(raw, UTF_8);
+      }
       try
       {
-         final Source source = new DOMSource(m_doc);
+         final Source source = new DOMSource(getDocument());
          final StringWriter stringWriter = new StringWriter();
          final Result result = new StreamResult(stringWriter);
-         final TransformerFactory factory = TransformerFactory.newInstance();
-         final Transformer transformer = factory.newTransformer();
-         transformer.transform(source, result);
+         XMLSupport.transformer().transform(source, result);
          return stringWriter.getBuffer().toString();
       }
       catch (TransformerConfigurationException e)
@@ -216,6 +290,108 @@ public class APIResponse
          throw new APIException ("Could not retrieve the String representation of the API's XML response due to the Transformer: " + e.toString());
       }
    }
+
+   /**
+    * Retrieves the payload of the response as the console sent it, if it is
+    * still at hand: the response has not been parsed yet, or was kept, see
+    * {@link RequestOptions#setResponseRetention(long)}.
+    *
+    * @return the UTF-8 XML of the response, which must not be modified, or
+    *         null if it was not kept.
+    * @throws APIException When the kept response cannot be inflated.
+    */
+   public synchronized byte[] getRawResponse() throws APIException
+   {
+      if (m_body != null)
+      {
+         return m_body;
+      }
+      if (m_raw == null || !m_rawDeflated)
+      {
+         return m_raw;
+      }
+      final byte[] raw = new byte[m_rawLength];
+      final Inflater inflater = new Inflater();
+      try
+      {
+         inflater.setInput(m_raw);
+         int length = 0;
+         while (length < raw.length && !inflater.finished())
+         {
+            length += inflater.inflate(raw, length, raw.length - length);
+         }
+         return raw;
+      }
+      catch (DataFormatException e)
+      {
+         throw new APIException("Could not inflate the kept API response: " + e.toString());
+      }
+      finally
+      {
+         inflater.end();
+      }
+   }
+
+   /**
+    * Tells whether the response reports a failure: its root element is a
+    * Failure, or it has success="0". An unparsed response only reads its
+    * root element.
+    *
+    * @return true if the response holds a failure.
+    * @throws APIException When the response cannot be parsed.
+    */
+   public boolean isFailure() throws APIException
+   {
+      final byte[] body = unparsed();
+      if (body != null)
+      {
+         return ResponseScanner.isFailure(body);
+      }
+      final Element root = getDocument().getDocumentElement();
+      if (root == null)
+      {
+         return true;
+      }
+      return "Failure".equals(root.getNodeName())
+         || "0".equals(root.getAttribute("success"));
+   }
+
+   /**
+    * Retrieves the document of the response, parsing it if it has not been
+    * yet.
+    *
+    * @return the XML document of the response.
+    * @throws APIException When the response cannot be parsed.
+    */
+   public synchronized Document getDocument() throws APIException
+   {
+      if (m_doc == null)
+      {
+         try
+         {
+            m_doc = XMLSupport.documentBuilder().parse(new ByteArrayInputStream(m_body));
+            if (m_raw == m_body && m_compressRetained)
+            {
+               deflateRaw();
+            }
+            m_body = null;
+         }
+         catch (SAXException e)
+         {
+            throw new APIException("Error parsing API response", e);
+         }
+         catch (ParserConfigurationException e)
+         {
+            throw new APIException("Error parsing API response", e);
+         }
+         catch (IOException e)
+         {
+            throw new APIException("Error parsing API response", e);
+         }
+      }
+      return m_doc;
+   }
+
    /**
     * @return the final XML associated with the response
     */
@@ -232,12 +408,79 @@ public class APIResponse
       m_finalXML = finalXML;
    }
 
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Keeps the raw bytes of the response once its document is parsed.
+    *
+    * @param raw the UTF-8 XML of the response, as downloaded.
+    * @param compress true to deflate the bytes once the document is parsed.
+    */
+   synchronized void retain(byte[] raw, boolean compress)
+   {
+      m_raw = raw;
+      m_rawDeflated = false;
+      m_compressRetained = compress;
+      if (compress && m_doc != null)
+      {
+         deflateRaw();
+      }
+   }
+
+   /**
+    * Replaces the kept bytes by their deflated form.
+    */
+   private void deflateRaw()
+   {
+      final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try
+      {
+         deflater.setInput(m_raw);
+         deflater.finish();
+         final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, m_raw.length / 8));
+         final byte[] buffer = new byte[8192];
+         while (!deflater.finished())
+         {
+            out.write(buffer, 0, deflater.deflate(buffer));
+         }
+         m_rawLength = m_raw.length;
+         m_raw = out.toByteArray();
+         m_rawDeflated = true;
+      }
+      finally
+      {
+         deflater.end();
+      }
+   }
+
+   /**
+    * @return the raw bytes of the response if it has not been parsed, null
+    *         otherwise.
+    */
+   private synchronized byte[] unparsed()
+   {
+      return m_body;
+   }
+
    /////////////////////////////////////////////////////////////////////////
    // non-Public fields
    /////////////////////////////////////////////////////////////////////////
 
-   /** The API response document */
+   /** The API response document, null until it is parsed */
    private Document m_doc;
+   /** The raw API response, until its document is parsed */
+   private byte[] m_body;
+   /** The raw API response kept along with its document, may be deflated */
+   private byte[] m_raw;
+   /** Whether m_raw is deflated */
+   private boolean m_rawDeflated;
+   /** The length of m_raw once inflated */
+   private int m_rawLength;
+   /** Whether m_raw is to be deflated once the document is parsed */
+   private boolean m_compressRetained;
+   private static final Charset UTF_8 = Charset.forName("UTF-8");
    /**The request that was sent to obtain this response*/
    private String m_finalXML;
 }
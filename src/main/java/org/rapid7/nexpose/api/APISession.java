@@ -28,7 +28,11 @@ package org.rapid7.nexpose.api;
 
 import org.rapid7.nexpose.api.domain.AssetGroupSummary;
 import org.rapid7.nexpose.api.domain.DiscoveryConfig;
+import org.rapid7.nexpose.api.domain.EnginePoolDetails;
+import org.rapid7.nexpose.api.domain.EnginePoolSummary;
 import org.rapid7.nexpose.api.domain.EngineSummary;
+import org.rapid7.nexpose.api.domain.ReportConfigSummary;
+import org.rapid7.nexpose.api.domain.ReportSummary;
 import org.rapid7.nexpose.api.domain.ScanSummary;
 import org.rapid7.nexpose.api.domain.SiteSummary;
 import org.rapid7.nexpose.api.domain.TicketSummary;
@@ -41,26 +45,49 @@ import org.rapid7.nexpose.api.generators.SiteSaveRequestRangesGenerator;
 import org.rapid7.nexpose.api.generators.UserSaveRequestGroupsGenerator;
 import org.rapid7.nexpose.api.generators.UserSaveRequestSitesGenerator;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -96,7 +123,12 @@ public class APISession
       {
          m_version = value;
       }
-      String getVersion()
+      /**
+       * Retrieves the version as it appears in the API URLs.
+       *
+       * @return the version, e.g. "1.2".
+       */
+      public String getVersion()
       {
          return m_version;
       }
@@ -165,6 +197,8 @@ public class APISession
          + m_apiVersion.getVersion()
          + "/"
          + m_apiProtocol);
+      m_requestOptions = defaultRequestOptions();
+      m_retryPolicy = RetryPolicy.noRetries();
    }
 
    /**
@@ -185,6 +219,267 @@ public class APISession
       m_errorHandler = new DefaultAPIErrorHandler();
    }
 
+   /**
+    * Sets the default transport options of the requests made through this
+    * session. Options that are not set keep their built-in default: a
+    * connect timeout of 20 seconds, no read timeout, no overall timeout and
+    * no cancellation token.
+    *
+    * @param options the default {@link RequestOptions} of the session.
+    */
+   public void setRequestOptions(RequestOptions options)
+   {
+      m_requestOptions = defaultRequestOptions().merge(options);
+   }
+
+   /**
+    * Retrieves the default transport options of the requests made through
+    * this session.
+    *
+    * @return a copy of the default {@link RequestOptions} of the session.
+    */
+   public RequestOptions getRequestOptions()
+   {
+      return new RequestOptions(m_requestOptions);
+   }
+
+   /**
+    * Sets the policy deciding whether and when failed requests are sent
+    * again. Sessions do not retry requests unless given a policy, e.g.:
+    * <PRE>
+    * RetryPolicy policy = new RetryPolicy();
+    * policy.setMaxAttempts(4);
+    * session.setRetryPolicy(policy);
+    * </PRE>
+    * Views created through {@link #withRequestOptions(RequestOptions)}
+    * afterwards share the policy of this session.
+    *
+    * @param retryPolicy the {@link RetryPolicy} of the session, or
+    *        {@code null} to never retry.
+    */
+   public void setRetryPolicy(RetryPolicy retryPolicy)
+   {
+      m_retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.noRetries();
+   }
+
+   /**
+    * Retrieves the policy deciding whether and when failed requests are sent
+    * again.
+    *
+    * @return the {@link RetryPolicy} of the session.
+    */
+   public RetryPolicy getRetryPolicy()
+   {
+      return m_retryPolicy;
+   }
+
+   /**
+    * Sets the throttle limiting the rate and the concurrency of the requests
+    * sent through this session. Sessions are not throttled unless given a
+    * throttle, which may be shared with other sessions talking to the same
+    * console. Views created through {@link #withRequestOptions(RequestOptions)}
+    * afterwards share the throttle of this session.
+    *
+    * @param requestThrottle the {@link RequestThrottle} of the session, or
+    *        {@code null} not to throttle the requests.
+    */
+   public void setRequestThrottle(RequestThrottle requestThrottle)
+   {
+      m_requestThrottle = requestThrottle;
+   }
+
+   /**
+    * Retrieves the throttle limiting the requests sent through this session.
+    *
+    * @return the {@link RequestThrottle} of the session, or {@code null} if
+    *         the requests are not throttled.
+    */
+   public RequestThrottle getRequestThrottle()
+   {
+      return m_requestThrottle;
+   }
+
+   /**
+    * Sets the circuit breaker failing the requests fast while the console is
+    * unreachable, e.g. while it restarts. Sessions have no breaker unless
+    * given one, which may be shared with other sessions talking to the same
+    * console. Views created through {@link #withRequestOptions(RequestOptions)}
+    * afterwards share the breaker of this session.
+    *
+    * @param circuitBreaker the {@link CircuitBreaker} of the session, or
+    *        {@code null} to always try to connect.
+    */
+   public void setCircuitBreaker(CircuitBreaker circuitBreaker)
+   {
+      m_circuitBreaker = circuitBreaker;
+   }
+
+   /**
+    * Retrieves the circuit breaker of this session.
+    *
+    * @return the {@link CircuitBreaker} of the session, or {@code null} if
+    *         there is none.
+    */
+   public CircuitBreaker getCircuitBreaker()
+   {
+      return m_circuitBreaker;
+   }
+
+   /**
+    * Sets the listener receiving the measurements of every attempt at sending
+    * a request through this session: the duration of each
+    * {@link RequestPhase}, the bytes sent and received and the outcome, e.g.
+    * an {@link org.rapid7.nexpose.api.metrics.InMemoryRequestMetrics}.
+    * Requests are not measured when there is no listener. Views created
+    * through {@link #withRequestOptions(RequestOptions)} afterwards share the
+    * listener of this session.
+    *
+    * @param metricsListener the {@link IRequestMetricsListener} of the
+    *        session, or {@code null} not to measure the requests.
+    */
+   public void setMetricsListener(IRequestMetricsListener metricsListener)
+   {
+      m_metricsListener = metricsListener;
+   }
+
+   /**
+    * Retrieves the listener receiving the measurements of the requests.
+    *
+    * @return the {@link IRequestMetricsListener} of the session, or
+    *         {@code null} if the requests are not measured.
+    */
+   public IRequestMetricsListener getMetricsListener()
+   {
+      return m_metricsListener;
+   }
+
+   /**
+    * Adds an interceptor called around every attempt at sending a request
+    * through this session, e.g. to trace the requests. Views created through
+    * {@link #withRequestOptions(RequestOptions)} afterwards share the
+    * interceptors of this session at the time.
+    *
+    * @param interceptor the {@link IRequestInterceptor} to add last.
+    */
+   public synchronized void addInterceptor(IRequestInterceptor interceptor)
+   {
+      if (interceptor == null)
+      {
+         throw new IllegalArgumentException("interceptor cannot be null");
+      }
+      final IRequestInterceptor[] interceptors = Arrays.copyOf(m_interceptors, m_interceptors.length + 1);
+      interceptors[interceptors.length - 1] = interceptor;
+      m_interceptors = interceptors;
+   }
+
+   /**
+    * Removes an interceptor added through
+    * {@link #addInterceptor(IRequestInterceptor)}.
+    *
+    * @param interceptor the {@link IRequestInterceptor} to remove.
+    */
+   public synchronized void removeInterceptor(IRequestInterceptor interceptor)
+   {
+      final List<IRequestInterceptor> interceptors =
+         new ArrayList<IRequestInterceptor>(Arrays.asList(m_interceptors));
+      if (interceptors.remove(interceptor))
+      {
+         m_interceptors = interceptors.toArray(new IRequestInterceptor[interceptors.size()]);
+      }
+   }
+
+   /**
+    * Retrieves the interceptors of this session.
+    *
+    * @return the interceptors, in the order they are called before sending.
+    */
+   public List<IRequestInterceptor> getInterceptors()
+   {
+      return Collections.unmodifiableList(Arrays.asList(m_interceptors.clone()));
+   }
+
+   /**
+    * Sets the bridge carrying the context of the callers, e.g. their current
+    * trace, to the threads that send requests on their behalf. Views created
+    * through {@link #withRequestOptions(RequestOptions)} afterwards share the
+    * propagator of this session.
+    *
+    * @param contextPropagator the {@link IContextPropagator} of the session,
+    *        or {@code null} not to propagate any context.
+    */
+   public void setContextPropagator(IContextPropagator contextPropagator)
+   {
+      m_contextPropagator = contextPropagator;
+   }
+
+   /**
+    * Retrieves the bridge carrying the context of the callers to the threads
+    * that send requests on their behalf.
+    *
+    * @return the {@link IContextPropagator} of the session, or {@code null}.
+    */
+   public IContextPropagator getContextPropagator()
+   {
+      return m_contextPropagator;
+   }
+
+   /**
+    * Wraps a task that uses this session so that it runs within the context
+    * of the current thread, e.g. its trace, wherever it is executed. Used by
+    * the asynchronous and batch operations of this library, and available to
+    * callers submitting their own tasks to executors.
+    *
+    * @param task the task to run elsewhere.
+    * @return the wrapped task, or the task itself if the session has no
+    *         {@link IContextPropagator}.
+    */
+   public <T> Callable<T> propagate(final Callable<T> task)
+   {
+      final IContextPropagator propagator = m_contextPropagator;
+      if (propagator == null)
+      {
+         return task;
+      }
+      final Object captured = propagator.capture();
+      return new Callable<T>()
+      {
+         @Override
+         public T call() throws Exception
+         {
+            final Object previous = propagator.attach(captured);
+            try
+            {
+               return task.call();
+            }
+            finally
+            {
+               propagator.detach(previous);
+            }
+         }
+      };
+   }
+
+   /**
+    * Creates a view of this session whose requests use the given options on
+    * top of the default ones of this session, e.g. to give a longer read
+    * timeout to a report generation or to make a batch of calls cancellable:
+    * <PRE>
+    * RequestOptions options = new RequestOptions();
+    * options.setTimeout(30000);
+    * options.setCancellationToken(token);
+    * session.withRequestOptions(options).listSites(sessionId, null);
+    * </PRE>
+    * The view starts with the session id and error handler of this session,
+    * logging in or out through it does not affect this session.
+    *
+    * @param options the options overriding the default ones of this session.
+    * @return a new session using the merged options.
+    */
+   public APISession withRequestOptions(RequestOptions options)
+   {
+      return new APISession(this, m_requestOptions.merge(options));
+   }
+
    /**
     * Retrieves the API response from the last listing operation
     * @return the APIResponse associated with the latest listing request:
@@ -217,9 +512,7 @@ public class APISession
    {
       final RawXMLAPIRequest request = new RawXMLAPIRequest(rawXML, version);
       final APIResponse response;
-      response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      response = send(request);
       return response;
    }
 
@@ -256,9 +549,7 @@ public class APISession
          m_username,
          m_password,
          siloId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(request, response, this, "Login failed");
@@ -286,9 +577,7 @@ public class APISession
       throws IOException, APIException
    {
       final TemplateAPIRequest request = new LogoutRequest(sessionId, syncId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       m_sessionID = null;
       if (response.grabNode("//Failure") != null)
       {
@@ -321,9 +610,7 @@ public class APISession
       final TemplateAPIRequest request = new SiteListingRequest(
          sessionId,
          syncId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       m_apiResponse = response;
       if (response.grabNode("//Failure") != null)
       {
@@ -373,9 +660,7 @@ public class APISession
       final TemplateAPIRequest request = new AssetGroupListingRequest(
          sessionId,
          syncId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       m_apiResponse = response;
       if (response.grabNode("//Failure") != null)
       {
@@ -426,9 +711,7 @@ public class APISession
          sessionId,
          syncId);
       List<UserSummary> usersList = null;
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       m_apiResponse = response;
       if (response.grabNode("//Failure") != null)
       {
@@ -477,9 +760,7 @@ public class APISession
          sessionId,
          syncId);
       List<EngineSummary> enginesList = null;
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       m_apiResponse = response;
       if (response.grabNode("//Failure") != null)
       {
@@ -504,6 +785,192 @@ public class APISession
       return enginesList;
    }
 
+   /**
+    * Lists all of the engine pools.
+    *
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @return a list of engine pools of type {@link EnginePoolSummary}.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public Iterable<EnginePoolSummary> listEnginePools(
+      String sessionId,
+      String syncId)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new EnginePoolListingRequest(
+         sessionId,
+         syncId);
+      List<EnginePoolSummary> poolsList = null;
+      final APIResponse response = send(request);
+      m_apiResponse = response;
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "EnginePoolListingRequest failed");
+         return null;
+      }
+      final NodeList pools =
+         response.grabNodes("/EnginePoolListingResponse/EnginePoolSummary");
+      if (pools != null)
+      {
+         poolsList = new ArrayList<EnginePoolSummary>();
+         for (int i = 0; i < pools.getLength(); i++)
+         {
+            poolsList.add(new EnginePoolSummary((Element) pools.item(i)));
+         }
+      }
+      return poolsList;
+   }
+
+   /**
+    * Retrieves an engine pool and its engines.
+    *
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @param enginePoolName the name of the engine pool.
+    * @param enginePoolScope the scope of the engine pool, global or silo.
+    * @return the {@link EnginePoolDetails} of the pool, null if the request
+    *         failed.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public EnginePoolDetails enginePoolDetailsRequest(
+      String sessionId,
+      String syncId,
+      String enginePoolName,
+      String enginePoolScope)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new EnginePoolDetailsRequest(
+         sessionId,
+         syncId,
+         enginePoolName,
+         enginePoolScope);
+      final APIResponse response = send(request);
+      m_apiResponse = response;
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "EnginePoolDetailsRequest failed");
+         return null;
+      }
+      final Element pool = (Element) response.grabNode("/EnginePoolDetailsResponse/EnginePool");
+      return pool == null ? null : new EnginePoolDetails(pool);
+   }
+
+   /**
+    * Creates an engine pool through the NeXpose API.
+    *
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @param enginePoolName the name of the engine pool.
+    * @param enginePoolScope the scope of the engine pool, global or silo.
+    * @param enginesGenerator the {@link IContentGenerator} of the Engine
+    *        elements of the pool.
+    * @return APIResponse the response from the server.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public APIResponse enginePoolCreateRequest(
+      String sessionId,
+      String syncId,
+      String enginePoolName,
+      String enginePoolScope,
+      IContentGenerator enginesGenerator)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new EnginePoolCreateRequest(
+         sessionId,
+         syncId,
+         enginePoolName,
+         enginePoolScope,
+         enginesGenerator);
+      final APIResponse response = send(request);
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "EnginePoolCreateRequest failed");
+      }
+      return response;
+   }
+
+   /**
+    * Updates the engines of an engine pool through the NeXpose API.
+    *
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @param enginePoolId the id of the engine pool.
+    * @param enginePoolName the name of the engine pool.
+    * @param enginePoolScope the scope of the engine pool, global or silo.
+    * @param enginesGenerator the {@link IContentGenerator} of the Engine
+    *        elements of the pool.
+    * @return APIResponse the response from the server.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public APIResponse enginePoolUpdateRequest(
+      String sessionId,
+      String syncId,
+      String enginePoolId,
+      String enginePoolName,
+      String enginePoolScope,
+      IContentGenerator enginesGenerator)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new EnginePoolUpdateRequest(
+         sessionId,
+         syncId,
+         enginePoolId,
+         enginePoolName,
+         enginePoolScope,
+         enginesGenerator);
+      final APIResponse response = send(request);
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "EnginePoolUpdateRequest failed");
+      }
+      return response;
+   }
+
    /**
     * Saves an Engine through the NeXpose API.
     *
@@ -548,9 +1015,7 @@ public class APISession
          engineConfigPriority,
          engineConfigScope,
          sitesGenerator);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -603,9 +1068,7 @@ public class APISession
          assetGroupDescription,
          assetGroupRiskScore,
          devicesGenerator);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -643,9 +1106,7 @@ public class APISession
          sessionId,
          syncId,
          engineId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -683,9 +1144,7 @@ public class APISession
          sessionId,
          syncId,
          engineId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -725,9 +1184,7 @@ public class APISession
          syncId,
          engineId,
          scope);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -756,7 +1213,7 @@ public class APISession
       throws IOException, APIException
    {
       final TemplateAPIRequest request = new TicketDeleteRequest(sessionId, syncId, ticketsGenerator);
-      final APIResponse response = new APIResponse(request(open(request), auth(request)), request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(request, response, this, "TicketDeleteRequest failed");
@@ -782,7 +1239,7 @@ public class APISession
       throws IOException, APIException
    {
       final TemplateAPIRequest request = new TicketDetailsRequest(sessionId, syncId, ticketsGenerator);
-      final APIResponse response = new APIResponse(request(open(request), auth(request)), request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(request, response, this, "TicketDetailsRequest failed");
@@ -811,7 +1268,7 @@ public class APISession
 
       final TemplateAPIRequest request = new TicketListingRequest(sessionId, syncId, filtersGenerator);
       List<TicketSummary> ticketsList = null;
-      final APIResponse response = new APIResponse(request(open(request), auth(request)), request.getRequestXML());
+      final APIResponse response = send(request);
       m_apiResponse = response;
       if (response.grabNode("//Failure") != null)
       {
@@ -864,7 +1321,7 @@ public class APISession
       TemplateAPIRequest request;
       request = new TicketCreateRequest(sessionId, syncId, ticketName, ticketPriority,
          ticketDeviceId, ticketAssignedTo, vulnerabilitiesGenerator, commentsGenerator);
-      final APIResponse response = new APIResponse(request(open(request), auth(request)), request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(request, response, this, "TicketSaveRequest failed");
@@ -1207,9 +1664,7 @@ public class APISession
          sessionId,
          syncId,
          siteId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1247,9 +1702,7 @@ public class APISession
          sessionId,
          siteId,
          syncId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1283,9 +1736,7 @@ public class APISession
       throws IOException, APIException
    {
       final TemplateAPIRequest request = new SiteScanHistoryRequest(sessionID, syncID, siteID);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1337,9 +1788,7 @@ public class APISession
       throws IOException, APIException
    {
       final TemplateAPIRequest request = new DiscoveryConnectionListingRequest(sessionID, syncID);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1397,9 +1846,7 @@ public class APISession
          sessionId,
          syncId,
          assetGroupId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1437,9 +1884,7 @@ public class APISession
          sessionId,
          syncId,
          scanId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1658,9 +2103,7 @@ public class APISession
          sessionId,
          syncId,
          userId);
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1846,26 +2289,314 @@ public class APISession
    }
 
    /**
-    * Executes any API Request.
-    *
-    * @param request the {@link TemplateAPIRequest} to execute.
-    *
-    * @return an {@link APIResponse} with the request's associated response.
+    * Lists the report configurations with their last generated report.
     *
-    * @throws IOException
-    * @throws APIException
-    */
-   public APIResponse executeAPIRequest(TemplateAPIRequest request)
-      throws IOException, APIException
-   {
-      final APIResponse response = new APIResponse(
-         request(open(request), auth(request)),
-         request.getRequestXML());
-      if (response.grabNode("//Failure") != null)
-      {
-         m_errorHandler.handleError(
-            request,
-            response,
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @return a list of report configurations of type
+    *         {@link ReportConfigSummary}.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public Iterable<ReportConfigSummary> listReports(
+      String sessionId,
+      String syncId)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new ReportListingRequest(
+         sessionId,
+         syncId);
+      List<ReportConfigSummary> reportsList = null;
+      final APIResponse response = send(request);
+      m_apiResponse = response;
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "ReportListingRequest failed");
+         return null;
+      }
+      final NodeList reports =
+         response.grabNodes("/ReportListingResponse/ReportConfigSummary");
+      if (reports != null)
+      {
+         reportsList = new ArrayList<ReportConfigSummary>();
+         for (int i = 0; i < reports.getLength(); i++)
+         {
+            reportsList.add(new ReportConfigSummary((Element) reports.item(i)));
+         }
+      }
+      return reportsList;
+   }
+
+   /**
+    * Generates a report out of a report configuration. The generation runs
+    * on the console after the response, which holds the ReportSummary of the
+    * report started, until the status of the report is no longer Started in
+    * the report history.
+    *
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @param reportId the id of the report configuration.
+    * @return APIResponse the response from the server.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public APIResponse reportGenerateRequest(
+      String sessionId,
+      String syncId,
+      String reportId)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new ReportGenerateRequest(
+         sessionId,
+         syncId,
+         reportId);
+      final APIResponse response = send(request);
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "ReportGenerateRequest failed");
+      }
+      return response;
+   }
+
+   /**
+    * Lists the reports generated out of a report configuration.
+    *
+    * @param sessionId the session to be used if different from the current
+    *        acquired one (You acquire one when you authenticate correctly with
+    *        the login method in the {@link APISession} class). This is a
+    *        String of 40 characters.
+    * @param syncId the synchronization id to identify the response associated
+    *        with the response in asynchronous environments. It can be any
+    *        string. This field is optional.
+    * @param reportConfigId the id of the report configuration.
+    * @return a list of reports of type {@link ReportSummary}, null if the
+    *         request failed.
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public List<ReportSummary> reportHistoryRequest(
+      String sessionId,
+      String syncId,
+      String reportConfigId)
+      throws IOException, APIException
+   {
+      final TemplateAPIRequest request = new ReportHistoryRequest(
+         sessionId,
+         syncId,
+         reportConfigId);
+      final APIResponse response = send(request);
+      m_apiResponse = response;
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "ReportHistoryRequest failed");
+         return null;
+      }
+      final List<ReportSummary> reportsList = new ArrayList<ReportSummary>();
+      final NodeList reports =
+         response.grabNodes("/ReportHistoryResponse/ReportSummary");
+      if (reports != null)
+      {
+         for (int i = 0; i < reports.getLength(); i++)
+         {
+            reportsList.add(new ReportSummary((Element) reports.item(i)));
+         }
+      }
+      return reportsList;
+   }
+
+   /**
+    * Downloads a generated report from the console, with the session cookie
+    * of the session, streaming it to the given output without buffering it
+    * whole. The connect and read timeouts of the default options of the
+    * session apply.
+    *
+    * @param reportURI the path of the report on the console, as given by
+    *        {@link ReportSummary#getReportURI()}.
+    * @param out the stream to write the report to. It is not closed.
+    * @return the number of bytes written.
+    * @throws IOException When the report cannot be downloaded or written.
+    * @throws APIException if the session is not logged in.
+    */
+   public long downloadReport(String reportURI, OutputStream out)
+      throws IOException, APIException
+   {
+      if (m_sessionID == null)
+      {
+         throw new APIException("The session must be logged in to download reports");
+      }
+      final HttpsURLConnection conn = (HttpsURLConnection) new URL(m_nxURL, reportURI).openConnection();
+      conn.setSSLSocketFactory(ms_sslContext.getSocketFactory());
+      conn.setHostnameVerifier(new javax.net.ssl.HostnameVerifier()
+      {
+         public boolean verify(String urlHostName, SSLSession session)
+         {
+            return true;
+         }
+      });
+      conn.setUseCaches(false);
+      conn.setRequestProperty("Cookie", "nexposeCCSessionID=" + m_sessionID);
+      conn.setConnectTimeout(m_requestOptions.getConnectTimeout());
+      conn.setReadTimeout(m_requestOptions.getReadTimeout());
+      try
+      {
+         final int status = conn.getResponseCode();
+         if (status != HttpURLConnection.HTTP_OK)
+         {
+            throw new IOException("Could not download " + reportURI + ": HTTP " + status + " "
+               + conn.getResponseMessage());
+         }
+         final InputStream in = conn.getInputStream();
+         try
+         {
+            final byte[] buffer = new byte[64 * 1024];
+            long total = 0;
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer))
+            {
+               out.write(buffer, 0, read);
+               total += read;
+            }
+            return total;
+         }
+         finally
+         {
+            in.close();
+         }
+      }
+      finally
+      {
+         conn.disconnect();
+      }
+   }
+
+   /**
+    * Executes any API Request.
+    *
+    * @param request the {@link TemplateAPIRequest} to execute.
+    *
+    * @return an {@link APIResponse} with the request's associated response.
+    *
+    * @throws IOException
+    * @throws APIException
+    */
+   public APIResponse executeAPIRequest(TemplateAPIRequest request)
+      throws IOException, APIException
+   {
+      return executeAPIRequest(request, null);
+   }
+
+   /**
+    * Executes any API Request with the given options on top of the default
+    * options of the session.
+    *
+    * @param request the {@link TemplateAPIRequest} to execute.
+    * @param options the {@link RequestOptions} overriding the default ones of
+    *        the session for this request. May be {@code null}.
+    *
+    * @return an {@link APIResponse} with the request's associated response.
+    *
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public APIResponse executeAPIRequest(TemplateAPIRequest request, RequestOptions options)
+      throws IOException, APIException
+   {
+      final APIResponse response = send(request, m_requestOptions.merge(options));
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
+            this,
+            "The request failed.");
+      }
+      return response;
+   }
+
+   /**
+    * Executes an API request whose response is read by the given handler as
+    * it arrives, record by record, instead of being parsed into a document.
+    *
+    * @param request the {@link TemplateAPIRequest} to execute.
+    * @param handler the consumer of the response.
+    *
+    * @return the root element of the response, without its content, or the
+    *         whole response when it is a Failure.
+    *
+    * @throws IOException When the API call cannot be performed or the
+    *         handler fails.
+    * @throws APIException if the API call is not successful or the response
+    *         is malformed.
+    * @see #streamAPIRequest(TemplateAPIRequest, IResponseStreamHandler, RequestOptions)
+    */
+   public APIResponse streamAPIRequest(TemplateAPIRequest request, IResponseStreamHandler handler)
+      throws IOException, APIException
+   {
+      return streamAPIRequest(request, handler, null);
+   }
+
+   /**
+    * Executes an API request whose response is read by the given handler as
+    * it arrives, with the given options on top of the default options of the
+    * session. Failures are retried as usual until the handler starts reading,
+    * never afterwards since it may have consumed part of the response; the
+    * response is neither buffered nor retained whatever the options.
+    *
+    * @param request the {@link TemplateAPIRequest} to execute.
+    * @param handler the consumer of the response.
+    * @param options the {@link RequestOptions} overriding the default ones of
+    *        the session for this request. May be {@code null}.
+    *
+    * @return the root element of the response, without its content, or the
+    *         whole response when it is a Failure.
+    *
+    * @throws IOException When the API call cannot be performed, times out, is
+    *         cancelled or the handler fails.
+    * @throws APIException if the API call is not successful or the response
+    *         is malformed.
+    */
+   public APIResponse streamAPIRequest(
+      TemplateAPIRequest request,
+      IResponseStreamHandler handler,
+      RequestOptions options)
+      throws IOException, APIException
+   {
+      if (handler == null)
+      {
+         throw new IllegalArgumentException("The handler cannot be null");
+      }
+      final APIResponse response = send(request, m_requestOptions.merge(options), handler);
+      if (response.grabNode("//Failure") != null)
+      {
+         m_errorHandler.handleError(
+            request,
+            response,
             this,
             "The request failed.");
       }
@@ -1965,9 +2696,7 @@ public class APISession
                roleName,
                sitesGenerator,
                groupsGenerator);
-      final APIResponse response = new APIResponse(
-               request(open(request),auth(request)),
-               request.getRequestXML());
+      final APIResponse response = send(request);
       if (response.grabNode("//Failure") != null)
       {
          m_errorHandler.handleError(
@@ -1980,16 +2709,17 @@ public class APISession
    }
 
    /**
-    * Changes the API URL to use the protocol version specified as a parameter.
-    * If the API call was not supported on the version the session was created
-    * for an {@link APIException} is thrown.
+    * Retrieves the API version to use for a request, based on the protocol
+    * versions it supports. If the API call was not supported on the version
+    * the session was created for an {@link APIException} is thrown.
     *
     * @param lastSupportedVersion the last supported version of the API call
     * @param firstSupportedVersion the first supported version of the API call.
+    * @return the API version to send the request to.
     * @throws APIException When the first supported version of the API call is
     *         greater than the version the session was created for.
     */
-   private boolean adjustAPIURL(
+   private APISupportedVersion adjustAPIVersion(
       APISupportedVersion lastSupportedVersion,
       APISupportedVersion firstSupportedVersion)
       throws APIException
@@ -1998,44 +2728,40 @@ public class APISession
       {
          if (m_apiVersion.compareTo(lastSupportedVersion) > 0)
          {
-            try
-            {
-               m_apiURL = new URL(m_nxURL.toString()
-                  + "/api/" + lastSupportedVersion.getVersion()
-                  + "/"
-                  + m_apiProtocol);
-               return true;
-            } catch (MalformedURLException e)
-            {
-               // This is never thrown, the original error would have been
-               // thrown on the APISession constructor method.
-            }
+            return lastSupportedVersion;
          } else if (m_apiVersion.compareTo(firstSupportedVersion) < 0)
          {
             throw new APIException("API call is not avilable until version : "
                + firstSupportedVersion);
          }
       }
-      return false;
+      return m_apiVersion;
    }
 
    /**
-    * Resets the API url to the original value for the session
+    * Retrieves the API URL of the given API version.
+    *
+    * @param version the version chosen through
+    *        {@link #adjustAPIVersion(APISupportedVersion, APISupportedVersion)}.
+    * @return the API URL to send the request to.
     */
-   private void resetAPIURL()
+   private URL adjustAPIURL(APISupportedVersion version)
    {
-      try
+      if (version != m_apiVersion)
       {
-         m_apiURL = new URL(
-            m_nxURL.toString()
-            + "/api/"
-            + m_apiVersion.getVersion()
-            + "/" + m_apiProtocol);
-      } catch (MalformedURLException e)
-      {
-         // This is never thrown since the original error would have been thrown
-         // on the APISession constructor method.
+         try
+         {
+            return new URL(m_nxURL.toString()
+               + "/api/" + version.getVersion()
+               + "/"
+               + m_apiProtocol);
+         } catch (MalformedURLException e)
+         {
+            // This is never thrown, the original error would have been
+            // thrown on the APISession constructor method.
+         }
       }
+      return m_apiURL;
    }
 
    /**
@@ -2059,93 +2785,1156 @@ public class APISession
    }
 
    /**
-    * Sends the given API request to the NeXpose server's API endpoint and
-    * returns the response.
+    * Sends the given API request with the default options of the session.
     *
-    * @param connection The connection to the NeXpose server
     * @param request The API request to send
-    * @return The response body
+    * @return The response from the server.
     * @throws IOException When the API call cannot be performed.
-    * @throws APIException if the API call is not successful or the parsing of
-    *         the response is not correct.
+    * @throws APIException if the parsing of the response is not correct.
     */
-   private Document request(URLConnection connection, APIRequest request)
+   private APIResponse send(TemplateAPIRequest request)
       throws IOException, APIException
    {
-      Reader reader = post(connection, request.toXML());
-      try
-      {
-         return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(reader));
-      }
-      catch (SAXException e)
-      {
-         throw new APIException("Error parsing API response", e);
-      }
-      catch (ParserConfigurationException e)
-      {
-         throw new APIException("Error parsing API response", e);
-      }
-      finally
-      {
-         reader.close();
-      }
+      return send(request, m_requestOptions);
    }
 
    /**
-    * POSTs the given XML request content to the NeXpose server's API endpoint
-    * and returns the response.
+    * Sends the given API request to the NeXpose server's API endpoint and
+    * returns the response, retrying it as allowed by the retry policy of the
+    * session. The overall timeout of the options covers all the attempts and
+    * the backoffs between them.
     *
-    * @param connection The connection to the NeXpose server
-    * @param xml The XML content to POST
-    * @return A reader over the response body
-    * @throws IOException When the system cannot write to the output stream.
+    * @param request The API request to send
+    * @param options The fully populated options of the request.
+    * @return The response from the server.
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the parsing of the response is not correct.
     */
-   private BufferedReader post(URLConnection connection, String xml)
-      throws IOException
+   private APIResponse send(TemplateAPIRequest request, RequestOptions options)
+      throws IOException, APIException
    {
-      OutputStream out = connection.getOutputStream();
-      out.write(xml.getBytes("UTF-8"));
-      out.flush();
-      return new BufferedReader(
-         new InputStreamReader(
-            new BufferedInputStream(
-               connection.getInputStream()),
-               "UTF-8")
-         );
+      return send(request, options, null);
    }
 
    /**
-    * Opens a connection to the NeXpose server.
+    * Sends the given API request to the NeXpose server's API endpoint and
+    * returns the response, retrying it as allowed by the retry policy of the
+    * session until a handler starts reading it.
     *
-    * @param request the request containing the version of the api to use.
-    * @return An open URLConnection used for making a request.
-    * @throws IOException when the connection cannot be established.
-    * @throws APIException Thrown when the version of the api does not support
-    *         the request.
+    * @param request The API request to send
+    * @param options The fully populated options of the request.
+    * @param handler the consumer of the response, null to parse it.
+    * @return The response from the server.
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the parsing of the response is not correct.
     */
-   private URLConnection open(APIRequest request) throws IOException, APIException
+   private APIResponse send(TemplateAPIRequest request, RequestOptions options, IResponseStreamHandler handler)
+      throws IOException, APIException
    {
-      adjustAPIURL(
-         request.getLastSupportedVersion(),
-         request.getFirstSupportedVersion());
-      final HttpsURLConnection conn =
-         (HttpsURLConnection) m_apiURL.openConnection();
-      conn.setSSLSocketFactory(ms_sslContext.getSocketFactory());
-      // Create empty HostnameVerifier
-      conn.setHostnameVerifier(new javax.net.ssl.HostnameVerifier()
+      final CancellationToken token = options.getCancellationToken();
+      final long deadline = options.getTimeout() > 0
+         ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getTimeout())
+         : 0;
+      final RetryPolicy policy = m_retryPolicy;
+      policy.onRequest();
+      for (int attempt = 1; ; attempt++)
       {
-         public boolean verify(String urlHostName, SSLSession session)
+         final Attempt state = new Attempt();
+         state.m_number = attempt;
+         state.m_handler = handler;
+         state.m_event = APICallEvents.begin();
+         if (m_metricsListener != null || state.m_event != null)
          {
-            return true;
+            state.m_sample = new RequestSample(request, attempt);
          }
-      });
-      conn.setDoInput(true);
-      conn.setDoOutput(true);
-      conn.setUseCaches(false);
-      conn.setRequestProperty("Content-Type", "text/xml");
-      conn.setConnectTimeout(20000); // TODO: parameterize
-      resetAPIURL();
-      return conn;
+         long delay;
+         try
+         {
+            final APIResponse response = send(request, options, token, deadline, state);
+            if (!policy.retriesFailures() || response.grabNode("//Failure") == null)
+            {
+               policy.onSuccess(attempt);
+               return response;
+            }
+            delay = policy.retryDelay(request, attempt, response, remaining(deadline));
+            if (delay < 0)
+            {
+               return response;
+            }
+         }
+         catch (IOException e)
+         {
+            if (state.m_consumed || (e instanceof InterruptedIOException && isAborted(token, deadline)))
+            {
+               throw e;
+            }
+            delay = policy.retryDelay(request, attempt, state.m_connected, e, remaining(deadline));
+            if (delay < 0)
+            {
+               throw e;
+            }
+         }
+         backoff(request, token, delay);
+      }
+   }
+
+   /**
+    * Makes a single attempt at sending the given API request, within the
+    * interceptors of the session, and measures it for the metrics listener of
+    * the session and the flight recorder when they consume the measurements.
+    *
+    * @param request The API request to send
+    * @param options The fully populated options of the request.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @param state records how far the attempt went.
+    * @return The response from the server.
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the parsing of the response is not correct.
+    */
+   private APIResponse send(
+      TemplateAPIRequest request,
+      RequestOptions options,
+      CancellationToken token,
+      long deadline,
+      Attempt state)
+      throws IOException, APIException
+   {
+      final IRequestInterceptor[] interceptors = m_interceptors;
+      final RequestSample sample = state.m_sample;
+      if (sample == null && interceptors.length == 0)
+      {
+         return attempt(request, options, token, deadline, state);
+      }
+      APISupportedVersion version;
+      try
+      {
+         version = adjustAPIVersion(
+            request.getLastSupportedVersion(),
+            request.getFirstSupportedVersion());
+      }
+      catch (APIException e)
+      {
+         // the attempt reports it
+         version = null;
+      }
+      final RequestContext context = new RequestContext(request, state.m_number, m_nxURL, version);
+      final long start = System.nanoTime();
+      // the interceptors whose beforeSend succeeded and that are not done yet
+      int pending = 0;
+      try
+      {
+         for (IRequestInterceptor interceptor : interceptors)
+         {
+            interceptor.beforeSend(context);
+            pending++;
+         }
+         final APIResponse response = attempt(request, options, token, deadline, state);
+         while (pending > 0)
+         {
+            interceptors[--pending].afterReceive(context, response);
+         }
+         return response;
+      }
+      catch (IOException e)
+      {
+         failed(context, e, sample, interceptors, pending);
+         throw e;
+      }
+      catch (APIException e)
+      {
+         failed(context, e, sample, interceptors, pending);
+         throw e;
+      }
+      catch (RuntimeException e)
+      {
+         failed(context, e, sample, interceptors, pending);
+         throw e;
+      }
+      finally
+      {
+         if (sample != null)
+         {
+            completed(request, state, sample, System.nanoTime() - start);
+         }
+      }
+   }
+
+   /**
+    * Records a failed attempt and lets the pending interceptors know, the
+    * last one first.
+    *
+    * @param context the attempt.
+    * @param error the error the attempt failed with.
+    * @param sample the measurements of the attempt, may be null.
+    * @param interceptors the interceptors of the session.
+    * @param pending the number of interceptors to notify.
+    */
+   private static void failed(
+      RequestContext context,
+      Exception error,
+      RequestSample sample,
+      IRequestInterceptor[] interceptors,
+      int pending)
+   {
+      if (sample != null)
+      {
+         sample.m_outcome = RequestSample.Outcome.ERROR;
+         sample.m_error = error;
+      }
+      while (pending > 0)
+      {
+         try
+         {
+            interceptors[--pending].onError(context, error);
+         }
+         catch (RuntimeException e)
+         {
+            // a broken interceptor must not hide the error of the request
+         }
+      }
+   }
+
+   /**
+    * Hands the measurements of an attempt to the flight recorder and to the
+    * metrics listener of the session.
+    *
+    * @param request the request sent.
+    * @param state the attempt.
+    * @param sample the measurements of the attempt.
+    * @param nanos the duration of the attempt.
+    */
+   private void completed(TemplateAPIRequest request, Attempt state, RequestSample sample, long nanos)
+   {
+      sample.setDuration(RequestPhase.TOTAL, nanos);
+      if (state.m_event != null)
+      {
+         APICallEvents.commit(state.m_event, request, sample);
+      }
+      final IRequestMetricsListener listener = m_metricsListener;
+      if (listener != null)
+      {
+         try
+         {
+            listener.requestCompleted(sample);
+         }
+         catch (RuntimeException e)
+         {
+            // a broken listener must not fail the request
+         }
+      }
+   }
+
+   /**
+    * Sends the given API request once the circuit breaker and the throttle
+    * of the session let it through. The connection is aborted when the
+    * cancellation token of the options is cancelled or when the deadline
+    * passes.
+    *
+    * @param request The API request to send
+    * @param options The fully populated options of the request.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @param state records how far the attempt went.
+    * @return The response from the server.
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the parsing of the response is not correct.
+    */
+   private APIResponse attempt(
+      TemplateAPIRequest request,
+      RequestOptions options,
+      CancellationToken token,
+      long deadline,
+      Attempt state)
+      throws IOException, APIException
+   {
+      checkAborted(request, token, deadline, null);
+      final CircuitBreaker breaker = m_circuitBreaker;
+      if (breaker == null)
+      {
+         return throttle(request, options, token, deadline, state);
+      }
+      if (breaker.allow(request))
+      {
+         probe(breaker, options, token, deadline);
+      }
+      try
+      {
+         final APIResponse response = throttle(request, options, token, deadline, state);
+         breaker.onSuccess();
+         if (request instanceof RestartRequest && response.grabNode("//Failure") == null)
+         {
+            breaker.trip();
+         }
+         return response;
+      }
+      catch (IOException e)
+      {
+         if (isConnectionFailure(e, state, token, deadline))
+         {
+            breaker.onFailure();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Checks whether the console is reachable again on behalf of a circuit
+    * breaker, by sending a {@link SystemInformationRequest}. Any answer of
+    * the console closes the breaker.
+    *
+    * @param breaker the half-open breaker.
+    * @param options The fully populated options of the request waiting for
+    *        the probe.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @throws CircuitBreakerOpenException when the console is still unreachable.
+    * @throws IOException when the request is cancelled or times out during
+    *         the probe.
+    */
+   private void probe(
+      CircuitBreaker breaker,
+      RequestOptions options,
+      CancellationToken token,
+      long deadline)
+      throws IOException
+   {
+      final Attempt state = new Attempt();
+      boolean decided = false;
+      try
+      {
+         exchange(new SystemInformationRequest(null, null), options, token, deadline, state);
+         breaker.onSuccess();
+         decided = true;
+      }
+      catch (APIException e)
+      {
+         // the console answered, even if not with a parsable document
+         breaker.onSuccess();
+         decided = true;
+      }
+      catch (IOException e)
+      {
+         if (!isConnectionFailure(e, state, token, deadline))
+         {
+            throw e;
+         }
+         breaker.onFailure();
+         decided = true;
+         throw new CircuitBreakerOpenException("The console is still unreachable", e);
+      }
+      finally
+      {
+         if (!decided)
+         {
+            breaker.onProbeAbandoned();
+         }
+      }
+   }
+
+   /**
+    * Tells whether an attempt failed because the console could not be
+    * reached: the connection was refused, reset or timed out. Cancelled
+    * requests and requests that passed their own deadline are not counted.
+    *
+    * @param error the error the attempt failed with.
+    * @param state how far the attempt went.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @return true if the failure says the console is unreachable.
+    */
+   private static boolean isConnectionFailure(
+      IOException error,
+      Attempt state,
+      CancellationToken token,
+      long deadline)
+   {
+      if (error instanceof CircuitBreakerOpenException || isAborted(token, deadline))
+      {
+         return false;
+      }
+      return !state.m_connected
+         || error instanceof SocketTimeoutException
+         || error instanceof SocketException;
+   }
+
+   /**
+    * Posts the given API request once the throttle of the session lets it
+    * through.
+    *
+    * @param request The API request to send
+    * @param options The fully populated options of the request.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @param state records how far the attempt went.
+    * @return The response from the server.
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the parsing of the response is not correct.
+    */
+   private APIResponse throttle(
+      TemplateAPIRequest request,
+      RequestOptions options,
+      CancellationToken token,
+      long deadline,
+      Attempt state)
+      throws IOException, APIException
+   {
+      final RequestThrottle throttle = m_requestThrottle;
+      if (throttle == null)
+      {
+         return exchange(request, options, token, deadline, state);
+      }
+      final long start = state.m_sample != null ? System.nanoTime() : 0;
+      final RequestThrottle.Permit permit = throttle.acquire(request, token, deadline);
+      if (state.m_sample != null)
+      {
+         state.m_sample.setDuration(RequestPhase.QUEUE, System.nanoTime() - start);
+      }
+      try
+      {
+         return exchange(request, options, token, deadline, state);
+      }
+      finally
+      {
+         permit.release();
+      }
+   }
+
+   /**
+    * Posts the given API request and parses the response of the console.
+    *
+    * @param request The API request to send
+    * @param options The fully populated options of the request.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @param state records how far the attempt went.
+    * @return The response from the server.
+    * @throws IOException When the API call cannot be performed, times out or
+    *         is cancelled.
+    * @throws APIException if the parsing of the response is not correct.
+    */
+   private APIResponse exchange(
+      TemplateAPIRequest request,
+      RequestOptions options,
+      CancellationToken token,
+      long deadline,
+      Attempt state)
+      throws IOException, APIException
+   {
+      final RequestSample sample = state.m_sample;
+      final byte[] xml = auth(request).toXML().getBytes("UTF-8");
+      final long compressionThreshold = options.getRequestCompressionThreshold();
+      final byte[] body = compressionThreshold > 0 && xml.length > compressionThreshold ? gzip(xml) : xml;
+      final HttpURLConnection connection = open(request, options, deadline, sample);
+      if (body != xml)
+      {
+         connection.setRequestProperty("Content-Encoding", "gzip");
+      }
+      // a known length also keeps the connection from silently POSTing again
+      connection.setFixedLengthStreamingMode(body.length);
+      final Runnable abort = new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            connection.disconnect();
+         }
+      };
+      ScheduledFuture<?> watchdog = null;
+      if (token != null)
+      {
+         token.register(abort);
+      }
+      try
+      {
+         if (deadline != 0)
+         {
+            watchdog = Watchdog.EXECUTOR.schedule(abort, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+         }
+         if (sample == null)
+         {
+            connection.connect();
+         }
+         else
+         {
+            sample.m_bytesSent = body.length;
+            sample.m_requestSize = xml.length;
+            MeteredSSLSocketFactory.takeHandshakeStart();
+            final long start = System.nanoTime();
+            connection.connect();
+            final long connected = System.nanoTime();
+            final long handshakeStart = MeteredSSLSocketFactory.takeHandshakeStart();
+            if (handshakeStart != 0)
+            {
+               sample.setDuration(RequestPhase.CONNECT, handshakeStart - start);
+               sample.setDuration(RequestPhase.TLS, connected - handshakeStart);
+            }
+            else
+            {
+               sample.setDuration(RequestPhase.CONNECT, connected - start);
+            }
+         }
+         state.m_connected = true;
+         checkAborted(request, token, deadline, null);
+         return request(connection, body, options, request.getRequestXML(), state);
+      }
+      catch (IOException e)
+      {
+         checkAborted(request, token, deadline, e);
+         throw e;
+      }
+      catch (APIException e)
+      {
+         checkAborted(request, token, deadline, e);
+         throw e;
+      }
+      finally
+      {
+         if (watchdog != null)
+         {
+            watchdog.cancel(false);
+         }
+         if (token != null)
+         {
+            token.unregister(abort);
+         }
+      }
+   }
+
+   /**
+    * Waits before retrying a request, returning early if the request is
+    * cancelled in the meantime.
+    *
+    * @param request the request to retry.
+    * @param token the cancellation token of the request, may be null.
+    * @param delay the time to wait in nanoseconds.
+    * @throws InterruptedIOException when the thread is interrupted.
+    */
+   private static void backoff(TemplateAPIRequest request, CancellationToken token, long delay)
+      throws InterruptedIOException
+   {
+      final CountDownLatch cancelled = new CountDownLatch(1);
+      final Runnable wakeUp = new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            cancelled.countDown();
+         }
+      };
+      if (token != null)
+      {
+         token.register(wakeUp);
+      }
+      try
+      {
+         cancelled.await(delay, TimeUnit.NANOSECONDS);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         final InterruptedIOException interrupted = new InterruptedIOException(
+            "Interrupted before retrying " + request.getClass().getSimpleName());
+         interrupted.initCause(e);
+         throw interrupted;
+      }
+      finally
+      {
+         if (token != null)
+         {
+            token.unregister(wakeUp);
+         }
+      }
+   }
+
+   /**
+    * Tells whether a request has been cancelled or has passed its deadline.
+    *
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @return true if the request must not be attempted again.
+    */
+   private static boolean isAborted(CancellationToken token, long deadline)
+   {
+      return (token != null && token.isCancelled())
+         || (deadline != 0 && System.nanoTime() - deadline >= 0);
+   }
+
+   /**
+    * Computes the time left before a deadline.
+    *
+    * @param deadline the deadline in {@link System#nanoTime()} terms, 0 if
+    *        there is none.
+    * @return the time left in nanoseconds, {@link Long#MAX_VALUE} if there is
+    *         no deadline.
+    */
+   private static long remaining(long deadline)
+   {
+      return deadline == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+   }
+
+   /**
+    * Fails a request whose cancellation token has been cancelled or whose
+    * deadline has passed.
+    *
+    * @param request the request in progress.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @param cause the error the request failed with, may be null.
+    * @throws InterruptedIOException when the request was cancelled.
+    * @throws SocketTimeoutException when the deadline of the request passed.
+    */
+   private static void checkAborted(
+      TemplateAPIRequest request,
+      CancellationToken token,
+      long deadline,
+      Exception cause)
+      throws InterruptedIOException
+   {
+      final InterruptedIOException aborted;
+      if (token != null && token.isCancelled())
+      {
+         aborted = new InterruptedIOException(request.getClass().getSimpleName() + " was cancelled");
+      }
+      else if (deadline != 0 && System.nanoTime() - deadline >= 0)
+      {
+         aborted = new SocketTimeoutException(request.getClass().getSimpleName() + " timed out");
+      }
+      else
+      {
+         return;
+      }
+      if (cause != null)
+      {
+         aborted.initCause(cause);
+      }
+      throw aborted;
+   }
+
+   /**
+    * Reads the response of the given API request once posted to the NeXpose
+    * server's API endpoint. Responses up to the streaming threshold of the
+    * request are buffered and parsed lazily, larger ones are parsed while
+    * they are read, and the ones of streamed requests are handed to their
+    * handler.
+    *
+    * @param connection The connection to the NeXpose server
+    * @param body The encoded XML content of the API request to send
+    * @param options The fully populated options of the request.
+    * @param finalXML The XML of the API request.
+    * @param state the attempt, with its measurements and handler.
+    * @return The response
+    * @throws IOException When the API call cannot be performed.
+    * @throws APIException if the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   private APIResponse request(
+      URLConnection connection,
+      byte[] body,
+      RequestOptions options,
+      String finalXML,
+      Attempt state)
+      throws IOException, APIException
+   {
+      final RequestSample sample = state.m_sample;
+      final InputStream in = post(connection, body, sample);
+      final MeteredInputStream metered = sample != null ? new MeteredInputStream(in) : null;
+      final long start = System.nanoTime();
+      final String encoding = encoding(connection);
+      InputStream stream = metered != null ? metered : in;
+      MeteredInputStream decoded = null;
+      try
+      {
+         if (encoding != null)
+         {
+            stream = decode(stream, encoding);
+            if (sample != null)
+            {
+               stream = decoded = new MeteredInputStream(stream);
+            }
+         }
+         final long threshold = options.getStreamingThreshold();
+         final long retention = options.getResponseRetention();
+         // the announced length is the compressed one
+         final long length = encoding == null ? connection.getContentLengthLong() : -1;
+         final APIResponse response;
+         if (state.m_handler != null)
+         {
+            response = stream(stream, finalXML, state);
+         }
+         else if (threshold > 0 && length <= threshold)
+         {
+            final byte[] buffered = buffer(stream, length, (int)Math.min(threshold, Integer.MAX_VALUE - 8));
+            if (buffered.length <= threshold)
+            {
+               response = new APIResponse(buffered, finalXML);
+               if (retention > 0 && buffered.length <= retention)
+               {
+                  response.retain(buffered, options.isCompressRetained());
+               }
+            }
+            else
+            {
+               // longer than announced, or not announced: parse the rest as it comes
+               stream = new SequenceInputStream(new ByteArrayInputStream(buffered), stream);
+               response = parse(stream, options, finalXML);
+            }
+         }
+         else
+         {
+            response = parse(stream, options, finalXML);
+         }
+         if (sample != null)
+         {
+            sample.m_outcome = response.isFailure() ? RequestSample.Outcome.FAILURE : RequestSample.Outcome.SUCCESS;
+         }
+         return response;
+      }
+      finally
+      {
+         stream.close();
+         if (sample != null)
+         {
+            sample.setDuration(RequestPhase.DOWNLOAD, metered.getReadNanos());
+            sample.setDuration(RequestPhase.PARSE, System.nanoTime() - start - metered.getReadNanos());
+            sample.m_bytesReceived = metered.getBytes();
+            sample.m_responseSize = decoded != null ? decoded.getBytes() : metered.getBytes();
+            sample.m_responseEncoding = encoding;
+         }
+      }
+   }
+
+   /**
+    * Retrieves the content coding of a response.
+    *
+    * @param connection the connection the response is read from.
+    * @return "gzip" or "deflate", or null if the response is not compressed.
+    * @throws IOException when the response uses an unknown coding.
+    */
+   private static String encoding(URLConnection connection) throws IOException
+   {
+      final String encoding = connection.getContentEncoding();
+      if (encoding == null || encoding.trim().isEmpty() || "identity".equalsIgnoreCase(encoding.trim()))
+      {
+         return null;
+      }
+      if ("gzip".equalsIgnoreCase(encoding.trim()) || "x-gzip".equalsIgnoreCase(encoding.trim()))
+      {
+         return "gzip";
+      }
+      if ("deflate".equalsIgnoreCase(encoding.trim()))
+      {
+         return "deflate";
+      }
+      throw new IOException("Unsupported response Content-Encoding: " + encoding);
+   }
+
+   /**
+    * Decompresses a response as it is read.
+    *
+    * @param in the compressed response.
+    * @param encoding "gzip" or "deflate".
+    * @return the decompressed response.
+    * @throws IOException when the response cannot be read.
+    */
+   private static InputStream decode(InputStream in, String encoding) throws IOException
+   {
+      if ("gzip".equals(encoding))
+      {
+         return new GZIPInputStream(in, 8192);
+      }
+      // "deflate" is meant to be zlib wrapped, but some servers send it raw
+      final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+      final byte[] header = new byte[2];
+      int read = 0;
+      while (read < header.length)
+      {
+         final int n = pushback.read(header, read, header.length - read);
+         if (n < 0)
+         {
+            break;
+         }
+         read += n;
+      }
+      pushback.unread(header, 0, read);
+      final boolean zlib = read == 2
+         && (header[0] & 0x0f) == 8
+         && (((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 == 0;
+      final Inflater inflater = new Inflater(!zlib);
+      return new InflaterInputStream(pushback, inflater, 8192)
+      {
+         @Override
+         public void close() throws IOException
+         {
+            try
+            {
+               super.close();
+            }
+            finally
+            {
+               // a given inflater is not released by the stream
+               inflater.end();
+            }
+         }
+      };
+   }
+
+   /**
+    * Compresses a request body.
+    *
+    * @param body the request XML.
+    * @return the gzip compressed body.
+    * @throws IOException never, the body is compressed in memory.
+    */
+   private static byte[] gzip(byte[] body) throws IOException
+   {
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+      final GZIPOutputStream out = new GZIPOutputStream(compressed, 8192);
+      out.write(body);
+      out.close();
+      return compressed.toByteArray();
+   }
+
+   /**
+    * Reads a response into memory, stopping once it exceeds a limit.
+    *
+    * @param in the response.
+    * @param length the announced length of the response, -1 if unknown.
+    * @param limit the number of bytes to read at most before giving up.
+    * @return the response, or its first limit + 1 bytes if it is longer.
+    * @throws IOException When the response cannot be read.
+    */
+   private static byte[] buffer(InputStream in, long length, int limit) throws IOException
+   {
+      byte[] buffer = new byte[length >= 0 ? (int)length + 1 : Math.min(limit + 1, 8192)];
+      int size = 0;
+      while (true)
+      {
+         if (size == buffer.length)
+         {
+            if (size > limit)
+            {
+               break;
+            }
+            buffer = Arrays.copyOf(buffer, (int)Math.min((long)limit + 1, 2L * size));
+         }
+         final int read = in.read(buffer, size, buffer.length - size);
+         if (read < 0)
+         {
+            break;
+         }
+         size += read;
+      }
+      return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+   }
+
+   /**
+    * Parses a response while it is read, keeping a copy of it if it is small
+    * enough to be retained.
+    *
+    * @param in the response.
+    * @param options The fully populated options of the request.
+    * @param finalXML The XML of the API request.
+    * @return the parsed response.
+    * @throws IOException When the response cannot be read.
+    * @throws APIException when the response is not well-formed.
+    */
+   private static APIResponse parse(InputStream in, RequestOptions options, String finalXML)
+      throws IOException, APIException
+   {
+      final CapturingInputStream capturing =
+         options.getResponseRetention() > 0 ? new CapturingInputStream(in, options.getResponseRetention()) : null;
+      final Reader reader = new BufferedReader(
+         new InputStreamReader(new BufferedInputStream(capturing != null ? capturing : in), "UTF-8"));
+      try
+      {
+         final APIResponse response = new APIResponse(XMLSupport.documentBuilder().parse(new InputSource(reader)), finalXML);
+         final byte[] raw = capturing != null ? capturing.getBytes() : null;
+         if (raw != null)
+         {
+            response.retain(raw, options.isCompressRetained());
+         }
+         return response;
+      }
+      catch (SAXException e)
+      {
+         throw new APIException("Error parsing API response", e);
+      }
+      catch (ParserConfigurationException e)
+      {
+         throw new APIException("Error parsing API response", e);
+      }
+   }
+
+   /**
+    * Hands a successful response to the handler of its request while it is
+    * read. A Failure is parsed as usual instead, from its beginning.
+    *
+    * @param in the response.
+    * @param finalXML The XML of the API request.
+    * @param state the attempt, marked as consumed once the handler is called.
+    * @return the root element of a successful response, or the Failure.
+    * @throws IOException When the response cannot be read or the handler
+    *         fails.
+    * @throws APIException when the response is not well-formed.
+    */
+   private static APIResponse stream(InputStream in, String finalXML, Attempt state)
+      throws IOException, APIException
+   {
+      final BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+      // the parser only reads ahead a few kilobytes before the root element
+      buffered.mark(MAX_STREAMED_FAILURE);
+      XMLStreamReader reader = null;
+      try
+      {
+         reader = ResponseScanner.createReader(buffered);
+         reader.nextTag();
+         if ("Failure".equals(reader.getLocalName()) || "0".equals(reader.getAttributeValue(null, "success")))
+         {
+            buffered.reset();
+            return new APIResponse(buffer(buffered, -1, MAX_STREAMED_FAILURE), finalXML);
+         }
+         final Document root = XMLSupport.documentBuilder().newDocument();
+         final Element element = root.createElement(reader.getLocalName());
+         for (int i = 0; i < reader.getAttributeCount(); i++)
+         {
+            element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+         }
+         root.appendChild(element);
+         state.m_consumed = true;
+         state.m_handler.handleResponse(reader);
+         return new APIResponse(root, finalXML);
+      }
+      catch (XMLStreamException e)
+      {
+         throw new APIException("Error parsing API response", e);
+      }
+      catch (ParserConfigurationException e)
+      {
+         throw new APIException("Error parsing API response", e);
+      }
+      finally
+      {
+         if (reader != null)
+         {
+            try
+            {
+               // leaves the response open, it is closed by the caller
+               reader.close();
+            }
+            catch (XMLStreamException e)
+            {
+               // nothing left to read
+            }
+         }
+      }
+   }
+
+   /**
+    * POSTs the given XML request content to the NeXpose server's API endpoint
+    * and returns the response.
+    *
+    * @param connection The connection to the NeXpose server
+    * @param body The encoded XML content to POST
+    * @param sample the measurements of the request, null if not metered.
+    * @return the stream of the response body
+    * @throws IOException When the system cannot write to the output stream.
+    */
+   private InputStream post(URLConnection connection, byte[] body, RequestSample sample)
+      throws IOException
+   {
+      final long start = sample != null ? System.nanoTime() : 0;
+      OutputStream out = connection.getOutputStream();
+      out.write(body);
+      out.flush();
+      if (sample == null)
+      {
+         return connection.getInputStream();
+      }
+      final long sent = System.nanoTime();
+      sample.setDuration(RequestPhase.UPLOAD, sent - start);
+      final InputStream in = connection.getInputStream();
+      sample.setDuration(RequestPhase.SERVER, System.nanoTime() - sent);
+      return in;
+   }
+
+   /**
+    * Opens a connection to the NeXpose server.
+    *
+    * @param request the request containing the version of the api to use.
+    * @param options the options of the request.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none. The connect and read timeouts of the
+    *        connection never go past it.
+    * @param sample the measurements of the request, null if not metered.
+    * @return An open URLConnection used for making a request.
+    * @throws IOException when the connection cannot be established.
+    * @throws APIException Thrown when the version of the api does not support
+    *         the request.
+    */
+   private HttpURLConnection open(
+      APIRequest request,
+      RequestOptions options,
+      long deadline,
+      RequestSample sample)
+      throws IOException, APIException
+   {
+      final APISupportedVersion version = adjustAPIVersion(
+         request.getLastSupportedVersion(),
+         request.getFirstSupportedVersion());
+      final HttpsURLConnection conn =
+         (HttpsURLConnection) adjustAPIURL(version).openConnection();
+      if (sample != null)
+      {
+         sample.m_apiVersion = version;
+         conn.setSSLSocketFactory(ms_meteredSocketFactory);
+      }
+      else
+      {
+         conn.setSSLSocketFactory(ms_sslContext.getSocketFactory());
+      }
+      // Create empty HostnameVerifier
+      conn.setHostnameVerifier(new javax.net.ssl.HostnameVerifier()
+      {
+         public boolean verify(String urlHostName, SSLSession session)
+         {
+            return true;
+         }
+      });
+      conn.setDoInput(true);
+      conn.setDoOutput(true);
+      conn.setUseCaches(false);
+      conn.setRequestProperty("Content-Type", "text/xml");
+      if (options.isAcceptCompression())
+      {
+         conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+      }
+      conn.setConnectTimeout(boundTimeout(options.getConnectTimeout(), deadline));
+      conn.setReadTimeout(boundTimeout(options.getReadTimeout(), deadline));
+      return conn;
+   }
+
+   /**
+    * Bounds a connection timeout so that it does not go past a deadline.
+    *
+    * @param timeout the timeout in milliseconds, 0 for no limit.
+    * @param deadline the deadline in {@link System#nanoTime()} terms, 0 if
+    *        there is none.
+    * @return the bounded timeout in milliseconds, 0 for no limit.
+    */
+   private static int boundTimeout(int timeout, long deadline)
+   {
+      if (deadline == 0)
+      {
+         return timeout;
+      }
+      final long remaining = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+      if (timeout == 0 || remaining < timeout)
+      {
+         return (int) Math.min(remaining, Integer.MAX_VALUE);
+      }
+      return timeout;
+   }
+
+   /**
+    * Creates the built-in default options of the sessions.
+    *
+    * @return the default options.
+    */
+   private static RequestOptions defaultRequestOptions()
+   {
+      final RequestOptions options = new RequestOptions();
+      options.setConnectTimeout(20000);
+      options.setReadTimeout(0);
+      options.setTimeout(0);
+      options.setStreamingThreshold(1024 * 1024);
+      options.setResponseRetention(0);
+      options.setCompressRetained(false);
+      options.setAcceptCompression(true);
+      options.setRequestCompressionThreshold(0);
+      return options;
+   }
+
+   /**
+    * Creates a view of the given session that uses different options.
+    *
+    * @param session the session to copy.
+    * @param options the fully populated options of the view.
+    */
+   private APISession(APISession session, RequestOptions options)
+   {
+      m_nxURL = session.m_nxURL;
+      m_apiURL = session.m_apiURL;
+      m_username = session.m_username;
+      m_password = session.m_password;
+      m_siloId = session.m_siloId;
+      m_sessionID = session.m_sessionID;
+      m_errorHandler = session.m_errorHandler;
+      m_apiVersion = session.m_apiVersion;
+      m_adjustVersions = session.m_adjustVersions;
+      m_apiProtocol = session.m_apiProtocol;
+      m_requestOptions = options;
+      m_retryPolicy = session.m_retryPolicy;
+      m_requestThrottle = session.m_requestThrottle;
+      m_circuitBreaker = session.m_circuitBreaker;
+      m_metricsListener = session.m_metricsListener;
+      m_interceptors = session.m_interceptors;
+      m_contextPropagator = session.m_contextPropagator;
+   }
+
+   /**
+    * Records how far an attempt at sending a request went.
+    */
+   private static class Attempt
+   {
+      /** The number of the attempt, starting at 1 */
+      int m_number;
+      /** Whether the connection was established, i.e. the request may have been received */
+      boolean m_connected;
+      /** The measurements of the attempt, null if nobody consumes them */
+      RequestSample m_sample;
+      /** The flight recorder event of the attempt, null if not recorded */
+      Object m_event;
+      /** The consumer of the response, null to parse it */
+      IResponseStreamHandler m_handler;
+      /** Whether the handler started reading the response, which cannot be sent again then */
+      boolean m_consumed;
+   }
+
+   /**
+    * Holds the timer aborting the requests that pass their deadline, created
+    * the first time a request with an overall timeout is sent.
+    */
+   private static class Watchdog
+   {
+      static final ScheduledThreadPoolExecutor EXECUTOR;
+      static
+      {
+         EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+         {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+               final Thread thread = new Thread(runnable, "nexpose-request-watchdog");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         EXECUTOR.setRemoveOnCancelPolicy(true);
+      }
    }
 
    /**
@@ -2180,6 +3969,7 @@ public class APISession
       } };
       ms_sslContext = SSLContext.getInstance("TLS");
       ms_sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
+      ms_meteredSocketFactory = new MeteredSSLSocketFactory(ms_sslContext.getSocketFactory());
       HttpsURLConnection.setDefaultSSLSocketFactory(
          ms_sslContext.getSocketFactory());
    }
@@ -2219,6 +4009,24 @@ public class APISession
    private String m_apiProtocol;
    /**Response gets saved here for listing operations*/
    private APIResponse m_apiResponse;
+   /** The default transport options of the requests */
+   private RequestOptions m_requestOptions;
+   /** The policy deciding whether failed requests are sent again */
+   private RetryPolicy m_retryPolicy;
+   /** The throttle limiting the requests sent to the console, may be null */
+   private RequestThrottle m_requestThrottle;
+   /** The breaker failing requests fast while the console is down, may be null */
+   private CircuitBreaker m_circuitBreaker;
+   /** The listener receiving the measurements of the requests, may be null */
+   private volatile IRequestMetricsListener m_metricsListener;
+   /** The interceptors called around every attempt, replaced on change */
+   private volatile IRequestInterceptor[] m_interceptors = new IRequestInterceptor[0];
+   /** Carries the context of the callers to the threads working for them, may be null */
+   private volatile IContextPropagator m_contextPropagator;
+   /** The size of the longest Failure of a streamed request that can be parsed */
+   private static final int MAX_STREAMED_FAILURE = 1024 * 1024;
+   /** The socket factory of the metered connections */
+   private static SSLSocketFactory ms_meteredSocketFactory;
    static
    {
       try
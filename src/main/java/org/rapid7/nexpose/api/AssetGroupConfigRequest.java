@@ -54,5 +54,6 @@ public class AssetGroupConfigRequest extends TemplateAPIRequest
       set("assetGroupId", assetGroupId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
@@ -52,5 +52,6 @@ public class AssetGroupListingRequest extends TemplateAPIRequest
       super(sessionId, syncId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets a caller abort API requests that are in progress. Cancelling the token
+ * closes the connections of all the requests that were started with it, so
+ * the threads blocked on them are released right away and fail with an
+ * {@link java.io.InterruptedIOException}. Requests started with a token that
+ * was already cancelled fail without connecting.
+ * <P>
+ * A token is set on a request through
+ * {@link RequestOptions#setCancellationToken(CancellationToken)} and may be
+ * shared by any number of requests. It cannot be reset once cancelled.
+ */
+public class CancellationToken
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Cancels the token and aborts all the requests in progress that use it.
+    */
+   public void cancel()
+   {
+      final List<Runnable> callbacks;
+      synchronized (this)
+      {
+         if (m_cancelled)
+         {
+            return;
+         }
+         m_cancelled = true;
+         callbacks = new ArrayList<Runnable>(m_callbacks);
+         m_callbacks.clear();
+      }
+      for (Runnable callback : callbacks)
+      {
+         callback.run();
+      }
+   }
+
+   /**
+    * Tells whether the token has been cancelled.
+    *
+    * @return true if {@link #cancel()} has been called, false otherwise.
+    */
+   public synchronized boolean isCancelled()
+   {
+      return m_cancelled;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Registers a callback to run when the token is cancelled. The callback
+    * runs immediately if the token is already cancelled.
+    *
+    * @param callback the callback that aborts a request.
+    */
+   void register(Runnable callback)
+   {
+      synchronized (this)
+      {
+         if (!m_cancelled)
+         {
+            m_callbacks.add(callback);
+            return;
+         }
+      }
+      callback.run();
+   }
+
+   /**
+    * Unregisters a callback once its request is over.
+    *
+    * @param callback the callback registered for the request.
+    */
+   synchronized void unregister(Runnable callback)
+   {
+      m_callbacks.remove(callback);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Whether the token has been cancelled */
+   private boolean m_cancelled;
+   /** The callbacks aborting the requests in progress */
+   private final List<Runnable> m_callbacks = new ArrayList<Runnable>();
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps a copy of the bytes read from a response while the parser pulls from
+ * the stream, up to a limit past which the copy is dropped.
+ */
+class CapturingInputStream extends FilterInputStream
+{
+   /**
+    * Creates a stream capturing the given one.
+    *
+    * @param in the response stream.
+    * @param limit the number of bytes past which nothing is kept.
+    */
+   CapturingInputStream(InputStream in, long limit)
+   {
+      super(in);
+      m_limit = limit;
+   }
+
+   @Override
+   public int read() throws IOException
+   {
+      final int read = super.read();
+      if (read >= 0 && reserve(1))
+      {
+         m_copy.write(read);
+      }
+      return read;
+   }
+
+   @Override
+   public int read(byte[] buffer, int offset, int length) throws IOException
+   {
+      final int read = super.read(buffer, offset, length);
+      if (read > 0 && reserve(read))
+      {
+         m_copy.write(buffer, offset, read);
+      }
+      return read;
+   }
+
+   @Override
+   public long skip(long n) throws IOException
+   {
+      // skipped bytes would leave a hole in the copy
+      final byte[] buffer = new byte[(int)Math.min(n, 8192)];
+      final int read = read(buffer, 0, buffer.length);
+      return read < 0 ? 0 : read;
+   }
+
+   @Override
+   public boolean markSupported()
+   {
+      return false;
+   }
+
+   /**
+    * Retrieves the bytes read so far.
+    *
+    * @return the bytes, or null if there were more than the limit.
+    */
+   byte[] getBytes()
+   {
+      return m_copy != null ? m_copy.toByteArray() : null;
+   }
+
+   /**
+    * Accounts for bytes about to be copied, dropping the copy if they make it
+    * exceed the limit.
+    *
+    * @param count the number of bytes.
+    * @return true if the bytes are to be copied.
+    */
+   private boolean reserve(int count)
+   {
+      if (m_copy == null)
+      {
+         return false;
+      }
+      if (m_copy.size() + (long)count > m_limit)
+      {
+         m_copy = null;
+         return false;
+      }
+      return true;
+   }
+
+   /** The number of bytes past which nothing is kept */
+   private final long m_limit;
+   /** The bytes read so far, null once past the limit */
+   private ByteArrayOutputStream m_copy = new ByteArrayOutputStream();
+}
@@ -0,0 +1,363 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops an {@link APISession} from opening connections to a console that is
+ * down, e.g. while it restarts after a {@link RestartRequest}.
+ * <P>
+ * The breaker starts {@link State#CLOSED}. It trips to {@link State#OPEN}
+ * after a number of consecutive connection failures: connections refused,
+ * reset or timing out. While it is open, requests fail right away with a
+ * {@link CircuitBreakerOpenException}. Once the open duration elapses, the
+ * next request turns it {@link State#HALF_OPEN} and first probes the console
+ * with a {@link SystemInformationRequest}, other requests still failing fast.
+ * The breaker closes if the console answers the probe, whatever the answer,
+ * and opens again otherwise.
+ * <P>
+ * A breaker may be shared by all the sessions talking to the same console.
+ */
+public class CircuitBreaker
+{
+   /**
+    * The states of a breaker.
+    */
+   public enum State
+   {
+      /** Requests are sent */
+      CLOSED,
+      /** Requests fail fast */
+      OPEN,
+      /** A probe is in progress, other requests fail fast */
+      HALF_OPEN
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a closed breaker tripping after 5 consecutive connection failures
+    * and staying open for 30 seconds.
+    */
+   public CircuitBreaker()
+   {
+   }
+
+   /**
+    * Retrieves the state of the breaker. An open breaker whose open duration
+    * elapsed stays open until a request probes the console.
+    *
+    * @return the current state.
+    */
+   public synchronized State getState()
+   {
+      return m_state;
+   }
+
+   /**
+    * Retrieves the number of consecutive connection failures since the last
+    * request that reached the console.
+    *
+    * @return the number of consecutive failures.
+    */
+   public synchronized int getConsecutiveFailures()
+   {
+      return m_consecutiveFailures;
+   }
+
+   /**
+    * Retrieves the number of times the breaker opened, failed probes
+    * included.
+    *
+    * @return the number of trips.
+    */
+   public synchronized long getTrips()
+   {
+      return m_trips;
+   }
+
+   /**
+    * Retrieves the number of requests that failed fast.
+    *
+    * @return the number of rejected requests.
+    */
+   public synchronized long getRejected()
+   {
+      return m_rejected;
+   }
+
+   /**
+    * Retrieves the number of consecutive connection failures that trip the
+    * breaker.
+    *
+    * @return the failure threshold.
+    */
+   public synchronized int getFailureThreshold()
+   {
+      return m_failureThreshold;
+   }
+
+   /**
+    * Sets the number of consecutive connection failures that trip the
+    * breaker.
+    *
+    * @param failureThreshold the failure threshold, at least 1.
+    */
+   public synchronized void setFailureThreshold(int failureThreshold)
+   {
+      if (failureThreshold < 1)
+      {
+         throw new IllegalArgumentException("failureThreshold must be at least 1");
+      }
+      m_failureThreshold = failureThreshold;
+   }
+
+   /**
+    * Retrieves how long the breaker stays open before probing the console.
+    *
+    * @param unit the unit to express the duration in.
+    * @return the open duration.
+    */
+   public synchronized long getOpenDuration(TimeUnit unit)
+   {
+      return unit.convert(m_openNanos, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Sets how long the breaker stays open before probing the console.
+    *
+    * @param duration the open duration.
+    * @param unit the unit of the duration.
+    */
+   public synchronized void setOpenDuration(long duration, TimeUnit unit)
+   {
+      if (duration < 0)
+      {
+         throw new IllegalArgumentException("duration cannot be negative");
+      }
+      m_openNanos = unit.toNanos(duration);
+   }
+
+   /**
+    * Opens the breaker right away, e.g. before restarting the console through
+    * another channel.
+    */
+   public void trip()
+   {
+      final State from;
+      synchronized (this)
+      {
+         from = m_state;
+         open();
+      }
+      notifyListeners(from, State.OPEN);
+   }
+
+   /**
+    * Closes the breaker right away, without probing the console.
+    */
+   public void reset()
+   {
+      final State from;
+      synchronized (this)
+      {
+         from = m_state;
+         m_state = State.CLOSED;
+         m_consecutiveFailures = 0;
+      }
+      notifyListeners(from, State.CLOSED);
+   }
+
+   /**
+    * Adds a listener notified when the breaker changes state.
+    *
+    * @param listener the listener to add.
+    */
+   public void addListener(ICircuitBreakerListener listener)
+   {
+      m_listeners.add(listener);
+   }
+
+   /**
+    * Removes a listener added through
+    * {@link #addListener(ICircuitBreakerListener)}.
+    *
+    * @param listener the listener to remove.
+    */
+   public void removeListener(ICircuitBreakerListener listener)
+   {
+      m_listeners.remove(listener);
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "state=" + m_state
+         + " consecutiveFailures=" + m_consecutiveFailures
+         + " trips=" + m_trips
+         + " rejected=" + m_rejected;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Lets a request through, or fails it fast.
+    *
+    * @param request the request about to be sent.
+    * @return true if the caller must probe the console before sending the
+    *         request, false if the request can be sent right away.
+    * @throws CircuitBreakerOpenException when the breaker is open or a probe
+    *         is in progress.
+    */
+   boolean allow(TemplateAPIRequest request)
+      throws CircuitBreakerOpenException
+   {
+      synchronized (this)
+      {
+         if (m_state == State.CLOSED)
+         {
+            return false;
+         }
+         if (m_state == State.HALF_OPEN || System.nanoTime() - m_openUntil < 0)
+         {
+            m_rejected++;
+            throw new CircuitBreakerOpenException(
+               request.getClass().getSimpleName() + " was not sent, the console is unreachable");
+         }
+         m_state = State.HALF_OPEN;
+      }
+      notifyListeners(State.OPEN, State.HALF_OPEN);
+      return true;
+   }
+
+   /**
+    * Records a request, or a probe, that reached the console.
+    */
+   void onSuccess()
+   {
+      synchronized (this)
+      {
+         m_consecutiveFailures = 0;
+         if (m_state != State.HALF_OPEN)
+         {
+            return;
+         }
+         m_state = State.CLOSED;
+      }
+      notifyListeners(State.HALF_OPEN, State.CLOSED);
+   }
+
+   /**
+    * Records a request, or a probe, that could not reach the console.
+    */
+   void onFailure()
+   {
+      final State from;
+      synchronized (this)
+      {
+         m_consecutiveFailures++;
+         from = m_state;
+         if (from == State.OPEN
+            || (from == State.CLOSED && m_consecutiveFailures < m_failureThreshold))
+         {
+            return;
+         }
+         open();
+      }
+      notifyListeners(from, State.OPEN);
+   }
+
+   /**
+    * Records a probe that was cancelled before it could tell whether the
+    * console is reachable, so that the next request probes again.
+    */
+   void onProbeAbandoned()
+   {
+      synchronized (this)
+      {
+         if (m_state != State.HALF_OPEN)
+         {
+            return;
+         }
+         m_state = State.OPEN;
+         m_openUntil = System.nanoTime();
+      }
+      notifyListeners(State.HALF_OPEN, State.OPEN);
+   }
+
+   /**
+    * Opens the breaker for the open duration. Must be called with the lock of
+    * the breaker held.
+    */
+   private void open()
+   {
+      m_state = State.OPEN;
+      m_openUntil = System.nanoTime() + m_openNanos;
+      m_trips++;
+   }
+
+   private void notifyListeners(State from, State to)
+   {
+      if (from == to)
+      {
+         return;
+      }
+      for (ICircuitBreakerListener listener : m_listeners)
+      {
+         listener.stateChanged(this, from, to);
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The current state */
+   private State m_state = State.CLOSED;
+   /** The number of consecutive connection failures */
+   private int m_consecutiveFailures;
+   /** The number of consecutive failures tripping the breaker */
+   private int m_failureThreshold = 5;
+   /** How long the breaker stays open, in nanoseconds */
+   private long m_openNanos = TimeUnit.SECONDS.toNanos(30);
+   /** When the open breaker may probe, in {@link System#nanoTime()} terms */
+   private long m_openUntil;
+   /** The number of times the breaker opened */
+   private long m_trips;
+   /** The number of requests that failed fast */
+   private long m_rejected;
+   /** The listeners notified of the state changes */
+   private final List<ICircuitBreakerListener> m_listeners =
+      new CopyOnWriteArrayList<ICircuitBreakerListener>();
+}
@@ -54,5 +54,6 @@ public class EngineActivityRequest extends TemplateAPIRequest
       set("engineId", engineId);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
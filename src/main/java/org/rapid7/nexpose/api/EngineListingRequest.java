@@ -48,5 +48,6 @@ public class EngineListingRequest extends TemplateAPIRequest
       super(sessionId, syncId);
       m_firstSupportedVersion = APISupportedVersion.V1_1;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
@@ -55,5 +55,6 @@ public class EnginePoolDetailsRequest extends TemplateAPIRequest
        set("enginePoolScope", enginePoolScope);
        m_firstSupportedVersion = APISupportedVersion.V1_2;
        m_lastSupportedVersion = APISupportedVersion.V1_2;
+       m_idempotent = true;
 	}
 }
@@ -52,5 +52,6 @@ public class EnginePoolListingRequest extends TemplateAPIRequest
       super(sessionId, syncId);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
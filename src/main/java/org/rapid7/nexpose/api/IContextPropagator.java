@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+/**
+ * Interface for the bridges carrying the context of the caller, typically the
+ * current trace and span of a tracing library, to the threads this library
+ * sends requests from on its behalf, e.g. the threads of a
+ * {@link org.rapid7.nexpose.api.federation.FederatedSession}. Set on a
+ * session through {@link APISession#setContextPropagator(IContextPropagator)}.
+ */
+public interface IContextPropagator
+{
+   /**
+    * Captures the context of the current thread, on the thread submitting
+    * the work.
+    *
+    * @return the captured context, may be null.
+    */
+   Object capture();
+
+   /**
+    * Makes a captured context current, on the thread doing the work.
+    *
+    * @param captured the context returned by {@link #capture()}.
+    * @return the context that was current before, to give back to
+    *         {@link #detach(Object)}.
+    */
+   Object attach(Object captured);
+
+   /**
+    * Restores the context that was current before
+    * {@link #attach(Object)}, once the work is done.
+    *
+    * @param previous the value returned by {@link #attach(Object)}.
+    */
+   void detach(Object previous);
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.IOException;
+
+/**
+ * Interface for the interceptors an {@link APISession} calls around every
+ * attempt at sending an API request, e.g. to open and close tracing spans,
+ * log the requests or enrich them. The interceptors of a session are called
+ * in the order they were added before the request is sent, and in the
+ * reverse order once it is over.
+ *
+ * @see RequestInterceptorAdapter
+ */
+public interface IRequestInterceptor
+{
+   /**
+    * Called before the request is sent, on the thread sending it. The
+    * interceptor may set parameters of the request, e.g. its sync-id.
+    *
+    * @param context the attempt in progress.
+    * @throws IOException to fail the attempt without sending the request.
+    * @throws APIException to fail the attempt without sending the request.
+    */
+   void beforeSend(RequestContext context) throws IOException, APIException;
+
+   /**
+    * Called once the console answered, whether the response is a Failure or
+    * not.
+    *
+    * @param context the attempt.
+    * @param response the response of the console.
+    * @throws APIException to fail the attempt despite the response.
+    */
+   void afterReceive(RequestContext context, APIResponse response) throws APIException;
+
+   /**
+    * Called when the attempt failed without a usable response: transport
+    * error, timeout, cancellation, unparsable response or an exception thrown
+    * by another interceptor. Not called for the interceptors whose
+    * {@link #beforeSend(RequestContext)} was not called or threw.
+    *
+    * @param context the attempt.
+    * @param error the error the attempt failed with.
+    */
+   void onError(RequestContext context, Exception error);
+}
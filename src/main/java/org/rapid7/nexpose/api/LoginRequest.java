@@ -55,5 +55,6 @@ public class LoginRequest extends TemplateAPIRequest
       set("siloId", siloId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
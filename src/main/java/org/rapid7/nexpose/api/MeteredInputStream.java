@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a response and the time spent reading them, so
+ * that downloading can be told apart from parsing while the parser pulls
+ * from the stream.
+ */
+class MeteredInputStream extends FilterInputStream
+{
+   /**
+    * Creates a stream metering the given one.
+    *
+    * @param in the response stream.
+    */
+   MeteredInputStream(InputStream in)
+   {
+      super(in);
+   }
+
+   @Override
+   public int read() throws IOException
+   {
+      final long start = System.nanoTime();
+      final int read = super.read();
+      m_readNanos += System.nanoTime() - start;
+      if (read >= 0)
+      {
+         m_bytes++;
+      }
+      return read;
+   }
+
+   @Override
+   public int read(byte[] buffer, int offset, int length) throws IOException
+   {
+      final long start = System.nanoTime();
+      final int read = super.read(buffer, offset, length);
+      m_readNanos += System.nanoTime() - start;
+      if (read > 0)
+      {
+         m_bytes += read;
+      }
+      return read;
+   }
+
+   @Override
+   public long skip(long n) throws IOException
+   {
+      final long start = System.nanoTime();
+      final long skipped = super.skip(n);
+      m_readNanos += System.nanoTime() - start;
+      m_bytes += skipped;
+      return skipped;
+   }
+
+   /**
+    * Retrieves the number of bytes read so far.
+    *
+    * @return the number of bytes.
+    */
+   long getBytes()
+   {
+      return m_bytes;
+   }
+
+   /**
+    * Retrieves the time spent in the read calls so far.
+    *
+    * @return the read time in nanoseconds.
+    */
+   long getReadNanos()
+   {
+      return m_readNanos;
+   }
+
+   /** The number of bytes read */
+   private long m_bytes;
+   /** The time spent reading, in nanoseconds */
+   private long m_readNanos;
+}
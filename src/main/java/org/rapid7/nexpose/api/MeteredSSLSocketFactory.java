@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Lets the connections of metered requests tell the TCP connect apart from
+ * the TLS handshake. It does not create unconnected sockets, so the HTTPS
+ * client connects a plain socket first and then layers TLS over it through
+ * {@link #createSocket(Socket, String, int, boolean)}, which records when
+ * that happens for the current thread.
+ */
+class MeteredSSLSocketFactory extends SSLSocketFactory
+{
+   /**
+    * Creates a factory delegating to the given one.
+    *
+    * @param delegate the factory creating the TLS sockets.
+    */
+   MeteredSSLSocketFactory(SSLSocketFactory delegate)
+   {
+      m_delegate = delegate;
+   }
+
+   /**
+    * Retrieves and clears when the current thread last started a TLS
+    * handshake through this factory.
+    *
+    * @return the time in {@link System#nanoTime()} terms, 0 if the thread did
+    *         not start one since the last call.
+    */
+   static long takeHandshakeStart()
+   {
+      final long[] start = ms_handshakeStart.get();
+      final long nanos = start[0];
+      start[0] = 0;
+      return nanos;
+   }
+
+   @Override
+   public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+      throws IOException
+   {
+      ms_handshakeStart.get()[0] = System.nanoTime();
+      return m_delegate.createSocket(socket, host, port, autoClose);
+   }
+
+   @Override
+   public Socket createSocket(String host, int port) throws IOException
+   {
+      return m_delegate.createSocket(host, port);
+   }
+
+   @Override
+   public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+      throws IOException
+   {
+      return m_delegate.createSocket(host, port, localHost, localPort);
+   }
+
+   @Override
+   public Socket createSocket(InetAddress host, int port) throws IOException
+   {
+      return m_delegate.createSocket(host, port);
+   }
+
+   @Override
+   public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+      throws IOException
+   {
+      return m_delegate.createSocket(address, port, localAddress, localPort);
+   }
+
+   @Override
+   public String[] getDefaultCipherSuites()
+   {
+      return m_delegate.getDefaultCipherSuites();
+   }
+
+   @Override
+   public String[] getSupportedCipherSuites()
+   {
+      return m_delegate.getSupportedCipherSuites();
+   }
+
+   /** The factory creating the TLS sockets */
+   private final SSLSocketFactory m_delegate;
+   /** When each thread last started a handshake */
+   private static final ThreadLocal<long[]> ms_handshakeStart = new ThreadLocal<long[]>()
+   {
+      @Override
+      protected long[] initialValue()
+      {
+         return new long[1];
+      }
+   };
+}
@@ -48,5 +48,6 @@ public class MultiTenantUserConfigRequest extends TemplateAPIRequest
       set("user-id", userID);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
@@ -46,5 +46,6 @@ public class MultiTenantUserListingRequest extends TemplateAPIRequest
       super(sessionID, syncID);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
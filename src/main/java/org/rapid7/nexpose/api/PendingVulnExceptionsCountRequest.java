@@ -50,5 +50,6 @@ public class PendingVulnExceptionsCountRequest extends TemplateAPIRequest
       super(sessionId, syncId);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
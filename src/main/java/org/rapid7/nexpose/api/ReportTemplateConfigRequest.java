@@ -54,5 +54,6 @@ public class ReportTemplateConfigRequest extends TemplateAPIRequest
       set("reportTemplateId", reportTemplateId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
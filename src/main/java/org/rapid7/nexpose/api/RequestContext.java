@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import org.rapid7.nexpose.api.APISession.APISupportedVersion;
+
+/**
+ * An attempt at sending an API request, as seen by the
+ * {@link IRequestInterceptor} instances of a session. Interceptors may keep
+ * state for the duration of the attempt in its attributes, e.g. the span
+ * they opened in {@link IRequestInterceptor#beforeSend(RequestContext)}.
+ */
+public class RequestContext
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the request being sent.
+    *
+    * @return the request.
+    */
+   public TemplateAPIRequest getRequest()
+   {
+      return m_request;
+   }
+
+   /**
+    * Retrieves the number of the attempt, 1 unless the request is retried.
+    *
+    * @return the attempt number.
+    */
+   public int getAttempt()
+   {
+      return m_attempt;
+   }
+
+   /**
+    * Retrieves the base URL of the console the request is sent to.
+    *
+    * @return the console URL, e.g. "https://ip:3780".
+    */
+   public URL getConsoleURL()
+   {
+      return m_consoleURL;
+   }
+
+   /**
+    * Retrieves the version of the API the request is sent to.
+    *
+    * @return the API version, {@code null} if the session does not support
+    *         the request (the attempt then fails).
+    */
+   public APISupportedVersion getApiVersion()
+   {
+      return m_apiVersion;
+   }
+
+   /**
+    * Retrieves an attribute of the attempt.
+    *
+    * @param name the name of the attribute.
+    * @return the value of the attribute, or {@code null} if it is not set.
+    */
+   public Object getAttribute(String name)
+   {
+      return m_attributes != null ? m_attributes.get(name) : null;
+   }
+
+   /**
+    * Sets an attribute of the attempt.
+    *
+    * @param name the name of the attribute.
+    * @param value the value of the attribute, {@code null} to remove it.
+    */
+   public void setAttribute(String name, Object value)
+   {
+      if (m_attributes == null)
+      {
+         m_attributes = new HashMap<String, Object>();
+      }
+      if (value == null)
+      {
+         m_attributes.remove(name);
+      }
+      else
+      {
+         m_attributes.put(name, value);
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates the context of an attempt about to start.
+    *
+    * @param request the request.
+    * @param attempt the number of the attempt.
+    * @param consoleURL the base URL of the console.
+    * @param apiVersion the version of the API the request is sent to.
+    */
+   RequestContext(
+      TemplateAPIRequest request,
+      int attempt,
+      URL consoleURL,
+      APISupportedVersion apiVersion)
+   {
+      m_request = request;
+      m_attempt = attempt;
+      m_consoleURL = consoleURL;
+      m_apiVersion = apiVersion;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The request being sent */
+   private final TemplateAPIRequest m_request;
+   /** The number of the attempt */
+   private final int m_attempt;
+   /** The base URL of the console */
+   private final URL m_consoleURL;
+   /** The version of the API the request is sent to */
+   private final APISupportedVersion m_apiVersion;
+   /** The attributes set by the interceptors, created on first use */
+   private Map<String, Object> m_attributes;
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+/**
+ * Transport options of API requests: connect timeout, read timeout, overall
+ * deadline, cancellation, compression, response parsing and retention. An {@link APISession} has a set of default
+ * options (see {@link APISession#setRequestOptions(RequestOptions)}) which
+ * can be overridden for a single call, see
+ * {@link APISession#executeAPIRequest(TemplateAPIRequest, RequestOptions)},
+ * or for a group of calls, see
+ * {@link APISession#withRequestOptions(RequestOptions)}.
+ * <P>
+ * Options that are not set on an override keep the value of the options they
+ * override. All times are expressed in milliseconds, 0 meaning no limit.
+ */
+public class RequestOptions
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new set of options where nothing is set.
+    */
+   public RequestOptions()
+   {
+   }
+
+   /**
+    * Creates a copy of the given options.
+    *
+    * @param options the options to copy.
+    */
+   public RequestOptions(RequestOptions options)
+   {
+      m_connectTimeout = options.m_connectTimeout;
+      m_readTimeout = options.m_readTimeout;
+      m_timeout = options.m_timeout;
+      m_cancellationToken = options.m_cancellationToken;
+      m_streamingThreshold = options.m_streamingThreshold;
+      m_responseRetention = options.m_responseRetention;
+      m_compressRetained = options.m_compressRetained;
+      m_acceptCompression = options.m_acceptCompression;
+      m_requestCompressionThreshold = options.m_requestCompressionThreshold;
+   }
+
+   /**
+    * Retrieves the time allowed to establish the connection to the console.
+    *
+    * @return the connect timeout in milliseconds, 0 for no limit or -1 if not
+    *         set.
+    */
+   public int getConnectTimeout()
+   {
+      return m_connectTimeout;
+   }
+
+   /**
+    * Sets the time allowed to establish the connection to the console.
+    *
+    * @param connectTimeout the connect timeout in milliseconds, 0 for no
+    *        limit.
+    */
+   public void setConnectTimeout(int connectTimeout)
+   {
+      if (connectTimeout < 0)
+      {
+         throw new IllegalArgumentException("connectTimeout cannot be negative");
+      }
+      m_connectTimeout = connectTimeout;
+   }
+
+   /**
+    * Retrieves the time allowed to wait for data from the console once the
+    * request is sent.
+    *
+    * @return the read timeout in milliseconds, 0 for no limit or -1 if not
+    *         set.
+    */
+   public int getReadTimeout()
+   {
+      return m_readTimeout;
+   }
+
+   /**
+    * Sets the time allowed to wait for data from the console once the request
+    * is sent. This bounds every single read, not the whole download, see
+    * {@link #setTimeout(long)} for the latter.
+    *
+    * @param readTimeout the read timeout in milliseconds, 0 for no limit.
+    */
+   public void setReadTimeout(int readTimeout)
+   {
+      if (readTimeout < 0)
+      {
+         throw new IllegalArgumentException("readTimeout cannot be negative");
+      }
+      m_readTimeout = readTimeout;
+   }
+
+   /**
+    * Retrieves the overall time allowed for a request, from connection to the
+    * parsing of the response.
+    *
+    * @return the request timeout in milliseconds, 0 for no limit or -1 if not
+    *         set.
+    */
+   public long getTimeout()
+   {
+      return m_timeout;
+   }
+
+   /**
+    * Sets the overall time allowed for a request, from connection to the
+    * parsing of the response. A request that is still running once its
+    * deadline has passed is aborted and fails with a
+    * {@link java.net.SocketTimeoutException}.
+    *
+    * @param timeout the request timeout in milliseconds, 0 for no limit.
+    */
+   public void setTimeout(long timeout)
+   {
+      if (timeout < 0)
+      {
+         throw new IllegalArgumentException("timeout cannot be negative");
+      }
+      m_timeout = timeout;
+   }
+
+   /**
+    * Retrieves the token that cancels the requests.
+    *
+    * @return the cancellation token, or {@code null} if not set.
+    */
+   public CancellationToken getCancellationToken()
+   {
+      return m_cancellationToken;
+   }
+
+   /**
+    * Sets the token that cancels the requests.
+    *
+    * @param cancellationToken the cancellation token, may be {@code null}.
+    */
+   public void setCancellationToken(CancellationToken cancellationToken)
+   {
+      m_cancellationToken = cancellationToken;
+   }
+
+   /**
+    * Retrieves the size above which responses are parsed as they are
+    * downloaded.
+    *
+    * @return the streaming threshold in bytes, or -1 if not set.
+    */
+   public long getStreamingThreshold()
+   {
+      return m_streamingThreshold;
+   }
+
+   /**
+    * Sets the size above which responses are parsed as they are downloaded.
+    * Responses up to that size are buffered and only parsed when the
+    * document is first needed, and simple lookups such as
+    * {@code response.grab("/LoginResponse/@session-id")} or failure checks
+    * are answered by scanning the buffer without building the document.
+    * Larger responses, known from their Content-Length or observed while
+    * buffering, are parsed while streaming so that they are never held twice
+    * in memory.
+    *
+    * @param streamingThreshold the streaming threshold in bytes, 0 to parse
+    *        every response while streaming.
+    */
+   public void setStreamingThreshold(long streamingThreshold)
+   {
+      if (streamingThreshold < 0)
+      {
+         throw new IllegalArgumentException("streamingThreshold cannot be negative");
+      }
+      m_streamingThreshold = streamingThreshold;
+   }
+
+   /**
+    * Tells whether compressed responses are asked for.
+    *
+    * @return true if they are, false if not or not set.
+    */
+   public boolean isAcceptCompression()
+   {
+      return m_acceptCompression != null && m_acceptCompression.booleanValue();
+   }
+
+   /**
+    * Sets whether the console is asked for compressed responses, with an
+    * Accept-Encoding of gzip and deflate. Listings are repetitive XML that
+    * compresses tenfold or more, which matters across slow links. Responses
+    * are decompressed as they are read, so large ones are still parsed while
+    * streaming; consoles that do not compress answer as usual.
+    *
+    * @param acceptCompression true to ask for compressed responses.
+    */
+   public void setAcceptCompression(boolean acceptCompression)
+   {
+      m_acceptCompression = Boolean.valueOf(acceptCompression);
+   }
+
+   /**
+    * Retrieves the size above which requests are sent compressed.
+    *
+    * @return the size in bytes, 0 if requests are never compressed or -1 if
+    *         not set.
+    */
+   public long getRequestCompressionThreshold()
+   {
+      return m_requestCompressionThreshold;
+   }
+
+   /**
+    * Sets the size above which request bodies, e.g. a SiteSaveRequest listing
+    * thousands of assets, are sent gzip compressed with a Content-Encoding
+    * header. Only use it with consoles, or proxies in front of them, that
+    * accept compressed requests.
+    *
+    * @param requestCompressionThreshold the size in bytes, 0 to never
+    *        compress requests.
+    */
+   public void setRequestCompressionThreshold(long requestCompressionThreshold)
+   {
+      if (requestCompressionThreshold < 0)
+      {
+         throw new IllegalArgumentException("requestCompressionThreshold cannot be negative");
+      }
+      m_requestCompressionThreshold = requestCompressionThreshold;
+   }
+
+   /**
+    * Retrieves the size up to which the raw bytes of responses are kept.
+    *
+    * @return the size in bytes, 0 if responses are not kept or -1 if not
+    *         set.
+    */
+   public long getResponseRetention()
+   {
+      return m_responseRetention;
+   }
+
+   /**
+    * Sets the size up to which the raw bytes of responses are kept along with
+    * their document, so that {@link APIResponse#getResponse()} and
+    * {@link APIResponse#getRawResponse()} return the payload as the console
+    * sent it instead of serializing the document again, which is what audit
+    * logging needs. Larger responses are not kept. Responses that have not
+    * been parsed yet are always answered from their bytes.
+    *
+    * @param responseRetention the size in bytes, 0 to keep no response.
+    */
+   public void setResponseRetention(long responseRetention)
+   {
+      if (responseRetention < 0)
+      {
+         throw new IllegalArgumentException("responseRetention cannot be negative");
+      }
+      m_responseRetention = responseRetention;
+   }
+
+   /**
+    * Tells whether the kept responses are compressed.
+    *
+    * @return true if they are compressed, false if not or not set.
+    */
+   public boolean isCompressRetained()
+   {
+      return m_compressRetained != null && m_compressRetained.booleanValue();
+   }
+
+   /**
+    * Sets whether the kept responses are deflated once their document is
+    * parsed. The XML of listings compresses tenfold or more, at the cost of
+    * inflating it on every {@link APIResponse#getResponse()}.
+    *
+    * @param compressRetained true to compress the kept responses.
+    * @see #setResponseRetention(long)
+    */
+   public void setCompressRetained(boolean compressRetained)
+   {
+      m_compressRetained = Boolean.valueOf(compressRetained);
+   }
+
+   /**
+    * Creates new options where the options set on the given override replace
+    * the ones of these options.
+    *
+    * @param override the options to apply on top of these ones, may be
+    *        {@code null}.
+    * @return the merged options.
+    */
+   public RequestOptions merge(RequestOptions override)
+   {
+      final RequestOptions merged = new RequestOptions(this);
+      if (override != null)
+      {
+         if (override.m_connectTimeout >= 0)
+            merged.m_connectTimeout = override.m_connectTimeout;
+         if (override.m_readTimeout >= 0)
+            merged.m_readTimeout = override.m_readTimeout;
+         if (override.m_timeout >= 0)
+            merged.m_timeout = override.m_timeout;
+         if (override.m_cancellationToken != null)
+            merged.m_cancellationToken = override.m_cancellationToken;
+         if (override.m_streamingThreshold >= 0)
+            merged.m_streamingThreshold = override.m_streamingThreshold;
+         if (override.m_responseRetention >= 0)
+            merged.m_responseRetention = override.m_responseRetention;
+         if (override.m_compressRetained != null)
+            merged.m_compressRetained = override.m_compressRetained;
+         if (override.m_acceptCompression != null)
+            merged.m_acceptCompression = override.m_acceptCompression;
+         if (override.m_requestCompressionThreshold >= 0)
+            merged.m_requestCompressionThreshold = override.m_requestCompressionThreshold;
+      }
+      return merged;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The connect timeout in milliseconds, -1 if not set */
+   private int m_connectTimeout = -1;
+   /** The read timeout in milliseconds, -1 if not set */
+   private int m_readTimeout = -1;
+   /** The overall request timeout in milliseconds, -1 if not set */
+   private long m_timeout = -1;
+   /** The token that cancels the requests, may be null */
+   private CancellationToken m_cancellationToken;
+   /** The size above which responses are parsed while streaming, -1 if not set */
+   private long m_streamingThreshold = -1;
+   /** The size up to which raw responses are kept, -1 if not set */
+   private long m_responseRetention = -1;
+   /** Whether kept responses are compressed, null if not set */
+   private Boolean m_compressRetained;
+   /** Whether compressed responses are asked for, null if not set */
+   private Boolean m_acceptCompression;
+   /** The size above which requests are compressed, -1 if not set */
+   private long m_requestCompressionThreshold = -1;
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+/**
+ * The phases an attempt at sending an API request goes through, as measured
+ * in a {@link RequestSample}.
+ */
+public enum RequestPhase
+{
+   /** Waiting for a permit of the {@link RequestThrottle} of the session */
+   QUEUE,
+   /** Opening the TCP connection, or taking one from the keep-alive cache */
+   CONNECT,
+   /** The TLS handshake of a new connection */
+   TLS,
+   /** Sending the request headers and body */
+   UPLOAD,
+   /** Waiting for the console to answer, until the response headers are read */
+   SERVER,
+   /** Reading the response body */
+   DOWNLOAD,
+   /**
+    * Building the DOM of the response, reading excluded but decompression
+    * included; for the responses buffered and parsed lazily, only the
+    * buffering and the failure check; for the streamed ones, their handler
+    */
+   PARSE,
+   /** The whole attempt, from the throttle to the parsed response */
+   TOTAL
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.rapid7.nexpose.api.APISession.APISupportedVersion;
+
+/**
+ * The measurements of one attempt at sending an API request: how long each
+ * {@link RequestPhase} took, how many bytes went through and how it ended.
+ * Samples are handed to the {@link IRequestMetricsListener} of the session.
+ */
+public class RequestSample
+{
+   /**
+    * How an attempt ended.
+    */
+   public enum Outcome
+   {
+      /** The console processed the request */
+      SUCCESS,
+      /** The console answered with a Failure */
+      FAILURE,
+      /** No usable answer: transport error, timeout, cancellation or unparsable response */
+      ERROR
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the class of the request.
+    *
+    * @return the request class.
+    */
+   public Class<? extends TemplateAPIRequest> getRequestClass()
+   {
+      return m_requestClass;
+   }
+
+   /**
+    * Retrieves the number of the attempt, 1 unless the request was retried.
+    *
+    * @return the attempt number.
+    */
+   public int getAttempt()
+   {
+      return m_attempt;
+   }
+
+   /**
+    * Retrieves the API version the request was sent to, e.g. "1.1".
+    *
+    * @return the API version, or {@code null} if the attempt failed before
+    *         the version was chosen.
+    */
+   public String getApiVersion()
+   {
+      return m_apiVersion != null ? m_apiVersion.getVersion() : null;
+   }
+
+   /**
+    * Retrieves when the attempt started.
+    *
+    * @return the start time in milliseconds since the epoch.
+    */
+   public long getStartTime()
+   {
+      return m_startTime;
+   }
+
+   /**
+    * Retrieves how long a phase of the attempt took.
+    *
+    * @param phase the phase.
+    * @param unit the unit to express the duration in.
+    * @return the duration, or -1 if the attempt did not go through the phase.
+    */
+   public long getDuration(RequestPhase phase, TimeUnit unit)
+   {
+      final long nanos = m_durations[phase.ordinal()];
+      return nanos < 0 ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Retrieves the size of the request body, as sent on the wire.
+    *
+    * @return the number of bytes sent.
+    */
+   public long getBytesSent()
+   {
+      return m_bytesSent;
+   }
+
+   /**
+    * Retrieves the size of the response body read, as received on the wire.
+    *
+    * @return the number of bytes received.
+    */
+   public long getBytesReceived()
+   {
+      return m_bytesReceived;
+   }
+
+   /**
+    * Retrieves the size of the request XML, before it was compressed.
+    *
+    * @return the number of bytes, equal to {@link #getBytesSent()} unless
+    *         the request was compressed.
+    */
+   public long getRequestSize()
+   {
+      return m_requestSize;
+   }
+
+   /**
+    * Retrieves the size of the response XML read, once decompressed.
+    *
+    * @return the number of bytes, equal to {@link #getBytesReceived()} unless
+    *         the response was compressed.
+    */
+   public long getResponseSize()
+   {
+      return m_responseSize;
+   }
+
+   /**
+    * Retrieves the content coding of the response.
+    *
+    * @return "gzip" or "deflate", or {@code null} if the response was not
+    *         compressed.
+    */
+   public String getResponseEncoding()
+   {
+      return m_responseEncoding;
+   }
+
+   /**
+    * Retrieves how the attempt ended.
+    *
+    * @return the outcome.
+    */
+   public Outcome getOutcome()
+   {
+      return m_outcome;
+   }
+
+   /**
+    * Retrieves the error the attempt failed with.
+    *
+    * @return the error, or {@code null} unless the outcome is
+    *         {@link Outcome#ERROR}.
+    */
+   public Exception getError()
+   {
+      return m_error;
+   }
+
+   @Override
+   public String toString()
+   {
+      final StringBuilder builder = new StringBuilder(m_requestClass.getSimpleName())
+         .append(" attempt=").append(m_attempt)
+         .append(" outcome=").append(m_outcome);
+      for (RequestPhase phase : RequestPhase.values())
+      {
+         if (m_durations[phase.ordinal()] >= 0)
+         {
+            builder.append(' ').append(phase.name().toLowerCase()).append("Us=")
+               .append(getDuration(phase, TimeUnit.MICROSECONDS));
+         }
+      }
+      return builder.append(" sent=").append(m_bytesSent)
+         .append(" received=").append(m_bytesReceived)
+         .append(m_responseEncoding != null ? " encoding=" + m_responseEncoding : "")
+         .append(m_requestSize != m_bytesSent ? " requestSize=" + m_requestSize : "")
+         .append(m_responseSize != m_bytesReceived ? " responseSize=" + m_responseSize : "")
+         .toString();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates the sample of an attempt about to start.
+    *
+    * @param request the request.
+    * @param attempt the number of the attempt.
+    */
+   RequestSample(TemplateAPIRequest request, int attempt)
+   {
+      m_requestClass = request.getClass();
+      m_attempt = attempt;
+      m_startTime = System.currentTimeMillis();
+      Arrays.fill(m_durations, -1);
+   }
+
+   /**
+    * Records the duration of a phase.
+    *
+    * @param phase the phase.
+    * @param nanos the duration in nanoseconds.
+    */
+   void setDuration(RequestPhase phase, long nanos)
+   {
+      m_durations[phase.ordinal()] = Math.max(0, nanos);
+   }
+
+   /** The class of the request */
+   private final Class<? extends TemplateAPIRequest> m_requestClass;
+   /** The number of the attempt */
+   private final int m_attempt;
+   /** When the attempt started, in milliseconds since the epoch */
+   private final long m_startTime;
+   /** The durations of the phases in nanoseconds, -1 for the phases skipped */
+   private final long[] m_durations = new long[RequestPhase.values().length];
+   /** The API version the request was sent to */
+   APISupportedVersion m_apiVersion;
+   /** The size of the request body */
+   long m_bytesSent;
+   /** The size of the response body read */
+   long m_bytesReceived;
+   /** The size of the request XML, before compression */
+   long m_requestSize;
+   /** The size of the response XML read, after decompression */
+   long m_responseSize;
+   /** The content coding of the response, null if not compressed */
+   String m_responseEncoding;
+   /** How the attempt ended */
+   Outcome m_outcome = Outcome.ERROR;
+   /** The error the attempt failed with */
+   Exception m_error;
+}
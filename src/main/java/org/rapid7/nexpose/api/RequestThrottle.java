@@ -0,0 +1,371 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an {@link APISession} from overwhelming the console. Each limit
+ * combines a token bucket, bounding the rate requests are sent at while
+ * allowing short bursts, with a bound on the number of requests in flight.
+ * A limit may apply to all the requests, and one more to each kind of
+ * request, e.g.:
+ * <PRE>
+ * RequestThrottle throttle = new RequestThrottle();
+ * throttle.setLimit(10, 20, 8);
+ * throttle.setLimit(SiteScanRequest.class, 0.2, 1, 1);
+ * throttle.setLimit(ReportAdhocGenerateRequest.class, 0.5, 2, 2);
+ * session.setRequestThrottle(throttle);
+ * </PRE>
+ * Requests wait for a permit of the limit of their class, then for one of
+ * the global limit. Waiting counts against the overall timeout of the
+ * request and ends early when it is cancelled. Every attempt of a retried
+ * request waits for its own permit. A throttle may be shared by several
+ * sessions, e.g. all the sessions of an application talking to the same
+ * console.
+ */
+public class RequestThrottle
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Sets the limit applying to all the requests.
+    *
+    * @param permitsPerSecond the rate requests are let through at, 0 for no
+    *        rate limit.
+    * @param burst the number of requests that may be let through at once
+    *        after a quiet period, at least 1.
+    * @param maxConcurrent the maximum number of requests in flight, 0 for no
+    *        concurrency limit.
+    */
+   public void setLimit(double permitsPerSecond, int burst, int maxConcurrent)
+   {
+      m_global.configure(permitsPerSecond, burst, maxConcurrent);
+   }
+
+   /**
+    * Sets the limit applying to a kind of request, on top of the limit
+    * applying to all the requests.
+    *
+    * @param requestClass the class of the requests.
+    * @param permitsPerSecond the rate requests are let through at, 0 for no
+    *        rate limit.
+    * @param burst the number of requests that may be let through at once
+    *        after a quiet period, at least 1.
+    * @param maxConcurrent the maximum number of requests in flight, 0 for no
+    *        concurrency limit.
+    */
+   public void setLimit(
+      Class<? extends TemplateAPIRequest> requestClass,
+      double permitsPerSecond,
+      int burst,
+      int maxConcurrent)
+   {
+      limit(requestClass).configure(permitsPerSecond, burst, maxConcurrent);
+   }
+
+   /**
+    * Lifts the limit of a kind of request. Its metrics are kept.
+    *
+    * @param requestClass the class of the requests.
+    */
+   public void removeLimit(Class<? extends TemplateAPIRequest> requestClass)
+   {
+      final Limit limit = m_limits.get(requestClass);
+      if (limit != null)
+      {
+         limit.configure(0, 1, 0);
+      }
+   }
+
+   /**
+    * Retrieves the queue metrics of the limit applying to all the requests.
+    *
+    * @return the metrics of all the requests.
+    */
+   public ThrottleMetrics getMetrics()
+   {
+      return m_global.m_metrics;
+   }
+
+   /**
+    * Retrieves the queue metrics of the limit of a kind of request.
+    *
+    * @param requestClass the class of the requests.
+    * @return the metrics of the requests, or {@code null} if no limit was
+    *         ever set for them.
+    */
+   public ThrottleMetrics getMetrics(Class<? extends TemplateAPIRequest> requestClass)
+   {
+      final Limit limit = m_limits.get(requestClass);
+      return limit != null ? limit.m_metrics : null;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Waits until a request may be sent.
+    *
+    * @param request the request to send.
+    * @param token the cancellation token of the request, may be null.
+    * @param deadline the deadline of the request in {@link System#nanoTime()}
+    *        terms, 0 if there is none.
+    * @return the permit to release once the request is over.
+    * @throws InterruptedIOException when the request is cancelled or the
+    *         thread interrupted while waiting.
+    * @throws SocketTimeoutException when the deadline passes while waiting.
+    */
+   Permit acquire(TemplateAPIRequest request, CancellationToken token, long deadline)
+      throws InterruptedIOException
+   {
+      final Limit limit = m_limits.get(request.getClass());
+      if (limit != null)
+      {
+         limit.acquire(request, token, deadline);
+      }
+      try
+      {
+         m_global.acquire(request, token, deadline);
+      }
+      catch (InterruptedIOException e)
+      {
+         if (limit != null)
+         {
+            limit.release();
+         }
+         throw e;
+      }
+      return new Permit(limit, m_global);
+   }
+
+   /**
+    * Retrieves the limit of a kind of request, creating it if need be.
+    *
+    * @param requestClass the class of the requests.
+    * @return the limit of the requests.
+    */
+   private Limit limit(Class<? extends TemplateAPIRequest> requestClass)
+   {
+      final Limit limit = m_limits.get(requestClass);
+      if (limit != null)
+      {
+         return limit;
+      }
+      final Limit created = new Limit();
+      final Limit existing = m_limits.putIfAbsent(requestClass, created);
+      return existing != null ? existing : created;
+   }
+
+   /**
+    * The right to send a request, held until the request is over.
+    */
+   static class Permit
+   {
+      Permit(Limit limit, Limit global)
+      {
+         m_limit = limit;
+         m_global = global;
+      }
+
+      /**
+       * Gives the permit back, letting the next request in.
+       */
+      void release()
+      {
+         m_global.release();
+         if (m_limit != null)
+         {
+            m_limit.release();
+         }
+      }
+
+      /** The limit of the class of the request, may be null */
+      private final Limit m_limit;
+      /** The limit of all the requests */
+      private final Limit m_global;
+   }
+
+   /**
+    * A token bucket coupled with a bound on the requests in flight. All the
+    * state is guarded by the monitor of the limit, which waiting requests
+    * wait on.
+    */
+   static class Limit
+   {
+      /**
+       * Changes the limit, waking up the requests waiting for it.
+       */
+      synchronized void configure(double permitsPerSecond, int burst, int maxConcurrent)
+      {
+         if (permitsPerSecond < 0 || burst < 1 || maxConcurrent < 0)
+         {
+            throw new IllegalArgumentException(
+               "permitsPerSecond and maxConcurrent cannot be negative and burst must be at least 1");
+         }
+         m_permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+         m_burst = burst;
+         m_tokens = burst;
+         m_refilled = System.nanoTime();
+         m_maxConcurrent = maxConcurrent;
+         notifyAll();
+      }
+
+      /**
+       * Waits for a token and a free slot.
+       */
+      synchronized void acquire(TemplateAPIRequest request, CancellationToken token, long deadline)
+         throws InterruptedIOException
+      {
+         final long start = System.nanoTime();
+         Runnable wakeUp = null;
+         boolean waited = false;
+         m_metrics.m_waiting.incrementAndGet();
+         try
+         {
+            while (true)
+            {
+               final long now = System.nanoTime();
+               if (m_permitsPerNano > 0)
+               {
+                  m_tokens = Math.min(m_burst, m_tokens + (now - m_refilled) * m_permitsPerNano);
+                  m_refilled = now;
+               }
+               final boolean saturated = m_maxConcurrent > 0 && m_inFlight >= m_maxConcurrent;
+               final boolean limited = m_permitsPerNano > 0 && m_tokens < 1;
+               if (!saturated && !limited)
+               {
+                  if (m_permitsPerNano > 0)
+                  {
+                     m_tokens -= 1;
+                  }
+                  m_inFlight++;
+                  m_metrics.onPermit(waited ? now - start : 0);
+                  return;
+               }
+               if (token != null && token.isCancelled())
+               {
+                  m_metrics.m_rejected.incrementAndGet();
+                  throw new InterruptedIOException(
+                     request.getClass().getSimpleName() + " was cancelled while waiting for a permit");
+               }
+               long wait = limited ? (long) Math.ceil((1 - m_tokens) / m_permitsPerNano) : Long.MAX_VALUE;
+               if (deadline != 0)
+               {
+                  final long remaining = deadline - now;
+                  if (remaining <= 0)
+                  {
+                     m_metrics.m_rejected.incrementAndGet();
+                     throw new SocketTimeoutException(
+                        request.getClass().getSimpleName() + " timed out waiting for a permit");
+                  }
+                  wait = Math.min(wait, remaining);
+               }
+               if (token != null && wakeUp == null)
+               {
+                  wakeUp = new Runnable()
+                  {
+                     @Override
+                     public void run()
+                     {
+                        synchronized (Limit.this)
+                        {
+                           Limit.this.notifyAll();
+                        }
+                     }
+                  };
+                  token.register(wakeUp);
+               }
+               try
+               {
+                  waited = true;
+                  TimeUnit.NANOSECONDS.timedWait(this, wait);
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+                  m_metrics.m_rejected.incrementAndGet();
+                  final InterruptedIOException interrupted = new InterruptedIOException(
+                     request.getClass().getSimpleName() + " was interrupted while waiting for a permit");
+                  interrupted.initCause(e);
+                  throw interrupted;
+               }
+            }
+         }
+         finally
+         {
+            m_metrics.m_waiting.decrementAndGet();
+            if (wakeUp != null)
+            {
+               token.unregister(wakeUp);
+            }
+         }
+      }
+
+      /**
+       * Frees the slot of a request that is over.
+       */
+      synchronized void release()
+      {
+         m_inFlight--;
+         m_metrics.m_inFlight.decrementAndGet();
+         notifyAll();
+      }
+
+      /** The rate tokens are added at, 0 if the rate is not limited */
+      private double m_permitsPerNano;
+      /** The capacity of the bucket */
+      private int m_burst = 1;
+      /** The tokens in the bucket */
+      private double m_tokens = 1;
+      /** When tokens were last added, in {@link System#nanoTime()} terms */
+      private long m_refilled = System.nanoTime();
+      /** The maximum number of requests in flight, 0 if not limited */
+      private int m_maxConcurrent;
+      /** The number of requests in flight */
+      private int m_inFlight;
+      /** The queue metrics of the limit */
+      final ThrottleMetrics m_metrics = new ThrottleMetrics();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The limit of all the requests */
+   private final Limit m_global = new Limit();
+   /** The limits by request class */
+   private final ConcurrentMap<Class<? extends TemplateAPIRequest>, Limit> m_limits =
+      new ConcurrentHashMap<Class<? extends TemplateAPIRequest>, Limit>();
+}
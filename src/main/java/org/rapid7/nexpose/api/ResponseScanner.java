@@ -0,0 +1,376 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Answers simple XPath lookups on a buffered response in a single streaming
+ * pass, without building its document, and stops reading as soon as every
+ * lookup is answered. Supported expressions are absolute element paths
+ * ({@code /SiteListingResponse/SiteSummary}), descendant elements
+ * ({@code //Failure}), and an attribute of either
+ * ({@code /LoginResponse/@session-id}, {@code //Failure/@code}).
+ */
+class ResponseScanner
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Tells whether expressions can be answered together by a scan. The text
+    * of an element is only scanned for on its own, as reading it skips the
+    * elements it contains.
+    *
+    * @param xpaths the expressions.
+    * @return true if the expressions are supported together.
+    */
+   static boolean isSupported(String... xpaths)
+   {
+      for (String xpath : xpaths)
+      {
+         final Path path = path(xpath);
+         if (path == null || (path.m_attribute == null && xpaths.length > 1))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Evaluates expressions on a response, as strings: the value of the first
+    * matching attribute, or the text of the first matching element, or an
+    * empty String if nothing matches (which is what XPath yields).
+    *
+    * @param body the UTF-8 response.
+    * @param xpaths the expressions, all supported.
+    * @return the values, in the order of the expressions.
+    * @throws APIException when the response is malformed before the
+    *         expressions are answered.
+    */
+   static String[] grab(byte[] body, String... xpaths) throws APIException
+   {
+      final String[] values = scan(body, xpaths, false);
+      for (int i = 0; i < values.length; i++)
+      {
+         if (values[i] == null)
+         {
+            values[i] = "";
+         }
+      }
+      return values;
+   }
+
+   /**
+    * Tells whether an expression matches anything in a response.
+    *
+    * @param body the UTF-8 response.
+    * @param xpath the expression, a supported one.
+    * @return true if the expression matches a node.
+    * @throws APIException when the response is malformed before the
+    *         expression is answered.
+    */
+   static boolean matches(byte[] body, String xpath) throws APIException
+   {
+      return scan(body, new String[] {xpath}, true)[0] != null;
+   }
+
+   /**
+    * Tells whether a response reports a failure: its root element is a
+    * Failure or has success="0". Only the root element is read.
+    *
+    * @param body the UTF-8 response.
+    * @return true if the response holds a failure.
+    * @throws APIException when the response is malformed.
+    */
+   static boolean isFailure(byte[] body) throws APIException
+   {
+      XMLStreamReader reader = null;
+      try
+      {
+         reader = ms_factory.createXMLStreamReader(new ByteArrayInputStream(body));
+         reader.nextTag();
+         return "Failure".equals(reader.getLocalName())
+            || "0".equals(reader.getAttributeValue(null, "success"));
+      }
+      catch (XMLStreamException e)
+      {
+         throw new APIException("Error parsing API response", e);
+      }
+      finally
+      {
+         close(reader);
+      }
+   }
+
+   /**
+    * Creates a streaming reader on a response, with the same protections
+    * against external entities as the scans.
+    *
+    * @param in the UTF-8 response.
+    * @return the reader, positioned before the document.
+    * @throws XMLStreamException when the response cannot be read.
+    */
+   static XMLStreamReader createReader(InputStream in) throws XMLStreamException
+   {
+      return ms_factory.createXMLStreamReader(in);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Evaluates expressions in a single pass.
+    *
+    * @param body the UTF-8 response.
+    * @param xpaths the expressions, all supported.
+    * @param existence true to only find out whether elements match, without
+    *        reading their text.
+    * @return the values, null for the expressions that match nothing.
+    */
+   private static String[] scan(byte[] body, String[] xpaths, boolean existence) throws APIException
+   {
+      final Path[] paths = new Path[xpaths.length];
+      for (int i = 0; i < xpaths.length; i++)
+      {
+         paths[i] = path(xpaths[i]);
+         if (paths[i] == null)
+         {
+            throw new IllegalArgumentException("Unsupported expression: " + xpaths[i]);
+         }
+      }
+      final String[] values = new String[xpaths.length];
+      int pending = values.length;
+      final List<String> stack = new ArrayList<String>();
+      XMLStreamReader reader = null;
+      try
+      {
+         reader = ms_factory.createXMLStreamReader(new ByteArrayInputStream(body));
+         while (pending > 0 && reader.hasNext())
+         {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT)
+            {
+               stack.remove(stack.size() - 1);
+               continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT)
+            {
+               continue;
+            }
+            stack.add(reader.getLocalName());
+            String text = null;
+            for (int i = 0; i < paths.length; i++)
+            {
+               if (values[i] != null || !paths[i].matches(stack))
+               {
+                  continue;
+               }
+               if (paths[i].m_attribute != null)
+               {
+                  values[i] = reader.getAttributeValue(null, paths[i].m_attribute);
+               }
+               else if (existence)
+               {
+                  values[i] = "";
+               }
+               else
+               {
+                  if (text == null)
+                  {
+                     // the string value of an element is all its text
+                     text = text(reader);
+                  }
+                  values[i] = text;
+               }
+               if (values[i] != null)
+               {
+                  pending--;
+               }
+            }
+            if (text != null)
+            {
+               // the reader is on the end of the element already
+               stack.remove(stack.size() - 1);
+            }
+         }
+         return values;
+      }
+      catch (XMLStreamException e)
+      {
+         throw new APIException("Error parsing API response", e);
+      }
+      finally
+      {
+         close(reader);
+      }
+   }
+
+   /**
+    * Reads the text of the element the reader is on, nested elements
+    * included, leaving the reader on its end.
+    */
+   private static String text(XMLStreamReader reader) throws XMLStreamException
+   {
+      final StringBuilder text = new StringBuilder();
+      for (int depth = 1; depth > 0;)
+      {
+         final int event = reader.next();
+         if (event == XMLStreamConstants.START_ELEMENT)
+         {
+            depth++;
+         }
+         else if (event == XMLStreamConstants.END_ELEMENT)
+         {
+            depth--;
+         }
+         else if (event == XMLStreamConstants.CHARACTERS
+            || event == XMLStreamConstants.CDATA
+            || event == XMLStreamConstants.SPACE)
+         {
+            text.append(reader.getText());
+         }
+      }
+      return text.toString();
+   }
+
+   private static void close(XMLStreamReader reader)
+   {
+      if (reader != null)
+      {
+         try
+         {
+            reader.close();
+         }
+         catch (XMLStreamException e)
+         {
+            // nothing is held open on a byte array
+         }
+      }
+   }
+
+   /**
+    * Parses an expression, or returns null if it is not a supported one.
+    */
+   private static Path path(String xpath)
+   {
+      Path path = ms_paths.get(xpath);
+      if (path != null)
+      {
+         return path;
+      }
+      final Matcher matcher = SUPPORTED.matcher(xpath);
+      if (!matcher.matches())
+      {
+         return null;
+      }
+      final boolean descendant = matcher.group(1).length() == 2;
+      final String[] elements = matcher.group(2).split("/");
+      if (descendant && elements.length > 1)
+      {
+         return null;
+      }
+      path = new Path(descendant, elements, matcher.group(3));
+      // the expressions are constants of the code, keep the cache bounded anyway
+      if (ms_paths.size() < MAX_CACHED_PATHS)
+      {
+         ms_paths.put(xpath, path);
+      }
+      return path;
+   }
+
+   /**
+    * A parsed expression.
+    */
+   private static class Path
+   {
+      Path(boolean descendant, String[] elements, String attribute)
+      {
+         m_descendant = descendant;
+         m_elements = elements;
+         m_attribute = attribute;
+      }
+
+      /**
+       * Tells whether the element at the top of the stack matches.
+       */
+      boolean matches(List<String> stack)
+      {
+         if (m_descendant)
+         {
+            return m_elements[0].equals(stack.get(stack.size() - 1));
+         }
+         if (stack.size() != m_elements.length)
+         {
+            return false;
+         }
+         for (int i = 0; i < m_elements.length; i++)
+         {
+            if (!m_elements[i].equals(stack.get(i)))
+            {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      private final boolean m_descendant;
+      private final String[] m_elements;
+      private final String m_attribute;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The supported expressions: (// or /)elements(/@attribute) */
+   private static final Pattern SUPPORTED = Pattern.compile(
+      "(//?)([A-Za-z_][\\w.-]*(?:/[A-Za-z_][\\w.-]*)*)(?:/@([A-Za-z_][\\w.-]*))?");
+   private static final int MAX_CACHED_PATHS = 512;
+   private static final Map<String, Path> ms_paths = new ConcurrentHashMap<String, Path>();
+   private static final XMLInputFactory ms_factory;
+   static
+   {
+      ms_factory = XMLInputFactory.newInstance();
+      ms_factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      ms_factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+   }
+}
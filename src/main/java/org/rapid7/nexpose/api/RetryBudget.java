@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+/**
+ * Limits the retries of a {@link RetryPolicy} to a fraction of the requests
+ * it sees, so that retries cannot multiply the load on a console that is
+ * already failing. Every request deposits a fraction of a retry in the budget
+ * and every retry withdraws a whole one; retries are refused while the budget
+ * is empty. The balance is capped so that a long healthy period does not
+ * allow an unbounded burst of retries.
+ */
+public class RetryBudget
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new budget that starts full.
+    *
+    * @param retryRatio the number of retries every request earns, e.g. 0.1
+    *        allows one retry for every ten requests.
+    * @param maxRetries the maximum number of retries the budget can hold.
+    */
+   public RetryBudget(double retryRatio, int maxRetries)
+   {
+      if (retryRatio < 0)
+      {
+         throw new IllegalArgumentException("retryRatio cannot be negative");
+      }
+      if (maxRetries < 1)
+      {
+         throw new IllegalArgumentException("maxRetries must be at least 1");
+      }
+      m_retryRatio = retryRatio;
+      m_maxRetries = maxRetries;
+      m_balance = maxRetries;
+   }
+
+   /**
+    * Retrieves the number of retries every request earns.
+    *
+    * @return the retry ratio.
+    */
+   public double getRetryRatio()
+   {
+      return m_retryRatio;
+   }
+
+   /**
+    * Retrieves the maximum number of retries the budget can hold.
+    *
+    * @return the maximum balance.
+    */
+   public int getMaxRetries()
+   {
+      return m_maxRetries;
+   }
+
+   /**
+    * Retrieves the number of retries currently available.
+    *
+    * @return the balance of the budget.
+    */
+   public synchronized double getBalance()
+   {
+      return m_balance;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Credits the budget for a new request.
+    */
+   synchronized void deposit()
+   {
+      m_balance = Math.min(m_maxRetries, m_balance + m_retryRatio);
+   }
+
+   /**
+    * Takes a retry out of the budget.
+    *
+    * @return true if a retry was available, false otherwise.
+    */
+   synchronized boolean withdraw()
+   {
+      if (m_balance < 1)
+      {
+         return false;
+      }
+      m_balance -= 1;
+      return true;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The number of retries every request earns */
+   private final double m_retryRatio;
+   /** The maximum number of retries the budget can hold */
+   private final int m_maxRetries;
+   /** The number of retries available */
+   private double m_balance;
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the decisions taken by a {@link RetryPolicy}.
+ */
+public class RetryMetrics
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the number of requests sent under the policy, retries not
+    * included.
+    *
+    * @return the number of requests.
+    */
+   public long getRequests()
+   {
+      return m_requests.get();
+   }
+
+   /**
+    * Retrieves the number of retries sent.
+    *
+    * @return the number of retries.
+    */
+   public long getRetries()
+   {
+      return m_retries.get();
+   }
+
+   /**
+    * Retrieves the number of requests that succeeded after at least one retry.
+    *
+    * @return the number of recovered requests.
+    */
+   public long getRecovered()
+   {
+      return m_recovered.get();
+   }
+
+   /**
+    * Retrieves the number of requests that still failed after the maximum
+    * number of attempts, or whose deadline did not leave time for another
+    * attempt.
+    *
+    * @return the number of exhausted requests.
+    */
+   public long getExhausted()
+   {
+      return m_exhausted.get();
+   }
+
+   /**
+    * Retrieves the number of retries refused because the retry budget was
+    * empty.
+    *
+    * @return the number of retries refused by the budget.
+    */
+   public long getBudgetRejections()
+   {
+      return m_budgetRejections.get();
+   }
+
+   /**
+    * Retrieves the number of retries refused because the request was not
+    * idempotent and may have reached the console.
+    *
+    * @return the number of retries refused for non idempotent requests.
+    */
+   public long getNonIdempotentRejections()
+   {
+      return m_nonIdempotentRejections.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "requests=" + getRequests()
+         + " retries=" + getRetries()
+         + " recovered=" + getRecovered()
+         + " exhausted=" + getExhausted()
+         + " budgetRejections=" + getBudgetRejections()
+         + " nonIdempotentRejections=" + getNonIdempotentRejections();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The number of requests, retries not included */
+   final AtomicLong m_requests = new AtomicLong();
+   /** The number of retries */
+   final AtomicLong m_retries = new AtomicLong();
+   /** The number of requests that succeeded after retrying */
+   final AtomicLong m_recovered = new AtomicLong();
+   /** The number of requests that ran out of attempts or time */
+   final AtomicLong m_exhausted = new AtomicLong();
+   /** The number of retries refused by the budget */
+   final AtomicLong m_budgetRejections = new AtomicLong();
+   /** The number of retries refused for non idempotent requests */
+   final AtomicLong m_nonIdempotentRejections = new AtomicLong();
+}
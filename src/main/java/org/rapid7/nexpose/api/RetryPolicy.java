@@ -0,0 +1,475 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownServiceException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether and when an {@link APISession} sends a failed request
+ * again. Requests are retried with an exponential backoff with full jitter:
+ * the n-th retry waits a random time between 0 and
+ * {@code min(maxBackoff, initialBackoff * multiplier^(n-1))}.
+ * <P>
+ * A failed request is retried when all of the following hold:
+ * <UL>
+ *    <LI>the failure is transient, see {@link #isRetryable(IOException)} and
+ *    {@link #isRetryable(TemplateAPIRequest, APIResponse)};</LI>
+ *    <LI>the maximum number of attempts is not reached;</LI>
+ *    <LI>the request is idempotent, see {@link #isIdempotent(TemplateAPIRequest)},
+ *    unless the connection could not even be established, in which case the
+ *    console never saw it;</LI>
+ *    <LI>the {@link RetryBudget} has a retry available;</LI>
+ *    <LI>the backoff does not go past the deadline of the request, see
+ *    {@link RequestOptions#setTimeout(long)}.</LI>
+ * </UL>
+ * Cancelled requests are never retried. A policy may be shared by several
+ * sessions, in which case they share its budget and its metrics.
+ */
+public class RetryPolicy
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a policy that makes up to 3 attempts, backing off from 200
+    * milliseconds up to 10 seconds, with a budget of one retry for every 5
+    * requests and at most 10 retries in a row.
+    */
+   public RetryPolicy()
+   {
+      m_retryBudget = new RetryBudget(0.2, 10);
+   }
+
+   /**
+    * Creates a policy that never retries.
+    *
+    * @return a new policy making a single attempt per request.
+    */
+   public static RetryPolicy noRetries()
+   {
+      final RetryPolicy policy = new RetryPolicy();
+      policy.setMaxAttempts(1);
+      return policy;
+   }
+
+   /**
+    * Retrieves the maximum number of attempts per request, the first one
+    * included.
+    *
+    * @return the maximum number of attempts.
+    */
+   public int getMaxAttempts()
+   {
+      return m_maxAttempts;
+   }
+
+   /**
+    * Sets the maximum number of attempts per request, the first one included.
+    *
+    * @param maxAttempts the maximum number of attempts, 1 to never retry.
+    */
+   public void setMaxAttempts(int maxAttempts)
+   {
+      if (maxAttempts < 1)
+      {
+         throw new IllegalArgumentException("maxAttempts must be at least 1");
+      }
+      m_maxAttempts = maxAttempts;
+   }
+
+   /**
+    * Retrieves the upper bound of the backoff before the first retry.
+    *
+    * @param unit the unit to express the backoff in.
+    * @return the initial backoff.
+    */
+   public long getInitialBackoff(TimeUnit unit)
+   {
+      return unit.convert(m_initialBackoffNanos, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Sets the upper bound of the backoff before the first retry.
+    *
+    * @param backoff the initial backoff.
+    * @param unit the unit of the backoff.
+    */
+   public void setInitialBackoff(long backoff, TimeUnit unit)
+   {
+      if (backoff < 0)
+      {
+         throw new IllegalArgumentException("backoff cannot be negative");
+      }
+      m_initialBackoffNanos = unit.toNanos(backoff);
+   }
+
+   /**
+    * Retrieves the upper bound of the backoff of any retry.
+    *
+    * @param unit the unit to express the backoff in.
+    * @return the maximum backoff.
+    */
+   public long getMaxBackoff(TimeUnit unit)
+   {
+      return unit.convert(m_maxBackoffNanos, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Sets the upper bound of the backoff of any retry.
+    *
+    * @param backoff the maximum backoff.
+    * @param unit the unit of the backoff.
+    */
+   public void setMaxBackoff(long backoff, TimeUnit unit)
+   {
+      if (backoff < 0)
+      {
+         throw new IllegalArgumentException("backoff cannot be negative");
+      }
+      m_maxBackoffNanos = unit.toNanos(backoff);
+   }
+
+   /**
+    * Retrieves the factor the backoff bound grows by on every retry.
+    *
+    * @return the backoff multiplier.
+    */
+   public double getMultiplier()
+   {
+      return m_multiplier;
+   }
+
+   /**
+    * Sets the factor the backoff bound grows by on every retry.
+    *
+    * @param multiplier the backoff multiplier, at least 1.
+    */
+   public void setMultiplier(double multiplier)
+   {
+      if (multiplier < 1)
+      {
+         throw new IllegalArgumentException("multiplier must be at least 1");
+      }
+      m_multiplier = multiplier;
+   }
+
+   /**
+    * Retrieves the budget limiting the retries.
+    *
+    * @return the retry budget, or {@code null} if retries are not limited.
+    */
+   public RetryBudget getRetryBudget()
+   {
+      return m_retryBudget;
+   }
+
+   /**
+    * Sets the budget limiting the retries.
+    *
+    * @param retryBudget the retry budget, or {@code null} not to limit the
+    *        retries beyond the maximum number of attempts.
+    */
+   public void setRetryBudget(RetryBudget retryBudget)
+   {
+      m_retryBudget = retryBudget;
+   }
+
+   /**
+    * Sets the pattern of the console failures worth retrying. A request the
+    * console answers with a Failure element whose text matches the pattern is
+    * retried if it is idempotent, e.g. {@code Pattern.compile("(?i)busy")}.
+    * By default console failures are not retried.
+    *
+    * @param retryableFailure the pattern matched against the text of the
+    *        Failure element, or {@code null} not to retry console failures.
+    */
+   public void setRetryableFailure(Pattern retryableFailure)
+   {
+      m_retryableFailure = retryableFailure;
+   }
+
+   /**
+    * Retrieves the pattern of the console failures worth retrying.
+    *
+    * @return the pattern, or {@code null} if console failures are not retried.
+    */
+   public Pattern getRetryableFailure()
+   {
+      return m_retryableFailure;
+   }
+
+   /**
+    * Overrides the idempotency of a kind of request, e.g. to allow retrying
+    * one of your own {@link TemplateAPIRequest} subclasses.
+    *
+    * @param requestClass the class of the requests.
+    * @param idempotent true if the requests can be safely replayed, false
+    *        otherwise.
+    */
+   public void setIdempotent(Class<? extends TemplateAPIRequest> requestClass, boolean idempotent)
+   {
+      m_idempotency.put(requestClass, idempotent);
+   }
+
+   /**
+    * Tells whether a request can be safely replayed. Defaults to
+    * {@link TemplateAPIRequest#isIdempotent()} unless overridden for its class
+    * through {@link #setIdempotent(Class, boolean)}.
+    *
+    * @param request the request.
+    * @return true if the request is idempotent, false otherwise.
+    */
+   public boolean isIdempotent(TemplateAPIRequest request)
+   {
+      final Boolean idempotent = m_idempotency.get(request.getClass());
+      return idempotent != null ? idempotent : request.isIdempotent();
+   }
+
+   /**
+    * Retrieves the counters of the decisions taken by this policy.
+    *
+    * @return the retry metrics.
+    */
+   public RetryMetrics getMetrics()
+   {
+      return m_metrics;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Tells whether a transport error is transient. Cancellations, requests
+    * failed fast by a {@link CircuitBreaker}, unsupported or malformed URLs
+    * and HTTP "not found" answers are not, other I/O errors
+    * (connection refused or reset, timeouts, server errors...) are.
+    *
+    * @param error the error the request failed with.
+    * @return true if the request may succeed when sent again.
+    */
+   protected boolean isRetryable(IOException error)
+   {
+      if (error instanceof CircuitBreakerOpenException)
+      {
+         return false;
+      }
+      if (error instanceof InterruptedIOException)
+      {
+         return error instanceof SocketTimeoutException;
+      }
+      return !(error instanceof MalformedURLException
+         || error instanceof UnknownServiceException
+         || error instanceof ProtocolException
+         || error instanceof FileNotFoundException);
+   }
+
+   /**
+    * Tells whether a failure answered by the console is transient. By default
+    * it is when its text matches the pattern set through
+    * {@link #setRetryableFailure(Pattern)}.
+    *
+    * @param request the request that failed.
+    * @param failure the response holding a Failure element.
+    * @return true if the request may succeed when sent again.
+    * @throws APIException when the response cannot be inspected.
+    */
+   protected boolean isRetryable(TemplateAPIRequest request, APIResponse failure)
+      throws APIException
+   {
+      final Pattern retryableFailure = m_retryableFailure;
+      return retryableFailure != null && retryableFailure.matcher(failure.grab("//Failure")).find();
+   }
+
+   /**
+    * Computes the backoff before a retry.
+    *
+    * @param retry the number of the retry, starting at 1.
+    * @return the backoff in nanoseconds.
+    */
+   protected long computeBackoff(int retry)
+   {
+      final double bound = Math.min(
+         (double) m_maxBackoffNanos,
+         m_initialBackoffNanos * Math.pow(m_multiplier, retry - 1));
+      return (long) (ThreadLocalRandom.current().nextDouble() * bound);
+   }
+
+   /**
+    * Tells whether console failures may be retried at all, so that sessions
+    * can skip inspecting responses otherwise.
+    */
+   boolean retriesFailures()
+   {
+      return m_retryableFailure != null && m_maxAttempts > 1;
+   }
+
+   /**
+    * Records a new request.
+    */
+   void onRequest()
+   {
+      m_metrics.m_requests.incrementAndGet();
+      final RetryBudget budget = m_retryBudget;
+      if (budget != null)
+      {
+         budget.deposit();
+      }
+   }
+
+   /**
+    * Records the success of a request.
+    *
+    * @param attempts the number of attempts it took.
+    */
+   void onSuccess(int attempts)
+   {
+      if (attempts > 1)
+      {
+         m_metrics.m_recovered.incrementAndGet();
+      }
+   }
+
+   /**
+    * Decides whether to retry a request that failed with a transport error.
+    *
+    * @param request the request.
+    * @param attempt the number of the attempt that failed, starting at 1.
+    * @param connected whether the connection was established, i.e. whether
+    *        the console may have received the request.
+    * @param error the error the attempt failed with.
+    * @param remainingNanos the time left before the deadline of the request.
+    * @return the backoff before the retry in nanoseconds, or -1 not to retry.
+    */
+   long retryDelay(
+      TemplateAPIRequest request,
+      int attempt,
+      boolean connected,
+      IOException error,
+      long remainingNanos)
+   {
+      if (!isRetryable(error))
+      {
+         return -1;
+      }
+      return retryDelay(request, attempt, connected, remainingNanos);
+   }
+
+   /**
+    * Decides whether to retry a request the console answered with a failure.
+    *
+    * @param request the request.
+    * @param attempt the number of the attempt that failed, starting at 1.
+    * @param failure the response holding a Failure element.
+    * @param remainingNanos the time left before the deadline of the request.
+    * @return the backoff before the retry in nanoseconds, or -1 not to retry.
+    * @throws APIException when the response cannot be inspected.
+    */
+   long retryDelay(
+      TemplateAPIRequest request,
+      int attempt,
+      APIResponse failure,
+      long remainingNanos)
+      throws APIException
+   {
+      if (!isRetryable(request, failure))
+      {
+         return -1;
+      }
+      return retryDelay(request, attempt, true, remainingNanos);
+   }
+
+   private long retryDelay(
+      TemplateAPIRequest request,
+      int attempt,
+      boolean received,
+      long remainingNanos)
+   {
+      if (m_maxAttempts == 1)
+      {
+         return -1;
+      }
+      if (attempt >= m_maxAttempts)
+      {
+         m_metrics.m_exhausted.incrementAndGet();
+         return -1;
+      }
+      if (received && !isIdempotent(request))
+      {
+         m_metrics.m_nonIdempotentRejections.incrementAndGet();
+         return -1;
+      }
+      final long delay = computeBackoff(attempt);
+      if (delay >= remainingNanos)
+      {
+         m_metrics.m_exhausted.incrementAndGet();
+         return -1;
+      }
+      final RetryBudget budget = m_retryBudget;
+      if (budget != null && !budget.withdraw())
+      {
+         m_metrics.m_budgetRejections.incrementAndGet();
+         return -1;
+      }
+      m_metrics.m_retries.incrementAndGet();
+      return delay;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The maximum number of attempts per request */
+   private volatile int m_maxAttempts = 3;
+   /** The backoff bound of the first retry, in nanoseconds */
+   private volatile long m_initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(200);
+   /** The backoff bound of any retry, in nanoseconds */
+   private volatile long m_maxBackoffNanos = TimeUnit.SECONDS.toNanos(10);
+   /** The factor the backoff bound grows by on every retry */
+   private volatile double m_multiplier = 2.0;
+   /** The budget limiting the retries, may be null */
+   private volatile RetryBudget m_retryBudget;
+   /** The pattern of the console failures worth retrying, may be null */
+   private volatile Pattern m_retryableFailure;
+   /** The idempotency overrides by request class */
+   private final Map<Class<? extends TemplateAPIRequest>, Boolean> m_idempotency =
+      new ConcurrentHashMap<Class<? extends TemplateAPIRequest>, Boolean>();
+   /** The counters of the decisions taken */
+   private final RetryMetrics m_metrics = new RetryMetrics();
+}
@@ -54,5 +54,6 @@ public class RoleDetailsRequest extends TemplateAPIRequest
        set("rolesGenerator", rolesGenerator);
        m_firstSupportedVersion = APISupportedVersion.V1_2;
        m_lastSupportedVersion = APISupportedVersion.V1_2;
+       m_idempotent = true;
 	}
 }
@@ -60,5 +60,6 @@ public class ScanStatisticsRequest extends TemplateAPIRequest
       set("scanId", scanId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
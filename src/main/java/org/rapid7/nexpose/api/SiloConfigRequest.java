@@ -52,5 +52,6 @@ public class SiloConfigRequest extends TemplateAPIRequest
       set("siloId", siloId);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
@@ -49,6 +49,7 @@ public class SiloLoginRequest extends TemplateAPIRequest
      set("silo-id", siloId);
      m_firstSupportedVersion = APISession.APISupportedVersion.V1_0;
      m_lastSupportedVersion = APISession.APISupportedVersion.V1_1;
+     m_idempotent = true;
   }
 
 }
@@ -47,5 +47,6 @@ public class SiloProfileConfigRequest extends TemplateAPIRequest
       set("silo-profile-id", siloProfileID);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
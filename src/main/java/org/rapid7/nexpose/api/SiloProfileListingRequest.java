@@ -45,5 +45,6 @@ public class SiloProfileListingRequest extends TemplateAPIRequest
       super(sessionID, syncID);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
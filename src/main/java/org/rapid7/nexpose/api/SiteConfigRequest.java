@@ -53,5 +53,6 @@ public class SiteConfigRequest extends TemplateAPIRequest
      set("site-id", siteId);
      m_firstSupportedVersion = APISession.APISupportedVersion.V1_0;
      m_lastSupportedVersion = APISession.APISupportedVersion.V1_1;
+     m_idempotent = true;
   }
 }
@@ -56,5 +56,6 @@ public class SiteDeviceListingRequest extends TemplateAPIRequest
       set("siteId", siteId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+/**
+ * Fills the sync-id of the requests that do not have one with an id taken
+ * from the tracing context of the caller, so that the logs of the console can
+ * be correlated with the traces. For instance with OpenTelemetry:
+ * <PRE>
+ * session.addInterceptor(new SyncIdInterceptor()
+ * {
+ *    protected String currentSyncId(RequestContext context)
+ *    {
+ *       SpanContext span = Span.current().getSpanContext();
+ *       return span.isValid() ? span.getTraceId() + "-" + span.getSpanId() : null;
+ *    }
+ * });
+ * </PRE>
+ * A sync-id given explicitly to a request is left alone. The console echoes
+ * the sync-id in its response.
+ */
+public abstract class SyncIdInterceptor extends RequestInterceptorAdapter
+{
+   @Override
+   public void beforeSend(RequestContext context)
+   {
+      final TemplateAPIRequest request = context.getRequest();
+      final String current = request.get("sync-id");
+      if (current != null && !current.isEmpty())
+      {
+         return;
+      }
+      final String syncId = currentSyncId(context);
+      if (syncId != null && !syncId.isEmpty())
+      {
+         request.set("sync-id", syncId);
+      }
+   }
+
+   /**
+    * Retrieves the id to use as the sync-id of a request, on the thread
+    * sending it.
+    *
+    * @param context the attempt about to be sent.
+    * @return the id of the current trace or span, or {@code null} if there
+    *         is none.
+    */
+   protected abstract String currentSyncId(RequestContext context);
+}
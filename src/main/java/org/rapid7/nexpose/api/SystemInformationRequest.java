@@ -48,5 +48,6 @@ public class SystemInformationRequest extends TemplateAPIRequest
       super(sessionID, syncID);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
@@ -127,6 +127,19 @@ public class TemplateAPIRequest implements APIRequest, Cloneable
       m_params.put(param, generator);
    }
 
+   /**
+    * Retrieves the value of the named parameter, as substituted in the
+    * template: string values are XML escaped.
+    *
+    * @param param the named parameter, e.g. "sync-id".
+    * @return the value of the parameter, or {@code null} if it is not set.
+    */
+   public String get(String param)
+   {
+      final IContentGenerator generator = m_params.get(param);
+      return generator != null ? generator.toString() : null;
+   }
+
    /**
     * Performs templated parameter substitution on the template XML string and
     * returns the result, which should be suitable for POSTing to the NeXpose
@@ -167,6 +180,7 @@ public class TemplateAPIRequest implements APIRequest, Cloneable
          req.m_requestXML = m_requestXML;
       req.m_firstSupportedVersion = m_firstSupportedVersion;
       req.m_lastSupportedVersion = m_lastSupportedVersion;
+      req.m_idempotent = m_idempotent;
       return req;
    }
 
@@ -241,6 +255,20 @@ public class TemplateAPIRequest implements APIRequest, Cloneable
       return m_lastSupportedVersion;
    }
 
+   /**
+    * Tells whether the request can safely be sent again when it is not known
+    * whether the console received it, e.g. after a connection reset. Read-only
+    * requests such as listings are idempotent, requests that change the
+    * console state or start an activity (a scan, a report generation...) are
+    * not.
+    *
+    * @return true if the request is idempotent, false otherwise.
+    */
+   public boolean isIdempotent()
+   {
+      return m_idempotent;
+   }
+
    /**
     * Retrieves the parsed xml that resulted from applying the dynamic values
     * to the parameter received. This is exactly the same XML that is being
@@ -265,6 +293,8 @@ public class TemplateAPIRequest implements APIRequest, Cloneable
    protected APISupportedVersion m_firstSupportedVersion;
    /**The last supported version for the Request*/
    protected APISupportedVersion m_lastSupportedVersion;
+   /**Whether the Request can be safely replayed, false unless set by the Request*/
+   protected boolean m_idempotent;
    /**The parsed xml that is being sent through the wire*/
    private String m_requestXML;
 }
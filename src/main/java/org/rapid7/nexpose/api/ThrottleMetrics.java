@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how long the requests going through a limit of a
+ * {@link RequestThrottle} wait for a permit.
+ */
+public class ThrottleMetrics
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the number of permits handed out.
+    *
+    * @return the number of requests let through.
+    */
+   public long getPermits()
+   {
+      return m_permits.get();
+   }
+
+   /**
+    * Retrieves the number of requests that had to wait for a permit.
+    *
+    * @return the number of throttled requests.
+    */
+   public long getThrottled()
+   {
+      return m_throttled.get();
+   }
+
+   /**
+    * Retrieves the number of requests that gave up waiting for a permit
+    * because they timed out or were cancelled.
+    *
+    * @return the number of rejected requests.
+    */
+   public long getRejected()
+   {
+      return m_rejected.get();
+   }
+
+   /**
+    * Retrieves the time spent waiting for permits, by all the requests.
+    *
+    * @param unit the unit to express the time in.
+    * @return the total queue time.
+    */
+   public long getTotalQueueTime(TimeUnit unit)
+   {
+      return unit.convert(m_queueNanos.get(), TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Retrieves the longest time a request waited for a permit.
+    *
+    * @param unit the unit to express the time in.
+    * @return the maximum queue time.
+    */
+   public long getMaxQueueTime(TimeUnit unit)
+   {
+      return unit.convert(m_maxQueueNanos.get(), TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Retrieves the average time a request waited for a permit, requests let
+    * through right away included.
+    *
+    * @param unit the unit to express the time in.
+    * @return the mean queue time.
+    */
+   public double getMeanQueueTime(TimeUnit unit)
+   {
+      final long permits = m_permits.get();
+      return permits == 0 ? 0 : (double) getTotalQueueTime(TimeUnit.NANOSECONDS) / permits / unit.toNanos(1);
+   }
+
+   /**
+    * Retrieves the number of requests currently waiting for a permit.
+    *
+    * @return the length of the queue.
+    */
+   public long getWaiting()
+   {
+      return m_waiting.get();
+   }
+
+   /**
+    * Retrieves the number of requests currently holding a permit.
+    *
+    * @return the number of requests in flight.
+    */
+   public long getInFlight()
+   {
+      return m_inFlight.get();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "permits=" + getPermits()
+         + " throttled=" + getThrottled()
+         + " rejected=" + getRejected()
+         + " meanQueueMs=" + String.format("%.3f", getMeanQueueTime(TimeUnit.MILLISECONDS))
+         + " maxQueueMs=" + getMaxQueueTime(TimeUnit.MILLISECONDS)
+         + " waiting=" + getWaiting()
+         + " inFlight=" + getInFlight();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Records a permit handed out.
+    *
+    * @param queueNanos the time the request waited for it.
+    */
+   void onPermit(long queueNanos)
+   {
+      m_permits.incrementAndGet();
+      m_inFlight.incrementAndGet();
+      if (queueNanos > 0)
+      {
+         m_throttled.incrementAndGet();
+         m_queueNanos.addAndGet(queueNanos);
+         long max = m_maxQueueNanos.get();
+         while (queueNanos > max && !m_maxQueueNanos.compareAndSet(max, queueNanos))
+         {
+            max = m_maxQueueNanos.get();
+         }
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The number of permits handed out */
+   private final AtomicLong m_permits = new AtomicLong();
+   /** The number of requests that waited for their permit */
+   private final AtomicLong m_throttled = new AtomicLong();
+   /** The number of requests that gave up waiting */
+   final AtomicLong m_rejected = new AtomicLong();
+   /** The time spent waiting, in nanoseconds */
+   private final AtomicLong m_queueNanos = new AtomicLong();
+   /** The longest wait, in nanoseconds */
+   private final AtomicLong m_maxQueueNanos = new AtomicLong();
+   /** The number of requests waiting */
+   final AtomicLong m_waiting = new AtomicLong();
+   /** The number of requests holding a permit */
+   final AtomicLong m_inFlight = new AtomicLong();
+}
@@ -53,5 +53,6 @@ public class TicketDetailsRequest extends TemplateAPIRequest
       set("ticketsGenerator", ticketsGenerator);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
@@ -53,5 +53,6 @@ public class TicketListingRequest extends TemplateAPIRequest
       set("filtersGenerator", filtersGenerator);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
@@ -50,5 +50,6 @@ public class UserConfigRequest extends TemplateAPIRequest
       set("userId", userId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_1;
+      m_idempotent = true;
    }
 }
@@ -52,5 +52,6 @@ public class VulnerabilityDetailsRequest extends TemplateAPIRequest
       set("vulnId", vulnId);
       m_firstSupportedVersion = APISupportedVersion.V1_0;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
@@ -54,5 +54,6 @@ public class VulnerabilityExceptionListingRequest extends TemplateAPIRequest
       set("timeDuration", timeDuration);
       m_firstSupportedVersion = APISupportedVersion.V1_2;
       m_lastSupportedVersion = APISupportedVersion.V1_2;
+      m_idempotent = true;
    }
 }
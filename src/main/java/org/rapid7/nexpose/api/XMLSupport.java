@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * Holds the XML factories of the API, configured once with secure
+ * processing, and the parsers, transformers and XPath evaluators built from
+ * them, one per thread and reset between uses. Looking factories up and
+ * building parsers is expensive, and responses are parsed from whichever
+ * thread sends the requests, so each thread keeps its own.
+ * <p>
+ * A borrowed instance must not be kept past the call that uses it: the next
+ * borrow from the same thread returns the same instance.
+ */
+final class XMLSupport
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Borrows the document builder of the current thread.
+    *
+    * @return a reset document builder.
+    * @throws ParserConfigurationException when no secure parser is available.
+    */
+   static DocumentBuilder documentBuilder() throws ParserConfigurationException
+   {
+      DocumentBuilder builder = ms_builders.get();
+      if (builder == null)
+      {
+         builder = builderFactory().newDocumentBuilder();
+         ms_builders.set(builder);
+      }
+      else
+      {
+         builder.reset();
+      }
+      return builder;
+   }
+
+   /**
+    * Borrows the identity transformer of the current thread.
+    *
+    * @return a reset transformer.
+    * @throws TransformerConfigurationException when no secure transformer is
+    *         available.
+    */
+   static Transformer transformer() throws TransformerConfigurationException
+   {
+      Transformer transformer = ms_transformers.get();
+      if (transformer == null)
+      {
+         transformer = transformerFactory().newTransformer();
+         ms_transformers.set(transformer);
+      }
+      else
+      {
+         transformer.reset();
+      }
+      return transformer;
+   }
+
+   /**
+    * Borrows the XPath evaluator of the current thread.
+    *
+    * @return a reset XPath evaluator.
+    */
+   static XPath xpath()
+   {
+      XPath xpath = ms_xpaths.get();
+      if (xpath == null)
+      {
+         xpath = ms_xpathFactory.newXPath();
+         ms_xpaths.set(xpath);
+      }
+      else
+      {
+         xpath.reset();
+      }
+      return xpath;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private XMLSupport()
+   {
+   }
+
+   /**
+    * Builds the parser factory on first use: responses never declare a DTD,
+    * so any DOCTYPE is refused and no external entity is ever resolved.
+    */
+   private static synchronized DocumentBuilderFactory builderFactory() throws ParserConfigurationException
+   {
+      if (ms_builderFactory == null)
+      {
+         final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+         factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+         factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+         factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+         factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+         factory.setXIncludeAware(false);
+         factory.setExpandEntityReferences(false);
+         ms_builderFactory = factory;
+      }
+      return ms_builderFactory;
+   }
+
+   /**
+    * Builds the transformer factory on first use, with no access to external
+    * stylesheets or DTDs.
+    */
+   private static synchronized TransformerFactory transformerFactory() throws TransformerConfigurationException
+   {
+      if (ms_transformerFactory == null)
+      {
+         final TransformerFactory factory = TransformerFactory.newInstance();
+         factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+         factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+         factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+         ms_transformerFactory = factory;
+      }
+      return ms_transformerFactory;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private static DocumentBuilderFactory ms_builderFactory;
+   private static TransformerFactory ms_transformerFactory;
+   private static final XPathFactory ms_xpathFactory = XPathFactory.newInstance();
+   private static final ThreadLocal<DocumentBuilder> ms_builders = new ThreadLocal<DocumentBuilder>();
+   private static final ThreadLocal<Transformer> ms_transformers = new ThreadLocal<Transformer>();
+   private static final ThreadLocal<XPath> ms_xpaths = new ThreadLocal<XPath>();
+}
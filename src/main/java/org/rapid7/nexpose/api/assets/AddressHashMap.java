@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.assets;
+
+import java.util.Arrays;
+
+/**
+ * A map of 128 bit addresses, held as two longs, to int values in
+ * open-addressing arrays, like {@link IntIntHashMap}.
+ */
+class AddressHashMap
+{
+   /**
+    * Creates an empty map.
+    *
+    * @param expectedKeys the number of keys expected.
+    */
+   AddressHashMap(int expectedKeys)
+   {
+      final int capacity = IntIntHashMap.capacity(expectedKeys);
+      m_high = new long[capacity];
+      m_low = new long[capacity];
+      m_values = new int[capacity];
+      Arrays.fill(m_values, MISSING);
+   }
+
+   /**
+    * Retrieves the value of an address.
+    *
+    * @return the value, -1 if the address is not in the map.
+    */
+   int get(long high, long low)
+   {
+      return m_values[slot(m_high, m_low, m_values, high, low)];
+   }
+
+   /**
+    * Maps an address to a value, not negative.
+    *
+    * @return the previous value, -1 if the address was not in the map.
+    */
+   int put(long high, long low, int value)
+   {
+      final int slot = slot(m_high, m_low, m_values, high, low);
+      final int previous = m_values[slot];
+      m_high[slot] = high;
+      m_low[slot] = low;
+      m_values[slot] = value;
+      if (previous == MISSING && ++m_size > m_values.length * IntIntHashMap.LOAD_FACTOR)
+      {
+         grow();
+      }
+      return previous;
+   }
+
+   /**
+    * Removes an address.
+    *
+    * @return the value of the address, -1 if it was not in the map.
+    */
+   int remove(long high, long low)
+   {
+      int slot = slot(m_high, m_low, m_values, high, low);
+      final int previous = m_values[slot];
+      if (previous == MISSING)
+      {
+         return MISSING;
+      }
+      m_size--;
+      final int mask = m_values.length - 1;
+      int next = (slot + 1) & mask;
+      while (m_values[next] != MISSING)
+      {
+         final int home = hash(m_high[next], m_low[next]) & mask;
+         if (((next - home) & mask) >= ((next - slot) & mask))
+         {
+            m_high[slot] = m_high[next];
+            m_low[slot] = m_low[next];
+            m_values[slot] = m_values[next];
+            slot = next;
+         }
+         next = (next + 1) & mask;
+      }
+      m_values[slot] = MISSING;
+      return previous;
+   }
+
+   int size()
+   {
+      return m_size;
+   }
+
+   private static int hash(long high, long low)
+   {
+      long hash = (high * 0x9e3779b97f4a7c15L) ^ low;
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      return (int) hash;
+   }
+
+   private static int slot(long[] highs, long[] lows, int[] values, long high, long low)
+   {
+      final int mask = values.length - 1;
+      int slot = hash(high, low) & mask;
+      while (values[slot] != MISSING && (highs[slot] != high || lows[slot] != low))
+      {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+   private void grow()
+   {
+      final long[] highs = new long[m_values.length << 1];
+      final long[] lows = new long[highs.length];
+      final int[] values = new int[highs.length];
+      Arrays.fill(values, MISSING);
+      for (int i = 0; i < m_values.length; i++)
+      {
+         if (m_values[i] != MISSING)
+         {
+            final int slot = slot(highs, lows, values, m_high[i], m_low[i]);
+            highs[slot] = m_high[i];
+            lows[slot] = m_low[i];
+            values[slot] = m_values[i];
+         }
+      }
+      m_high = highs;
+      m_low = lows;
+      m_values = values;
+   }
+
+   private static final int MISSING = IntIntHashMap.MISSING;
+   private long[] m_high;
+   private long[] m_low;
+   private int[] m_values;
+   private int m_size;
+}
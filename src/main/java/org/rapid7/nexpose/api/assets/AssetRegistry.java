@@ -0,0 +1,716 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.assets;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.SiteDeviceListingRequest;
+import org.rapid7.nexpose.api.domain.AssetSummary;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Keeps the devices of the console in memory, to map the addresses found by
+ * other tools to devices and sites without a request per lookup:
+ * <PRE>
+ * AssetRegistry registry = new AssetRegistry();
+ * registry.refreshAll(session);
+ * int deviceId = registry.findDevice("10.0.0.1");
+ * int siteId = registry.getSiteId(deviceId);
+ * ...
+ * // After a scan of the site.
+ * registry.refresh(session, siteId);
+ * </PRE>
+ * The devices are stored column by column in primitive arrays (device and
+ * site ids, addresses packed into two longs, risk scores and factors),
+ * indexed by open addressing hash tables of primitive keys. A lookup hashes
+ * and probes without allocating, and a device costs about 60 bytes instead
+ * of an {@link AssetSummary} with its strings. The devices of a site are
+ * chained together, so that a site is refreshed on its own: the devices
+ * listed are added or updated in place and the ones no longer listed are
+ * removed, their slots reused.
+ * <P>
+ * Device ids are unique, but an address may be shared by devices of
+ * different sites: it then maps to the device refreshed last. Addresses
+ * which are not IP literals, e.g. the host names of some devices, are kept
+ * as strings. The registry is safe for concurrent use; lookups run in
+ * parallel and wait for refreshes only while their results are applied.
+ */
+public class AssetRegistry
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an empty registry.
+    */
+   public AssetRegistry()
+   {
+      this(1024);
+   }
+
+   /**
+    * Creates an empty registry sized for a number of devices.
+    *
+    * @param expectedDevices the number of devices expected, the registry
+    *        grows past it as needed.
+    */
+   public AssetRegistry(int expectedDevices)
+   {
+      final int capacity = Math.max(16, expectedDevices);
+      m_deviceIds = new int[capacity];
+      m_siteIds = new int[capacity];
+      m_highs = new long[capacity];
+      m_lows = new long[capacity];
+      m_names = new String[capacity];
+      m_riskScores = new float[capacity];
+      m_riskFactors = new float[capacity];
+      m_generations = new int[capacity];
+      m_previous = new int[capacity];
+      m_next = new int[capacity];
+      m_sameAddress = new int[capacity];
+      m_free = new int[capacity];
+      m_devices = new IntIntHashMap(capacity);
+      m_addresses = new AddressHashMap(capacity);
+      m_siteHeads = new IntIntHashMap(16);
+      m_hostNames = new HashMap<String, Integer>();
+   }
+
+   /**
+    * Refreshes the devices of a site with a SiteDeviceListingRequest.
+    *
+    * @param session the logged in session to list the devices with.
+    * @param siteId the id of the site.
+    * @return the number of devices of the site.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public int refresh(APISession session, int siteId) throws IOException, APIException
+   {
+      final Map<Integer, List<AssetSummary>> sites = list(session, String.valueOf(siteId));
+      final List<AssetSummary> devices = sites.get(siteId);
+      return update(siteId, devices == null ? new ArrayList<AssetSummary>() : devices);
+   }
+
+   /**
+    * Refreshes the devices of every site with a single
+    * SiteDeviceListingRequest, and removes the sites no longer listed.
+    *
+    * @param session the logged in session to list the devices with.
+    * @return the number of devices.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public int refreshAll(APISession session) throws IOException, APIException
+   {
+      final Map<Integer, List<AssetSummary>> sites = list(session, "");
+      m_lock.writeLock().lock();
+      try
+      {
+         for (int siteId : getSiteIds())
+         {
+            if (!sites.containsKey(siteId))
+            {
+               removeSite(siteId);
+            }
+         }
+         for (Map.Entry<Integer, List<AssetSummary>> site : sites.entrySet())
+         {
+            update(site.getKey(), site.getValue());
+         }
+         return m_devices.size();
+      }
+      finally
+      {
+         m_lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Replaces the devices of a site: the devices given are added, or updated
+    * when known, and the other devices of the site are removed. A device
+    * known in another site moves to this one.
+    *
+    * @param siteId the id of the site.
+    * @param devices all the devices of the site. Their site id is ignored.
+    * @return the number of devices of the site.
+    */
+   public int update(int siteId, Iterable<AssetSummary> devices)
+   {
+      final long[] packed = new long[2];
+      m_lock.writeLock().lock();
+      try
+      {
+         final int generation = ++m_generation;
+         int count = 0;
+         for (AssetSummary device : devices)
+         {
+            int slot = m_devices.get(device.getId());
+            if (slot == IntIntHashMap.MISSING)
+            {
+               slot = allocate();
+               m_deviceIds[slot] = device.getId();
+               m_devices.put(device.getId(), slot);
+               link(slot, siteId);
+            }
+            else if (m_siteIds[slot] != siteId)
+            {
+               unlink(slot);
+               link(slot, siteId);
+               unmapAddress(slot);
+            }
+            else
+            {
+               unmapAddress(slot);
+            }
+            mapAddress(slot, device.getAddress(), packed);
+            m_riskScores[slot] = device.getRiskScore();
+            m_riskFactors[slot] = device.getRiskFactor();
+            if (m_generations[slot] != generation)
+            {
+               m_generations[slot] = generation;
+               count++;
+            }
+         }
+         int slot = m_siteHeads.get(siteId);
+         while (slot != NONE)
+         {
+            final int next = m_next[slot];
+            if (m_generations[slot] != generation)
+            {
+               release(slot);
+            }
+            slot = next;
+         }
+         return count;
+      }
+      finally
+      {
+         m_lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Removes the devices of a site.
+    *
+    * @param siteId the id of the site.
+    * @return the number of devices removed.
+    */
+   public int removeSite(int siteId)
+   {
+      m_lock.writeLock().lock();
+      try
+      {
+         int count = 0;
+         int slot = m_siteHeads.get(siteId);
+         while (slot != NONE)
+         {
+            final int next = m_next[slot];
+            release(slot);
+            count++;
+            slot = next;
+         }
+         return count;
+      }
+      finally
+      {
+         m_lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * Finds the device of an address.
+    *
+    * @param address the IPv4 or IPv6 address, or the host name, of the
+    *        device.
+    * @return the id of the device, -1 if unknown.
+    */
+   public int findDevice(String address)
+   {
+      final long[] packed = new long[2];
+      final boolean literal = IPAddresses.pack(address, packed);
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         final int slot;
+         if (literal)
+         {
+            slot = m_addresses.get(packed[0], packed[1]);
+         }
+         else
+         {
+            final Integer hostSlot = address == null ? null : m_hostNames.get(address.toLowerCase());
+            slot = hostSlot == null ? NONE : hostSlot;
+         }
+         return slot == NONE ? -1 : m_deviceIds[slot];
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the site of a device.
+    *
+    * @param deviceId the id of the device.
+    * @return the id of its site, -1 if the device is unknown.
+    */
+   public int getSiteId(int deviceId)
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         final int slot = m_devices.get(deviceId);
+         return slot == IntIntHashMap.MISSING ? -1 : m_siteIds[slot];
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the address of a device.
+    *
+    * @param deviceId the id of the device.
+    * @return its address, IPv6 addresses in their full form, {@code null} if
+    *         the device is unknown.
+    */
+   public String getAddress(int deviceId)
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         final int slot = m_devices.get(deviceId);
+         if (slot == IntIntHashMap.MISSING)
+         {
+            return null;
+         }
+         return m_names[slot] != null ? m_names[slot] : IPAddresses.unpack(m_highs[slot], m_lows[slot]);
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the risk score of a device.
+    *
+    * @param deviceId the id of the device.
+    * @return its risk score, NaN if the device is unknown.
+    */
+   public float getRiskScore(int deviceId)
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         final int slot = m_devices.get(deviceId);
+         return slot == IntIntHashMap.MISSING ? Float.NaN : m_riskScores[slot];
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the risk factor of a device.
+    *
+    * @param deviceId the id of the device.
+    * @return its risk factor, NaN if the device is unknown.
+    */
+   public float getRiskFactor(int deviceId)
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         final int slot = m_devices.get(deviceId);
+         return slot == IntIntHashMap.MISSING ? Float.NaN : m_riskFactors[slot];
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the devices of a site.
+    *
+    * @param siteId the id of the site.
+    * @return the ids of its devices, empty if the site is unknown.
+    */
+   public int[] getDevices(int siteId)
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         int[] devices = new int[16];
+         int count = 0;
+         for (int slot = m_siteHeads.get(siteId); slot != NONE; slot = m_next[slot])
+         {
+            if (count == devices.length)
+            {
+               devices = Arrays.copyOf(devices, count * 2);
+            }
+            devices[count++] = m_deviceIds[slot];
+         }
+         return Arrays.copyOf(devices, count);
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the sites holding devices.
+    *
+    * @return the ids of the sites.
+    */
+   public int[] getSiteIds()
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         final int[] sites = new int[m_siteHeads.size()];
+         int count = 0;
+         for (int slot = 0; slot < m_used && count < sites.length; slot++)
+         {
+            if (m_previous[slot] == NONE && m_deviceIds[slot] != FREE)
+            {
+               sites[count++] = m_siteIds[slot];
+            }
+         }
+         return sites;
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Retrieves the number of devices.
+    *
+    * @return the number of devices.
+    */
+   public int size()
+   {
+      final Lock lock = m_lock.readLock();
+      lock.lock();
+      try
+      {
+         return m_devices.size();
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Lists the devices of one or every site, by site id.
+    */
+   private static Map<Integer, List<AssetSummary>> list(APISession session, String siteId)
+      throws IOException, APIException
+   {
+      final APIResponse response = session.executeAPIRequest(
+         new SiteDeviceListingRequest(session.getSessionID(), null, siteId));
+      if (response.isFailure())
+      {
+         throw new APIException("SiteDeviceListingRequest failed");
+      }
+      final Map<Integer, List<AssetSummary>> sites = new HashMap<Integer, List<AssetSummary>>();
+      final NodeList siteNodes = response.grabNodes("/SiteDeviceListingResponse/SiteDevices");
+      for (int i = 0; siteNodes != null && i < siteNodes.getLength(); i++)
+      {
+         final Element siteNode = (Element) siteNodes.item(i);
+         final int id;
+         try
+         {
+            id = Integer.parseInt(siteNode.getAttribute("site-id"));
+         }
+         catch (NumberFormatException e)
+         {
+            throw new APIException("Cannot parse the response, the attribute: site-id is not an integer: "
+               + siteNode.getAttribute("site-id"));
+         }
+         final List<AssetSummary> devices = new ArrayList<AssetSummary>();
+         for (Node node = siteNode.getFirstChild(); node != null; node = node.getNextSibling())
+         {
+            if (node instanceof Element && "device".equals(node.getNodeName()))
+            {
+               devices.add(new AssetSummary((Element) node));
+            }
+         }
+         sites.put(id, devices);
+      }
+      return sites;
+   }
+
+   /**
+    * Takes a free slot, growing the columns if there is none.
+    */
+   private int allocate()
+   {
+      if (m_freeCount > 0)
+      {
+         return m_free[--m_freeCount];
+      }
+      if (m_used == m_deviceIds.length)
+      {
+         final int capacity = m_used * 2;
+         m_deviceIds = Arrays.copyOf(m_deviceIds, capacity);
+         m_siteIds = Arrays.copyOf(m_siteIds, capacity);
+         m_highs = Arrays.copyOf(m_highs, capacity);
+         m_lows = Arrays.copyOf(m_lows, capacity);
+         m_riskScores = Arrays.copyOf(m_riskScores, capacity);
+         m_riskFactors = Arrays.copyOf(m_riskFactors, capacity);
+         m_generations = Arrays.copyOf(m_generations, capacity);
+         m_previous = Arrays.copyOf(m_previous, capacity);
+         m_next = Arrays.copyOf(m_next, capacity);
+         m_sameAddress = Arrays.copyOf(m_sameAddress, capacity);
+         m_free = Arrays.copyOf(m_free, capacity);
+         m_names = Arrays.copyOf(m_names, capacity);
+      }
+      return m_used++;
+   }
+
+   /**
+    * Removes the device of a slot and frees the slot.
+    */
+   private void release(int slot)
+   {
+      unlink(slot);
+      unmapAddress(slot);
+      m_devices.remove(m_deviceIds[slot]);
+      m_deviceIds[slot] = FREE;
+      m_generations[slot] = 0;
+      m_free[m_freeCount++] = slot;
+   }
+
+   /**
+    * Puts a slot at the head of the chain of a site.
+    */
+   private void link(int slot, int siteId)
+   {
+      final int head = m_siteHeads.get(siteId);
+      m_siteIds[slot] = siteId;
+      m_previous[slot] = NONE;
+      m_next[slot] = head;
+      if (head != NONE)
+      {
+         m_previous[head] = slot;
+      }
+      m_siteHeads.put(siteId, slot);
+   }
+
+   /**
+    * Takes a slot out of the chain of its site, dropping the site with its
+    * last device.
+    */
+   private void unlink(int slot)
+   {
+      final int previous = m_previous[slot];
+      final int next = m_next[slot];
+      if (next != NONE)
+      {
+         m_previous[next] = previous;
+      }
+      if (previous != NONE)
+      {
+         m_next[previous] = next;
+      }
+      else if (next != NONE)
+      {
+         m_siteHeads.put(m_siteIds[slot], next);
+      }
+      else
+      {
+         m_siteHeads.remove(m_siteIds[slot]);
+      }
+      m_previous[slot] = NONE;
+      m_next[slot] = NONE;
+   }
+
+   /**
+    * Stores the address of a slot and maps it to the slot, ahead of the other
+    * devices with the same address.
+    */
+   private void mapAddress(int slot, String address, long[] packed)
+   {
+      if (IPAddresses.pack(address, packed))
+      {
+         m_highs[slot] = packed[0];
+         m_lows[slot] = packed[1];
+         m_names[slot] = null;
+         m_sameAddress[slot] = m_addresses.get(packed[0], packed[1]);
+         m_addresses.put(packed[0], packed[1], slot);
+      }
+      else
+      {
+         m_highs[slot] = 0;
+         m_lows[slot] = 0;
+         m_names[slot] = address == null ? "" : address.toLowerCase();
+         final Integer mapped = m_hostNames.put(m_names[slot], slot);
+         m_sameAddress[slot] = mapped == null ? NONE : mapped;
+      }
+   }
+
+   /**
+    * Takes a slot out of the devices with its address, mapping the address to
+    * the next of them, if any.
+    */
+   private void unmapAddress(int slot)
+   {
+      final int head;
+      if (m_names[slot] != null)
+      {
+         final Integer mapped = m_hostNames.get(m_names[slot]);
+         head = mapped == null ? NONE : mapped;
+      }
+      else
+      {
+         head = m_addresses.get(m_highs[slot], m_lows[slot]);
+      }
+      final int next = m_sameAddress[slot];
+      if (head == slot)
+      {
+         if (m_names[slot] != null)
+         {
+            if (next == NONE)
+            {
+               m_hostNames.remove(m_names[slot]);
+            }
+            else
+            {
+               m_hostNames.put(m_names[slot], next);
+            }
+         }
+         else if (next == NONE)
+         {
+            m_addresses.remove(m_highs[slot], m_lows[slot]);
+         }
+         else
+         {
+            m_addresses.put(m_highs[slot], m_lows[slot], next);
+         }
+      }
+      else
+      {
+         // few devices share an address: walk their chain
+         int previous = head;
+         while (previous != NONE && m_sameAddress[previous] != slot)
+         {
+            previous = m_sameAddress[previous];
+         }
+         if (previous != NONE)
+         {
+            m_sameAddress[previous] = next;
+         }
+      }
+      m_names[slot] = null;
+      m_sameAddress[slot] = NONE;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The end of a chain, or an unknown slot */
+   private static final int NONE = IntIntHashMap.MISSING;
+   /** The device id of a free slot */
+   private static final int FREE = Integer.MIN_VALUE;
+
+   /** Guards the columns and the indexes */
+   private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+   /** The id of the device of every slot */
+   private int[] m_deviceIds;
+   /** The id of the site of every slot */
+   private int[] m_siteIds;
+   /** The high 64 bits of the address of every slot */
+   private long[] m_highs;
+   /** The low 64 bits of the address of every slot */
+   private long[] m_lows;
+   /** The address of the slots whose address is not an IP literal */
+   private String[] m_names;
+   /** The risk score of every slot */
+   private float[] m_riskScores;
+   /** The risk factor of every slot */
+   private float[] m_riskFactors;
+   /** The refresh which last listed the device of every slot */
+   private int[] m_generations;
+   /** The previous slot of the same site */
+   private int[] m_previous;
+   /** The next slot of the same site */
+   private int[] m_next;
+   /** The next slot with the same address, the most recently mapped first */
+   private int[] m_sameAddress;
+   /** The stack of the free slots */
+   private int[] m_free;
+   /** The number of free slots */
+   private int m_freeCount;
+   /** The number of slots ever used */
+   private int m_used;
+   /** The current refresh */
+   private int m_generation;
+   /** Maps the device ids to their slot */
+   private final IntIntHashMap m_devices;
+   /** Maps the packed addresses to their slot */
+   private final AddressHashMap m_addresses;
+   /** Maps the site ids to the first slot of their chain */
+   private final IntIntHashMap m_siteHeads;
+   /** Maps the addresses which are not IP literals to their slot */
+   private final Map<String, Integer> m_hostNames;
+}
@@ -0,0 +1,828 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.assets;
+
+import java.util.Arrays;
+
+/**
+ * A set of device ids stored as a compressed bitmap, to compute asset group
+ * memberships over large estates, e.g. the devices of two sites but those of
+ * a group:
+ * <PRE>
+ * DeviceSet devices = membership.getSites(1, 2).difference(membership.getGroup(3));
+ * </PRE>
+ * The ids are split by their high 16 bits into containers of at most 65536
+ * ids: a sorted array of the low 16 bits while the container holds up to
+ * 4096 ids, a bitmap of 8 KB beyond. A million consecutive ids take 128 KB,
+ * sparse ids 2 bytes each, where a {@code HashSet} of strings takes about
+ * 100 bytes per id. The set operations work container by container, word
+ * by word between bitmaps, and return new sets.
+ * <P>
+ * Device ids are positive. The sets are not safe for concurrent updates.
+ */
+public class DeviceSet
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an empty set.
+    */
+   public DeviceSet()
+   {
+      m_keys = new char[4];
+      m_containers = new Container[4];
+   }
+
+   /**
+    * Creates a set of device ids.
+    *
+    * @param deviceIds the ids, in any order.
+    * @return the set.
+    */
+   public static DeviceSet of(int... deviceIds)
+   {
+      final int[] sorted = deviceIds.clone();
+      Arrays.sort(sorted);
+      final DeviceSet set = new DeviceSet();
+      for (int deviceId : sorted)
+      {
+         set.add(deviceId);
+      }
+      return set;
+   }
+
+   /**
+    * Computes the union of sets.
+    *
+    * @param sets the sets.
+    * @return a new set of the ids of any of the sets.
+    */
+   public static DeviceSet union(DeviceSet... sets)
+   {
+      DeviceSet union = new DeviceSet();
+      for (DeviceSet set : sets)
+      {
+         union = union.union(set);
+      }
+      return union;
+   }
+
+   /**
+    * Adds a device id.
+    *
+    * @param deviceId the id, not negative.
+    * @return true if the id was not in the set.
+    */
+   public boolean add(int deviceId)
+   {
+      if (deviceId < 0)
+      {
+         throw new IllegalArgumentException("Device ids cannot be negative: " + deviceId);
+      }
+      final char key = (char) (deviceId >>> 16);
+      int index = indexOf(key);
+      if (index < 0)
+      {
+         index = -index - 1;
+         insert(index, key, new ArrayContainer(new char[4], 0));
+      }
+      final Container container = m_containers[index];
+      final int cardinality = container.m_cardinality;
+      m_containers[index] = container.add((char) deviceId);
+      if (m_containers[index].m_cardinality == cardinality)
+      {
+         return false;
+      }
+      m_size++;
+      return true;
+   }
+
+   /**
+    * Removes a device id.
+    *
+    * @param deviceId the id.
+    * @return true if the id was in the set.
+    */
+   public boolean remove(int deviceId)
+   {
+      final int index = deviceId < 0 ? -1 : indexOf((char) (deviceId >>> 16));
+      if (index < 0)
+      {
+         return false;
+      }
+      final Container container = m_containers[index];
+      final int cardinality = container.m_cardinality;
+      m_containers[index] = container.remove((char) deviceId);
+      if (m_containers[index].m_cardinality == cardinality)
+      {
+         return false;
+      }
+      if (m_containers[index].m_cardinality == 0)
+      {
+         System.arraycopy(m_keys, index + 1, m_keys, index, m_count - index - 1);
+         System.arraycopy(m_containers, index + 1, m_containers, index, m_count - index - 1);
+         m_containers[--m_count] = null;
+      }
+      m_size--;
+      return true;
+   }
+
+   /**
+    * Tells whether the set holds a device id.
+    *
+    * @param deviceId the id.
+    * @return true if it does.
+    */
+   public boolean contains(int deviceId)
+   {
+      final int index = deviceId < 0 ? -1 : indexOf((char) (deviceId >>> 16));
+      return index >= 0 && m_containers[index].contains((char) deviceId);
+   }
+
+   /**
+    * Retrieves the number of device ids.
+    *
+    * @return the number of ids.
+    */
+   public int size()
+   {
+      return m_size;
+   }
+
+   /**
+    * Tells whether the set is empty.
+    *
+    * @return true if it is.
+    */
+   public boolean isEmpty()
+   {
+      return m_size == 0;
+   }
+
+   /**
+    * Finds the smallest device id of the set from another one, to go through
+    * the ids in order without boxing them:
+    * <PRE>
+    * for (int id = set.nextDevice(0); id >= 0; id = set.nextDevice(id + 1))
+    * </PRE>
+    *
+    * @param fromId the id to start from, inclusive.
+    * @return the id found, -1 if there is none or fromId is negative.
+    */
+   public int nextDevice(int fromId)
+   {
+      if (fromId < 0)
+      {
+         return -1;
+      }
+      int index = indexOf((char) (fromId >>> 16));
+      if (index >= 0)
+      {
+         final int low = m_containers[index].next(fromId & 0xffff);
+         if (low >= 0)
+         {
+            return (m_keys[index] << 16) | low;
+         }
+         index++;
+      }
+      else
+      {
+         index = -index - 1;
+      }
+      return index < m_count ? (m_keys[index] << 16) | m_containers[index].next(0) : -1;
+   }
+
+   /**
+    * Retrieves the device ids.
+    *
+    * @return the ids, in ascending order.
+    */
+   public int[] toArray()
+   {
+      final int[] ids = new int[m_size];
+      int count = 0;
+      for (int i = 0; i < m_count; i++)
+      {
+         count = m_containers[i].copyTo(m_keys[i] << 16, ids, count);
+      }
+      return ids;
+   }
+
+   /**
+    * Computes the union with another set.
+    *
+    * @param other the other set.
+    * @return a new set of the ids of either set.
+    */
+   public DeviceSet union(DeviceSet other)
+   {
+      final DeviceSet union = new DeviceSet(m_count + other.m_count);
+      int i = 0;
+      int j = 0;
+      while (i < m_count || j < other.m_count)
+      {
+         final int key = i < m_count ? m_keys[i] : Integer.MAX_VALUE;
+         final int otherKey = j < other.m_count ? other.m_keys[j] : Integer.MAX_VALUE;
+         if (key < otherKey)
+         {
+            union.append((char) key, m_containers[i++].copy());
+         }
+         else if (key > otherKey)
+         {
+            union.append((char) otherKey, other.m_containers[j++].copy());
+         }
+         else
+         {
+            union.append((char) key, or(m_containers[i++], other.m_containers[j++]));
+         }
+      }
+      return union;
+   }
+
+   /**
+    * Computes the intersection with another set.
+    *
+    * @param other the other set.
+    * @return a new set of the ids of both sets.
+    */
+   public DeviceSet intersection(DeviceSet other)
+   {
+      final DeviceSet intersection = new DeviceSet(Math.min(m_count, other.m_count));
+      int i = 0;
+      int j = 0;
+      while (i < m_count && j < other.m_count)
+      {
+         if (m_keys[i] < other.m_keys[j])
+         {
+            i++;
+         }
+         else if (m_keys[i] > other.m_keys[j])
+         {
+            j++;
+         }
+         else
+         {
+            intersection.append(m_keys[i], and(m_containers[i++], other.m_containers[j++]));
+         }
+      }
+      return intersection;
+   }
+
+   /**
+    * Computes the difference with another set.
+    *
+    * @param other the other set.
+    * @return a new set of the ids of this set which are not in the other.
+    */
+   public DeviceSet difference(DeviceSet other)
+   {
+      final DeviceSet difference = new DeviceSet(m_count);
+      int j = 0;
+      for (int i = 0; i < m_count; i++)
+      {
+         while (j < other.m_count && other.m_keys[j] < m_keys[i])
+         {
+            j++;
+         }
+         if (j < other.m_count && other.m_keys[j] == m_keys[i])
+         {
+            difference.append(m_keys[i], andNot(m_containers[i], other.m_containers[j]));
+         }
+         else
+         {
+            difference.append(m_keys[i], m_containers[i].copy());
+         }
+      }
+      return difference;
+   }
+
+   /**
+    * Estimates the memory taken by the set.
+    *
+    * @return the size of its arrays, in bytes.
+    */
+   public long getSizeInBytes()
+   {
+      long size = 2L * m_keys.length + 4L * m_containers.length;
+      for (int i = 0; i < m_count; i++)
+      {
+         size += m_containers[i].getSizeInBytes();
+      }
+      return size;
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#equals(java.lang.Object)
+    */
+   @Override
+   public boolean equals(Object object)
+   {
+      if (!(object instanceof DeviceSet))
+      {
+         return false;
+      }
+      final DeviceSet other = (DeviceSet) object;
+      return m_size == other.m_size && Arrays.equals(toArray(), other.toArray());
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#hashCode()
+    */
+   @Override
+   public int hashCode()
+   {
+      return Arrays.hashCode(toArray());
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "DeviceSet[" + m_size + " devices, " + m_count + " containers]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an empty set for a number of containers.
+    */
+   private DeviceSet(int containers)
+   {
+      m_keys = new char[Math.max(1, containers)];
+      m_containers = new Container[m_keys.length];
+   }
+
+   /**
+    * Finds the container of a key.
+    *
+    * @return its index, or -(insertion point) - 1.
+    */
+   private int indexOf(char key)
+   {
+      if (m_count > 0 && m_keys[m_count - 1] == key)
+      {
+         // ids are often added in order
+         return m_count - 1;
+      }
+      return Arrays.binarySearch(m_keys, 0, m_count, key);
+   }
+
+   /**
+    * Inserts a container.
+    */
+   private void insert(int index, char key, Container container)
+   {
+      if (m_count == m_keys.length)
+      {
+         m_keys = Arrays.copyOf(m_keys, m_count * 2);
+         m_containers = Arrays.copyOf(m_containers, m_count * 2);
+      }
+      System.arraycopy(m_keys, index, m_keys, index + 1, m_count - index);
+      System.arraycopy(m_containers, index, m_containers, index + 1, m_count - index);
+      m_keys[index] = key;
+      m_containers[index] = container;
+      m_count++;
+   }
+
+   /**
+    * Appends the container of the largest key, unless it is empty.
+    */
+   private void append(char key, Container container)
+   {
+      if (container.m_cardinality > 0)
+      {
+         insert(m_count, key, container);
+         m_size += container.m_cardinality;
+      }
+   }
+
+   private static Container or(Container a, Container b)
+   {
+      if (a instanceof BitmapContainer || b instanceof BitmapContainer)
+      {
+         final BitmapContainer bitmap;
+         final Container other;
+         if (a instanceof BitmapContainer)
+         {
+            bitmap = (BitmapContainer) a.copy();
+            other = b;
+         }
+         else
+         {
+            bitmap = (BitmapContainer) b.copy();
+            other = a;
+         }
+         if (other instanceof BitmapContainer)
+         {
+            final long[] words = ((BitmapContainer) other).m_words;
+            for (int i = 0; i < BITMAP_WORDS; i++)
+            {
+               bitmap.m_words[i] |= words[i];
+            }
+            bitmap.count();
+         }
+         else
+         {
+            final ArrayContainer array = (ArrayContainer) other;
+            for (int i = 0; i < array.m_cardinality; i++)
+            {
+               bitmap.add(array.m_values[i]);
+            }
+         }
+         return bitmap;
+      }
+      final ArrayContainer x = (ArrayContainer) a;
+      final ArrayContainer y = (ArrayContainer) b;
+      final char[] values = new char[x.m_cardinality + y.m_cardinality];
+      int i = 0;
+      int j = 0;
+      int count = 0;
+      while (i < x.m_cardinality && j < y.m_cardinality)
+      {
+         final char u = x.m_values[i];
+         final char v = y.m_values[j];
+         if (u <= v)
+         {
+            i++;
+         }
+         if (v <= u)
+         {
+            j++;
+         }
+         values[count++] = u < v ? u : v;
+      }
+      while (i < x.m_cardinality)
+      {
+         values[count++] = x.m_values[i++];
+      }
+      while (j < y.m_cardinality)
+      {
+         values[count++] = y.m_values[j++];
+      }
+      final ArrayContainer union = new ArrayContainer(values, count);
+      return count > MAX_ARRAY ? union.toBitmap() : union;
+   }
+
+   private static Container and(Container a, Container b)
+   {
+      if (a instanceof BitmapContainer && b instanceof BitmapContainer)
+      {
+         final BitmapContainer bitmap = (BitmapContainer) a.copy();
+         final long[] words = ((BitmapContainer) b).m_words;
+         for (int i = 0; i < BITMAP_WORDS; i++)
+         {
+            bitmap.m_words[i] &= words[i];
+         }
+         return bitmap.count().shrink();
+      }
+      if (a instanceof BitmapContainer)
+      {
+         return filter((ArrayContainer) b, a, true);
+      }
+      return filter((ArrayContainer) a, b, true);
+   }
+
+   private static Container andNot(Container a, Container b)
+   {
+      if (a instanceof ArrayContainer)
+      {
+         return filter((ArrayContainer) a, b, false);
+      }
+      final BitmapContainer bitmap = (BitmapContainer) a.copy();
+      if (b instanceof BitmapContainer)
+      {
+         final long[] words = ((BitmapContainer) b).m_words;
+         for (int i = 0; i < BITMAP_WORDS; i++)
+         {
+            bitmap.m_words[i] &= ~words[i];
+         }
+         bitmap.count();
+      }
+      else
+      {
+         final ArrayContainer array = (ArrayContainer) b;
+         for (int i = 0; i < array.m_cardinality; i++)
+         {
+            bitmap.clear(array.m_values[i]);
+         }
+      }
+      return bitmap.shrink();
+   }
+
+   /**
+    * Keeps the values of an array which are, or are not, in a container.
+    */
+   private static Container filter(ArrayContainer array, Container container, boolean in)
+   {
+      final char[] values = new char[array.m_cardinality];
+      int count = 0;
+      for (int i = 0; i < array.m_cardinality; i++)
+      {
+         if (container.contains(array.m_values[i]) == in)
+         {
+            values[count++] = array.m_values[i];
+         }
+      }
+      return new ArrayContainer(values, count);
+   }
+
+   /**
+    * The ids of a set sharing their high 16 bits.
+    */
+   private abstract static class Container
+   {
+      /** The number of values */
+      int m_cardinality;
+
+      /** @return the container holding the value, this one or a new one. */
+      abstract Container add(char value);
+
+      /** @return the container without the value, this one or a new one. */
+      abstract Container remove(char value);
+
+      abstract boolean contains(char value);
+
+      /** @return the smallest value from the given one, -1 if none. */
+      abstract int next(int from);
+
+      /** @return the index after the last id copied. */
+      abstract int copyTo(int high, int[] ids, int index);
+
+      abstract Container copy();
+
+      abstract long getSizeInBytes();
+   }
+
+   /**
+    * A sorted array of the values, for up to {@link #MAX_ARRAY} values.
+    */
+   private static final class ArrayContainer extends Container
+   {
+      ArrayContainer(char[] values, int cardinality)
+      {
+         m_values = values;
+         m_cardinality = cardinality;
+      }
+
+      @Override
+      Container add(char value)
+      {
+         int index = m_cardinality > 0 && m_values[m_cardinality - 1] < value
+            ? -m_cardinality - 1
+            : Arrays.binarySearch(m_values, 0, m_cardinality, value);
+         if (index >= 0)
+         {
+            return this;
+         }
+         if (m_cardinality == MAX_ARRAY)
+         {
+            return toBitmap().add(value);
+         }
+         index = -index - 1;
+         if (m_cardinality == m_values.length)
+         {
+            m_values = Arrays.copyOf(m_values, Math.min(MAX_ARRAY, m_cardinality * 2));
+         }
+         System.arraycopy(m_values, index, m_values, index + 1, m_cardinality - index);
+         m_values[index] = value;
+         m_cardinality++;
+         return this;
+      }
+
+      @Override
+      Container remove(char value)
+      {
+         final int index = Arrays.binarySearch(m_values, 0, m_cardinality, value);
+         if (index >= 0)
+         {
+            System.arraycopy(m_values, index + 1, m_values, index, m_cardinality - index - 1);
+            m_cardinality--;
+         }
+         return this;
+      }
+
+      @Override
+      boolean contains(char value)
+      {
+         return Arrays.binarySearch(m_values, 0, m_cardinality, value) >= 0;
+      }
+
+      @Override
+      int next(int from)
+      {
+         int index = Arrays.binarySearch(m_values, 0, m_cardinality, (char) from);
+         if (index < 0)
+         {
+            index = -index - 1;
+         }
+         return index < m_cardinality ? m_values[index] : -1;
+      }
+
+      @Override
+      int copyTo(int high, int[] ids, int index)
+      {
+         for (int i = 0; i < m_cardinality; i++)
+         {
+            ids[index++] = high | m_values[i];
+         }
+         return index;
+      }
+
+      @Override
+      Container copy()
+      {
+         return new ArrayContainer(Arrays.copyOf(m_values, Math.max(1, m_cardinality)), m_cardinality);
+      }
+
+      @Override
+      long getSizeInBytes()
+      {
+         return 2L * m_values.length + 16;
+      }
+
+      BitmapContainer toBitmap()
+      {
+         final BitmapContainer bitmap = new BitmapContainer();
+         for (int i = 0; i < m_cardinality; i++)
+         {
+            bitmap.m_words[m_values[i] >>> 6] |= 1L << m_values[i];
+         }
+         bitmap.m_cardinality = m_cardinality;
+         return bitmap;
+      }
+
+      /** The values, sorted */
+      char[] m_values;
+   }
+
+   /**
+    * A bitmap of the 65536 values, for more than {@link #MAX_ARRAY} values.
+    */
+   private static final class BitmapContainer extends Container
+   {
+      @Override
+      Container add(char value)
+      {
+         final long bit = 1L << value;
+         if ((m_words[value >>> 6] & bit) == 0)
+         {
+            m_words[value >>> 6] |= bit;
+            m_cardinality++;
+         }
+         return this;
+      }
+
+      @Override
+      Container remove(char value)
+      {
+         clear(value);
+         return shrink();
+      }
+
+      @Override
+      boolean contains(char value)
+      {
+         return (m_words[value >>> 6] & (1L << value)) != 0;
+      }
+
+      @Override
+      int next(int from)
+      {
+         int index = from >>> 6;
+         long word = m_words[index] & (-1L << from);
+         while (word == 0)
+         {
+            if (++index == BITMAP_WORDS)
+            {
+               return -1;
+            }
+            word = m_words[index];
+         }
+         return index * 64 + Long.numberOfTrailingZeros(word);
+      }
+
+      @Override
+      int copyTo(int high, int[] ids, int index)
+      {
+         for (int i = 0; i < BITMAP_WORDS; i++)
+         {
+            long word = m_words[i];
+            while (word != 0)
+            {
+               ids[index++] = high | (i * 64 + Long.numberOfTrailingZeros(word));
+               word &= word - 1;
+            }
+         }
+         return index;
+      }
+
+      @Override
+      Container copy()
+      {
+         final BitmapContainer copy = new BitmapContainer();
+         System.arraycopy(m_words, 0, copy.m_words, 0, BITMAP_WORDS);
+         copy.m_cardinality = m_cardinality;
+         return copy;
+      }
+
+      @Override
+      long getSizeInBytes()
+      {
+         return 8L * BITMAP_WORDS + 16;
+      }
+
+      void clear(char value)
+      {
+         final long bit = 1L << value;
+         if ((m_words[value >>> 6] & bit) != 0)
+         {
+            m_words[value >>> 6] &= ~bit;
+            m_cardinality--;
+         }
+      }
+
+      /** Recomputes the cardinality after word operations. */
+      BitmapContainer count()
+      {
+         int cardinality = 0;
+         for (int i = 0; i < BITMAP_WORDS; i++)
+         {
+            cardinality += Long.bitCount(m_words[i]);
+         }
+         m_cardinality = cardinality;
+         return this;
+      }
+
+      /** @return an array container once the values fit in one. */
+      Container shrink()
+      {
+         if (m_cardinality > MAX_ARRAY)
+         {
+            return this;
+         }
+         final char[] values = new char[Math.max(1, m_cardinality)];
+         int count = 0;
+         for (int i = 0; i < BITMAP_WORDS; i++)
+         {
+            long word = m_words[i];
+            while (word != 0)
+            {
+               values[count++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+               word &= word - 1;
+            }
+         }
+         return new ArrayContainer(values, count);
+      }
+
+      /** The bits of the values */
+      final long[] m_words = new long[BITMAP_WORDS];
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The largest array container, as large as a bitmap */
+   private static final int MAX_ARRAY = 4096;
+   /** The number of words of a bitmap container */
+   private static final int BITMAP_WORDS = 1024;
+
+   /** The high 16 bits of the ids of every container, sorted */
+   private char[] m_keys;
+   /** The containers */
+   private Container[] m_containers;
+   /** The number of containers */
+   private int m_count;
+   /** The number of ids */
+   private int m_size;
+}
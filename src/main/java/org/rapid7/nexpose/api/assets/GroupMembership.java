@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.assets;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.AssetGroupConfigRequest;
+import org.rapid7.nexpose.api.generators.AssetGroupSaveRequestDevicesGenerator;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Computes asset group memberships from the devices of sites and groups, as
+ * {@link DeviceSet}s, and renders them into asset group save requests:
+ * <PRE>
+ * GroupMembership membership = new GroupMembership(session, registry);
+ * DeviceSet devices = membership.getSites(1, 2).difference(membership.getGroup(3));
+ * session.assetGroupSaveRequest(session.getSessionID(), null, "-1", "Unreviewed",
+ *    "Sites 1 and 2 but group 3", "0", membership.toGenerator(devices));
+ * </PRE>
+ * The devices of the sites come from the {@link AssetRegistry}, those of the
+ * groups from an AssetGroupConfigRequest the first time a group is used.
+ * Groups are cached until {@link #invalidateGroup(int)} or
+ * {@link #clear()}; sites follow the refreshes of the registry.
+ */
+public class GroupMembership
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a membership calculator.
+    *
+    * @param session the logged in session to load the groups with.
+    * @param registry the registry holding the devices of the sites.
+    */
+   public GroupMembership(APISession session, AssetRegistry registry)
+   {
+      m_session = session;
+      m_registry = registry;
+      m_groups = new HashMap<Integer, DeviceSet>();
+   }
+
+   /**
+    * Retrieves the devices of a site.
+    *
+    * @param siteId the id of the site.
+    * @return a new set of the ids of its devices, empty if it is unknown.
+    */
+   public DeviceSet getSite(int siteId)
+   {
+      return DeviceSet.of(m_registry.getDevices(siteId));
+   }
+
+   /**
+    * Retrieves the devices of any of some sites.
+    *
+    * @param siteIds the ids of the sites.
+    * @return a new set of the ids of their devices.
+    */
+   public DeviceSet getSites(int... siteIds)
+   {
+      final DeviceSet[] sites = new DeviceSet[siteIds.length];
+      for (int i = 0; i < siteIds.length; i++)
+      {
+         sites[i] = getSite(siteIds[i]);
+      }
+      return DeviceSet.union(sites);
+   }
+
+   /**
+    * Retrieves the devices of an asset group, loading them the first time.
+    *
+    * @param groupId the id of the group.
+    * @return the set of the ids of its devices, not to be modified.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public DeviceSet getGroup(int groupId) throws IOException, APIException
+   {
+      synchronized (m_groups)
+      {
+         final DeviceSet group = m_groups.get(groupId);
+         if (group != null)
+         {
+            return group;
+         }
+      }
+      final DeviceSet group = load(groupId);
+      synchronized (m_groups)
+      {
+         m_groups.put(groupId, group);
+      }
+      return group;
+   }
+
+   /**
+    * Retrieves the devices of any of some asset groups.
+    *
+    * @param groupIds the ids of the groups.
+    * @return a new set of the ids of their devices.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public DeviceSet getGroups(int... groupIds) throws IOException, APIException
+   {
+      final DeviceSet[] groups = new DeviceSet[groupIds.length];
+      for (int i = 0; i < groupIds.length; i++)
+      {
+         groups[i] = getGroup(groupIds[i]);
+      }
+      return DeviceSet.union(groups);
+   }
+
+   /**
+    * Drops the cached devices of an asset group, e.g. after saving it.
+    *
+    * @param groupId the id of the group.
+    */
+   public void invalidateGroup(int groupId)
+   {
+      synchronized (m_groups)
+      {
+         m_groups.remove(groupId);
+      }
+   }
+
+   /**
+    * Drops the cached devices of every asset group.
+    */
+   public void clear()
+   {
+      synchronized (m_groups)
+      {
+         m_groups.clear();
+      }
+   }
+
+   /**
+    * Creates the devices generator of an asset group save request.
+    *
+    * @param devices the devices of the group.
+    * @return the generator, rendering the devices by id.
+    */
+   public AssetGroupSaveRequestDevicesGenerator toGenerator(DeviceSet devices)
+   {
+      final AssetGroupSaveRequestDevicesGenerator generator = new AssetGroupSaveRequestDevicesGenerator();
+      generator.setDeviceSet(devices);
+      return generator;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Loads the devices of an asset group.
+    */
+   private DeviceSet load(int groupId) throws IOException, APIException
+   {
+      final APIResponse response = m_session.executeAPIRequest(
+         new AssetGroupConfigRequest(m_session.getSessionID(), null, String.valueOf(groupId)));
+      if (response.isFailure())
+      {
+         throw new APIException("AssetGroupConfigRequest failed");
+      }
+      final NodeList devices = response.grabNodes("/AssetGroupConfigResponse/AssetGroup/Devices/device");
+      final int[] ids = new int[devices == null ? 0 : devices.getLength()];
+      for (int i = 0; i < ids.length; i++)
+      {
+         final String id = ((Element) devices.item(i)).getAttribute("id");
+         try
+         {
+            ids[i] = Integer.parseInt(id);
+         }
+         catch (NumberFormatException e)
+         {
+            throw new APIException("Cannot parse the response, the attribute: id is not an integer: " + id);
+         }
+      }
+      return DeviceSet.of(ids);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The session to load the groups with */
+   private final APISession m_session;
+   /** The registry holding the devices of the sites */
+   private final AssetRegistry m_registry;
+   /** The devices of the groups loaded, by group id */
+   private final Map<Integer, DeviceSet> m_groups;
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.assets;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Packs IP address literals into two longs: IPv6 addresses as their 128
+ * bits, IPv4 ones as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d). Literals
+ * are parsed by hand, so that a host name is never resolved by mistake.
+ */
+final class IPAddresses
+{
+   /**
+    * Packs an address literal.
+    *
+    * @param address the address, e.g. "10.0.0.1" or "fe80::1".
+    * @param packed receives the high then the low 64 bits.
+    * @return false if the address is not an IP literal.
+    */
+   static boolean pack(String address, long[] packed)
+   {
+      if (address == null || address.isEmpty())
+      {
+         return false;
+      }
+      if (address.indexOf(':') < 0)
+      {
+         final long ipv4 = parseIPv4(address, 0, address.length());
+         if (ipv4 < 0)
+         {
+            return false;
+         }
+         packed[0] = 0;
+         packed[1] = IPV4_MAPPED | ipv4;
+         return true;
+      }
+      return parseIPv6(address, packed);
+   }
+
+   /**
+    * Formats a packed address.
+    *
+    * @param high the high 64 bits.
+    * @param low the low 64 bits.
+    * @return the address literal, dotted for IPv4 addresses.
+    */
+   static String unpack(long high, long low)
+   {
+      if (high == 0 && (low & 0xffffffff00000000L) == IPV4_MAPPED)
+      {
+         return ((low >>> 24) & 0xff) + "." + ((low >>> 16) & 0xff) + "." + ((low >>> 8) & 0xff) + "." + (low & 0xff);
+      }
+      final byte[] bytes = new byte[16];
+      for (int i = 0; i < 8; i++)
+      {
+         bytes[i] = (byte) (high >>> (56 - 8 * i));
+         bytes[8 + i] = (byte) (low >>> (56 - 8 * i));
+      }
+      try
+      {
+         return InetAddress.getByAddress(bytes).getHostAddress();
+      }
+      catch (UnknownHostException e)
+      {
+         // never thrown for 16 bytes
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * Parses a dotted IPv4 literal.
+    *
+    * @return the address, -1 if it is not one.
+    */
+   private static long parseIPv4(String address, int start, int end)
+   {
+      long value = 0;
+      int octets = 0;
+      int octet = -1;
+      for (int i = start; i <= end; i++)
+      {
+         final char c = i < end ? address.charAt(i) : '.';
+         if (c == '.')
+         {
+            if (octet < 0 || ++octets > 4)
+            {
+               return -1;
+            }
+            value = (value << 8) | octet;
+            octet = -1;
+         }
+         else if (c >= '0' && c <= '9')
+         {
+            octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+            if (octet > 255)
+            {
+               return -1;
+            }
+         }
+         else
+         {
+            return -1;
+         }
+      }
+      return octets == 4 ? value : -1;
+   }
+
+   /**
+    * Parses an IPv6 literal, possibly compressed, with an embedded IPv4
+    * address or a zone.
+    */
+   private static boolean parseIPv6(String address, long[] packed)
+   {
+      int end = address.indexOf('%');
+      end = end < 0 ? address.length() : end;
+      final int[] groups = new int[8];
+      int count = 0;
+      int gap = -1;
+      int i = 0;
+      if (address.startsWith("::"))
+      {
+         gap = 0;
+         i = 2;
+      }
+      while (i < end)
+      {
+         int j = i;
+         int group = 0;
+         while (j < end && j - i < 4 && Character.digit(address.charAt(j), 16) >= 0)
+         {
+            group = (group << 4) | Character.digit(address.charAt(j), 16);
+            j++;
+         }
+         if (j < end && address.charAt(j) == '.')
+         {
+            // trailing IPv4 address
+            final long ipv4 = parseIPv4(address, i, end);
+            if (ipv4 < 0 || count > 6)
+            {
+               return false;
+            }
+            groups[count++] = (int) (ipv4 >>> 16);
+            groups[count++] = (int) (ipv4 & 0xffff);
+            i = end;
+            break;
+         }
+         if (j == i || count == 8)
+         {
+            return false;
+         }
+         groups[count++] = group;
+         if (j == end)
+         {
+            i = end;
+            break;
+         }
+         if (address.charAt(j) != ':')
+         {
+            return false;
+         }
+         if (j + 1 < end && address.charAt(j + 1) == ':')
+         {
+            if (gap >= 0)
+            {
+               return false;
+            }
+            gap = count;
+            i = j + 2;
+         }
+         else if (j + 1 == end)
+         {
+            return false;
+         }
+         else
+         {
+            i = j + 1;
+         }
+      }
+      if (gap < 0 ? count != 8 : count > 7)
+      {
+         return false;
+      }
+      final int[] full = new int[8];
+      if (gap < 0)
+      {
+         System.arraycopy(groups, 0, full, 0, 8);
+      }
+      else
+      {
+         System.arraycopy(groups, 0, full, 0, gap);
+         System.arraycopy(groups, gap, full, 8 - (count - gap), count - gap);
+      }
+      long high = 0;
+      long low = 0;
+      for (int g = 0; g < 4; g++)
+      {
+         high = (high << 16) | full[g];
+         low = (low << 16) | full[4 + g];
+      }
+      packed[0] = high;
+      packed[1] = low;
+      return true;
+   }
+
+   private IPAddresses()
+   {
+   }
+
+   /** The prefix of IPv4-mapped addresses in the low 64 bits */
+   private static final long IPV4_MAPPED = 0x0000ffff00000000L;
+}
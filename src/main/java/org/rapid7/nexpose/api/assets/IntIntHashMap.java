@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.assets;
+
+import java.util.Arrays;
+
+/**
+ * A map of int keys to int values in open-addressing arrays, with linear
+ * probing and backward shift deletion so that no tombstones pile up. Values
+ * are never negative, -1 stands for a missing key.
+ */
+class IntIntHashMap
+{
+   /**
+    * Creates an empty map.
+    *
+    * @param expectedKeys the number of keys expected.
+    */
+   IntIntHashMap(int expectedKeys)
+   {
+      final int capacity = capacity(expectedKeys);
+      m_keys = new int[capacity];
+      m_values = new int[capacity];
+      Arrays.fill(m_values, MISSING);
+   }
+
+   /**
+    * Retrieves the value of a key.
+    *
+    * @param key the key.
+    * @return the value, -1 if the key is not in the map.
+    */
+   int get(int key)
+   {
+      return m_values[slot(m_keys, m_values, key)];
+   }
+
+   /**
+    * Maps a key to a value.
+    *
+    * @param key the key.
+    * @param value the value, not negative.
+    * @return the previous value, -1 if the key was not in the map.
+    */
+   int put(int key, int value)
+   {
+      final int slot = slot(m_keys, m_values, key);
+      final int previous = m_values[slot];
+      m_keys[slot] = key;
+      m_values[slot] = value;
+      if (previous == MISSING && ++m_size > m_keys.length * LOAD_FACTOR)
+      {
+         grow();
+      }
+      return previous;
+   }
+
+   /**
+    * Removes a key.
+    *
+    * @param key the key.
+    * @return the value of the key, -1 if it was not in the map.
+    */
+   int remove(int key)
+   {
+      int slot = slot(m_keys, m_values, key);
+      final int previous = m_values[slot];
+      if (previous == MISSING)
+      {
+         return MISSING;
+      }
+      m_size--;
+      // shift back the following keys of the run that probed past the slot
+      final int mask = m_keys.length - 1;
+      int next = (slot + 1) & mask;
+      while (m_values[next] != MISSING)
+      {
+         final int home = hash(m_keys[next]) & mask;
+         if (((next - home) & mask) >= ((next - slot) & mask))
+         {
+            m_keys[slot] = m_keys[next];
+            m_values[slot] = m_values[next];
+            slot = next;
+         }
+         next = (next + 1) & mask;
+      }
+      m_values[slot] = MISSING;
+      return previous;
+   }
+
+   /**
+    * Retrieves the number of keys.
+    *
+    * @return the number of keys in the map.
+    */
+   int size()
+   {
+      return m_size;
+   }
+
+   static int capacity(int expectedKeys)
+   {
+      int capacity = 16;
+      while (capacity * LOAD_FACTOR < expectedKeys)
+      {
+         capacity <<= 1;
+      }
+      return capacity;
+   }
+
+   static int hash(int key)
+   {
+      final int hash = key * 0x9e3779b9;
+      return hash ^ (hash >>> 16);
+   }
+
+   /**
+    * Finds the slot of a key, or the free slot where it belongs.
+    */
+   private static int slot(int[] keys, int[] values, int key)
+   {
+      final int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (values[slot] != MISSING && keys[slot] != key)
+      {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+   private void grow()
+   {
+      final int[] keys = new int[m_keys.length << 1];
+      final int[] values = new int[keys.length];
+      Arrays.fill(values, MISSING);
+      for (int i = 0; i < m_keys.length; i++)
+      {
+         if (m_values[i] != MISSING)
+         {
+            final int slot = slot(keys, values, m_keys[i]);
+            keys[slot] = m_keys[i];
+            values[slot] = m_values[i];
+         }
+      }
+      m_keys = keys;
+      m_values = values;
+   }
+
+   /** The value of the missing keys, and the mark of the free slots */
+   static final int MISSING = -1;
+   static final float LOAD_FACTOR = 0.6f;
+   private int[] m_keys;
+   private int[] m_values;
+   private int m_size;
+}
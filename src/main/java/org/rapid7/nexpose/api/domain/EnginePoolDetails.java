@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.domain;
+
+import org.rapid7.nexpose.api.APIException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Represents an Engine pool and its engines, retrieved by the engine pool
+ * details API request.
+ */
+public class EnginePoolDetails extends EnginePoolSummary
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates the details out of an element EnginePool.
+    *
+    * @param enginePoolElement the {@link Element} that contains the
+    *        information of the engine pool and its EngineSummary elements.
+    * @throws APIException When there is a problem parsing the element's
+    *         attributes.
+    */
+   public EnginePoolDetails(Element enginePoolElement) throws APIException
+   {
+      super(enginePoolElement);
+      final List<EngineSummary> engines = new ArrayList<EngineSummary>();
+      for (Node node = enginePoolElement.getFirstChild(); node != null; node = node.getNextSibling())
+      {
+         if (node instanceof Element && "EngineSummary".equals(node.getNodeName()))
+         {
+            engines.add(new EngineSummary((Element) node));
+         }
+      }
+      m_engines = Collections.unmodifiableList(engines);
+   }
+
+   /**
+    * Retrieves the engines of the engine pool.
+    * @return the engines of the pool.
+    */
+   public List<EngineSummary> getEngines()
+   {
+      return m_engines;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /**Represents the engines of the engine pool.*/
+   private final List<EngineSummary> m_engines;
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.domain;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.BaseElement;
+import org.w3c.dom.Element;
+
+/**
+ * Represents an Engine pool retrieved by the engine pool listing API request.
+ */
+public class EnginePoolSummary extends BaseElement
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a summary out of an element EnginePoolSummary or EnginePool.
+    *
+    * @param enginePoolElement the {@link Element} that contains the
+    *        information of the engine pool.
+    * @throws APIException When there is a problem parsing the element's
+    *         attributes.
+    */
+   public EnginePoolSummary(Element enginePoolElement) throws APIException
+   {
+      setResponseElement(enginePoolElement);
+      m_id = getInt("id");
+      m_name = getString("name");
+      m_scope = getString("scope");
+   }
+
+   /**
+    * Retrieves the id of the engine pool.
+    * @return the id of the engine pool, which sites are assigned to as to
+    *         an engine.
+    */
+   public int getId()
+   {
+      return m_id;
+   }
+
+   /**
+    * Retrieves the name of the engine pool.
+    * @return the name of the engine pool.
+    */
+   public String getName()
+   {
+      return m_name;
+   }
+
+   /**
+    * Retrieves the scope of the engine pool.
+    * @return the scope of the engine pool, global or silo.
+    */
+   public String getScope()
+   {
+      return m_scope;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /**Represents the id of the engine pool.*/
+   private int m_id;
+   /**Represents the name of the engine pool.*/
+   private String m_name;
+   /**Represents the scope of the engine pool.*/
+   private String m_scope;
+}
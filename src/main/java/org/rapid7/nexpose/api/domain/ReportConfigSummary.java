@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.domain;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.BaseElement;
+import org.w3c.dom.Element;
+
+/**
+ * Represents a report configuration retrieved by the report listing API
+ * request, with its last generated report.
+ */
+public class ReportConfigSummary extends BaseElement
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a summary out of an element ReportConfigSummary.
+    *
+    * @param reportConfigElement the {@link Element} that contains the
+    *        information of the report configuration.
+    * @throws APIException When there is a problem parsing the element's
+    *         attributes.
+    */
+   public ReportConfigSummary(Element reportConfigElement) throws APIException
+   {
+      setResponseElement(reportConfigElement);
+      m_configId = getInt("cfg-id");
+      m_templateId = getString("template-id");
+      m_status = getString("status");
+      m_generatedOn = getString("generated-on");
+      m_reportURI = getString("report-URI");
+      m_scope = getString("scope");
+   }
+
+   /**
+    * Retrieves the id of the report configuration.
+    * @return the id of the report configuration.
+    */
+   public int getConfigId()
+   {
+      return m_configId;
+   }
+
+   /**
+    * Retrieves the template of the report configuration.
+    * @return the id of the report template.
+    */
+   public String getTemplateId()
+   {
+      return m_templateId;
+   }
+
+   /**
+    * Retrieves the status of the last report generated.
+    * @return the status: Started, Generated, Failed, Aborted or Unknown.
+    */
+   public String getStatus()
+   {
+      return m_status;
+   }
+
+   /**
+    * Retrieves when the last report was generated.
+    * @return the date of generation of the last report.
+    */
+   public String getGeneratedOn()
+   {
+      return m_generatedOn;
+   }
+
+   /**
+    * Retrieves where the last report can be downloaded from.
+    * @return the path of the last report on the console.
+    */
+   public String getReportURI()
+   {
+      return m_reportURI;
+   }
+
+   /**
+    * Retrieves the scope of the report configuration.
+    * @return the scope, global or silo.
+    */
+   public String getScope()
+   {
+      return m_scope;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /**Represents the id of the report configuration.*/
+   private int m_configId;
+   /**Represents the id of the report template.*/
+   private String m_templateId;
+   /**Represents the status of the last report.*/
+   private String m_status;
+   /**Represents when the last report was generated.*/
+   private String m_generatedOn;
+   /**Represents the path of the last report.*/
+   private String m_reportURI;
+   /**Represents the scope of the report configuration.*/
+   private String m_scope;
+}
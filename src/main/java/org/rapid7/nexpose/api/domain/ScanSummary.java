@@ -135,6 +135,18 @@ public class ScanSummary extends BaseElement
          m_severity = severity >= 0? severity: null;
          m_status = status;
       }
+      public int getCount()
+      {
+         return m_count;
+      }
+      public Integer getSeverity()
+      {
+         return m_severity;
+      }
+      public String getStatus()
+      {
+         return m_status;
+      }
       private final int m_count;
       private final Integer m_severity;
       private final String m_status;
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.domain;
+
+import org.rapid7.nexpose.api.APIException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Represents a Ticket retrieved by the ticket details API request: its
+ * summary and the vulnerabilities it remediates.
+ */
+public class TicketDetails extends TicketSummary
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates the details of a ticket out of a TicketInfo element.
+    *
+    * @param ticketInfoElement the TicketInfo element.
+    * @throws APIException When there is a problem parsing the element's
+    * attributes.
+    */
+   public TicketDetails(Element ticketInfoElement) throws APIException
+   {
+      super(ticketInfoElement);
+      final NodeList vulnerabilities = ticketInfoElement.getElementsByTagName("Vulnerability");
+      final List<String> vulnerabilityIds = new ArrayList<String>(vulnerabilities.getLength());
+      for (int i = 0; i < vulnerabilities.getLength(); i++)
+      {
+         vulnerabilityIds.add(((Element) vulnerabilities.item(i)).getAttribute("id"));
+      }
+      m_vulnerabilityIds = Collections.unmodifiableList(vulnerabilityIds);
+   }
+
+   /**
+    * Retrieves the ids of the vulnerabilities of the ticket.
+    *
+    * @return The vulnerability ids.
+    */
+   public List<String> getVulnerabilityIds()
+   {
+      return m_vulnerabilityIds;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // Non-public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /**Represents the ids of the vulnerabilities of the ticket.*/
+   private final List<String> m_vulnerabilityIds;
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+import org.rapid7.nexpose.api.domain.EngineSummary;
+import org.rapid7.nexpose.api.domain.ScanSummary;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of a scan engine at a poll of the {@link EngineMonitor}: its
+ * status as listed by the console and the scans it runs, as reported by an
+ * EngineActivityRequest. Instances are immutable.
+ */
+public class EngineActivity
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates the activity of an engine.
+    *
+    * @param engine the engine, as listed by the console.
+    * @param scans the scans running on the engine.
+    * @param polledAt when the activity was polled, in milliseconds since the
+    *        epoch.
+    * @param changedAt when the activity last changed, in milliseconds since
+    *        the epoch.
+    * @param error why the activity could not be polled, null if it was.
+    */
+   public EngineActivity(EngineSummary engine, List<ScanSummary> scans, long polledAt, long changedAt, String error)
+   {
+      m_engine = engine;
+      m_scans = Collections.unmodifiableList(scans);
+      m_polledAt = polledAt;
+      m_changedAt = changedAt;
+      m_error = error;
+   }
+
+   /**
+    * @return the id of the engine.
+    */
+   public int getEngineId()
+   {
+      return m_engine.getId();
+   }
+
+   /**
+    * @return the engine, as listed by the console.
+    */
+   public EngineSummary getEngine()
+   {
+      return m_engine;
+   }
+
+   /**
+    * @return the status of the engine, e.g. active or not-responding.
+    */
+   public String getStatus()
+   {
+      return m_engine.getStatus();
+   }
+
+   /**
+    * Tells whether the engine can take scans: it is active and its activity
+    * could be polled.
+    *
+    * @return true if it can.
+    */
+   public boolean isAvailable()
+   {
+      return ACTIVE.equals(m_engine.getStatus()) && m_error == null;
+   }
+
+   /**
+    * @return the scans running on the engine.
+    */
+   public List<ScanSummary> getScans()
+   {
+      return m_scans;
+   }
+
+   /**
+    * @return the number of scans running on the engine.
+    */
+   public int getScanCount()
+   {
+      return m_scans.size();
+   }
+
+   /**
+    * @return the number of tasks the scans of the engine run.
+    */
+   public int getActiveTasks()
+   {
+      int tasks = 0;
+      for (ScanSummary scan : m_scans)
+      {
+         tasks += scan.getActiveTasks();
+      }
+      return tasks;
+   }
+
+   /**
+    * @return the number of tasks the scans of the engine have yet to run.
+    */
+   public int getPendingTasks()
+   {
+      int tasks = 0;
+      for (ScanSummary scan : m_scans)
+      {
+         tasks += scan.getPendingTasks();
+      }
+      return tasks;
+   }
+
+   /**
+    * @return when the activity was polled, in milliseconds since the epoch.
+    */
+   public long getPolledAt()
+   {
+      return m_polledAt;
+   }
+
+   /**
+    * @return when the activity last changed, in milliseconds since the
+    *         epoch.
+    */
+   public long getChangedAt()
+   {
+      return m_changedAt;
+   }
+
+   /**
+    * @return why the activity could not be polled, null if it was.
+    */
+   public String getError()
+   {
+      return m_error;
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "EngineActivity[engine " + getEngineId() + ", " + getStatus() + ", " + m_scans.size() + " scans"
+         + (m_error == null ? "" : ", " + m_error) + "]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Tells whether another activity of the engine shows the same state: same
+    * status and error, same scans at the same progress.
+    */
+   boolean isSameAs(EngineActivity other)
+   {
+      if (!same(m_engine.getStatus(), other.m_engine.getStatus())
+         || !same(m_error, other.m_error)
+         || m_scans.size() != other.m_scans.size())
+      {
+         return false;
+      }
+      for (int i = 0; i < m_scans.size(); i++)
+      {
+         final ScanSummary scan = m_scans.get(i);
+         final ScanSummary otherScan = other.m_scans.get(i);
+         if (scan.getScanID() != otherScan.getScanID()
+            || !same(scan.getStatus(), otherScan.getStatus())
+            || scan.getActiveTasks() != otherScan.getActiveTasks()
+            || scan.getPendingTasks() != otherScan.getPendingTasks()
+            || scan.getCompletedTasks() != otherScan.getCompletedTasks())
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Compares two values which may be missing, e.g. statuses.
+    */
+   static boolean same(String value, String other)
+   {
+      return value == null ? other == null : value.equals(other);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The status of the engines which can scan */
+   static final String ACTIVE = "active";
+
+   /** The engine */
+   private final EngineSummary m_engine;
+   /** The scans running on the engine */
+   private final List<ScanSummary> m_scans;
+   /** When the activity was polled */
+   private final long m_polledAt;
+   /** When the activity last changed */
+   private final long m_changedAt;
+   /** Why the activity could not be polled */
+   private final String m_error;
+}
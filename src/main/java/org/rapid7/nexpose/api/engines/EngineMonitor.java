@@ -0,0 +1,725 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.domain.EngineSummary;
+import org.rapid7.nexpose.api.domain.ScanSummary;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Keeps track of the activity of every scan engine of the console:
+ * <PRE>
+ * EngineMonitor monitor = new EngineMonitor(session);
+ * monitor.addListener(listener);
+ * monitor.start();
+ * ...
+ * for (EngineActivity engine : monitor.getActivities())
+ * {
+ *    System.out.println(engine.getEngine().getName() + ": " + engine.getScanCount() + " scans");
+ * }
+ * ...
+ * monitor.shutdown();
+ * </PRE>
+ * The engines are listed at start and every few minutes after. Each engine
+ * is then polled with an EngineActivityRequest on its own schedule, on a
+ * shared pool of threads, so that the engines are polled in parallel and a
+ * slow engine does not delay the others. The listeners are told of every
+ * change of the activity of an engine.
+ * <P>
+ * An engine whose activity has not changed for a few polls is polled less
+ * and less often, down to once per maximum idle interval, and back at the
+ * poll interval as soon as a change is seen, or when
+ * {@link #pollNow(int)} is called, e.g. after starting a scan. Engines which
+ * are not active are not polled, only listed.
+ */
+public class EngineMonitor
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a monitor polling from its own pool of 4 daemon threads,
+    * released by {@link #shutdown()}.
+    *
+    * @param session the logged in session to poll the engines with.
+    */
+   public EngineMonitor(APISession session)
+   {
+      this(session, new ScheduledThreadPoolExecutor(4, new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-engine-monitor-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates a monitor polling from the given executor, which is not shut
+    * down by {@link #shutdown()}.
+    *
+    * @param session the logged in session to poll the engines with.
+    * @param executor the executor to schedule the polls on.
+    */
+   public EngineMonitor(APISession session, ScheduledExecutorService executor)
+   {
+      this(session, executor, false);
+   }
+
+   /**
+    * Sets how often the engines are polled while their activity changes. 10
+    * seconds by default.
+    *
+    * @param interval the interval, positive.
+    * @param unit the unit of the interval.
+    */
+   public void setPollInterval(long interval, TimeUnit unit)
+   {
+      if (interval <= 0)
+      {
+         throw new IllegalArgumentException("interval must be positive");
+      }
+      m_pollInterval = unit.toMillis(interval);
+   }
+
+   /**
+    * Sets how often the engines are polled at least, however long their
+    * activity has not changed. 2 minutes by default.
+    *
+    * @param interval the interval, positive.
+    * @param unit the unit of the interval.
+    */
+   public void setMaxIdleInterval(long interval, TimeUnit unit)
+   {
+      if (interval <= 0)
+      {
+         throw new IllegalArgumentException("interval must be positive");
+      }
+      m_maxIdleInterval = unit.toMillis(interval);
+   }
+
+   /**
+    * Sets the number of polls an engine must show the same activity before
+    * it is polled less often. 3 by default.
+    *
+    * @param idlePolls the number of polls, at least 1.
+    */
+   public void setIdlePolls(int idlePolls)
+   {
+      if (idlePolls < 1)
+      {
+         throw new IllegalArgumentException("idlePolls must be at least 1");
+      }
+      m_idlePolls = idlePolls;
+   }
+
+   /**
+    * Sets how often the engines are listed, to find the engines added,
+    * removed or whose status changed. 5 minutes by default.
+    *
+    * @param interval the interval, positive.
+    * @param unit the unit of the interval.
+    */
+   public void setListInterval(long interval, TimeUnit unit)
+   {
+      if (interval <= 0)
+      {
+         throw new IllegalArgumentException("interval must be positive");
+      }
+      m_listInterval = unit.toMillis(interval);
+   }
+
+   /**
+    * Adds a listener notified when the activity of an engine changes.
+    *
+    * @param listener the listener to add.
+    */
+   public void addListener(IEngineActivityListener listener)
+   {
+      m_listeners.add(listener);
+   }
+
+   /**
+    * Removes a listener added through
+    * {@link #addListener(IEngineActivityListener)}.
+    *
+    * @param listener the listener to remove.
+    */
+   public void removeListener(IEngineActivityListener listener)
+   {
+      m_listeners.remove(listener);
+   }
+
+   /**
+    * Lists and polls the engines, then keeps polling them in the background
+    * until {@link #stop()}.
+    *
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    * @throws InterruptedException If the thread is interrupted while polling.
+    */
+   public void start() throws IOException, APIException, InterruptedException
+   {
+      synchronized (m_lock)
+      {
+         if (m_running)
+         {
+            return;
+         }
+         m_running = true;
+      }
+      boolean started = false;
+      try
+      {
+         poll();
+         synchronized (m_lock)
+         {
+            if (!m_running)
+            {
+               return;
+            }
+            for (EngineState state : m_engines.values())
+            {
+               schedule(state, state.m_interval);
+            }
+            scheduleList();
+         }
+         started = true;
+      }
+      finally
+      {
+         if (!started)
+         {
+            stop();
+         }
+      }
+   }
+
+   /**
+    * Lists the engines and polls them all in parallel, without waiting for
+    * their scheduled polls.
+    *
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    * @throws InterruptedException If the thread is interrupted while polling.
+    */
+   public void poll() throws IOException, APIException, InterruptedException
+   {
+      // the engines are all polled now, not also from their schedule
+      final List<EngineState> states = list(false);
+      final List<Future<Object>> futures = new ArrayList<Future<Object>>(states.size());
+      try
+      {
+         for (final EngineState state : states)
+         {
+            futures.add(m_executor.submit(m_session.propagate(new Callable<Object>()
+            {
+               @Override
+               public Object call()
+               {
+                  pollEngine(state, false);
+                  return null;
+               }
+            })));
+         }
+         for (Future<Object> future : futures)
+         {
+            future.get();
+         }
+      }
+      catch (ExecutionException e)
+      {
+         // pollEngine reports its failures in the activity
+         throw new IllegalStateException(e.getCause());
+      }
+      finally
+      {
+         for (Future<Object> future : futures)
+         {
+            future.cancel(true);
+         }
+      }
+   }
+
+   /**
+    * Polls an engine as soon as possible, and then at the poll interval
+    * until its activity stops changing again.
+    *
+    * @param engineId the id of the engine.
+    */
+   public void pollNow(int engineId)
+   {
+      synchronized (m_lock)
+      {
+         final EngineState state = m_engines.get(engineId);
+         if (state != null && m_running)
+         {
+            state.m_interval = m_pollInterval;
+            state.m_unchangedPolls = 0;
+            schedule(state, 0);
+         }
+      }
+   }
+
+   /**
+    * Retrieves the last activity polled of an engine.
+    *
+    * @param engineId the id of the engine.
+    * @return the activity, null if the engine is unknown.
+    */
+   public EngineActivity getActivity(int engineId)
+   {
+      synchronized (m_lock)
+      {
+         final EngineState state = m_engines.get(engineId);
+         return state == null ? null : state.m_activity;
+      }
+   }
+
+   /**
+    * Retrieves the last activity polled of every engine.
+    *
+    * @return the activities, by engine id.
+    */
+   public List<EngineActivity> getActivities()
+   {
+      synchronized (m_lock)
+      {
+         final List<EngineActivity> activities = new ArrayList<EngineActivity>(m_engines.size());
+         for (EngineState state : m_engines.values())
+         {
+            if (state.m_activity != null)
+            {
+               activities.add(state.m_activity);
+            }
+         }
+         return activities;
+      }
+   }
+
+   /**
+    * Stops polling the engines in the background. The last activities
+    * remain available.
+    */
+   public void stop()
+   {
+      synchronized (m_lock)
+      {
+         m_running = false;
+         for (EngineState state : m_engines.values())
+         {
+            if (state.m_future != null)
+            {
+               state.m_future.cancel(false);
+               state.m_future = null;
+            }
+         }
+         if (m_listFuture != null)
+         {
+            m_listFuture.cancel(false);
+            m_listFuture = null;
+         }
+      }
+   }
+
+   /**
+    * Stops polling and releases the threads of the monitor, if it created
+    * them.
+    */
+   public void shutdown()
+   {
+      stop();
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdown();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private EngineMonitor(APISession session, ScheduledExecutorService executor, boolean ownsExecutor)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_session = session;
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   /**
+    * Lists the engines: adds the new ones, updates the status of the known
+    * ones and drops the ones no longer listed.
+    *
+    * @param pollNow whether the new engines, and the ones whose status
+    *        changed, are polled right away or after the poll interval.
+    * @return the state of every engine listed.
+    */
+   private List<EngineState> list(boolean pollNow) throws IOException, APIException
+   {
+      final Iterable<EngineSummary> engines = m_session.listEngines(m_session.getSessionID(), null);
+      if (engines == null)
+      {
+         throw new APIException("EngineListingRequest failed");
+      }
+      final List<EngineState> states = new ArrayList<EngineState>();
+      final List<EngineActivity> removed = new ArrayList<EngineActivity>();
+      synchronized (m_lock)
+      {
+         final Set<Integer> listed = new HashSet<Integer>();
+         for (EngineSummary engine : engines)
+         {
+            listed.add(engine.getId());
+            EngineState state = m_engines.get(engine.getId());
+            if (state == null)
+            {
+               state = new EngineState(engine, m_pollInterval);
+               m_engines.put(engine.getId(), state);
+               if (m_running)
+               {
+                  schedule(state, pollNow ? 0 : state.m_interval);
+               }
+            }
+            else
+            {
+               final boolean statusChanged = !EngineActivity.same(state.m_engine.getStatus(), engine.getStatus());
+               state.m_engine = engine;
+               if (statusChanged && m_running)
+               {
+                  state.m_interval = m_pollInterval;
+                  state.m_unchangedPolls = 0;
+                  schedule(state, pollNow ? 0 : state.m_interval);
+               }
+            }
+            states.add(state);
+         }
+         for (Integer engineId : new ArrayList<Integer>(m_engines.keySet()))
+         {
+            if (!listed.contains(engineId))
+            {
+               final EngineState state = m_engines.remove(engineId);
+               if (state.m_future != null)
+               {
+                  state.m_future.cancel(false);
+               }
+               if (state.m_activity != null)
+               {
+                  removed.add(state.m_activity);
+               }
+            }
+         }
+      }
+      for (EngineActivity activity : removed)
+      {
+         notifyListeners(activity, null);
+      }
+      return states;
+   }
+
+   /**
+    * Polls the activity of an engine, notifies the listeners if it changed
+    * and schedules the next poll.
+    */
+   private void pollEngine(EngineState state, boolean scheduled)
+   {
+      try
+      {
+         poll(state);
+      }
+      finally
+      {
+         if (scheduled)
+         {
+            synchronized (m_lock)
+            {
+               if (m_running && m_engines.get(state.m_engine.getId()) == state)
+               {
+                  schedule(state, state.m_interval);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Polls the activity of an engine and notifies the listeners if it
+    * changed.
+    */
+   private void poll(EngineState state)
+   {
+      final EngineSummary engine;
+      synchronized (m_lock)
+      {
+         engine = state.m_engine;
+      }
+      final long now = System.currentTimeMillis();
+      List<ScanSummary> scans = new ArrayList<ScanSummary>();
+      String error = null;
+      if (EngineActivity.ACTIVE.equals(engine.getStatus()))
+      {
+         try
+         {
+            scans = fetch(engine.getId());
+         }
+         catch (IOException e)
+         {
+            error = e.toString();
+         }
+         catch (APIException e)
+         {
+            error = e.toString();
+         }
+         catch (RuntimeException e)
+         {
+            error = e.toString();
+         }
+      }
+      final EngineActivity previous;
+      final boolean changed;
+      EngineActivity current = new EngineActivity(engine, scans, now, now, error);
+      synchronized (m_lock)
+      {
+         previous = state.m_activity;
+         changed = previous == null || !previous.isSameAs(current);
+         if (!changed)
+         {
+            current = new EngineActivity(engine, scans, now, previous.getChangedAt(), error);
+            if (++state.m_unchangedPolls >= m_idlePolls)
+            {
+               state.m_interval = Math.min(m_maxIdleInterval, state.m_interval * 2);
+            }
+         }
+         else
+         {
+            state.m_unchangedPolls = 0;
+            state.m_interval = m_pollInterval;
+         }
+         if (!EngineActivity.ACTIVE.equals(engine.getStatus()))
+         {
+            // only the listing tells when the engine is back
+            state.m_interval = m_maxIdleInterval;
+         }
+         if (m_engines.get(engine.getId()) != state)
+         {
+            return;
+         }
+         state.m_activity = current;
+      }
+      if (changed)
+      {
+         notifyListeners(previous, current);
+      }
+   }
+
+   /**
+    * Retrieves the scans running on an engine.
+    */
+   private List<ScanSummary> fetch(int engineId) throws IOException, APIException
+   {
+      final APIResponse response = m_session.engineActivityRequest(
+         m_session.getSessionID(), null, String.valueOf(engineId));
+      if (response.isFailure())
+      {
+         throw new APIException("EngineActivityRequest failed");
+      }
+      final List<ScanSummary> scans = new ArrayList<ScanSummary>();
+      final NodeList nodes = response.grabNodes("/EngineActivityResponse/ScanSummary");
+      for (int i = 0; nodes != null && i < nodes.getLength(); i++)
+      {
+         scans.add(new ScanSummary((Element) nodes.item(i)));
+      }
+      return scans;
+   }
+
+   /**
+    * Schedules the next poll of an engine, replacing the one scheduled. Must
+    * be called with the lock held.
+    */
+   private void schedule(final EngineState state, long delay)
+   {
+      if (state.m_future != null)
+      {
+         state.m_future.cancel(false);
+      }
+      state.m_future = m_executor.schedule(m_session.propagate(new Callable<Object>()
+      {
+         @Override
+         public Object call()
+         {
+            pollEngine(state, true);
+            return null;
+         }
+      }), delay, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Schedules the next listing of the engines. Must be called with the lock
+    * held.
+    */
+   private void scheduleList()
+   {
+      m_listFuture = m_executor.schedule(m_session.propagate(new Callable<Object>()
+      {
+         @Override
+         public Object call()
+         {
+            try
+            {
+               list(true);
+            }
+            catch (IOException e)
+            {
+               // listed again at the next interval
+            }
+            catch (APIException e)
+            {
+               // listed again at the next interval
+            }
+            catch (RuntimeException e)
+            {
+               // listed again at the next interval
+            }
+            finally
+            {
+               synchronized (m_lock)
+               {
+                  if (m_running)
+                  {
+                     scheduleList();
+                  }
+               }
+            }
+            return null;
+         }
+      }), m_listInterval, TimeUnit.MILLISECONDS);
+   }
+
+   private void notifyListeners(EngineActivity previous, EngineActivity current)
+   {
+      for (IEngineActivityListener listener : m_listeners)
+      {
+         try
+         {
+            listener.activityChanged(previous, current);
+         }
+         catch (RuntimeException e)
+         {
+            // a broken listener must not stop the monitor nor the other listeners
+         }
+      }
+   }
+
+   /**
+    * What the monitor knows of an engine. Guarded by the lock of the
+    * monitor.
+    */
+   private static class EngineState
+   {
+      EngineState(EngineSummary engine, long interval)
+      {
+         m_engine = engine;
+         m_interval = interval;
+      }
+
+      /** The engine, as last listed */
+      EngineSummary m_engine;
+      /** The last activity polled */
+      EngineActivity m_activity;
+      /** The number of polls in a row which found the same activity */
+      int m_unchangedPolls;
+      /** The current interval between polls, in milliseconds */
+      long m_interval;
+      /** The next poll */
+      ScheduledFuture<?> m_future;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Numbers the threads of the monitors */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+
+   /** The session to poll the engines with */
+   private final APISession m_session;
+   /** The executor to schedule the polls on */
+   private final ScheduledExecutorService m_executor;
+   /** Whether the executor was created by the monitor */
+   private final boolean m_ownsExecutor;
+   /** The listeners of the changes */
+   private final List<IEngineActivityListener> m_listeners = new CopyOnWriteArrayList<IEngineActivityListener>();
+   /** Guards the state of the engines */
+   private final Object m_lock = new Object();
+   /** The state of the engines, by id */
+   private final Map<Integer, EngineState> m_engines = new TreeMap<Integer, EngineState>();
+   /** Whether the engines are polled in the background */
+   private boolean m_running;
+   /** The next listing of the engines */
+   private ScheduledFuture<?> m_listFuture;
+   /** The interval between polls while the activity changes, in milliseconds */
+   private volatile long m_pollInterval = TimeUnit.SECONDS.toMillis(10);
+   /** The longest interval between polls, in milliseconds */
+   private volatile long m_maxIdleInterval = TimeUnit.MINUTES.toMillis(2);
+   /** The number of unchanged polls before polling less often */
+   private volatile int m_idlePolls = 3;
+   /** The interval between listings of the engines, in milliseconds */
+   private volatile long m_listInterval = TimeUnit.MINUTES.toMillis(5);
+}
@@ -0,0 +1,688 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.domain.EnginePoolDetails;
+import org.rapid7.nexpose.api.domain.EngineSummary;
+import org.rapid7.nexpose.api.domain.ScanSummary;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Balances the sites over the scan engines by the time their scans take,
+ * instead of by their number:
+ * <PRE>
+ * EngineRebalancer rebalancer = new EngineRebalancer(session);
+ * RebalancePlan plan = rebalancer.plan();
+ * System.out.println(plan);
+ * rebalancer.apply(plan, false);
+ * </PRE>
+ * The sites of the active engines are read with an EngineConfigRequest per
+ * engine, and the history of every site with a SiteScanHistoryRequest, sent
+ * in parallel. The cost of a site is the mean duration of its last finished
+ * scans. A site without a finished scan is estimated from the number of
+ * nodes of its last scan at the mean time per node of all the scans, or else
+ * given the median cost of the sites.
+ * <P>
+ * The sites are then packed, the most expensive first, on the engine with
+ * the lowest load once the site is added, the load of an engine being the
+ * sum of the costs of its sites divided by its capacity. A site stays on its
+ * engine when that engine is within the move tolerance of the best one, so
+ * that balanced engines keep their sites. The plan is applied with an
+ * EngineSaveRequest per engine receiving sites.
+ * <P>
+ * With an engine pool set, the sites are balanced over the engines of the
+ * pool.
+ */
+public class EngineRebalancer
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a rebalancer sending its requests from its own pool of daemon
+    * threads, released by {@link #shutdown()}.
+    *
+    * @param session the logged in session to read and assign the sites with.
+    */
+   public EngineRebalancer(APISession session)
+   {
+      this(session, Executors.newCachedThreadPool(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-engine-rebalancer-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates a rebalancer sending its requests from the given executor, which
+    * is not shut down by {@link #shutdown()}.
+    *
+    * @param session the logged in session to read and assign the sites with.
+    * @param executor the executor to send the requests from.
+    */
+   public EngineRebalancer(APISession session, ExecutorService executor)
+   {
+      this(session, executor, false);
+   }
+
+   /**
+    * Sets the maximum number of requests sent at once. 8 by default.
+    *
+    * @param maxInFlight the number of requests, at least 1.
+    */
+   public void setMaxInFlight(int maxInFlight)
+   {
+      if (maxInFlight < 1)
+      {
+         throw new IllegalArgumentException("maxInFlight must be at least 1");
+      }
+      m_maxInFlight = maxInFlight;
+   }
+
+   /**
+    * Sets the number of the last finished scans of a site its cost is
+    * averaged over. 5 by default.
+    *
+    * @param historyDepth the number of scans, at least 1.
+    */
+   public void setHistoryDepth(int historyDepth)
+   {
+      if (historyDepth < 1)
+      {
+         throw new IllegalArgumentException("historyDepth must be at least 1");
+      }
+      m_historyDepth = historyDepth;
+   }
+
+   /**
+    * Sets the share of the mean load of the engines by which another engine
+    * must be better for a site to be moved to it. 0.05 by default.
+    *
+    * @param moveTolerance the share of the mean load, 0 to move the sites to
+    *        the best engine whatever their current one.
+    */
+   public void setMoveTolerance(double moveTolerance)
+   {
+      if (!(moveTolerance >= 0))
+      {
+         throw new IllegalArgumentException("moveTolerance cannot be negative");
+      }
+      m_moveTolerance = moveTolerance;
+   }
+
+   /**
+    * Sets the engines to balance the sites over. All the active engines by
+    * default.
+    *
+    * @param engineIds the ids of the engines, none for all of them.
+    */
+   public void setEngines(int... engineIds)
+   {
+      if (engineIds.length == 0)
+      {
+         m_engines = null;
+      }
+      else
+      {
+         final Set<Integer> engines = new HashSet<Integer>();
+         for (int engineId : engineIds)
+         {
+            engines.add(engineId);
+         }
+         m_engines = engines;
+      }
+   }
+
+   /**
+    * Sets the engine pool whose engines to balance the sites over, read with
+    * an EnginePoolDetailsRequest when planning.
+    *
+    * @param name the name of the engine pool, null for all the engines.
+    * @param scope the scope of the engine pool, global or silo.
+    */
+   public void setEnginePool(String name, String scope)
+   {
+      m_enginePool = name == null ? null : new String[] {name, scope};
+   }
+
+   /**
+    * Sets the capacity of an engine relative to the others, e.g. 2 for an
+    * engine scanning twice as fast. 1 by default.
+    *
+    * @param engineId the id of the engine.
+    * @param capacity the capacity, more than 0.
+    */
+   public void setCapacity(int engineId, double capacity)
+   {
+      if (!(capacity > 0))
+      {
+         throw new IllegalArgumentException("capacity must be more than 0");
+      }
+      m_capacities.put(engineId, capacity);
+   }
+
+   /**
+    * Computes a balanced assignment of the sites of the engines.
+    *
+    * @return the plan, empty if the sites are balanced already or if it
+    *         would not lower the highest load.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    * @throws InterruptedException If the thread is interrupted while
+    *         reading the sites.
+    */
+   public RebalancePlan plan() throws IOException, APIException, InterruptedException
+   {
+      final Set<Integer> engineIds = getEngineIds();
+      final Semaphore permits = new Semaphore(m_maxInFlight);
+      final List<Future<?>> futures = new ArrayList<Future<?>>();
+      try
+      {
+         final Map<Integer, Future<EngineSites>> engines = new TreeMap<Integer, Future<EngineSites>>();
+         for (final int engineId : engineIds)
+         {
+            final Future<EngineSites> engine = submit(permits, new Callable<EngineSites>()
+            {
+               @Override
+               public EngineSites call() throws IOException, APIException
+               {
+                  return EngineSites.load(m_session, engineId);
+               }
+            });
+            futures.add(engine);
+            engines.put(engineId, engine);
+         }
+         final Map<Integer, Integer> siteEngines = new TreeMap<Integer, Integer>();
+         final Map<Integer, String> siteNames = new HashMap<Integer, String>();
+         final Map<Integer, Future<List<ScanSummary>>> histories = new HashMap<Integer, Future<List<ScanSummary>>>();
+         for (Map.Entry<Integer, Future<EngineSites>> engine : engines.entrySet())
+         {
+            final EngineSites sites = get(engine.getValue());
+            for (final Integer siteId : sites.getSiteIds())
+            {
+               siteEngines.put(siteId, engine.getKey());
+               siteNames.put(siteId, sites.getSiteName(siteId));
+               final Future<List<ScanSummary>> history = submit(permits, new Callable<List<ScanSummary>>()
+               {
+                  @Override
+                  public List<ScanSummary> call() throws IOException, APIException
+                  {
+                     return m_session.siteScanHistoryRequest(m_session.getSessionID(), null, String.valueOf(siteId));
+                  }
+               });
+               futures.add(history);
+               histories.put(siteId, history);
+            }
+         }
+         final Map<Integer, Double> costs = new HashMap<Integer, Double>();
+         final Map<Integer, Integer> nodes = new HashMap<Integer, Integer>();
+         final double[] totals = new double[2];
+         for (Integer siteId : siteEngines.keySet())
+         {
+            estimate(siteId, get(histories.get(siteId)), costs, nodes, totals);
+         }
+         estimateMissing(siteEngines.keySet(), costs, nodes, totals);
+         return assign(engineIds, siteEngines, siteNames, costs);
+      }
+      finally
+      {
+         for (Future<?> future : futures)
+         {
+            future.cancel(true);
+         }
+      }
+   }
+
+   /**
+    * Assigns the sites of a plan to their new engines, with an
+    * EngineSaveRequest per engine receiving sites, sent one after the other:
+    * the configuration of each engine is read again just before it is saved,
+    * so that the sites it lost to the engines saved before are not assigned
+    * back to it.
+    *
+    * @param plan the plan to apply.
+    * @param dryRun true to only return the moves, without sending any
+    *        request.
+    * @return the moves made, or which would be made on a dry run.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public List<SiteMove> apply(RebalancePlan plan, boolean dryRun) throws IOException, APIException
+   {
+      if (dryRun)
+      {
+         return plan.getMoves();
+      }
+      final Map<Integer, List<SiteMove>> targets = new LinkedHashMap<Integer, List<SiteMove>>();
+      for (SiteMove move : plan.getMoves())
+      {
+         List<SiteMove> moves = targets.get(move.getToEngineId());
+         if (moves == null)
+         {
+            moves = new ArrayList<SiteMove>();
+            targets.put(move.getToEngineId(), moves);
+         }
+         moves.add(move);
+      }
+      final List<SiteMove> applied = new ArrayList<SiteMove>();
+      for (Map.Entry<Integer, List<SiteMove>> target : targets.entrySet())
+      {
+         final EngineSites engine = EngineSites.load(m_session, target.getKey());
+         final List<SiteMove> added = new ArrayList<SiteMove>();
+         for (SiteMove move : target.getValue())
+         {
+            if (engine.add(move.getSiteId(), move.getSiteName()))
+            {
+               added.add(move);
+            }
+         }
+         if (!added.isEmpty())
+         {
+            engine.save(m_session);
+            applied.addAll(added);
+         }
+      }
+      return applied;
+   }
+
+   /**
+    * Releases the threads of the rebalancer if it created them.
+    */
+   public void shutdown()
+   {
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdown();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private EngineRebalancer(APISession session, ExecutorService executor, boolean ownsExecutor)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_session = session;
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   /**
+    * The active engines to balance the sites over, sorted by id.
+    */
+   private Set<Integer> getEngineIds() throws IOException, APIException
+   {
+      final Iterable<EngineSummary> engines = m_session.listEngines(m_session.getSessionID(), null);
+      if (engines == null)
+      {
+         throw new APIException("EngineListingRequest failed");
+      }
+      Set<Integer> pool = null;
+      final String[] enginePool = m_enginePool;
+      if (enginePool != null)
+      {
+         final EnginePoolDetails details =
+            m_session.enginePoolDetailsRequest(m_session.getSessionID(), null, enginePool[0], enginePool[1]);
+         if (details == null)
+         {
+            throw new APIException("EnginePoolDetailsRequest failed");
+         }
+         pool = new HashSet<Integer>();
+         for (EngineSummary engine : details.getEngines())
+         {
+            pool.add(engine.getId());
+         }
+      }
+      final Set<Integer> selected = m_engines;
+      final Set<Integer> engineIds = new TreeSet<Integer>();
+      for (EngineSummary engine : engines)
+      {
+         if (EngineActivity.ACTIVE.equals(engine.getStatus())
+            && (selected == null || selected.contains(engine.getId()))
+            && (pool == null || pool.contains(engine.getId())))
+         {
+            engineIds.add(engine.getId());
+         }
+      }
+      return engineIds;
+   }
+
+   /**
+    * Submits a request once less than the maximum number of them are in
+    * flight.
+    */
+   private <T> Future<T> submit(final Semaphore permits, final Callable<T> request) throws InterruptedException
+   {
+      permits.acquire();
+      try
+      {
+         return m_executor.submit(m_session.propagate(new Callable<T>()
+         {
+            @Override
+            public T call() throws Exception
+            {
+               try
+               {
+                  return request.call();
+               }
+               finally
+               {
+                  permits.release();
+               }
+            }
+         }));
+      }
+      catch (RejectedExecutionException e)
+      {
+         permits.release();
+         throw e;
+      }
+   }
+
+   private static <T> T get(Future<T> future) throws IOException, APIException, InterruptedException
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (ExecutionException e)
+      {
+         final Throwable cause = e.getCause();
+         if (cause instanceof IOException)
+         {
+            throw (IOException) cause;
+         }
+         if (cause instanceof APIException)
+         {
+            throw (APIException) cause;
+         }
+         throw new APIException("Could not read the sites: " + cause);
+      }
+   }
+
+   /**
+    * Estimates the cost of a site from its last finished scans, and records
+    * the number of nodes of its last scan and the durations and nodes of its
+    * scans into the totals.
+    */
+   private void estimate(int siteId, List<ScanSummary> history, Map<Integer, Double> costs,
+      Map<Integer, Integer> nodes, double[] totals)
+   {
+      final List<ScanSummary> scans = new ArrayList<ScanSummary>(history);
+      Collections.sort(scans, new Comparator<ScanSummary>()
+      {
+         @Override
+         public int compare(ScanSummary scan1, ScanSummary scan2)
+         {
+            return scan1.getScanID() > scan2.getScanID() ? -1 : scan1.getScanID() < scan2.getScanID() ? 1 : 0;
+         }
+      });
+      final SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT);
+      final int depth = m_historyDepth;
+      double duration = 0;
+      int finished = 0;
+      for (ScanSummary scan : scans)
+      {
+         final int scanNodes = scan.getLiveNodes() + scan.getDeadNodes() + scan.getFilteredNodes()
+            + scan.getUnresolvedNodes() + scan.getOtherNodes();
+         if (scanNodes > 0 && !nodes.containsKey(siteId))
+         {
+            nodes.put(siteId, scanNodes);
+         }
+         if (finished == depth || !FINISHED.equals(scan.getStatus()))
+         {
+            continue;
+         }
+         final long scanDuration = duration(format, scan);
+         if (scanDuration > 0)
+         {
+            duration += scanDuration;
+            finished++;
+            if (scanNodes > 0)
+            {
+               totals[0] += scanDuration;
+               totals[1] += scanNodes;
+            }
+         }
+      }
+      if (finished > 0)
+      {
+         costs.put(siteId, duration / finished);
+      }
+   }
+
+   /**
+    * Estimates the cost of the sites without a finished scan.
+    */
+   private static void estimateMissing(Set<Integer> siteIds, Map<Integer, Double> costs, Map<Integer, Integer> nodes,
+      double[] totals)
+   {
+      final double[] known = new double[costs.size()];
+      int i = 0;
+      for (double cost : costs.values())
+      {
+         known[i++] = cost;
+      }
+      Arrays.sort(known);
+      final double median = known.length == 0 ? 1 : known.length % 2 == 1 ? known[known.length / 2]
+         : (known[known.length / 2 - 1] + known[known.length / 2]) / 2;
+      final double perNode = totals[1] > 0 ? totals[0] / totals[1] : 0;
+      for (Integer siteId : siteIds)
+      {
+         if (!costs.containsKey(siteId))
+         {
+            final Integer siteNodes = nodes.get(siteId);
+            costs.put(siteId, siteNodes != null && perNode > 0 ? perNode * siteNodes : median);
+         }
+      }
+   }
+
+   /**
+    * The duration of a scan in milliseconds, 0 if its times cannot be parsed.
+    */
+   private static long duration(SimpleDateFormat format, ScanSummary scan)
+   {
+      try
+      {
+         return format.parse(scan.getEndTime()).getTime() - format.parse(scan.getStartTime()).getTime();
+      }
+      catch (ParseException e)
+      {
+         return 0;
+      }
+   }
+
+   /**
+    * Packs the sites, the most expensive first, on the engine with the
+    * lowest load once the site is added, unless their current engine is
+    * within the tolerance of it.
+    */
+   private RebalancePlan assign(Set<Integer> engineIds, Map<Integer, Integer> siteEngines,
+      Map<Integer, String> siteNames, final Map<Integer, Double> costs)
+   {
+      final Map<Integer, Double> capacities = new HashMap<Integer, Double>();
+      double capacity = 0;
+      double cost = 0;
+      for (Integer engineId : engineIds)
+      {
+         final Double engineCapacity = m_capacities.get(engineId);
+         capacities.put(engineId, engineCapacity == null ? 1 : engineCapacity);
+         capacity += capacities.get(engineId);
+      }
+      for (double siteCost : costs.values())
+      {
+         cost += siteCost;
+      }
+      final double tolerance = capacity > 0 ? m_moveTolerance * cost / capacity : 0;
+      final List<Integer> siteIds = new ArrayList<Integer>(siteEngines.keySet());
+      Collections.sort(siteIds, new Comparator<Integer>()
+      {
+         @Override
+         public int compare(Integer site1, Integer site2)
+         {
+            final int order = Double.compare(costs.get(site2), costs.get(site1));
+            return order != 0 ? order : site1.compareTo(site2);
+         }
+      });
+      final Map<Integer, Double> loads = new TreeMap<Integer, Double>();
+      for (Integer engineId : engineIds)
+      {
+         loads.put(engineId, 0.0);
+      }
+      final Map<Integer, Integer> assigned = new HashMap<Integer, Integer>();
+      for (Integer siteId : siteIds)
+      {
+         final double siteCost = costs.get(siteId);
+         int best = -1;
+         double bestLoad = Double.POSITIVE_INFINITY;
+         for (Map.Entry<Integer, Double> engine : loads.entrySet())
+         {
+            final double load = (engine.getValue() + siteCost) / capacities.get(engine.getKey());
+            if (load < bestLoad)
+            {
+               best = engine.getKey();
+               bestLoad = load;
+            }
+         }
+         final int current = siteEngines.get(siteId);
+         if ((loads.get(current) + siteCost) / capacities.get(current) <= bestLoad + tolerance)
+         {
+            best = current;
+         }
+         loads.put(best, loads.get(best) + siteCost);
+         assigned.put(siteId, best);
+      }
+      final Map<Integer, Double> loadsBefore = loads(engineIds, siteEngines, costs, capacities);
+      final Map<Integer, Double> loadsAfter = loads(engineIds, assigned, costs, capacities);
+      final List<SiteMove> moves = new ArrayList<SiteMove>();
+      if (!loadsBefore.isEmpty() && Collections.max(loadsAfter.values()) < Collections.max(loadsBefore.values()))
+      {
+         for (Integer siteId : siteIds)
+         {
+            final int from = siteEngines.get(siteId);
+            final int to = assigned.get(siteId);
+            if (from != to)
+            {
+               moves.add(new SiteMove(siteId, siteNames.get(siteId), from, to, costs.get(siteId)));
+            }
+         }
+      }
+      return new RebalancePlan(moves, loadsBefore, moves.isEmpty() ? loadsBefore : loadsAfter,
+         new TreeMap<Integer, Double>(costs));
+   }
+
+   /**
+    * The loads of the engines for an assignment of the sites.
+    */
+   private static Map<Integer, Double> loads(Set<Integer> engineIds, Map<Integer, Integer> siteEngines,
+      Map<Integer, Double> costs, Map<Integer, Double> capacities)
+   {
+      final Map<Integer, Double> loads = new TreeMap<Integer, Double>();
+      for (Integer engineId : engineIds)
+      {
+         loads.put(engineId, 0.0);
+      }
+      for (Map.Entry<Integer, Integer> site : siteEngines.entrySet())
+      {
+         loads.put(site.getValue(), loads.get(site.getValue()) + costs.get(site.getKey()));
+      }
+      for (Map.Entry<Integer, Double> load : loads.entrySet())
+      {
+         load.setValue(load.getValue() / capacities.get(load.getKey()));
+      }
+      return loads;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The format of the start and end times of the scans */
+   private static final String TIME_FORMAT = "yyyyMMdd'T'HHmmssSSS";
+   /** The status of the scans whose duration is known */
+   private static final String FINISHED = "finished";
+   /** Numbers the threads of the rebalancers */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+
+   /** The session to read and assign the sites with */
+   private final APISession m_session;
+   /** The executor to send the requests from */
+   private final ExecutorService m_executor;
+   /** Whether the executor was created by the rebalancer */
+   private final boolean m_ownsExecutor;
+   /** The capacities of the engines set, by id */
+   private final Map<Integer, Double> m_capacities = new ConcurrentHashMap<Integer, Double>();
+   private volatile int m_maxInFlight = 8;
+   private volatile int m_historyDepth = 5;
+   private volatile double m_moveTolerance = 0.05;
+   /** The engines to balance, null for all of them */
+   private volatile Set<Integer> m_engines;
+   /** The name and scope of the engine pool to balance, null for all the engines */
+   private volatile String[] m_enginePool;
+}
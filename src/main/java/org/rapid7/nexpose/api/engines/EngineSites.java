@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.generators.SaveEngineRequestSiteContentGenerator;
+import org.rapid7.nexpose.api.generators.SaveEngineRequestSiteContentGenerator.SaveEngineRequestSite;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The configuration of a scan engine and the sites assigned to it, read with
+ * an EngineConfigRequest, to assign more sites to the engine: an
+ * EngineSaveRequest carries the whole configuration, so the sites it already
+ * has are sent again with the new ones.
+ */
+class EngineSites
+{
+   /**
+    * Reads the configuration of an engine.
+    */
+   static EngineSites load(APISession session, int engineId) throws IOException, APIException
+   {
+      final APIResponse response = session.engineConfigRequest(session.getSessionID(), null, String.valueOf(engineId));
+      if (response.isFailure())
+      {
+         throw new APIException("EngineConfigRequest failed");
+      }
+      final Element config = (Element) response.grabNode("/EngineConfigResponse/EngineConfig");
+      if (config == null)
+      {
+         throw new APIException("Cannot parse the response, no EngineConfig for engine " + engineId);
+      }
+      final EngineSites engine = new EngineSites(engineId, config);
+      for (Node node = config.getFirstChild(); node != null; node = node.getNextSibling())
+      {
+         if (node instanceof Element && "Site".equals(node.getNodeName()))
+         {
+            final Element site = (Element) node;
+            try
+            {
+               engine.m_sites.put(Integer.parseInt(site.getAttribute("id")), site.getAttribute("name"));
+            }
+            catch (NumberFormatException e)
+            {
+               throw new APIException("Cannot parse the response, the attribute: id is not an integer: "
+                  + site.getAttribute("id"));
+            }
+         }
+      }
+      return engine;
+   }
+
+   /**
+    * @return the ids of the sites assigned to the engine.
+    */
+   List<Integer> getSiteIds()
+   {
+      return new ArrayList<Integer>(m_sites.keySet());
+   }
+
+   /**
+    * @return the name of a site of the engine, null if it is not assigned to
+    *         the engine.
+    */
+   String getSiteName(int siteId)
+   {
+      return m_sites.get(siteId);
+   }
+
+   /**
+    * Adds a site to the engine, saved by {@link #save(APISession)}.
+    *
+    * @return false if the site is assigned to the engine already.
+    */
+   boolean add(int siteId, String name)
+   {
+      if (m_sites.containsKey(siteId))
+      {
+         return false;
+      }
+      m_sites.put(siteId, name == null ? "" : name);
+      return true;
+   }
+
+   /**
+    * Saves the configuration of the engine with its sites, which moves the
+    * sites added from the engines they were assigned to.
+    */
+   void save(APISession session) throws IOException, APIException
+   {
+      final List<SaveEngineRequestSite> sites = new ArrayList<SaveEngineRequestSite>(m_sites.size());
+      for (Map.Entry<Integer, String> site : m_sites.entrySet())
+      {
+         sites.add(new SaveEngineRequestSite(String.valueOf(site.getKey()), site.getValue()));
+      }
+      final SaveEngineRequestSiteContentGenerator generator = new SaveEngineRequestSiteContentGenerator();
+      generator.setSites(sites);
+      final APIResponse response = session.engineSaveRequest(session.getSessionID(), null,
+         String.valueOf(m_engineId), m_name, m_address, m_port, m_priority, m_scope, generator);
+      if (response.isFailure())
+      {
+         throw new APIException("EngineSaveRequest failed");
+      }
+   }
+
+   private EngineSites(int engineId, Element config)
+   {
+      m_engineId = engineId;
+      m_name = config.getAttribute("name");
+      m_address = config.getAttribute("address");
+      m_port = config.getAttribute("port");
+      m_priority = config.getAttribute("priority");
+      m_scope = config.getAttribute("scope");
+   }
+
+   private final int m_engineId;
+   private final String m_name;
+   private final String m_address;
+   private final String m_port;
+   private final String m_priority;
+   private final String m_scope;
+   /** The names of the sites of the engine, by id */
+   private final Map<Integer, String> m_sites = new LinkedHashMap<Integer, String>();
+}
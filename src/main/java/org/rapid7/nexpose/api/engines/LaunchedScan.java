@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+/**
+ * A scan started by the {@link ScanDispatcher}.
+ */
+public class LaunchedScan
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a launched scan.
+    *
+    * @param siteId the id of the site scanned.
+    * @param scanId the id of the scan.
+    * @param engineId the id of the engine running the scan.
+    * @param previousEngineId the id of the engine the site was assigned to
+    *        before the scan, -1 if it was not reassigned.
+    * @param queuedAt when the scan was submitted, in milliseconds since the
+    *        epoch.
+    * @param launchedAt when the scan was started, in milliseconds since the
+    *        epoch.
+    */
+   public LaunchedScan(int siteId, long scanId, int engineId, int previousEngineId, long queuedAt, long launchedAt)
+   {
+      m_siteId = siteId;
+      m_scanId = scanId;
+      m_engineId = engineId;
+      m_previousEngineId = previousEngineId;
+      m_queuedAt = queuedAt;
+      m_launchedAt = launchedAt;
+   }
+
+   /**
+    * @return the id of the site scanned.
+    */
+   public int getSiteId()
+   {
+      return m_siteId;
+   }
+
+   /**
+    * @return the id of the scan.
+    */
+   public long getScanId()
+   {
+      return m_scanId;
+   }
+
+   /**
+    * @return the id of the engine running the scan.
+    */
+   public int getEngineId()
+   {
+      return m_engineId;
+   }
+
+   /**
+    * @return the id of the engine the site was assigned to before the scan,
+    *         -1 if it was not reassigned.
+    */
+   public int getPreviousEngineId()
+   {
+      return m_previousEngineId;
+   }
+
+   /**
+    * @return true if the site was assigned to another engine for the scan.
+    */
+   public boolean isReassigned()
+   {
+      return m_previousEngineId >= 0;
+   }
+
+   /**
+    * @return when the scan was submitted, in milliseconds since the epoch.
+    */
+   public long getQueuedAt()
+   {
+      return m_queuedAt;
+   }
+
+   /**
+    * @return when the scan was started, in milliseconds since the epoch.
+    */
+   public long getLaunchedAt()
+   {
+      return m_launchedAt;
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "LaunchedScan[site " + m_siteId + ", scan " + m_scanId + ", engine " + m_engineId
+         + (isReassigned() ? " (was " + m_previousEngineId + ")" : "") + "]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final int m_siteId;
+   private final long m_scanId;
+   private final int m_engineId;
+   private final int m_previousEngineId;
+   private final long m_queuedAt;
+   private final long m_launchedAt;
+}
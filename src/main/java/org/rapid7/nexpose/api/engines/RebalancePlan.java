@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A balanced assignment of sites to engines computed by the
+ * {@link EngineRebalancer}: the sites to move, and the load of every engine
+ * before and after the moves. The load of an engine is the estimated
+ * duration of a scan of each of its sites, summed and divided by its
+ * capacity.
+ */
+public class RebalancePlan
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * @return the sites to move, the most expensive first.
+    */
+   public List<SiteMove> getMoves()
+   {
+      return m_moves;
+   }
+
+   /**
+    * @return true if no site needs to be moved.
+    */
+   public boolean isEmpty()
+   {
+      return m_moves.isEmpty();
+   }
+
+   /**
+    * @return the ids of the engines balanced.
+    */
+   public Set<Integer> getEngineIds()
+   {
+      return m_loadsBefore.keySet();
+   }
+
+   /**
+    * @param engineId the id of an engine balanced.
+    * @return the load of the engine before the moves, in milliseconds, NaN
+    *         if the engine was not balanced.
+    */
+   public double getLoadBefore(int engineId)
+   {
+      final Double load = m_loadsBefore.get(engineId);
+      return load == null ? Double.NaN : load;
+   }
+
+   /**
+    * @param engineId the id of an engine balanced.
+    * @return the load of the engine after the moves, in milliseconds, NaN if
+    *         the engine was not balanced.
+    */
+   public double getLoadAfter(int engineId)
+   {
+      final Double load = m_loadsAfter.get(engineId);
+      return load == null ? Double.NaN : load;
+   }
+
+   /**
+    * @param siteId the id of a site of the engines balanced.
+    * @return the estimated duration of a scan of the site, in milliseconds,
+    *         NaN if the site was not balanced.
+    */
+   public double getSiteCost(int siteId)
+   {
+      final Double cost = m_siteCosts.get(siteId);
+      return cost == null ? Double.NaN : cost;
+   }
+
+   /**
+    * @return the highest load before the moves divided by the mean load, 1
+    *         for a perfect balance.
+    */
+   public double getImbalanceBefore()
+   {
+      return imbalance(m_loadsBefore);
+   }
+
+   /**
+    * @return the highest load after the moves divided by the mean load, 1
+    *         for a perfect balance.
+    */
+   public double getImbalanceAfter()
+   {
+      return imbalance(m_loadsAfter);
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "RebalancePlan[" + m_moves.size() + " moves, " + m_siteCosts.size() + " sites, "
+         + m_loadsBefore.size() + " engines, imbalance " + String.format("%.2f -> %.2f",
+         getImbalanceBefore(), getImbalanceAfter()) + "]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   RebalancePlan(List<SiteMove> moves, Map<Integer, Double> loadsBefore, Map<Integer, Double> loadsAfter,
+      Map<Integer, Double> siteCosts)
+   {
+      m_moves = Collections.unmodifiableList(moves);
+      m_loadsBefore = Collections.unmodifiableMap(loadsBefore);
+      m_loadsAfter = Collections.unmodifiableMap(loadsAfter);
+      m_siteCosts = Collections.unmodifiableMap(siteCosts);
+   }
+
+   private static double imbalance(Map<Integer, Double> loads)
+   {
+      double max = 0;
+      double sum = 0;
+      for (double load : loads.values())
+      {
+         max = Math.max(max, load);
+         sum += load;
+      }
+      return sum > 0 ? max * loads.size() / sum : 1;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final List<SiteMove> m_moves;
+   /** The loads of the engines, by id */
+   private final Map<Integer, Double> m_loadsBefore;
+   private final Map<Integer, Double> m_loadsAfter;
+   /** The estimated durations of the scans of the sites, by id */
+   private final Map<Integer, Double> m_siteCosts;
+}
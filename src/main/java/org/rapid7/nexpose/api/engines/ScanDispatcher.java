@@ -0,0 +1,797 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.ScanStatisticsRequest;
+import org.rapid7.nexpose.api.domain.ScanSummary;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queues site scans and starts them as the engines have room, instead of
+ * starting every scan at once on the engine of its site:
+ * <PRE>
+ * EngineMonitor monitor = new EngineMonitor(session);
+ * monitor.start();
+ * ScanDispatcher dispatcher = new ScanDispatcher(session, monitor);
+ * dispatcher.setMaxScansPerEngine(2);
+ * dispatcher.setMaxConcurrentScans(20);
+ * dispatcher.start();
+ * Future&lt;LaunchedScan&gt; scan = dispatcher.submit(siteId);
+ * </PRE>
+ * The scans running on every engine are known from the activity the
+ * {@link EngineMonitor} polls, plus the scans the dispatcher started which
+ * the activity does not show yet. A scan it started and which is no longer
+ * listed by its engine is checked with a ScanStatisticsRequest before its
+ * slot is freed. A scan is started once the number of scans running stays
+ * under the global limit and the limit of its engine.
+ * <P>
+ * By default the site of the next scan is first assigned to the least
+ * loaded available engine, with an EngineSaveRequest listing the sites of
+ * the engine, so that bursts of scans spread over the engines. Without
+ * reassignment, the queue is served in order of the sites whose engine has
+ * room, the sites without an engine going to the least loaded one.
+ */
+public class ScanDispatcher
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a dispatcher starting the scans from its own pool of daemon
+    * threads, released by {@link #shutdown()}.
+    *
+    * @param session the logged in session to start the scans with.
+    * @param monitor the monitor of the activity of the engines.
+    */
+   public ScanDispatcher(APISession session, EngineMonitor monitor)
+   {
+      this(session, monitor, Executors.newCachedThreadPool(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-scan-dispatcher-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates a dispatcher starting the scans from the given executor, which
+    * is not shut down by {@link #shutdown()}.
+    *
+    * @param session the logged in session to start the scans with.
+    * @param monitor the monitor of the activity of the engines.
+    * @param executor the executor to send the requests from.
+    */
+   public ScanDispatcher(APISession session, EngineMonitor monitor, ExecutorService executor)
+   {
+      this(session, monitor, executor, false);
+   }
+
+   /**
+    * Sets the maximum number of scans running on all the engines at once,
+    * started by the dispatcher or not. 10 by default.
+    *
+    * @param maxScans the number of scans, at least 1.
+    */
+   public void setMaxConcurrentScans(int maxScans)
+   {
+      if (maxScans < 1)
+      {
+         throw new IllegalArgumentException("maxScans must be at least 1");
+      }
+      synchronized (m_lock)
+      {
+         m_maxScans = maxScans;
+      }
+      dispatch();
+   }
+
+   /**
+    * Sets the maximum number of scans running on an engine at once. 2 by
+    * default.
+    *
+    * @param maxScans the number of scans, at least 1.
+    */
+   public void setMaxScansPerEngine(int maxScans)
+   {
+      if (maxScans < 1)
+      {
+         throw new IllegalArgumentException("maxScans must be at least 1");
+      }
+      synchronized (m_lock)
+      {
+         m_maxScansPerEngine = maxScans;
+      }
+      dispatch();
+   }
+
+   /**
+    * Sets the maximum number of scans running on a given engine at once, in
+    * place of the one of every engine.
+    *
+    * @param engineId the id of the engine.
+    * @param maxScans the number of scans, 0 to start none on the engine.
+    */
+   public void setMaxScansPerEngine(int engineId, int maxScans)
+   {
+      if (maxScans < 0)
+      {
+         throw new IllegalArgumentException("maxScans cannot be negative");
+      }
+      synchronized (m_lock)
+      {
+         m_engineLimits.put(engineId, maxScans);
+      }
+      dispatch();
+   }
+
+   /**
+    * Sets the engines the sites may be assigned to. All the engines listed
+    * by default.
+    *
+    * @param engineIds the ids of the engines, none for all of them.
+    */
+   public void setEngines(int... engineIds)
+   {
+      synchronized (m_lock)
+      {
+         if (engineIds.length == 0)
+         {
+            m_engines = null;
+         }
+         else
+         {
+            m_engines = new HashSet<Integer>();
+            for (int engineId : engineIds)
+            {
+               m_engines.add(engineId);
+            }
+         }
+      }
+      dispatch();
+   }
+
+   /**
+    * Sets whether the sites are assigned to the least loaded engine before
+    * their scan. True by default.
+    *
+    * @param reassign false to scan the sites with the engine they have.
+    */
+   public void setReassign(boolean reassign)
+   {
+      synchronized (m_lock)
+      {
+         m_reassign = reassign;
+      }
+      dispatch();
+   }
+
+   /**
+    * Reads which engine every site is assigned to, with an
+    * EngineConfigRequest per engine sent in parallel, then starts the scans
+    * submitted as the engines have room.
+    *
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    * @throws InterruptedException If the thread is interrupted while
+    *         reading the engines.
+    */
+   public void start() throws IOException, APIException, InterruptedException
+   {
+      if (m_monitor.getActivities().isEmpty())
+      {
+         m_monitor.poll();
+      }
+      final Map<Integer, Future<EngineSites>> engines = new HashMap<Integer, Future<EngineSites>>();
+      try
+      {
+         for (EngineActivity activity : m_monitor.getActivities())
+         {
+            final int engineId = activity.getEngineId();
+            engines.put(engineId, m_executor.submit(m_session.propagate(new Callable<EngineSites>()
+            {
+               @Override
+               public EngineSites call() throws IOException, APIException
+               {
+                  return EngineSites.load(m_session, engineId);
+               }
+            })));
+         }
+         final Map<Integer, Integer> siteEngines = new HashMap<Integer, Integer>();
+         for (Map.Entry<Integer, Future<EngineSites>> engine : engines.entrySet())
+         {
+            for (Integer siteId : engine.getValue().get().getSiteIds())
+            {
+               siteEngines.put(siteId, engine.getKey());
+            }
+         }
+         synchronized (m_lock)
+         {
+            m_siteEngines.putAll(siteEngines);
+            m_started = true;
+         }
+      }
+      catch (ExecutionException e)
+      {
+         final Throwable cause = e.getCause();
+         if (cause instanceof IOException)
+         {
+            throw (IOException) cause;
+         }
+         if (cause instanceof APIException)
+         {
+            throw (APIException) cause;
+         }
+         throw new APIException("Could not read the engines: " + cause);
+      }
+      finally
+      {
+         for (Future<EngineSites> future : engines.values())
+         {
+            future.cancel(true);
+         }
+      }
+      m_monitor.addListener(m_listener);
+      dispatch();
+   }
+
+   /**
+    * Queues the scan of a site.
+    *
+    * @param siteId the id of the site to scan.
+    * @return the future scan, done once it is started, or failed if it could
+    *         not be. Cancelling it before it is started removes it from the
+    *         queue.
+    */
+   public Future<LaunchedScan> submit(int siteId)
+   {
+      final PendingScan scan = new PendingScan(siteId);
+      synchronized (m_lock)
+      {
+         if (m_shutdown)
+         {
+            throw new IllegalStateException("The dispatcher is shut down");
+         }
+         m_queue.add(scan);
+      }
+      dispatch();
+      return scan;
+   }
+
+   /**
+    * Retrieves the number of scans waiting for an engine.
+    *
+    * @return the number of scans.
+    */
+   public int getQueueLength()
+   {
+      synchronized (m_lock)
+      {
+         return m_queue.size();
+      }
+   }
+
+   /**
+    * Retrieves the number of scans running on an engine, as the dispatcher
+    * counts them.
+    *
+    * @param engineId the id of the engine.
+    * @return the number of scans.
+    */
+   public int getRunningScans(int engineId)
+   {
+      synchronized (m_lock)
+      {
+         final Integer load = loads(false).get(engineId);
+         return load == null ? 0 : load;
+      }
+   }
+
+   /**
+    * Retrieves the scans started by the dispatcher which are still running.
+    *
+    * @return the scans.
+    */
+   public List<LaunchedScan> getLaunchedScans()
+   {
+      synchronized (m_lock)
+      {
+         return new ArrayList<LaunchedScan>(m_launched.values());
+      }
+   }
+
+   /**
+    * Stops starting scans: the scans still queued are cancelled. The scans
+    * being started are let finish, and the threads of the dispatcher are
+    * released if it created them.
+    */
+   public void shutdown()
+   {
+      m_monitor.removeListener(m_listener);
+      final List<PendingScan> queued;
+      synchronized (m_lock)
+      {
+         m_shutdown = true;
+         queued = new ArrayList<PendingScan>(m_queue);
+         m_queue.clear();
+      }
+      for (PendingScan scan : queued)
+      {
+         scan.cancel(false);
+      }
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdown();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private ScanDispatcher(APISession session, EngineMonitor monitor, ExecutorService executor, boolean ownsExecutor)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (monitor == null)
+      {
+         throw new IllegalArgumentException("monitor cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_session = session;
+      m_monitor = monitor;
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   /**
+    * Starts the queued scans the engines have room for.
+    */
+   private void dispatch()
+   {
+      synchronized (m_lock)
+      {
+         if (!m_started || m_shutdown)
+         {
+            return;
+         }
+         // the cap counts the scans of every engine, the scans go to the eligible ones
+         int total = 0;
+         for (Integer load : loads(false).values())
+         {
+            total += load;
+         }
+         final Map<Integer, Integer> loads = loads(true);
+         while (!m_queue.isEmpty() && total < m_maxScans)
+         {
+            PendingScan scan = null;
+            int engineId = -1;
+            if (m_reassign)
+            {
+               engineId = leastLoaded(loads);
+               if (engineId >= 0)
+               {
+                  scan = next(null);
+               }
+            }
+            else
+            {
+               for (PendingScan queued : m_queue)
+               {
+                  final Integer siteEngine = m_siteEngines.get(queued.m_siteId);
+                  engineId = siteEngine != null ? siteEngine : leastLoaded(loads);
+                  if (!queued.isCancelled() && engineId >= 0 && hasRoom(engineId, loads))
+                  {
+                     scan = next(queued);
+                     break;
+                  }
+               }
+            }
+            if (scan == null)
+            {
+               return;
+            }
+            increment(m_reserved, engineId, 1);
+            increment(loads, engineId, 1);
+            total++;
+            launch(scan, engineId);
+         }
+      }
+   }
+
+   /**
+    * Takes a scan out of the queue, dropping the cancelled ones before it.
+    *
+    * @param scan the scan to take, null for the first one.
+    * @return the scan, null if it was cancelled and no other is taken.
+    */
+   private PendingScan next(PendingScan scan)
+   {
+      for (Iterator<PendingScan> queued = m_queue.iterator(); queued.hasNext(); )
+      {
+         final PendingScan candidate = queued.next();
+         if (candidate.isCancelled())
+         {
+            queued.remove();
+         }
+         else if (scan == null || candidate == scan)
+         {
+            queued.remove();
+            return candidate;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Starts a scan on an engine, assigning its site to the engine first if
+    * needed.
+    */
+   private void launch(final PendingScan scan, final int engineId)
+   {
+      m_executor.submit(m_session.propagate(new Callable<Object>()
+      {
+         @Override
+         public Object call()
+         {
+            try
+            {
+               final LaunchedScan launched = start(scan, engineId);
+               synchronized (m_lock)
+               {
+                  m_launched.put(launched.getScanId(), launched);
+               }
+               scan.complete(launched);
+               m_monitor.pollNow(launched.getEngineId());
+            }
+            catch (IOException e)
+            {
+               scan.fail(e);
+            }
+            catch (APIException e)
+            {
+               scan.fail(e);
+            }
+            catch (RuntimeException e)
+            {
+               scan.fail(e);
+            }
+            finally
+            {
+               synchronized (m_lock)
+               {
+                  increment(m_reserved, engineId, -1);
+               }
+               dispatch();
+            }
+            return null;
+         }
+      }));
+   }
+
+   private LaunchedScan start(PendingScan scan, int engineId) throws IOException, APIException
+   {
+      Object engineLock;
+      synchronized (m_lock)
+      {
+         engineLock = m_engineLocks.get(engineId);
+         if (engineLock == null)
+         {
+            engineLock = new Object();
+            m_engineLocks.put(engineId, engineLock);
+         }
+      }
+      int previousEngineId = -1;
+      // a save replaces the sites of the engine: one assignment at a time
+      synchronized (engineLock)
+      {
+         final Integer previous;
+         synchronized (m_lock)
+         {
+            previous = m_siteEngines.get(scan.m_siteId);
+         }
+         if (previous == null || previous != engineId)
+         {
+            final EngineSites engine = EngineSites.load(m_session, engineId);
+            engine.add(scan.m_siteId, null);
+            engine.save(m_session);
+            synchronized (m_lock)
+            {
+               m_siteEngines.put(scan.m_siteId, engineId);
+            }
+            previousEngineId = previous == null ? -1 : previous;
+         }
+      }
+      final APIResponse response = m_session.siteScanRequest(
+         m_session.getSessionID(), null, String.valueOf(scan.m_siteId));
+      if (response.isFailure())
+      {
+         throw new APIException("SiteScanRequest failed");
+      }
+      final String[] ids = response.grabAll("/SiteScanResponse/Scan/@scan-id", "/SiteScanResponse/Scan/@engine-id");
+      try
+      {
+         return new LaunchedScan(scan.m_siteId, Long.parseLong(ids[0]),
+            ids[1].length() > 0 ? Integer.parseInt(ids[1]) : engineId,
+            previousEngineId, scan.m_queuedAt, System.currentTimeMillis());
+      }
+      catch (NumberFormatException e)
+      {
+         throw new APIException("Cannot parse the response, no scan id: " + Arrays.toString(ids));
+      }
+   }
+
+   /**
+    * Frees the slots of the scans started on an engine which its activity no
+    * longer shows and which have ended.
+    */
+   private void reconcile(EngineActivity activity) throws IOException, APIException
+   {
+      final List<LaunchedScan> missing = new ArrayList<LaunchedScan>();
+      synchronized (m_lock)
+      {
+         final Set<Long> running = scanIds(activity.getScans());
+         for (LaunchedScan launched : m_launched.values())
+         {
+            if (launched.getEngineId() == activity.getEngineId()
+               && launched.getLaunchedAt() < activity.getPolledAt()
+               && !running.contains(launched.getScanId()))
+            {
+               missing.add(launched);
+            }
+         }
+      }
+      for (LaunchedScan launched : missing)
+      {
+         final APIResponse response = m_session.executeAPIRequest(
+            new ScanStatisticsRequest(m_session.getSessionID(), null, String.valueOf(launched.getScanId())));
+         if (response.isFailure() || ENDED.contains(response.grab("/ScanStatisticsResponse/ScanSummary/@status")))
+         {
+            synchronized (m_lock)
+            {
+               m_launched.remove(launched.getScanId());
+            }
+         }
+      }
+   }
+
+   /**
+    * Counts the scans running on the engines: the scans of its activity,
+    * those started but not shown yet, and those being started. Must be
+    * called with the lock held.
+    *
+    * @param eligible true for the available engines the sites may be
+    *        assigned to only, false for every engine.
+    */
+   private Map<Integer, Integer> loads(boolean eligible)
+   {
+      final Map<Integer, Integer> loads = new HashMap<Integer, Integer>();
+      for (EngineActivity activity : m_monitor.getActivities())
+      {
+         if (eligible
+            && (!activity.isAvailable() || (m_engines != null && !m_engines.contains(activity.getEngineId()))))
+         {
+            continue;
+         }
+         final Set<Long> running = scanIds(activity.getScans());
+         for (LaunchedScan launched : m_launched.values())
+         {
+            if (launched.getEngineId() == activity.getEngineId())
+            {
+               running.add(launched.getScanId());
+            }
+         }
+         final Integer reserved = m_reserved.get(activity.getEngineId());
+         loads.put(activity.getEngineId(), running.size() + (reserved == null ? 0 : reserved));
+      }
+      return loads;
+   }
+
+   /**
+    * Finds the engine with room running the fewest scans. Must be called with
+    * the lock held.
+    *
+    * @return the id of the engine, -1 if none has room.
+    */
+   private int leastLoaded(Map<Integer, Integer> loads)
+   {
+      int engineId = -1;
+      int least = Integer.MAX_VALUE;
+      for (Map.Entry<Integer, Integer> load : loads.entrySet())
+      {
+         if (load.getValue() < least && hasRoom(load.getKey(), loads))
+         {
+            engineId = load.getKey();
+            least = load.getValue();
+         }
+      }
+      return engineId;
+   }
+
+   private boolean hasRoom(int engineId, Map<Integer, Integer> loads)
+   {
+      final Integer load = loads.get(engineId);
+      final Integer limit = m_engineLimits.get(engineId);
+      return load != null && load < (limit == null ? m_maxScansPerEngine : limit);
+   }
+
+   private static void increment(Map<Integer, Integer> counts, int key, int delta)
+   {
+      final Integer count = counts.get(key);
+      counts.put(key, (count == null ? 0 : count) + delta);
+   }
+
+   private static Set<Long> scanIds(Collection<ScanSummary> scans)
+   {
+      final Set<Long> ids = new HashSet<Long>();
+      for (ScanSummary scan : scans)
+      {
+         ids.add(scan.getScanID());
+      }
+      return ids;
+   }
+
+   /**
+    * A scan waiting for an engine, and its future.
+    */
+   private static class PendingScan extends FutureTask<LaunchedScan>
+   {
+      PendingScan(int siteId)
+      {
+         super(new Callable<LaunchedScan>()
+         {
+            @Override
+            public LaunchedScan call()
+            {
+               throw new IllegalStateException("A pending scan is started by the dispatcher, not run");
+            }
+         });
+         m_siteId = siteId;
+         m_queuedAt = System.currentTimeMillis();
+      }
+
+      void complete(LaunchedScan scan)
+      {
+         set(scan);
+      }
+
+      void fail(Throwable error)
+      {
+         setException(error);
+      }
+
+      @Override
+      public void run()
+      {
+         // completed by complete() and fail() only
+      }
+
+      /** The id of the site to scan */
+      final int m_siteId;
+      /** When the scan was submitted */
+      final long m_queuedAt;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The statuses of the scans which no longer run on their engine */
+   private static final Set<String> ENDED = new HashSet<String>(Arrays.asList(
+      "finished", "stopped", "error", "aborted"));
+   /** Numbers the threads of the dispatchers */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+
+   /** The session to start the scans with */
+   private final APISession m_session;
+   /** The monitor of the activity of the engines */
+   private final EngineMonitor m_monitor;
+   /** The executor to send the requests from */
+   private final ExecutorService m_executor;
+   /** Whether the executor was created by the dispatcher */
+   private final boolean m_ownsExecutor;
+   /** Frees the slots of the scans ended and dispatches the queue on changes */
+   private final IEngineActivityListener m_listener = new IEngineActivityListener()
+   {
+      @Override
+      public void activityChanged(EngineActivity previous, final EngineActivity current)
+      {
+         if (current == null)
+         {
+            return;
+         }
+         m_executor.submit(m_session.propagate(new Callable<Object>()
+         {
+            @Override
+            public Object call() throws IOException, APIException
+            {
+               try
+               {
+                  reconcile(current);
+               }
+               finally
+               {
+                  dispatch();
+               }
+               return null;
+            }
+         }));
+      }
+   };
+   /** Guards the queue and the counts */
+   private final Object m_lock = new Object();
+   /** The scans waiting for an engine */
+   private final ArrayDeque<PendingScan> m_queue = new ArrayDeque<PendingScan>();
+   /** The engine of every site, by site id */
+   private final Map<Integer, Integer> m_siteEngines = new HashMap<Integer, Integer>();
+   /** The scans started which may still run, by scan id */
+   private final Map<Long, LaunchedScan> m_launched = new HashMap<Long, LaunchedScan>();
+   /** Serializes the assignments of sites to an engine, by engine id */
+   private final Map<Integer, Object> m_engineLocks = new HashMap<Integer, Object>();
+   /** The number of scans being started, by engine id */
+   private final Map<Integer, Integer> m_reserved = new HashMap<Integer, Integer>();
+   /** The limits of the engines which have their own, by engine id */
+   private final Map<Integer, Integer> m_engineLimits = new HashMap<Integer, Integer>();
+   /** The engines the sites may be assigned to, null for all */
+   private Set<Integer> m_engines;
+   private int m_maxScans = 10;
+   private int m_maxScansPerEngine = 2;
+   private boolean m_reassign = true;
+   private boolean m_started;
+   private boolean m_shutdown;
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.engines;
+
+/**
+ * The move of a site to another engine, part of a {@link RebalancePlan}.
+ */
+public class SiteMove
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a site move.
+    *
+    * @param siteId the id of the site to move.
+    * @param siteName the name of the site.
+    * @param fromEngineId the id of the engine the site is assigned to.
+    * @param toEngineId the id of the engine to assign the site to.
+    * @param cost the estimated duration of a scan of the site, in
+    *        milliseconds.
+    */
+   public SiteMove(int siteId, String siteName, int fromEngineId, int toEngineId, double cost)
+   {
+      m_siteId = siteId;
+      m_siteName = siteName;
+      m_fromEngineId = fromEngineId;
+      m_toEngineId = toEngineId;
+      m_cost = cost;
+   }
+
+   /**
+    * @return the id of the site to move.
+    */
+   public int getSiteId()
+   {
+      return m_siteId;
+   }
+
+   /**
+    * @return the name of the site.
+    */
+   public String getSiteName()
+   {
+      return m_siteName;
+   }
+
+   /**
+    * @return the id of the engine the site is assigned to.
+    */
+   public int getFromEngineId()
+   {
+      return m_fromEngineId;
+   }
+
+   /**
+    * @return the id of the engine to assign the site to.
+    */
+   public int getToEngineId()
+   {
+      return m_toEngineId;
+   }
+
+   /**
+    * @return the estimated duration of a scan of the site, in milliseconds.
+    */
+   public double getCost()
+   {
+      return m_cost;
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "SiteMove[site " + m_siteId + ", engine " + m_fromEngineId + " -> " + m_toEngineId
+         + ", " + Math.round(m_cost / 1000) + " s]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final int m_siteId;
+   private final String m_siteName;
+   private final int m_fromEngineId;
+   private final int m_toEngineId;
+   private final double m_cost;
+}
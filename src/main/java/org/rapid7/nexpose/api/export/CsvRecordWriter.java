@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes records as comma separated values, as of RFC 4180: a first line
+ * with the names of the columns, lines ended by CRLF, and the values holding
+ * a comma, a double quote or a line break quoted. Missing values are empty.
+ */
+public class CsvRecordWriter extends RecordWriter
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a writer and writes the line of the column names.
+    *
+    * @param out where to write the records.
+    * @param columns the columns of the records.
+    * @throws IOException when the line of the column names cannot be written.
+    */
+   public CsvRecordWriter(Writer out, RecordColumn[] columns) throws IOException
+   {
+      super(out, columns);
+      for (int i = 0; i < m_columns.length; i++)
+      {
+         if (i > 0)
+         {
+            m_out.write(',');
+         }
+         writeValue(m_columns[i].getName());
+      }
+      m_out.write("\r\n");
+   }
+
+   @Override
+   public void write(String[] values) throws IOException
+   {
+      checkRecord(values);
+      for (int i = 0; i < values.length; i++)
+      {
+         if (i > 0)
+         {
+            m_out.write(',');
+         }
+         if (values[i] != null)
+         {
+            writeValue(values[i]);
+         }
+      }
+      m_out.write("\r\n");
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Writes a value, quoted if needed.
+    *
+    * @param value the value.
+    * @throws IOException when the value cannot be written.
+    */
+   private void writeValue(String value) throws IOException
+   {
+      final int length = value.length();
+      int i = 0;
+      while (i < length)
+      {
+         final char c = value.charAt(i);
+         if (c == ',' || c == '"' || c == '\r' || c == '\n')
+         {
+            break;
+         }
+         i++;
+      }
+      if (i == length)
+      {
+         m_out.write(value);
+         return;
+      }
+      m_out.write('"');
+      int start = 0;
+      for (; i < length; i++)
+      {
+         if (value.charAt(i) == '"')
+         {
+            // doubles the quote
+            m_out.write(value, start, i + 1 - start);
+            start = i;
+         }
+      }
+      m_out.write(value, start, length - start);
+      m_out.write('"');
+   }
+}
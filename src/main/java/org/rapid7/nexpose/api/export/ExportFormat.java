@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The formats a {@link ListingExporter} writes records in.
+ */
+public enum ExportFormat
+{
+   /** Comma separated values as of RFC 4180, after a line with the column names */
+   CSV(".csv"),
+   /** One JSON object per record and line, numeric columns as JSON numbers */
+   JSON_LINES(".jsonl");
+
+   /**
+    * Retrieves the usual extension of the files of the format.
+    *
+    * @return the extension, with its dot.
+    */
+   public String getExtension()
+   {
+      return m_extension;
+   }
+
+   /**
+    * Creates a writer of records in the format.
+    *
+    * @param out where to write the records.
+    * @param columns the columns of the records.
+    * @return the writer.
+    * @throws IOException when the start of the output cannot be written.
+    */
+   public RecordWriter createWriter(Writer out, RecordColumn[] columns) throws IOException
+   {
+      return this == CSV ? new CsvRecordWriter(out, columns) : new JsonLinesRecordWriter(out, columns);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private ExportFormat(String extension)
+   {
+      m_extension = extension;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String m_extension;
+}
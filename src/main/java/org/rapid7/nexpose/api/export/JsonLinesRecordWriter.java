@@ -0,0 +1,218 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes records as JSON Lines: one JSON object per record and line, keyed
+ * by the names of the columns. The values of numeric columns are written as
+ * JSON numbers when they are valid ones, missing values as null.
+ */
+public class JsonLinesRecordWriter extends RecordWriter
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a writer.
+    *
+    * @param out where to write the records.
+    * @param columns the columns of the records.
+    */
+   public JsonLinesRecordWriter(Writer out, RecordColumn[] columns)
+   {
+      super(out, columns);
+      m_keys = new String[m_columns.length];
+      final StringBuilder key = new StringBuilder();
+      for (int i = 0; i < m_columns.length; i++)
+      {
+         key.setLength(0);
+         key.append(i == 0 ? '{' : ',');
+         appendString(key, m_columns[i].getName());
+         m_keys[i] = key.append(':').toString();
+      }
+   }
+
+   @Override
+   public void write(String[] values) throws IOException
+   {
+      checkRecord(values);
+      final StringBuilder line = m_line;
+      line.setLength(0);
+      for (int i = 0; i < values.length; i++)
+      {
+         line.append(m_keys[i]);
+         final String value = values[i];
+         if (value == null)
+         {
+            line.append("null");
+         }
+         else if (m_columns[i].isNumeric() && isNumber(value))
+         {
+            line.append(value);
+         }
+         else
+         {
+            appendString(line, value);
+         }
+      }
+      line.append("}\n");
+      m_out.append(line);
+      if (line.length() > MAX_RETAINED_LINE)
+      {
+         m_line = new StringBuilder(256);
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Appends a JSON string.
+    *
+    * @param out where to append the string.
+    * @param value the value of the string.
+    */
+   private static void appendString(StringBuilder out, String value)
+   {
+      out.append('"');
+      for (int i = 0; i < value.length(); i++)
+      {
+         final char c = value.charAt(i);
+         if (c == '"' || c == '\\')
+         {
+            out.append('\\').append(c);
+         }
+         else if (c == '\n')
+         {
+            out.append("\\n");
+         }
+         else if (c == '\r')
+         {
+            out.append("\\r");
+         }
+         else if (c == '\t')
+         {
+            out.append("\\t");
+         }
+         else if (c < 0x20)
+         {
+            out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+         }
+         else
+         {
+            out.append(c);
+         }
+      }
+      out.append('"');
+   }
+
+   /**
+    * Tells whether a value is a valid JSON number.
+    *
+    * @param value the value.
+    * @return true if the value can be written unquoted.
+    */
+   private static boolean isNumber(String value)
+   {
+      final int length = value.length();
+      int i = 0;
+      if (i < length && value.charAt(i) == '-')
+      {
+         i++;
+      }
+      if (i < length && value.charAt(i) == '0')
+      {
+         i++;
+      }
+      else
+      {
+         final int start = i;
+         i = digits(value, i);
+         if (i == start)
+         {
+            return false;
+         }
+      }
+      if (i < length && value.charAt(i) == '.')
+      {
+         final int start = ++i;
+         i = digits(value, i);
+         if (i == start)
+         {
+            return false;
+         }
+      }
+      if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E'))
+      {
+         i++;
+         if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-'))
+         {
+            i++;
+         }
+         final int start = i;
+         i = digits(value, i);
+         if (i == start)
+         {
+            return false;
+         }
+      }
+      return i == length;
+   }
+
+   /**
+    * Skips digits.
+    *
+    * @param value the value.
+    * @param start where to start.
+    * @return the index of the first character after the digits.
+    */
+   private static int digits(String value, int start)
+   {
+      int i = start;
+      while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9')
+      {
+         i++;
+      }
+      return i;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private static final char[] HEX = "0123456789abcdef".toCharArray();
+   /** The size above which the line buffer is not kept for the next record */
+   private static final int MAX_RETAINED_LINE = 64 * 1024;
+   /** The opening of the members of the columns: {"name": or ,"name": */
+   private final String[] m_keys;
+   private StringBuilder m_line = new StringBuilder(256);
+}
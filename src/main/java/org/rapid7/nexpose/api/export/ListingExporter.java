@@ -0,0 +1,324 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.SiteDeviceListingRequest;
+import org.rapid7.nexpose.api.SiteListingRequest;
+import org.rapid7.nexpose.api.SiteScanHistoryRequest;
+import org.rapid7.nexpose.api.TemplateAPIRequest;
+import org.rapid7.nexpose.api.TicketListingRequest;
+import org.rapid7.nexpose.api.UserListingRequest;
+import org.rapid7.nexpose.api.domain.SiteSummary;
+import org.rapid7.nexpose.api.generators.IContentGenerator;
+
+/**
+ * Exports listings of a console to CSV or JSON Lines, gzip compressed by
+ * default. The responses are streamed into the output record by record,
+ * without building their documents nor lists of summaries, so that the
+ * memory used does not depend on the size of the listings: a site of a
+ * million devices exports with a small heap.
+ */
+public class ListingExporter
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an exporter.
+    *
+    * @param session the session to list with, logged in.
+    */
+   public ListingExporter(APISession session)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("The session cannot be null");
+      }
+      m_session = session;
+   }
+
+   /**
+    * Sets the format of the records, CSV by default.
+    *
+    * @param format the format of the records.
+    */
+   public void setFormat(ExportFormat format)
+   {
+      if (format == null)
+      {
+         throw new IllegalArgumentException("The format cannot be null");
+      }
+      m_format = format;
+   }
+
+   /**
+    * Retrieves the format of the records.
+    *
+    * @return the format of the records.
+    */
+   public ExportFormat getFormat()
+   {
+      return m_format;
+   }
+
+   /**
+    * Sets whether the output is gzip compressed, the default.
+    *
+    * @param compressed true to compress the output.
+    */
+   public void setCompressed(boolean compressed)
+   {
+      m_compressed = compressed;
+   }
+
+   /**
+    * Tells whether the output is gzip compressed.
+    *
+    * @return true if the output is compressed.
+    */
+   public boolean isCompressed()
+   {
+      return m_compressed;
+   }
+
+   /**
+    * Names a file after the format and the compression of the exports, e.g.
+    * "sites.csv.gz".
+    *
+    * @param name the name of the file, without extension.
+    * @return the name with the extensions of the exports.
+    */
+   public String getFileName(String name)
+   {
+      return name + m_format.getExtension() + (m_compressed ? ".gz" : "");
+   }
+
+   /**
+    * Exports the sites.
+    *
+    * @param out where to write the sites, left open.
+    * @return the number of sites exported.
+    * @throws IOException when the listing cannot be performed or written.
+    * @throws APIException when the listing fails.
+    * @see RecordSchema#SITES
+    */
+   public long exportSites(OutputStream out) throws IOException, APIException
+   {
+      return export(out, RecordSchema.SITES, new SiteListingRequest(m_session.getSessionID(), null));
+   }
+
+   /**
+    * Exports the users.
+    *
+    * @param out where to write the users, left open.
+    * @return the number of users exported.
+    * @throws IOException when the listing cannot be performed or written.
+    * @throws APIException when the listing fails.
+    * @see RecordSchema#USERS
+    */
+   public long exportUsers(OutputStream out) throws IOException, APIException
+   {
+      return export(out, RecordSchema.USERS, new UserListingRequest(m_session.getSessionID(), null));
+   }
+
+   /**
+    * Exports the tickets.
+    *
+    * @param out where to write the tickets, left open.
+    * @param filtersGenerator the filters of the tickets, null for all of
+    *        them.
+    * @return the number of tickets exported.
+    * @throws IOException when the listing cannot be performed or written.
+    * @throws APIException when the listing fails.
+    * @see RecordSchema#TICKETS
+    */
+   public long exportTickets(OutputStream out, IContentGenerator filtersGenerator)
+      throws IOException, APIException
+   {
+      return export(out, RecordSchema.TICKETS,
+         new TicketListingRequest(m_session.getSessionID(), null, filtersGenerator));
+   }
+
+   /**
+    * Exports the scan history of sites, one site after the other.
+    *
+    * @param out where to write the scans, left open.
+    * @param siteIds the ids of the sites, none for every site.
+    * @return the number of scans exported.
+    * @throws IOException when a listing cannot be performed or written.
+    * @throws APIException when a listing fails.
+    * @see RecordSchema#SCAN_HISTORY
+    */
+   public long exportScanHistory(OutputStream out, int... siteIds) throws IOException, APIException
+   {
+      final int[] sites = siteIds.length > 0 ? siteIds : listSites();
+      final TemplateAPIRequest[] requests = new TemplateAPIRequest[sites.length];
+      for (int i = 0; i < sites.length; i++)
+      {
+         requests[i] = new SiteScanHistoryRequest(m_session.getSessionID(), null, Integer.toString(sites[i]));
+      }
+      return export(out, RecordSchema.SCAN_HISTORY, requests);
+   }
+
+   /**
+    * Exports the devices of sites.
+    *
+    * @param out where to write the devices, left open.
+    * @param siteIds the ids of the sites, none for every site in a single
+    *        listing.
+    * @return the number of devices exported.
+    * @throws IOException when a listing cannot be performed or written.
+    * @throws APIException when a listing fails.
+    * @see RecordSchema#SITE_DEVICES
+    */
+   public long exportSiteDevices(OutputStream out, int... siteIds) throws IOException, APIException
+   {
+      final TemplateAPIRequest[] requests = new TemplateAPIRequest[Math.max(1, siteIds.length)];
+      for (int i = 0; i < requests.length; i++)
+      {
+         requests[i] = new SiteDeviceListingRequest(m_session.getSessionID(), null,
+            siteIds.length > 0 ? Integer.toString(siteIds[i]) : null);
+      }
+      return export(out, RecordSchema.SITE_DEVICES, requests);
+   }
+
+   /**
+    * Exports the records of any listing responses, one after the other, into
+    * the same output.
+    *
+    * @param out where to write the records, left open.
+    * @param schema the records to read out of the responses.
+    * @param requests the listing requests.
+    * @return the number of records exported.
+    * @throws IOException when a listing cannot be performed or written.
+    * @throws APIException when a listing fails.
+    */
+   public long export(OutputStream out, RecordSchema schema, TemplateAPIRequest... requests)
+      throws IOException, APIException
+   {
+      if (out == null || schema == null)
+      {
+         throw new IllegalArgumentException("The output and the schema cannot be null");
+      }
+      final OutputStream target = m_compressed
+         ? new GZIPOutputStream(new Unclosed(out), BUFFER_SIZE)
+         : new Unclosed(out);
+      final Writer writer = new BufferedWriter(new OutputStreamWriter(target, "UTF-8"), BUFFER_SIZE);
+      final RecordWriter records = m_format.createWriter(writer, schema.getColumns());
+      try
+      {
+         final RecordStreamHandler handler = new RecordStreamHandler(schema, records);
+         for (TemplateAPIRequest request : requests)
+         {
+            final APIResponse response = m_session.streamAPIRequest(request, handler);
+            if (response.isFailure())
+            {
+               throw new APIException(request.getClass().getSimpleName() + " failed");
+            }
+         }
+         return handler.getRecordCount();
+      }
+      finally
+      {
+         // finishes the compression, flushes the output and leaves it open
+         records.close();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Lists the ids of the sites.
+    *
+    * @return the ids of the sites.
+    */
+   private int[] listSites() throws IOException, APIException
+   {
+      final Iterable<SiteSummary> sites = m_session.listSites(m_session.getSessionID(), null);
+      if (sites == null)
+      {
+         throw new APIException("SiteListingRequest failed");
+      }
+      int count = 0;
+      for (SiteSummary site : sites)
+      {
+         count++;
+      }
+      final int[] ids = new int[count];
+      int i = 0;
+      for (SiteSummary site : sites)
+      {
+         ids[i++] = site.getId();
+      }
+      return ids;
+   }
+
+   /**
+    * Keeps the output of the caller open when the writers are closed.
+    */
+   private static class Unclosed extends FilterOutputStream
+   {
+      Unclosed(OutputStream out)
+      {
+         super(out);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+         out.flush();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private static final int BUFFER_SIZE = 64 * 1024;
+   private final APISession m_session;
+   private volatile ExportFormat m_format = ExportFormat.CSV;
+   private volatile boolean m_compressed = true;
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+/**
+ * A column of the records exported out of a listing response: an attribute
+ * of the record element, of its parent element, or of one of its child
+ * elements.
+ *
+ * @see RecordSchema
+ */
+public final class RecordColumn
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a column holding an attribute of the record element.
+    *
+    * @param name the name of the column.
+    * @param attribute the name of the attribute.
+    * @param numeric whether the values are numbers.
+    * @return the column.
+    */
+   public static RecordColumn attribute(String name, String attribute, boolean numeric)
+   {
+      return new RecordColumn(name, Source.RECORD, null, null, null, attribute, numeric);
+   }
+
+   /**
+    * Creates a column holding an attribute of the parent of the record
+    * element, e.g. the site-id of the SiteDevices holding devices.
+    *
+    * @param name the name of the column.
+    * @param attribute the name of the attribute.
+    * @param numeric whether the values are numbers.
+    * @return the column.
+    */
+   public static RecordColumn parent(String name, String attribute, boolean numeric)
+   {
+      return new RecordColumn(name, Source.PARENT, null, null, null, attribute, numeric);
+   }
+
+   /**
+    * Creates a column holding an attribute of the first child element of
+    * the record with a given name.
+    *
+    * @param name the name of the column.
+    * @param element the name of the child element.
+    * @param attribute the name of the attribute.
+    * @param numeric whether the values are numbers.
+    * @return the column.
+    */
+   public static RecordColumn child(String name, String element, String attribute, boolean numeric)
+   {
+      return new RecordColumn(name, Source.CHILD, element, null, null, attribute, numeric);
+   }
+
+   /**
+    * Creates a column holding an attribute of the child elements of the
+    * record with a given name and key, e.g. the count of the vulnerabilities
+    * of a scan with status="vuln-exploit". The values of a numeric column are
+    * summed over the matching children.
+    *
+    * @param name the name of the column.
+    * @param element the name of the child elements.
+    * @param key the name of the attribute selecting the children.
+    * @param keyValue the value of the attribute selecting the children.
+    * @param attribute the name of the attribute.
+    * @param numeric whether the values are numbers.
+    * @return the column.
+    */
+   public static RecordColumn child(
+      String name,
+      String element,
+      String key,
+      String keyValue,
+      String attribute,
+      boolean numeric)
+   {
+      if (key == null || keyValue == null)
+      {
+         throw new IllegalArgumentException("The key of the children cannot be null");
+      }
+      return new RecordColumn(name, Source.CHILD, element, key, keyValue, attribute, numeric);
+   }
+
+   /**
+    * Retrieves the name of the column.
+    *
+    * @return the name of the column.
+    */
+   public String getName()
+   {
+      return m_name;
+   }
+
+   /**
+    * Tells whether the values of the column are numbers.
+    *
+    * @return true if the values are numbers.
+    */
+   public boolean isNumeric()
+   {
+      return m_numeric;
+   }
+
+   @Override
+   public String toString()
+   {
+      return m_name;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Where the value of a column is read from */
+   enum Source
+   {
+      RECORD,
+      PARENT,
+      CHILD
+   }
+
+   private RecordColumn(
+      String name,
+      Source source,
+      String element,
+      String key,
+      String keyValue,
+      String attribute,
+      boolean numeric)
+   {
+      if (name == null || attribute == null || (source == Source.CHILD && element == null))
+      {
+         throw new IllegalArgumentException("The name, attribute and element of a column cannot be null");
+      }
+      m_name = name;
+      m_source = source;
+      m_element = element;
+      m_key = key;
+      m_keyValue = keyValue;
+      m_attribute = attribute;
+      m_numeric = numeric;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String m_name;
+   final Source m_source;
+   /** The name of the child elements, null unless read from children */
+   final String m_element;
+   /** The attribute selecting the children, null to take the first one */
+   final String m_key;
+   final String m_keyValue;
+   final String m_attribute;
+   private final boolean m_numeric;
+}
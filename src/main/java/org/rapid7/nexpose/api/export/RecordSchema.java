@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import static org.rapid7.nexpose.api.export.RecordColumn.attribute;
+import static org.rapid7.nexpose.api.export.RecordColumn.child;
+import static org.rapid7.nexpose.api.export.RecordColumn.parent;
+
+/**
+ * Maps the elements of a listing response to records: the path of the
+ * record elements from the root of the response, and the columns read from
+ * each of them.
+ */
+public final class RecordSchema
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The sites of a SiteListingResponse */
+   public static final RecordSchema SITES = new RecordSchema("SiteListingResponse/SiteSummary",
+      attribute("id", "id", true),
+      attribute("name", "name", false),
+      attribute("description", "description", false),
+      attribute("riskfactor", "riskfactor", true),
+      attribute("riskscore", "riskscore", true));
+
+   /** The users of a UserListingResponse */
+   public static final RecordSchema USERS = new RecordSchema("UserListingResponse/UserSummary",
+      attribute("id", "id", true),
+      attribute("authSource", "authSource", false),
+      attribute("authModule", "authModule", false),
+      attribute("userName", "userName", false),
+      attribute("fullName", "fullName", false),
+      attribute("email", "email", false),
+      attribute("administrator", "administrator", true),
+      attribute("disabled", "disabled", true),
+      attribute("locked", "locked", true),
+      attribute("siteCount", "siteCount", true),
+      attribute("groupCount", "groupCount", true));
+
+   /** The tickets of a TicketListingResponse */
+   public static final RecordSchema TICKETS = new RecordSchema("TicketListingResponse/TicketSummary",
+      attribute("id", "id", true),
+      attribute("name", "name", false),
+      attribute("state", "state", false),
+      attribute("device-id", "device-id", true),
+      attribute("created-on", "created-on", false),
+      attribute("author", "author", false),
+      attribute("priority", "priority", false),
+      attribute("assigned-to", "assigned-to", false));
+
+   /** The scans of a SiteScanHistoryResponse, with their task, node and vulnerability counts */
+   public static final RecordSchema SCAN_HISTORY = new RecordSchema("SiteScanHistoryResponse/ScanSummary",
+      attribute("scan-id", "scan-id", true),
+      attribute("site-id", "site-id", true),
+      attribute("engine-id", "engine-id", true),
+      attribute("name", "name", false),
+      attribute("startTime", "startTime", false),
+      attribute("endTime", "endTime", false),
+      attribute("status", "status", false),
+      child("tasks.pending", "tasks", "pending", true),
+      child("tasks.active", "tasks", "active", true),
+      child("tasks.completed", "tasks", "completed", true),
+      child("nodes.live", "nodes", "live", true),
+      child("nodes.dead", "nodes", "dead", true),
+      child("nodes.filtered", "nodes", "filtered", true),
+      child("nodes.unresolved", "nodes", "unresolved", true),
+      child("nodes.other", "nodes", "other", true),
+      child("vulnerabilities.vuln-exploit", "vulnerabilities", "status", "vuln-exploit", "count", true),
+      child("vulnerabilities.vuln-version", "vulnerabilities", "status", "vuln-version", "count", true),
+      child("vulnerabilities.vuln-potential", "vulnerabilities", "status", "vuln-potential", "count", true),
+      child("vulnerabilities.not-vuln", "vulnerabilities", "status", "not-vuln", "count", true));
+
+   /** The devices of a SiteDeviceListingResponse, with the id of their site */
+   public static final RecordSchema SITE_DEVICES = new RecordSchema("SiteDeviceListingResponse/SiteDevices/device",
+      parent("site-id", "site-id", true),
+      attribute("id", "id", true),
+      attribute("address", "address", false),
+      attribute("riskfactor", "riskfactor", true),
+      attribute("riskscore", "riskscore", true));
+
+   /**
+    * Creates a schema.
+    *
+    * @param path the names of the elements from the root of the response to
+    *        the record elements, separated by slashes, e.g.
+    *        "SiteDeviceListingResponse/SiteDevices/device".
+    * @param columns the columns of the records.
+    */
+   public RecordSchema(String path, RecordColumn... columns)
+   {
+      if (path == null || path.isEmpty())
+      {
+         throw new IllegalArgumentException("The path of the records cannot be empty");
+      }
+      if (columns == null || columns.length == 0)
+      {
+         throw new IllegalArgumentException("A schema needs columns");
+      }
+      m_path = path.split("/");
+      if (m_path.length < 2)
+      {
+         throw new IllegalArgumentException("The records cannot be the root of the response: " + path);
+      }
+      m_columns = columns.clone();
+      for (RecordColumn column : m_columns)
+      {
+         if (column == null)
+         {
+            throw new IllegalArgumentException("The columns cannot be null");
+         }
+      }
+   }
+
+   /**
+    * Retrieves the path of the record elements.
+    *
+    * @return the names of the elements from the root of the response.
+    */
+   public String[] getPath()
+   {
+      return m_path.clone();
+   }
+
+   /**
+    * Retrieves the columns of the records.
+    *
+    * @return the columns, in order.
+    */
+   public RecordColumn[] getColumns()
+   {
+      return m_columns.clone();
+   }
+
+   @Override
+   public String toString()
+   {
+      final StringBuilder path = new StringBuilder();
+      for (String element : m_path)
+      {
+         path.append('/').append(element);
+      }
+      return path.toString();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String[] m_path;
+   private final RecordColumn[] m_columns;
+}
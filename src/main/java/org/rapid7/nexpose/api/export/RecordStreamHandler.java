@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import java.io.IOException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.IResponseStreamHandler;
+
+/**
+ * Reads the records of a schema out of a streamed response and hands each
+ * one to a {@link RecordWriter} as soon as its element is read, so that only
+ * the record in progress is held in memory. The same handler can read
+ * several responses in a row into the same writer.
+ */
+public class RecordStreamHandler implements IResponseStreamHandler
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a handler.
+    *
+    * @param schema the records to read.
+    * @param writer where to write the records, with the columns of the
+    *        schema.
+    */
+   public RecordStreamHandler(RecordSchema schema, RecordWriter writer)
+   {
+      if (schema == null || writer == null)
+      {
+         throw new IllegalArgumentException("The schema and the writer cannot be null");
+      }
+      m_path = schema.getPath();
+      m_columns = schema.getColumns();
+      m_writer = writer;
+      m_values = new String[m_columns.length];
+      m_parentValues = new String[m_columns.length];
+   }
+
+   @Override
+   public void handleResponse(XMLStreamReader reader) throws IOException, XMLStreamException, APIException
+   {
+      if (!m_path[0].equals(reader.getLocalName()))
+      {
+         throw new APIException("Cannot parse the response, " + reader.getLocalName() + " instead of " + m_path[0]);
+      }
+      if (m_path.length == 2)
+      {
+         readParent(reader);
+      }
+      // the depth of the current element, and how many of its ancestors match the path
+      int depth = 1;
+      int matched = 1;
+      while (depth > 0)
+      {
+         final int event = reader.next();
+         if (event == XMLStreamConstants.START_ELEMENT)
+         {
+            if (matched == depth && m_path[depth].equals(reader.getLocalName()))
+            {
+               if (depth + 1 == m_path.length)
+               {
+                  readRecord(reader);
+                  continue;
+               }
+               matched++;
+               if (depth + 2 == m_path.length)
+               {
+                  readParent(reader);
+               }
+            }
+            depth++;
+         }
+         else if (event == XMLStreamConstants.END_ELEMENT)
+         {
+            if (matched == depth)
+            {
+               matched--;
+            }
+            depth--;
+         }
+      }
+   }
+
+   /**
+    * Retrieves the number of records read so far.
+    *
+    * @return the number of records handed to the writer.
+    */
+   public long getRecordCount()
+   {
+      return m_records;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Reads the columns of the parent element of the next records.
+    *
+    * @param reader the response, on the start of the parent element.
+    */
+   private void readParent(XMLStreamReader reader)
+   {
+      for (int i = 0; i < m_columns.length; i++)
+      {
+         if (m_columns[i].m_source == RecordColumn.Source.PARENT)
+         {
+            m_parentValues[i] = reader.getAttributeValue(null, m_columns[i].m_attribute);
+         }
+      }
+   }
+
+   /**
+    * Reads a record element and writes its record.
+    *
+    * @param reader the response, on the start of the record element; left
+    *        on its end.
+    * @throws IOException when the record cannot be written.
+    * @throws XMLStreamException when the response is malformed.
+    */
+   private void readRecord(XMLStreamReader reader) throws IOException, XMLStreamException
+   {
+      final String[] values = m_values;
+      boolean children = false;
+      for (int i = 0; i < m_columns.length; i++)
+      {
+         final RecordColumn column = m_columns[i];
+         switch (column.m_source)
+         {
+            case RECORD:
+               values[i] = reader.getAttributeValue(null, column.m_attribute);
+               break;
+            case PARENT:
+               values[i] = m_parentValues[i];
+               break;
+            default:
+               values[i] = null;
+               children = true;
+         }
+      }
+      int depth = 1;
+      while (depth > 0)
+      {
+         final int event = reader.next();
+         if (event == XMLStreamConstants.START_ELEMENT)
+         {
+            if (children && depth == 1)
+            {
+               readChild(reader, values);
+            }
+            depth++;
+         }
+         else if (event == XMLStreamConstants.END_ELEMENT)
+         {
+            depth--;
+         }
+      }
+      m_writer.write(values);
+      m_records++;
+   }
+
+   /**
+    * Reads the columns of a child of a record element.
+    *
+    * @param reader the response, on the start of the child element.
+    * @param values the values of the record in progress.
+    */
+   private void readChild(XMLStreamReader reader, String[] values)
+   {
+      final String name = reader.getLocalName();
+      for (int i = 0; i < m_columns.length; i++)
+      {
+         final RecordColumn column = m_columns[i];
+         if (column.m_source != RecordColumn.Source.CHILD || !column.m_element.equals(name))
+         {
+            continue;
+         }
+         if (column.m_key != null && !column.m_keyValue.equals(reader.getAttributeValue(null, column.m_key)))
+         {
+            continue;
+         }
+         final String value = reader.getAttributeValue(null, column.m_attribute);
+         if (values[i] == null)
+         {
+            values[i] = value;
+         }
+         else if (value != null && column.m_key != null && column.isNumeric())
+         {
+            values[i] = sum(values[i], value);
+         }
+      }
+   }
+
+   /**
+    * Adds two numbers, as integers when they both are.
+    *
+    * @param a a number.
+    * @param b another number.
+    * @return the sum, or the first number if either is not one.
+    */
+   private static String sum(String a, String b)
+   {
+      try
+      {
+         return Long.toString(Long.parseLong(a) + Long.parseLong(b));
+      }
+      catch (NumberFormatException e)
+      {
+         try
+         {
+            return Double.toString(Double.parseDouble(a) + Double.parseDouble(b));
+         }
+         catch (NumberFormatException notNumbers)
+         {
+            return a;
+         }
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String[] m_path;
+   private final RecordColumn[] m_columns;
+   private final RecordWriter m_writer;
+   /** The values of the record in progress, reused for every record */
+   private final String[] m_values;
+   /** The values of the parent columns, read from the current parent element */
+   private final String[] m_parentValues;
+   private long m_records;
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.export;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes records one at a time, without keeping them.
+ *
+ * @see ExportFormat#createWriter(Writer, RecordColumn[])
+ */
+public abstract class RecordWriter implements Closeable, Flushable
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Writes a record.
+    *
+    * @param values the values of the columns of the record, in order, null
+    *        for the missing ones.
+    * @throws IOException when the record cannot be written.
+    */
+   public abstract void write(String[] values) throws IOException;
+
+   /**
+    * Retrieves the columns of the records.
+    *
+    * @return the columns, in order.
+    */
+   public RecordColumn[] getColumns()
+   {
+      return m_columns.clone();
+   }
+
+   /**
+    * Retrieves the number of records written.
+    *
+    * @return the number of records written.
+    */
+   public long getRecordCount()
+   {
+      return m_records;
+   }
+
+   @Override
+   public void flush() throws IOException
+   {
+      m_out.flush();
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      m_out.close();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a writer.
+    *
+    * @param out where to write the records.
+    * @param columns the columns of the records.
+    */
+   protected RecordWriter(Writer out, RecordColumn[] columns)
+   {
+      if (out == null)
+      {
+         throw new IllegalArgumentException("The output cannot be null");
+      }
+      if (columns == null || columns.length == 0)
+      {
+         throw new IllegalArgumentException("A record needs columns");
+      }
+      m_out = out;
+      m_columns = columns.clone();
+   }
+
+   /**
+    * Checks the values of a record and counts it.
+    *
+    * @param values the values of the record.
+    */
+   protected void checkRecord(String[] values)
+   {
+      if (values.length != m_columns.length)
+      {
+         throw new IllegalArgumentException(values.length + " values for " + m_columns.length + " columns");
+      }
+      m_records++;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Where the records are written */
+   protected final Writer m_out;
+   /** The columns of the records */
+   protected final RecordColumn[] m_columns;
+   private long m_records;
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.federation;
+
+/**
+ * A single value retrieved from one console of a {@link FederatedSession},
+ * tagged with the console it came from and a console-qualified id that is
+ * unique across all the consoles of the federation.
+ *
+ * @param <T> the type of the value, e.g. a site or engine summary.
+ */
+public class ConsoleItem<T>
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new item for the given console.
+    *
+    * @param consoleId the id the console was registered with in the
+    *        federation.
+    * @param localId the id of the value within its console.
+    * @param value the value retrieved from the console.
+    */
+   public ConsoleItem(String consoleId, String localId, T value)
+   {
+      m_consoleId = consoleId;
+      m_localId = localId;
+      m_value = value;
+   }
+
+   /**
+    * Retrieves the id of the console the value came from.
+    *
+    * @return the console id.
+    */
+   public String getConsoleId()
+   {
+      return m_consoleId;
+   }
+
+   /**
+    * Retrieves the id of the value within its console, e.g. the site id.
+    *
+    * @return the console local id.
+    */
+   public String getLocalId()
+   {
+      return m_localId;
+   }
+
+   /**
+    * Retrieves the console-qualified id of the value, see
+    * {@link FederatedSession#qualify(String, String)}.
+    *
+    * @return the id of the value qualified by its console id.
+    */
+   public String getQualifiedId()
+   {
+      return FederatedSession.qualify(m_consoleId, m_localId);
+   }
+
+   /**
+    * Retrieves the value retrieved from the console.
+    *
+    * @return the value.
+    */
+   public T getValue()
+   {
+      return m_value;
+   }
+
+   @Override
+   public String toString()
+   {
+      return getQualifiedId();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The id of the console the value came from */
+   private final String m_consoleId;
+   /** The id of the value within its console */
+   private final String m_localId;
+   /** The value retrieved from the console */
+   private final T m_value;
+}
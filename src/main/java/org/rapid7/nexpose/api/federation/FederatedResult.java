@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.federation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The merged result of a call executed across all the consoles of a
+ * {@link FederatedSession}. Consoles that failed or did not answer within the
+ * per-console timeout do not contribute any item, they are reported through
+ * {@link #getFailures()} and {@link #getTimedOutConsoles()} instead.
+ *
+ * @param <T> the type of the values retrieved from the consoles.
+ */
+public class FederatedResult<T> implements Iterable<ConsoleItem<T>>
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the merged items of all the consoles that answered, in the
+    * order the consoles were registered in.
+    *
+    * @return an unmodifiable list of the items.
+    */
+   public List<ConsoleItem<T>> getItems()
+   {
+      return Collections.unmodifiableList(m_items);
+   }
+
+   @Override
+   public Iterator<ConsoleItem<T>> iterator()
+   {
+      return getItems().iterator();
+   }
+
+   /**
+    * Retrieves the values of all the consoles that answered, without their
+    * console information.
+    *
+    * @return a list of the values.
+    */
+   public List<T> getValues()
+   {
+      final List<T> values = new ArrayList<T>(m_items.size());
+      for (ConsoleItem<T> item : m_items)
+      {
+         values.add(item.getValue());
+      }
+      return values;
+   }
+
+   /**
+    * Retrieves the ids of the consoles that answered the call.
+    *
+    * @return an unmodifiable set of console ids.
+    */
+   public Set<String> getSucceededConsoles()
+   {
+      return Collections.unmodifiableSet(m_succeeded);
+   }
+
+   /**
+    * Retrieves the errors raised by the consoles that failed the call, keyed
+    * by console id. Consoles that timed out are not included.
+    *
+    * @return an unmodifiable map of console ids to errors.
+    */
+   public Map<String, Throwable> getFailures()
+   {
+      return Collections.unmodifiableMap(m_failures);
+   }
+
+   /**
+    * Retrieves the ids of the consoles that did not answer within the
+    * per-console timeout.
+    *
+    * @return an unmodifiable set of console ids.
+    */
+   public Set<String> getTimedOutConsoles()
+   {
+      return Collections.unmodifiableSet(m_timedOut);
+   }
+
+   /**
+    * Tells whether every console of the federation answered the call.
+    *
+    * @return true if no console failed or timed out, false otherwise.
+    */
+   public boolean isComplete()
+   {
+      return m_failures.isEmpty() && m_timedOut.isEmpty();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   void addItems(String consoleId, List<ConsoleItem<T>> items)
+   {
+      m_succeeded.add(consoleId);
+      m_items.addAll(items);
+   }
+
+   void addFailure(String consoleId, Throwable cause)
+   {
+      m_failures.put(consoleId, cause);
+   }
+
+   void addTimeout(String consoleId)
+   {
+      m_timedOut.add(consoleId);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The merged items of the consoles that answered */
+   private final List<ConsoleItem<T>> m_items = new ArrayList<ConsoleItem<T>>();
+   /** The consoles that answered */
+   private final Set<String> m_succeeded = new LinkedHashSet<String>();
+   /** The errors of the consoles that failed, by console id */
+   private final Map<String, Throwable> m_failures = new LinkedHashMap<String, Throwable>();
+   /** The consoles that did not answer in time */
+   private final Set<String> m_timedOut = new LinkedHashSet<String>();
+}
@@ -0,0 +1,639 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.federation;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.CancellationToken;
+import org.rapid7.nexpose.api.RequestOptions;
+import org.rapid7.nexpose.api.domain.EngineSummary;
+import org.rapid7.nexpose.api.domain.ScanSummary;
+import org.rapid7.nexpose.api.domain.SiteSummary;
+import org.rapid7.nexpose.api.domain.TicketSummary;
+import org.rapid7.nexpose.api.generators.IContentGenerator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregates several {@link APISession}s, one per NeXpose console, and runs
+ * listing calls on all of them in parallel. The results are merged into a
+ * single {@link FederatedResult} in which every id is qualified by the console
+ * it belongs to (see {@link #qualify(String, String)}).
+ * <P>
+ * Every console has the same amount of time to answer a call, see
+ * {@link #setConsoleTimeout(long, TimeUnit)}. A console that is slow, down or
+ * failing is reported in the result instead of failing or blocking the whole
+ * aggregate, and the requests still running against it are cancelled.
+ * <P>
+ * The sessions must be logged in before running listing calls, either one by
+ * one or through {@link #login(String)}.
+ */
+public class FederatedSession
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an empty federation that runs its calls on its own pool of
+    * daemon threads. The pool is released by {@link #shutdown()}.
+    */
+   public FederatedSession()
+   {
+      this(Executors.newCachedThreadPool(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-federation-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates an empty federation that runs its calls on the given executor.
+    * The executor is not shut down by {@link #shutdown()}.
+    *
+    * @param executor the executor to run the console calls on. It should be
+    *        able to run one task per console concurrently.
+    */
+   public FederatedSession(ExecutorService executor)
+   {
+      this(executor, false);
+   }
+
+   /**
+    * Qualifies the id of a value of a console with the console id, e.g. site
+    * 12 of console "emea" becomes "emea:12".
+    *
+    * @param consoleId the id of the console.
+    * @param localId the id of the value within the console.
+    * @return the console-qualified id.
+    */
+   public static String qualify(String consoleId, String localId)
+   {
+      return consoleId + SEPARATOR + localId;
+   }
+
+   /**
+    * Retrieves the console id out of a console-qualified id.
+    *
+    * @param qualifiedId the console-qualified id.
+    * @return the id of the console.
+    * @throws IllegalArgumentException if the id is not console-qualified.
+    */
+   public static String consoleIdOf(String qualifiedId)
+   {
+      return qualifiedId.substring(0, separatorIndex(qualifiedId));
+   }
+
+   /**
+    * Retrieves the console local id out of a console-qualified id.
+    *
+    * @param qualifiedId the console-qualified id.
+    * @return the id of the value within its console.
+    * @throws IllegalArgumentException if the id is not console-qualified.
+    */
+   public static String localIdOf(String qualifiedId)
+   {
+      return qualifiedId.substring(separatorIndex(qualifiedId) + 1);
+   }
+
+   /**
+    * Registers a console in the federation.
+    *
+    * @param consoleId the id used to qualify the values of the console. May
+    *        not be {@code null} nor empty and may not contain ':'.
+    * @param session the session connected to the console.
+    */
+   public synchronized void addConsole(String consoleId, APISession session)
+   {
+      if (consoleId == null || consoleId.isEmpty() || consoleId.indexOf(SEPARATOR) >= 0)
+      {
+         throw new IllegalArgumentException("Invalid console id: " + consoleId);
+      }
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (m_consoles.containsKey(consoleId))
+      {
+         throw new IllegalArgumentException("Console already registered: " + consoleId);
+      }
+      final Map<String, APISession> consoles = new LinkedHashMap<String, APISession>(m_consoles);
+      consoles.put(consoleId, session);
+      m_consoles = consoles;
+   }
+
+   /**
+    * Removes a console from the federation.
+    *
+    * @param consoleId the id of the console to remove.
+    * @return the session of the removed console, or {@code null} if the
+    *         console was not registered.
+    */
+   public synchronized APISession removeConsole(String consoleId)
+   {
+      final Map<String, APISession> consoles = new LinkedHashMap<String, APISession>(m_consoles);
+      final APISession session = consoles.remove(consoleId);
+      m_consoles = consoles;
+      return session;
+   }
+
+   /**
+    * Retrieves the session of a console.
+    *
+    * @param consoleId the id of the console.
+    * @return the session of the console, or {@code null} if the console is not
+    *         registered.
+    */
+   public APISession getConsole(String consoleId)
+   {
+      return m_consoles.get(consoleId);
+   }
+
+   /**
+    * Retrieves the ids of the registered consoles, in registration order.
+    *
+    * @return an unmodifiable set of console ids.
+    */
+   public Set<String> getConsoleIds()
+   {
+      return Collections.unmodifiableSet(m_consoles.keySet());
+   }
+
+   /**
+    * Sets the time every console has to answer a federated call. Consoles
+    * that take longer are reported as timed out in the result. Defaults to
+    * 60 seconds.
+    *
+    * @param timeout the maximum time to wait for a console.
+    * @param unit the unit of the timeout.
+    */
+   public void setConsoleTimeout(long timeout, TimeUnit unit)
+   {
+      if (timeout <= 0)
+      {
+         throw new IllegalArgumentException("timeout must be positive");
+      }
+      m_consoleTimeoutNanos = unit.toNanos(timeout);
+   }
+
+   /**
+    * Retrieves the time every console has to answer a federated call.
+    *
+    * @param unit the unit to express the timeout in.
+    * @return the per-console timeout.
+    */
+   public long getConsoleTimeout(TimeUnit unit)
+   {
+      return unit.convert(m_consoleTimeoutNanos, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Logs in to all the consoles in parallel. A login that times out is not
+    * cancelled, it is bounded by the connect and read timeouts of its
+    * session.
+    *
+    * @param syncId the synchronization id sent to every console. This field is
+    *        optional.
+    * @return the login responses, identified by the acquired session ids.
+    */
+   public FederatedResult<APIResponse> login(final String syncId)
+   {
+      return executeOnAll(new ConsoleCall<APIResponse>()
+      {
+         @Override
+         public List<ConsoleItem<APIResponse>> call(String consoleId, APISession session)
+            throws IOException, APIException
+         {
+            // log in through the registered session itself, not the view, so
+            // that it keeps the acquired session id
+            final APISession console = getConsole(consoleId);
+            final APIResponse response = console.login(syncId);
+            return Collections.singletonList(
+               new ConsoleItem<APIResponse>(consoleId, console.getSessionID(), response));
+         }
+      });
+   }
+
+   /**
+    * Logs out of all the consoles in parallel.
+    *
+    * @param syncId the synchronization id sent to every console. This field is
+    *        optional.
+    * @return the logout responses, identified by the released session ids.
+    */
+   public FederatedResult<APIResponse> logout(final String syncId)
+   {
+      return executeOnAll(new ConsoleCall<APIResponse>()
+      {
+         @Override
+         public List<ConsoleItem<APIResponse>> call(String consoleId, APISession session)
+            throws IOException, APIException
+         {
+            final APISession console = getConsole(consoleId);
+            final String sessionId = console.getSessionID();
+            final APIResponse response = console.logout(sessionId, syncId);
+            return Collections.singletonList(new ConsoleItem<APIResponse>(consoleId, sessionId, response));
+         }
+      });
+   }
+
+   /**
+    * Lists the sites of all the consoles in parallel.
+    *
+    * @param syncId the synchronization id sent to every console. This field is
+    *        optional.
+    * @return the sites of all the consoles that answered, identified by their
+    *         console-qualified site id.
+    */
+   public FederatedResult<SiteSummary> listSites(final String syncId)
+   {
+      return executeOnAll(new ConsoleCall<SiteSummary>()
+      {
+         @Override
+         public List<ConsoleItem<SiteSummary>> call(String consoleId, APISession session)
+            throws IOException, APIException
+         {
+            final List<ConsoleItem<SiteSummary>> items = new ArrayList<ConsoleItem<SiteSummary>>();
+            final Iterable<SiteSummary> sites = session.listSites(session.getSessionID(), syncId);
+            if (sites != null)
+            {
+               for (SiteSummary site : sites)
+               {
+                  items.add(new ConsoleItem<SiteSummary>(consoleId, String.valueOf(site.getId()), site));
+               }
+            }
+            return items;
+         }
+      });
+   }
+
+   /**
+    * Lists the engines of all the consoles in parallel.
+    *
+    * @param syncId the synchronization id sent to every console. This field is
+    *        optional.
+    * @return the engines of all the consoles that answered, identified by
+    *         their console-qualified engine id.
+    */
+   public FederatedResult<EngineSummary> listEngines(final String syncId)
+   {
+      return executeOnAll(new ConsoleCall<EngineSummary>()
+      {
+         @Override
+         public List<ConsoleItem<EngineSummary>> call(String consoleId, APISession session)
+            throws IOException, APIException
+         {
+            final List<ConsoleItem<EngineSummary>> items = new ArrayList<ConsoleItem<EngineSummary>>();
+            final Iterable<EngineSummary> engines = session.listEngines(session.getSessionID(), syncId);
+            if (engines != null)
+            {
+               for (EngineSummary engine : engines)
+               {
+                  items.add(new ConsoleItem<EngineSummary>(consoleId, String.valueOf(engine.getId()), engine));
+               }
+            }
+            return items;
+         }
+      });
+   }
+
+   /**
+    * Lists the tickets of all the consoles in parallel.
+    *
+    * @param syncId the synchronization id sent to every console. This field is
+    *        optional.
+    * @param filtersGenerator the ticket filters sent to every console. May be
+    *        {@code null}.
+    * @return the tickets of all the consoles that answered, identified by
+    *         their console-qualified ticket id.
+    */
+   public FederatedResult<TicketSummary> ticketListRequest(
+      final String syncId,
+      final IContentGenerator filtersGenerator)
+   {
+      return executeOnAll(new ConsoleCall<TicketSummary>()
+      {
+         @Override
+         public List<ConsoleItem<TicketSummary>> call(String consoleId, APISession session)
+            throws IOException, APIException
+         {
+            final List<ConsoleItem<TicketSummary>> items = new ArrayList<ConsoleItem<TicketSummary>>();
+            final Iterable<TicketSummary> tickets =
+               session.ticketListRequest(session.getSessionID(), syncId, filtersGenerator);
+            if (tickets != null)
+            {
+               for (TicketSummary ticket : tickets)
+               {
+                  items.add(new ConsoleItem<TicketSummary>(consoleId, String.valueOf(ticket.getId()), ticket));
+               }
+            }
+            return items;
+         }
+      });
+   }
+
+   /**
+    * Retrieves the scan history of several sites across the consoles. The
+    * consoles are queried in parallel, the sites of a same console one after
+    * the other.
+    *
+    * @param syncId the synchronization id sent to every console. This field is
+    *        optional.
+    * @param qualifiedSiteIds the console-qualified ids of the sites whose
+    *        history should be retrieved, or {@code null} to retrieve the
+    *        history of every site of every console.
+    * @return the scans of all the consoles that answered, identified by their
+    *         console-qualified scan id.
+    * @throws IllegalArgumentException if a site id is not console-qualified or
+    *         refers to an unknown console.
+    */
+   public FederatedResult<ScanSummary> siteScanHistoryRequest(
+      final String syncId,
+      Collection<String> qualifiedSiteIds)
+   {
+      final Map<String, APISession> consoles = m_consoles;
+      final Map<String, ConsoleCall<ScanSummary>> calls = new LinkedHashMap<String, ConsoleCall<ScanSummary>>();
+      if (qualifiedSiteIds == null)
+      {
+         for (String consoleId : consoles.keySet())
+         {
+            calls.put(consoleId, new ScanHistoryCall(syncId, null));
+         }
+      }
+      else
+      {
+         final Map<String, List<String>> sitesByConsole = new LinkedHashMap<String, List<String>>();
+         for (String qualifiedSiteId : qualifiedSiteIds)
+         {
+            final String consoleId = consoleIdOf(qualifiedSiteId);
+            if (!consoles.containsKey(consoleId))
+            {
+               throw new IllegalArgumentException("Unknown console for site: " + qualifiedSiteId);
+            }
+            List<String> siteIds = sitesByConsole.get(consoleId);
+            if (siteIds == null)
+            {
+               siteIds = new ArrayList<String>();
+               sitesByConsole.put(consoleId, siteIds);
+            }
+            siteIds.add(localIdOf(qualifiedSiteId));
+         }
+         for (Map.Entry<String, List<String>> entry : sitesByConsole.entrySet())
+         {
+            calls.put(entry.getKey(), new ScanHistoryCall(syncId, entry.getValue()));
+         }
+      }
+      return execute(consoles, calls);
+   }
+
+   /**
+    * Releases the threads of the federation if it created its own pool. The
+    * registered sessions are left untouched.
+    */
+   public void shutdown()
+   {
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdownNow();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * A call executed against the session of a single console. The session
+    * given to the call is a view of the registered session that is cancelled
+    * when the console times out.
+    *
+    * @param <T> the type of the values retrieved.
+    */
+   private interface ConsoleCall<T>
+   {
+      List<ConsoleItem<T>> call(String consoleId, APISession session) throws IOException, APIException;
+   }
+
+   /**
+    * Retrieves the scan history of some (or all) sites of a console.
+    */
+   private static class ScanHistoryCall implements ConsoleCall<ScanSummary>
+   {
+      ScanHistoryCall(String syncId, List<String> siteIds)
+      {
+         m_syncId = syncId;
+         m_siteIds = siteIds;
+      }
+
+      @Override
+      public List<ConsoleItem<ScanSummary>> call(String consoleId, APISession session)
+         throws IOException, APIException
+      {
+         List<String> siteIds = m_siteIds;
+         if (siteIds == null)
+         {
+            siteIds = new ArrayList<String>();
+            final Iterable<SiteSummary> sites = session.listSites(session.getSessionID(), m_syncId);
+            if (sites != null)
+            {
+               for (SiteSummary site : sites)
+               {
+                  siteIds.add(String.valueOf(site.getId()));
+               }
+            }
+         }
+         final List<ConsoleItem<ScanSummary>> items = new ArrayList<ConsoleItem<ScanSummary>>();
+         for (String siteId : siteIds)
+         {
+            if (Thread.currentThread().isInterrupted())
+            {
+               throw new APIException("Scan history retrieval was cancelled");
+            }
+            for (ScanSummary scan : session.siteScanHistoryRequest(session.getSessionID(), m_syncId, siteId))
+            {
+               items.add(new ConsoleItem<ScanSummary>(consoleId, String.valueOf(scan.getScanID()), scan));
+            }
+         }
+         return items;
+      }
+
+      private final String m_syncId;
+      private final List<String> m_siteIds;
+   }
+
+   private FederatedSession(ExecutorService executor, boolean ownsExecutor)
+   {
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   private static int separatorIndex(String qualifiedId)
+   {
+      final int index = qualifiedId == null ? -1 : qualifiedId.indexOf(SEPARATOR);
+      if (index <= 0)
+      {
+         throw new IllegalArgumentException("Not a console-qualified id: " + qualifiedId);
+      }
+      return index;
+   }
+
+   /**
+    * Executes the same call on every registered console.
+    */
+   private <T> FederatedResult<T> executeOnAll(ConsoleCall<T> call)
+   {
+      final Map<String, APISession> consoles = m_consoles;
+      final Map<String, ConsoleCall<T>> calls = new LinkedHashMap<String, ConsoleCall<T>>();
+      for (String consoleId : consoles.keySet())
+      {
+         calls.put(consoleId, call);
+      }
+      return execute(consoles, calls);
+   }
+
+   /**
+    * Submits one call per console and merges their results. Every console has
+    * until the same deadline to answer, consoles that miss it have their
+    * requests cancelled and are reported as timed out.
+    */
+   private <T> FederatedResult<T> execute(
+      Map<String, APISession> consoles,
+      Map<String, ConsoleCall<T>> calls)
+   {
+      final FederatedResult<T> result = new FederatedResult<T>();
+      final Map<String, Future<List<ConsoleItem<T>>>> futures =
+         new LinkedHashMap<String, Future<List<ConsoleItem<T>>>>();
+      final Map<String, CancellationToken> tokens = new LinkedHashMap<String, CancellationToken>();
+      final long deadline = System.nanoTime() + m_consoleTimeoutNanos;
+      for (Map.Entry<String, ConsoleCall<T>> entry : calls.entrySet())
+      {
+         final String consoleId = entry.getKey();
+         final CancellationToken token = new CancellationToken();
+         final RequestOptions options = new RequestOptions();
+         options.setCancellationToken(token);
+         final APISession session = consoles.get(consoleId).withRequestOptions(options);
+         final ConsoleCall<T> call = entry.getValue();
+         tokens.put(consoleId, token);
+         futures.put(consoleId, m_executor.submit(session.propagate(new Callable<List<ConsoleItem<T>>>()
+         {
+            @Override
+            public List<ConsoleItem<T>> call() throws Exception
+            {
+               return call.call(consoleId, session);
+            }
+         })));
+      }
+      boolean interrupted = false;
+      for (Map.Entry<String, Future<List<ConsoleItem<T>>>> entry : futures.entrySet())
+      {
+         final String consoleId = entry.getKey();
+         final Future<List<ConsoleItem<T>>> future = entry.getValue();
+         try
+         {
+            if (interrupted)
+            {
+               cancel(future, tokens.get(consoleId));
+               result.addTimeout(consoleId);
+               continue;
+            }
+            result.addItems(consoleId, future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+         }
+         catch (TimeoutException e)
+         {
+            cancel(future, tokens.get(consoleId));
+            result.addTimeout(consoleId);
+         }
+         catch (ExecutionException e)
+         {
+            result.addFailure(consoleId, e.getCause());
+         }
+         catch (InterruptedException e)
+         {
+            interrupted = true;
+            cancel(future, tokens.get(consoleId));
+            result.addTimeout(consoleId);
+         }
+      }
+      if (interrupted)
+      {
+         Thread.currentThread().interrupt();
+      }
+      return result;
+   }
+
+   /**
+    * Cancels the call of a console: aborts its request in progress and
+    * interrupts its thread.
+    */
+   private static void cancel(Future<?> future, CancellationToken token)
+   {
+      token.cancel();
+      future.cancel(true);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Separates the console id from the local id in qualified ids */
+   private static final char SEPARATOR = ':';
+   /** Numbers the threads of the federation pools */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+   /** The registered consoles by id, replaced on every registration change */
+   private volatile Map<String, APISession> m_consoles = new LinkedHashMap<String, APISession>();
+   /** The executor the console calls run on */
+   private final ExecutorService m_executor;
+   /** Tells whether the executor was created by (and belongs to) the federation */
+   private final boolean m_ownsExecutor;
+   /** The time every console has to answer a call, in nanoseconds */
+   private volatile long m_consoleTimeoutNanos = TimeUnit.SECONDS.toNanos(60);
+}
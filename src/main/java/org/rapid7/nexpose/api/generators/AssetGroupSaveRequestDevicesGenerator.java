@@ -26,6 +26,7 @@
  */
 package org.rapid7.nexpose.api.generators;
 
+import org.rapid7.nexpose.api.assets.DeviceSet;
 import org.rapid7.nexpose.utils.StringUtils;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -203,7 +204,7 @@ public class AssetGroupSaveRequestDevicesGenerator implements IContentGenerator
    @Override
    public String toString()
    {
-      StringBuilder sb = new StringBuilder();
+      StringBuilder sb = new StringBuilder(m_deviceSet == null ? 16 : m_deviceSet.size() * 28);
       Iterator<AssetGroupDevice> itSites = m_devices.iterator();
       while(itSites.hasNext())
       {
@@ -247,6 +248,14 @@ public class AssetGroupSaveRequestDevicesGenerator implements IContentGenerator
          sb.append(">");
          sb.append("</device>");
       }
+      if (m_deviceSet != null)
+      {
+         // the ids only, straight from the bitmap
+         for (int id = m_deviceSet.nextDevice(0); id >= 0; id = m_deviceSet.nextDevice(id + 1))
+         {
+            sb.append("<device id=\"").append(id).append("\"></device>");
+         }
+      }
       return sb.toString();
    }
 
@@ -296,10 +305,32 @@ public class AssetGroupSaveRequestDevicesGenerator implements IContentGenerator
    {
       m_devices = devices;
    }
+
+   /**
+    * @return the set of device ids rendered after the devices, or null.
+    */
+   public DeviceSet getDeviceSet()
+   {
+      return m_deviceSet;
+   }
+
+   /**
+    * Sets device ids to render after the devices, by id only, without
+    * creating an {@link AssetGroupDevice} per device. Suited to the large
+    * memberships computed with {@link DeviceSet} operations.
+    *
+    * @param deviceSet the set of device ids, or null.
+    */
+   public void setDeviceSet(DeviceSet deviceSet)
+   {
+      m_deviceSet = deviceSet;
+   }
    /////////////////////////////////////////////////////////////////////////
    // non-Public fields
    /////////////////////////////////////////////////////////////////////////
 
    /**The list of devices associated to an asset group save request.*/
    private List<AssetGroupDevice> m_devices;
+   /**The set of device ids associated to an asset group save request.*/
+   private DeviceSet m_deviceSet;
 }
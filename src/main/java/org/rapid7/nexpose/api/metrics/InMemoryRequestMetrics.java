@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.rapid7.nexpose.api.IRequestMetricsListener;
+import org.rapid7.nexpose.api.RequestSample;
+import org.rapid7.nexpose.api.TemplateAPIRequest;
+
+/**
+ * Keeps the metrics of the API requests in memory, by request class:
+ * <PRE>
+ * InMemoryRequestMetrics metrics = new InMemoryRequestMetrics();
+ * session.setMetricsListener(metrics);
+ * ...
+ * LatencyHistogram server = metrics.getMetrics(SiteListingRequest.class)
+ *    .getHistogram(RequestPhase.SERVER);
+ * System.out.println(server.getPercentile(99, TimeUnit.MILLISECONDS));
+ * </PRE>
+ * The metrics may be shared by several sessions.
+ */
+public class InMemoryRequestMetrics implements IRequestMetricsListener
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Override
+   public void requestCompleted(RequestSample sample)
+   {
+      getOrCreate(sample.getRequestClass()).record(sample);
+   }
+
+   /**
+    * Retrieves the metrics of a kind of request.
+    *
+    * @param requestClass the class of the requests.
+    * @return the metrics, or {@code null} if no such request was measured.
+    */
+   public RequestTypeMetrics getMetrics(Class<? extends TemplateAPIRequest> requestClass)
+   {
+      return m_metrics.get(requestClass);
+   }
+
+   /**
+    * Retrieves the metrics of all the kinds of request measured.
+    *
+    * @return a snapshot of the metrics by request class.
+    */
+   public Collection<RequestTypeMetrics> getAllMetrics()
+   {
+      return new ArrayList<RequestTypeMetrics>(m_metrics.values());
+   }
+
+   /**
+    * Clears the metrics of all the kinds of request.
+    */
+   public void reset()
+   {
+      for (RequestTypeMetrics metrics : m_metrics.values())
+      {
+         metrics.reset();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Retrieves the metrics of a kind of request, creating them the first time
+    * such a request is measured.
+    *
+    * @param requestClass the class of the requests.
+    * @return the metrics of the requests.
+    */
+   protected RequestTypeMetrics getOrCreate(Class<? extends TemplateAPIRequest> requestClass)
+   {
+      final RequestTypeMetrics metrics = m_metrics.get(requestClass);
+      if (metrics != null)
+      {
+         return metrics;
+      }
+      final RequestTypeMetrics created = new RequestTypeMetrics(requestClass);
+      final RequestTypeMetrics existing = m_metrics.putIfAbsent(requestClass, created);
+      if (existing != null)
+      {
+         return existing;
+      }
+      metricsCreated(created);
+      return created;
+   }
+
+   /**
+    * Called once when a kind of request is measured for the first time.
+    * Does nothing by default.
+    *
+    * @param metrics the new metrics.
+    */
+   protected void metricsCreated(RequestTypeMetrics metrics)
+   {
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The metrics by request class */
+   private final ConcurrentMap<Class<? extends TemplateAPIRequest>, RequestTypeMetrics> m_metrics =
+      new ConcurrentHashMap<Class<? extends TemplateAPIRequest>, RequestTypeMetrics>();
+}
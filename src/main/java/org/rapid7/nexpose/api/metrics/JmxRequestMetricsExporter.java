@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.rapid7.nexpose.api.RequestPhase;
+
+/**
+ * Keeps the metrics of the API requests in memory and publishes them over
+ * JMX, one MBean per request class named e.g.
+ * {@code org.rapid7.nexpose.api:type=RequestMetrics,name=SiteListingRequest}.
+ * Each MBean exposes the outcome and byte counts and, for every
+ * {@link RequestPhase}, the count, mean, median, 90th, 99th and 99.9th
+ * percentiles and maximum duration in milliseconds, e.g. {@code ServerP99}.
+ * <PRE>
+ * JmxRequestMetricsExporter metrics = new JmxRequestMetricsExporter();
+ * session.setMetricsListener(metrics);
+ * ...
+ * metrics.unregister();
+ * </PRE>
+ */
+public class JmxRequestMetricsExporter extends InMemoryRequestMetrics
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an exporter publishing to the platform MBean server under the
+    * {@code org.rapid7.nexpose.api} domain.
+    */
+   public JmxRequestMetricsExporter()
+   {
+      this(ManagementFactory.getPlatformMBeanServer(), "org.rapid7.nexpose.api");
+   }
+
+   /**
+    * Creates an exporter publishing to the given MBean server.
+    *
+    * @param server the MBean server to register the MBeans with.
+    * @param domain the domain of the MBean names, e.g. to tell the consoles
+    *        of an application apart.
+    */
+   public JmxRequestMetricsExporter(MBeanServer server, String domain)
+   {
+      if (server == null || domain == null)
+      {
+         throw new IllegalArgumentException("server and domain cannot be null");
+      }
+      m_server = server;
+      m_domain = domain;
+   }
+
+   /**
+    * Unregisters all the MBeans of this exporter. The metrics keep being
+    * collected in memory.
+    */
+   public void unregister()
+   {
+      for (ObjectName name : m_names)
+      {
+         try
+         {
+            m_server.unregisterMBean(name);
+         }
+         catch (InstanceNotFoundException e)
+         {
+            // already unregistered by someone else
+         }
+         catch (JMException e)
+         {
+            throw new IllegalStateException("Unable to unregister " + name, e);
+         }
+      }
+      m_names.clear();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   @Override
+   protected void metricsCreated(RequestTypeMetrics metrics)
+   {
+      try
+      {
+         final ObjectName name = new ObjectName(
+            m_domain + ":type=RequestMetrics,name=" + ObjectName.quote(metrics.getRequestClass().getSimpleName()));
+         m_server.registerMBean(new RequestTypeMetricsMBean(metrics), name);
+         m_names.add(name);
+      }
+      catch (InstanceAlreadyExistsException e)
+      {
+         // another exporter publishes this domain, keep its MBean
+      }
+      catch (JMException e)
+      {
+         throw new IllegalStateException("Unable to register the metrics of "
+            + metrics.getRequestClass().getSimpleName(), e);
+      }
+   }
+
+   /**
+    * Publishes the metrics of a kind of request.
+    */
+   private static class RequestTypeMetricsMBean implements DynamicMBean
+   {
+      RequestTypeMetricsMBean(RequestTypeMetrics metrics)
+      {
+         m_metrics = metrics;
+      }
+
+      @Override
+      public Object getAttribute(String attribute)
+         throws AttributeNotFoundException
+      {
+         if ("Attempts".equals(attribute))
+         {
+            return m_metrics.getAttempts();
+         }
+         if ("Retries".equals(attribute))
+         {
+            return m_metrics.getRetries();
+         }
+         if ("Failures".equals(attribute))
+         {
+            return m_metrics.getFailures();
+         }
+         if ("Errors".equals(attribute))
+         {
+            return m_metrics.getErrors();
+         }
+         if ("BytesSent".equals(attribute))
+         {
+            return m_metrics.getBytesSent();
+         }
+         if ("BytesReceived".equals(attribute))
+         {
+            return m_metrics.getBytesReceived();
+         }
+         if ("BytesSaved".equals(attribute))
+         {
+            return m_metrics.getBytesSaved();
+         }
+         for (RequestPhase phase : RequestPhase.values())
+         {
+            final String prefix = phaseName(phase);
+            if (attribute.startsWith(prefix))
+            {
+               final LatencyHistogram histogram = m_metrics.getHistogram(phase);
+               final String statistic = attribute.substring(prefix.length());
+               if ("Count".equals(statistic))
+               {
+                  return histogram.getCount();
+               }
+               if ("Mean".equals(statistic))
+               {
+                  return histogram.getMean(TimeUnit.MILLISECONDS);
+               }
+               if ("Max".equals(statistic))
+               {
+                  return toMillis(histogram.getMax(TimeUnit.MICROSECONDS));
+               }
+               for (int index = 0; index < PERCENTILES.length; index++)
+               {
+                  if (PERCENTILE_NAMES[index].equals(statistic))
+                  {
+                     return toMillis(histogram.getPercentile(PERCENTILES[index], TimeUnit.MICROSECONDS));
+                  }
+               }
+            }
+         }
+         throw new AttributeNotFoundException(attribute);
+      }
+
+      @Override
+      public void setAttribute(Attribute attribute)
+         throws AttributeNotFoundException
+      {
+         throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+      }
+
+      @Override
+      public AttributeList getAttributes(String[] attributes)
+      {
+         final AttributeList list = new AttributeList();
+         for (String attribute : attributes)
+         {
+            try
+            {
+               list.add(new Attribute(attribute, getAttribute(attribute)));
+            }
+            catch (AttributeNotFoundException e)
+            {
+               // skipped, as the contract of getAttributes requires
+            }
+         }
+         return list;
+      }
+
+      @Override
+      public AttributeList setAttributes(AttributeList attributes)
+      {
+         return new AttributeList();
+      }
+
+      @Override
+      public Object invoke(String actionName, Object[] params, String[] signature)
+         throws MBeanException, ReflectionException
+      {
+         if ("reset".equals(actionName))
+         {
+            m_metrics.reset();
+            return null;
+         }
+         throw new ReflectionException(new NoSuchMethodException(actionName));
+      }
+
+      @Override
+      public MBeanInfo getMBeanInfo()
+      {
+         final List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+         attributes.add(counter("Attempts", "Attempts, retries included"));
+         attributes.add(counter("Retries", "Attempts that were retries"));
+         attributes.add(counter("Failures", "Attempts answered with a Failure"));
+         attributes.add(counter("Errors", "Attempts without a usable answer"));
+         attributes.add(counter("BytesSent", "Request body bytes sent"));
+         attributes.add(counter("BytesReceived", "Response body bytes received"));
+         attributes.add(counter("BytesSaved", "Bytes compression kept off the wire"));
+         for (RequestPhase phase : RequestPhase.values())
+         {
+            final String prefix = phaseName(phase);
+            attributes.add(counter(prefix + "Count", "Attempts that went through the phase"));
+            attributes.add(duration(prefix + "Mean", "Mean duration in milliseconds"));
+            for (int index = 0; index < PERCENTILES.length; index++)
+            {
+               attributes.add(duration(prefix + PERCENTILE_NAMES[index],
+                  PERCENTILES[index] + "th percentile in milliseconds"));
+            }
+            attributes.add(duration(prefix + "Max", "Maximum duration in milliseconds"));
+         }
+         return new MBeanInfo(
+            getClass().getName(),
+            "Metrics of " + m_metrics.getRequestClass().getSimpleName(),
+            attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+            null,
+            new MBeanOperationInfo[] {
+               new MBeanOperationInfo("reset", "Clears the metrics", new MBeanParameterInfo[0],
+                  "void", MBeanOperationInfo.ACTION) },
+            null);
+      }
+
+      private static MBeanAttributeInfo counter(String name, String description)
+      {
+         return new MBeanAttributeInfo(name, "long", description, true, false, false);
+      }
+
+      private static MBeanAttributeInfo duration(String name, String description)
+      {
+         return new MBeanAttributeInfo(name, "double", description, true, false, false);
+      }
+
+      private static String phaseName(RequestPhase phase)
+      {
+         final String name = phase.name();
+         return name.charAt(0) + name.substring(1).toLowerCase();
+      }
+
+      private static double toMillis(long micros)
+      {
+         return micros / 1000.0;
+      }
+
+      /** The metrics published */
+      private final RequestTypeMetrics m_metrics;
+   }
+
+   /** The percentiles published */
+   private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+   /** The attribute suffixes of the percentiles published */
+   private static final String[] PERCENTILE_NAMES = { "P50", "P90", "P99", "P999" };
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The MBean server the MBeans are registered with */
+   private final MBeanServer m_server;
+   /** The domain of the MBean names */
+   private final String m_domain;
+   /** The names of the MBeans registered */
+   private final List<ObjectName> m_names = new CopyOnWriteArrayList<ObjectName>();
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations with a bounded relative error, in the
+ * spirit of HdrHistogram. Durations are recorded in microseconds into
+ * log-linear buckets: values below 64 microseconds are exact, larger ones
+ * fall into buckets whose width is at most 1/32 of their lower bound, so
+ * percentiles are within about 3% of the recorded values. Durations from
+ * 0 up to about 12 days are tracked, longer ones are counted as the longest
+ * trackable duration.
+ */
+public class LatencyHistogram
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Records a duration.
+    *
+    * @param duration the duration.
+    * @param unit the unit of the duration.
+    */
+   public void record(long duration, TimeUnit unit)
+   {
+      final long micros = Math.min(Math.max(0, unit.toMicros(duration)), MAX_VALUE);
+      m_counts.incrementAndGet(indexOf(micros));
+      m_count.incrementAndGet();
+      m_sum.addAndGet(micros);
+      long max = m_max.get();
+      while (micros > max && !m_max.compareAndSet(max, micros))
+      {
+         max = m_max.get();
+      }
+   }
+
+   /**
+    * Retrieves the number of durations recorded.
+    *
+    * @return the count.
+    */
+   public long getCount()
+   {
+      return m_count.get();
+   }
+
+   /**
+    * Retrieves the longest duration recorded.
+    *
+    * @param unit the unit to express the duration in.
+    * @return the maximum, 0 if nothing was recorded.
+    */
+   public long getMax(TimeUnit unit)
+   {
+      return unit.convert(m_max.get(), TimeUnit.MICROSECONDS);
+   }
+
+   /**
+    * Retrieves the average duration recorded.
+    *
+    * @param unit the unit to express the duration in.
+    * @return the mean, 0 if nothing was recorded.
+    */
+   public double getMean(TimeUnit unit)
+   {
+      final long count = m_count.get();
+      return count == 0 ? 0 : (double) m_sum.get() / count / unit.toMicros(1);
+   }
+
+   /**
+    * Retrieves the duration below which the given share of the recorded
+    * durations fall.
+    *
+    * @param percentile the percentile, between 0 and 100, e.g. 99.9.
+    * @param unit the unit to express the duration in.
+    * @return the highest duration equivalent to the percentile, 0 if nothing
+    *         was recorded.
+    */
+   public long getPercentile(double percentile, TimeUnit unit)
+   {
+      if (percentile < 0 || percentile > 100)
+      {
+         throw new IllegalArgumentException("percentile must be between 0 and 100");
+      }
+      final long count = m_count.get();
+      if (count == 0)
+      {
+         return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int index = 0; index < m_counts.length(); index++)
+      {
+         seen += m_counts.get(index);
+         if (seen >= rank)
+         {
+            return unit.convert(Math.min(highestValueOf(index), m_max.get()), TimeUnit.MICROSECONDS);
+         }
+      }
+      return getMax(unit);
+   }
+
+   /**
+    * Clears the histogram.
+    */
+   public void reset()
+   {
+      for (int index = 0; index < m_counts.length(); index++)
+      {
+         m_counts.set(index, 0);
+      }
+      m_count.set(0);
+      m_sum.set(0);
+      m_max.set(0);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Computes the bucket of a value: values below 2^SUB_BITS have their own
+    * bucket, larger ones keep their SUB_BITS most significant bits.
+    */
+   static int indexOf(long value)
+   {
+      if (value < SUB_BUCKETS)
+      {
+         return (int) value;
+      }
+      final int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+      return (shift + 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+   }
+
+   /**
+    * Computes the highest value falling in a bucket.
+    */
+   static long highestValueOf(int index)
+   {
+      if (index < SUB_BUCKETS)
+      {
+         return index;
+      }
+      final int shift = index / HALF_SUB_BUCKETS - 1;
+      final long subBucket = index - shift * HALF_SUB_BUCKETS;
+      return ((subBucket + 1) << shift) - 1;
+   }
+
+   /** The number of bits kept of every value */
+   private static final int SUB_BITS = 6;
+   /** The number of values represented exactly */
+   private static final int SUB_BUCKETS = 1 << SUB_BITS;
+   /** The number of buckets of every power of two past the exact values */
+   private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+   /** The longest duration tracked, in microseconds */
+   private static final long MAX_VALUE = (1L << 40) - 1;
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The counts of the buckets */
+   private final AtomicLongArray m_counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+   /** The number of durations recorded */
+   private final AtomicLong m_count = new AtomicLong();
+   /** The sum of the durations recorded, in microseconds */
+   private final AtomicLong m_sum = new AtomicLong();
+   /** The longest duration recorded, in microseconds */
+   private final AtomicLong m_max = new AtomicLong();
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rapid7.nexpose.api.RequestPhase;
+import org.rapid7.nexpose.api.RequestSample;
+import org.rapid7.nexpose.api.TemplateAPIRequest;
+
+/**
+ * The metrics of one kind of API request: a latency histogram for each
+ * {@link RequestPhase}, byte counts and outcome counts.
+ */
+public class RequestTypeMetrics
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates empty metrics for a kind of request.
+    *
+    * @param requestClass the class of the requests.
+    */
+   public RequestTypeMetrics(Class<? extends TemplateAPIRequest> requestClass)
+   {
+      m_requestClass = requestClass;
+      for (RequestPhase phase : RequestPhase.values())
+      {
+         m_histograms.put(phase, new LatencyHistogram());
+      }
+   }
+
+   /**
+    * Adds the measurements of an attempt.
+    *
+    * @param sample the measurements of an attempt at sending a request of
+    *        this kind.
+    */
+   public void record(RequestSample sample)
+   {
+      for (RequestPhase phase : RequestPhase.values())
+      {
+         final long duration = sample.getDuration(phase, TimeUnit.NANOSECONDS);
+         if (duration >= 0)
+         {
+            m_histograms.get(phase).record(duration, TimeUnit.NANOSECONDS);
+         }
+      }
+      m_attempts.incrementAndGet();
+      if (sample.getAttempt() > 1)
+      {
+         m_retries.incrementAndGet();
+      }
+      if (sample.getOutcome() == RequestSample.Outcome.FAILURE)
+      {
+         m_failures.incrementAndGet();
+      }
+      else if (sample.getOutcome() == RequestSample.Outcome.ERROR)
+      {
+         m_errors.incrementAndGet();
+      }
+      m_bytesSent.addAndGet(sample.getBytesSent());
+      m_bytesReceived.addAndGet(sample.getBytesReceived());
+      m_bytesSaved.addAndGet(sample.getRequestSize() - sample.getBytesSent()
+         + sample.getResponseSize() - sample.getBytesReceived());
+   }
+
+   /**
+    * Retrieves the class of the requests measured.
+    *
+    * @return the request class.
+    */
+   public Class<? extends TemplateAPIRequest> getRequestClass()
+   {
+      return m_requestClass;
+   }
+
+   /**
+    * Retrieves the latency histogram of a phase.
+    *
+    * @param phase the phase.
+    * @return the histogram of the durations of the phase.
+    */
+   public LatencyHistogram getHistogram(RequestPhase phase)
+   {
+      return m_histograms.get(phase);
+   }
+
+   /**
+    * Retrieves the number of attempts measured, retries included.
+    *
+    * @return the number of attempts.
+    */
+   public long getAttempts()
+   {
+      return m_attempts.get();
+   }
+
+   /**
+    * Retrieves the number of attempts that were retries.
+    *
+    * @return the number of retries.
+    */
+   public long getRetries()
+   {
+      return m_retries.get();
+   }
+
+   /**
+    * Retrieves the number of attempts the console answered with a Failure.
+    *
+    * @return the number of failures.
+    */
+   public long getFailures()
+   {
+      return m_failures.get();
+   }
+
+   /**
+    * Retrieves the number of attempts that got no usable answer.
+    *
+    * @return the number of errors.
+    */
+   public long getErrors()
+   {
+      return m_errors.get();
+   }
+
+   /**
+    * Retrieves the number of request body bytes sent.
+    *
+    * @return the bytes sent.
+    */
+   public long getBytesSent()
+   {
+      return m_bytesSent.get();
+   }
+
+   /**
+    * Retrieves the number of response body bytes received.
+    *
+    * @return the bytes received.
+    */
+   public long getBytesReceived()
+   {
+      return m_bytesReceived.get();
+   }
+
+   /**
+    * Retrieves the number of bytes compression kept off the wire, requests
+    * and responses together.
+    *
+    * @return the bytes saved.
+    */
+   public long getBytesSaved()
+   {
+      return m_bytesSaved.get();
+   }
+
+   /**
+    * Clears the metrics.
+    */
+   public void reset()
+   {
+      for (LatencyHistogram histogram : m_histograms.values())
+      {
+         histogram.reset();
+      }
+      m_attempts.set(0);
+      m_retries.set(0);
+      m_failures.set(0);
+      m_errors.set(0);
+      m_bytesSent.set(0);
+      m_bytesReceived.set(0);
+      m_bytesSaved.set(0);
+   }
+
+   @Override
+   public String toString()
+   {
+      final LatencyHistogram total = m_histograms.get(RequestPhase.TOTAL);
+      return m_requestClass.getSimpleName()
+         + " attempts=" + getAttempts()
+         + " failures=" + getFailures()
+         + " errors=" + getErrors()
+         + " p50Ms=" + total.getPercentile(50, TimeUnit.MILLISECONDS)
+         + " p99Ms=" + total.getPercentile(99, TimeUnit.MILLISECONDS)
+         + " maxMs=" + total.getMax(TimeUnit.MILLISECONDS)
+         + " sent=" + getBytesSent()
+         + " received=" + getBytesReceived()
+         + " saved=" + getBytesSaved();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The class of the requests measured */
+   private final Class<? extends TemplateAPIRequest> m_requestClass;
+   /** The latency histograms by phase */
+   private final Map<RequestPhase, LatencyHistogram> m_histograms =
+      new EnumMap<RequestPhase, LatencyHistogram>(RequestPhase.class);
+   /** The number of attempts */
+   private final AtomicLong m_attempts = new AtomicLong();
+   /** The number of retries */
+   private final AtomicLong m_retries = new AtomicLong();
+   /** The number of Failure answers */
+   private final AtomicLong m_failures = new AtomicLong();
+   /** The number of attempts without a usable answer */
+   private final AtomicLong m_errors = new AtomicLong();
+   /** The request body bytes sent */
+   private final AtomicLong m_bytesSent = new AtomicLong();
+   /** The response body bytes received */
+   private final AtomicLong m_bytesReceived = new AtomicLong();
+   /** The bytes compression kept off the wire */
+   private final AtomicLong m_bytesSaved = new AtomicLong();
+}
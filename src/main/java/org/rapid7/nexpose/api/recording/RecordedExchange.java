@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.recording;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A request sent to a console and its response, as recorded by a
+ * {@link TrafficRecorder}. The sensitive attributes of both are replaced by
+ * placeholders, e.g. {@code session-id="${session-id}"}.
+ */
+public class RecordedExchange
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new recorded exchange.
+    *
+    * @param requestName the name of the request, e.g. "SiteListingRequest".
+    * @param apiVersion the API version the request was sent to, e.g. "1.2".
+    * @param offset the time from the start of the recording to the sending
+    *        of the request, in nanoseconds.
+    * @param duration the time the exchange took, in nanoseconds.
+    * @param requestXML the (sanitized) XML of the request.
+    * @param responseXML the (sanitized) XML of the response, {@code null} if
+    *        the exchange failed.
+    * @param error the error the exchange failed with, {@code null} if it
+    *        did not.
+    */
+   public RecordedExchange(
+      String requestName,
+      String apiVersion,
+      long offset,
+      long duration,
+      String requestXML,
+      String responseXML,
+      String error)
+   {
+      m_requestName = requestName;
+      m_apiVersion = apiVersion;
+      m_offset = offset;
+      m_duration = duration;
+      m_requestXML = requestXML;
+      m_responseXML = responseXML;
+      m_error = error;
+   }
+
+   /**
+    * Retrieves the name of the request.
+    *
+    * @return the name of the request, e.g. "SiteListingRequest".
+    */
+   public String getRequestName()
+   {
+      return m_requestName;
+   }
+
+   /**
+    * Retrieves the API version the request was sent to.
+    *
+    * @return the API version, e.g. "1.2".
+    */
+   public String getApiVersion()
+   {
+      return m_apiVersion;
+   }
+
+   /**
+    * Retrieves the time from the start of the recording to the sending of
+    * the request.
+    *
+    * @param unit the unit of the result.
+    * @return the offset of the request.
+    */
+   public long getOffset(TimeUnit unit)
+   {
+      return unit.convert(m_offset, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Retrieves the time the exchange took.
+    *
+    * @param unit the unit of the result.
+    * @return the duration of the exchange.
+    */
+   public long getDuration(TimeUnit unit)
+   {
+      return unit.convert(m_duration, TimeUnit.NANOSECONDS);
+   }
+
+   /**
+    * Retrieves the XML of the request.
+    *
+    * @return the sanitized request.
+    */
+   public String getRequestXML()
+   {
+      return m_requestXML;
+   }
+
+   /**
+    * Retrieves the XML of the response.
+    *
+    * @return the sanitized response, {@code null} if the exchange failed.
+    */
+   public String getResponseXML()
+   {
+      return m_responseXML;
+   }
+
+   /**
+    * Retrieves the error the exchange failed with.
+    *
+    * @return the description of the error, {@code null} if the exchange did
+    *         not fail.
+    */
+   public String getError()
+   {
+      return m_error;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String m_requestName;
+   private final String m_apiVersion;
+   private final long m_offset;
+   private final long m_duration;
+   private final String m_requestXML;
+   private final String m_responseXML;
+   private final String m_error;
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.recording;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads back the exchanges written by a {@link TrafficRecorder}, one at a
+ * time so that large recordings need not fit in memory.
+ */
+public class RecordingReader implements Closeable
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Reads all the exchanges of a recording file.
+    *
+    * @param file the recording.
+    * @return the exchanges, in the order they were recorded.
+    * @throws IOException when the file cannot be read or is not a recording.
+    */
+   public static List<RecordedExchange> readAll(File file) throws IOException
+   {
+      final RecordingReader reader = new RecordingReader(
+         new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")));
+      try
+      {
+         final List<RecordedExchange> exchanges = new ArrayList<RecordedExchange>();
+         for (RecordedExchange exchange = reader.next(); exchange != null; exchange = reader.next())
+         {
+            exchanges.add(exchange);
+         }
+         return exchanges;
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * Creates a new reader.
+    *
+    * @param reader the recording, closed with this reader.
+    * @throws IOException when the recording cannot be read.
+    */
+   public RecordingReader(Reader reader) throws IOException
+   {
+      m_reader = reader;
+      try
+      {
+         final XMLInputFactory factory = XMLInputFactory.newInstance();
+         factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+         factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+         m_stream = factory.createXMLStreamReader(reader);
+      }
+      catch (XMLStreamException e)
+      {
+         throw new IOException("Unable to read the recording", e);
+      }
+   }
+
+   /**
+    * Reads the next exchange of the recording.
+    *
+    * @return the next exchange, {@code null} at the end of the recording.
+    * @throws IOException when the recording cannot be read.
+    */
+   public RecordedExchange next() throws IOException
+   {
+      try
+      {
+         while (m_stream.hasNext())
+         {
+            if (m_stream.next() == XMLStreamConstants.START_ELEMENT
+               && "Exchange".equals(m_stream.getLocalName()))
+            {
+               return readExchange();
+            }
+         }
+         return null;
+      }
+      catch (XMLStreamException e)
+      {
+         throw new IOException("Malformed recording", e);
+      }
+      catch (NumberFormatException e)
+      {
+         throw new IOException("Malformed recording", e);
+      }
+   }
+
+   public void close() throws IOException
+   {
+      try
+      {
+         m_stream.close();
+      }
+      catch (XMLStreamException e)
+      {
+         // the underlying reader is closed below
+      }
+      m_reader.close();
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Reads the Exchange element the stream is on.
+    */
+   private RecordedExchange readExchange() throws XMLStreamException
+   {
+      final String requestName = m_stream.getAttributeValue(null, "request");
+      final String apiVersion = m_stream.getAttributeValue(null, "api-version");
+      final long offset = Long.parseLong(m_stream.getAttributeValue(null, "offset"));
+      final long duration = Long.parseLong(m_stream.getAttributeValue(null, "duration"));
+      final String error = m_stream.getAttributeValue(null, "error");
+      String requestXML = null;
+      String responseXML = null;
+      while (m_stream.nextTag() == XMLStreamConstants.START_ELEMENT)
+      {
+         final String name = m_stream.getLocalName();
+         final String text = m_stream.getElementText();
+         if ("Request".equals(name))
+         {
+            requestXML = text;
+         }
+         else if ("Response".equals(name))
+         {
+            responseXML = text;
+         }
+      }
+      return new RecordedExchange(
+         requestName,
+         apiVersion,
+         TimeUnit.MICROSECONDS.toNanos(offset),
+         TimeUnit.MICROSECONDS.toNanos(duration),
+         requestXML,
+         responseXML,
+         error);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final Reader m_reader;
+   private final XMLStreamReader m_stream;
+}
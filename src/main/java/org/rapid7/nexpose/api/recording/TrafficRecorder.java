@@ -0,0 +1,295 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.recording;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.RequestContext;
+import org.rapid7.nexpose.api.RequestInterceptorAdapter;
+import org.rapid7.nexpose.utils.StringUtils;
+
+/**
+ * Records the requests a session sends and the responses it receives, so
+ * that the traffic of real usage can be replayed later against a stand-in
+ * console. Install it on a session and close it when done:
+ * <PRE>
+ * TrafficRecorder recorder = new TrafficRecorder(new File("traffic.xml"));
+ * session.addInterceptor(recorder);
+ * ...
+ * session.removeInterceptor(recorder);
+ * recorder.close();
+ * </PRE>
+ * Every attempt is recorded with its API version, its offset from the start
+ * of the recording and its duration. Before being written, the values of the
+ * sensitive attributes of the requests and responses (by default password,
+ * session-id and user-id) are replaced with placeholders such as
+ * {@code password="${password}"}; more attributes and free-form patterns can
+ * be sanitized too. The recording is an XML document read back with a
+ * {@link RecordingReader}.
+ */
+public class TrafficRecorder extends RequestInterceptorAdapter implements Closeable
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a new recorder writing to a file.
+    *
+    * @param file the file to write the recording to, replaced if it exists.
+    * @throws IOException when the file cannot be written.
+    */
+   public TrafficRecorder(File file) throws IOException
+   {
+      this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+   }
+
+   /**
+    * Creates a new recorder.
+    *
+    * @param writer where to write the recording, closed with the recorder.
+    * @throws IOException when the writer cannot be written to.
+    */
+   public TrafficRecorder(Writer writer) throws IOException
+   {
+      m_writer = writer;
+      m_start = System.nanoTime();
+      m_writer.write("<Recording version=\"1\">\n");
+      sanitizeAttribute("password");
+      sanitizeAttribute("session-id");
+      sanitizeAttribute("user-id");
+   }
+
+   /**
+    * Replaces the values of an attribute of the requests and responses with a
+    * placeholder, e.g. {@code name="${name}"}.
+    *
+    * @param attribute the name of the attribute.
+    */
+   public void sanitizeAttribute(String attribute)
+   {
+      sanitize(
+         Pattern.compile("(\\s" + Pattern.quote(attribute) + "\\s*=\\s*)(\"[^\"]*\"|'[^']*')"),
+         "$1\"" + Matcher.quoteReplacement("${" + attribute + "}") + "\"");
+   }
+
+   /**
+    * Replaces the matches of a pattern in the requests and responses.
+    *
+    * @param pattern the pattern to replace.
+    * @param replacement the replacement, as for
+    *        {@link Matcher#replaceAll(String)}.
+    */
+   public synchronized void sanitize(Pattern pattern, String replacement)
+   {
+      m_patterns.add(pattern);
+      m_replacements.add(replacement);
+   }
+
+   /**
+    * Retrieves the number of exchanges recorded so far.
+    *
+    * @return the number of exchanges.
+    */
+   public synchronized int getRecorded()
+   {
+      return m_recorded;
+   }
+
+   @Override
+   public void beforeSend(RequestContext context)
+   {
+      context.setAttribute(START, System.nanoTime());
+   }
+
+   @Override
+   public void afterReceive(RequestContext context, APIResponse response) throws APIException
+   {
+      record(context, response.getResponse(), null);
+   }
+
+   @Override
+   public void onError(RequestContext context, Exception error)
+   {
+      try
+      {
+         record(context, null, String.valueOf(error));
+      }
+      catch (APIException e)
+      {
+         // never thrown without a response
+      }
+   }
+
+   /**
+    * Ends the recording and closes its writer.
+    *
+    * @throws IOException when the recording cannot be written.
+    */
+   public synchronized void close() throws IOException
+   {
+      if (m_closed)
+      {
+         return;
+      }
+      m_closed = true;
+      try
+      {
+         m_writer.write("</Recording>\n");
+      }
+      finally
+      {
+         m_writer.close();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Writes an exchange to the recording. Write failures end the recording,
+    * they are not reported to the session.
+    */
+   private void record(RequestContext context, String responseXML, String error) throws APIException
+   {
+      final Long start = (Long) context.getAttribute(START);
+      final long now = System.nanoTime();
+      final long offset = start == null ? now - m_start : start - m_start;
+      final long duration = start == null ? 0 : now - start;
+      final String requestXML = context.getRequest().getRequestXML();
+      final String requestName = requestName(requestXML, context.getRequest().getClass().getSimpleName());
+      final String apiVersion = context.getApiVersion() == null ? "" : context.getApiVersion().getVersion();
+      synchronized (this)
+      {
+         if (m_closed)
+         {
+            return;
+         }
+         try
+         {
+            m_writer.write("   <Exchange request=\"");
+            m_writer.write(StringUtils.xmlEscape(requestName));
+            m_writer.write("\" api-version=\"");
+            m_writer.write(StringUtils.xmlEscape(apiVersion));
+            m_writer.write("\" offset=\"");
+            m_writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(offset)));
+            m_writer.write("\" duration=\"");
+            m_writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(duration)));
+            if (error != null)
+            {
+               m_writer.write("\" error=\"");
+               StringUtils.xmlEscape(sanitize(error), m_writer);
+            }
+            m_writer.write("\">\n      <Request>");
+            StringUtils.xmlEscape(sanitize(requestXML == null ? "" : requestXML), m_writer);
+            m_writer.write("</Request>\n");
+            if (responseXML != null)
+            {
+               m_writer.write("      <Response>");
+               StringUtils.xmlEscape(sanitize(responseXML), m_writer);
+               m_writer.write("</Response>\n");
+            }
+            m_writer.write("   </Exchange>\n");
+            m_writer.flush();
+            m_recorded++;
+         }
+         catch (IOException e)
+         {
+            m_closed = true;
+            try
+            {
+               m_writer.close();
+            }
+            catch (IOException ignored)
+            {
+               // the recording is lost anyway
+            }
+         }
+      }
+   }
+
+   /**
+    * Applies the sanitizing patterns to a text.
+    */
+   private String sanitize(String text)
+   {
+      for (int i = 0; i < m_patterns.size(); i++)
+      {
+         text = m_patterns.get(i).matcher(text).replaceAll(m_replacements.get(i));
+      }
+      return text;
+   }
+
+   /**
+    * Retrieves the tag of the root element of a request, or the given
+    * default if it cannot be found.
+    */
+   private static String requestName(String requestXML, String defaultName)
+   {
+      if (requestXML != null)
+      {
+         final Matcher matcher = ROOT_TAG.matcher(requestXML);
+         if (matcher.find())
+         {
+            return matcher.group(1);
+         }
+      }
+      return defaultName;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The context attribute holding the start of the attempt */
+   private static final String START = TrafficRecorder.class.getName() + ".start";
+   /** The first tag of a document, past its comments and declarations */
+   private static final Pattern ROOT_TAG = Pattern.compile("<([A-Za-z_][\\w.-]*)");
+
+   /** Where the recording is written */
+   private final Writer m_writer;
+   /** When the recording started, in System.nanoTime() terms */
+   private final long m_start;
+   /** The sanitizing patterns and their replacements */
+   private final List<Pattern> m_patterns = new ArrayList<Pattern>();
+   private final List<String> m_replacements = new ArrayList<String>();
+   private int m_recorded;
+   private boolean m_closed;
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.reports;
+
+import java.io.File;
+
+/**
+ * A report generated and downloaded by the {@link ReportQueue}.
+ */
+public class GeneratedReport
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a generated report.
+    *
+    * @param configId the id of the report configuration.
+    * @param reportId the id of the report generated.
+    * @param file the file the report was written to.
+    * @param size the size of the report in bytes.
+    * @param polls the number of ReportHistoryRequests sent until the report
+    *        was generated.
+    * @param queuedAt when the report was submitted, in milliseconds since the
+    *        epoch.
+    * @param launchedAt when the generation was started.
+    * @param generatedAt when the report was seen generated.
+    * @param downloadedAt when the report was written.
+    */
+   public GeneratedReport(int configId, int reportId, File file, long size, int polls, long queuedAt, long launchedAt,
+      long generatedAt, long downloadedAt)
+   {
+      m_configId = configId;
+      m_reportId = reportId;
+      m_file = file;
+      m_size = size;
+      m_polls = polls;
+      m_queuedAt = queuedAt;
+      m_launchedAt = launchedAt;
+      m_generatedAt = generatedAt;
+      m_downloadedAt = downloadedAt;
+   }
+
+   /**
+    * @return the id of the report configuration.
+    */
+   public int getConfigId()
+   {
+      return m_configId;
+   }
+
+   /**
+    * @return the id of the report generated.
+    */
+   public int getReportId()
+   {
+      return m_reportId;
+   }
+
+   /**
+    * @return the file the report was written to.
+    */
+   public File getFile()
+   {
+      return m_file;
+   }
+
+   /**
+    * @return the size of the report in bytes.
+    */
+   public long getSize()
+   {
+      return m_size;
+   }
+
+   /**
+    * @return the number of ReportHistoryRequests sent until the report was
+    *         generated.
+    */
+   public int getPolls()
+   {
+      return m_polls;
+   }
+
+   /**
+    * @return when the report was submitted, in milliseconds since the epoch.
+    */
+   public long getQueuedAt()
+   {
+      return m_queuedAt;
+   }
+
+   /**
+    * @return when the generation was started, in milliseconds since the
+    *         epoch.
+    */
+   public long getLaunchedAt()
+   {
+      return m_launchedAt;
+   }
+
+   /**
+    * @return when the report was seen generated, in milliseconds since the
+    *         epoch.
+    */
+   public long getGeneratedAt()
+   {
+      return m_generatedAt;
+   }
+
+   /**
+    * @return when the report was written, in milliseconds since the epoch.
+    */
+   public long getDownloadedAt()
+   {
+      return m_downloadedAt;
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "GeneratedReport[config " + m_configId + ", report " + m_reportId + ", " + m_file + ", " + m_size
+         + " bytes]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final int m_configId;
+   private final int m_reportId;
+   private final File m_file;
+   private final long m_size;
+   private final int m_polls;
+   private final long m_queuedAt;
+   private final long m_launchedAt;
+   private final long m_generatedAt;
+   private final long m_downloadedAt;
+}
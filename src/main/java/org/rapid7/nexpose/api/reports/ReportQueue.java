@@ -0,0 +1,698 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.reports;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.domain.ReportSummary;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.w3c.dom.Element;
+
+/**
+ * Queues report generations and runs a few at a time, instead of starting
+ * them all at once or one after the other:
+ * <PRE>
+ * ReportQueue queue = new ReportQueue(session, new File("reports"));
+ * queue.setMaxConcurrentReports(8);
+ * queue.setOffPeakWindow(22, 6);
+ * for (ReportConfigSummary report : session.listReports(session.getSessionID(), null))
+ * {
+ *    futures.add(queue.submit(report.getConfigId()));
+ * }
+ * </PRE>
+ * A report is started with a ReportGenerateRequest, then the history of its
+ * configuration is polled with a ReportHistoryRequest until its status is no
+ * longer Started. The polls back off, twice longer every time up to the
+ * maximum interval, and the first poll waits for most of the mean generation
+ * time of the reports generated so far. A generated report is streamed to a
+ * file of the directory, named after its configuration and id, through a
+ * temporary file renamed once complete; the next report is started as soon
+ * as it is written.
+ * <P>
+ * With an off-peak window, the reports are only started within the window;
+ * the ones started keep being polled and downloaded after it.
+ */
+public class ReportQueue
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a queue polling and downloading the reports from its own pool of
+    * daemon threads, released by {@link #shutdown()}.
+    *
+    * @param session the logged in session to generate the reports with.
+    * @param directory the directory to write the reports to.
+    */
+   public ReportQueue(APISession session, File directory)
+   {
+      this(session, directory, new ScheduledThreadPoolExecutor(4, new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-report-queue-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates a queue polling and downloading the reports from the given
+    * executor, which is not shut down by {@link #shutdown()}.
+    *
+    * @param session the logged in session to generate the reports with.
+    * @param directory the directory to write the reports to.
+    * @param executor the executor to send the requests from.
+    */
+   public ReportQueue(APISession session, File directory, ScheduledExecutorService executor)
+   {
+      this(session, directory, executor, false);
+   }
+
+   /**
+    * Sets the maximum number of reports generated or downloaded at once. 4
+    * by default.
+    *
+    * @param maxReports the number of reports, at least 1.
+    */
+   public void setMaxConcurrentReports(int maxReports)
+   {
+      if (maxReports < 1)
+      {
+         throw new IllegalArgumentException("maxReports must be at least 1");
+      }
+      synchronized (m_lock)
+      {
+         m_maxReports = maxReports;
+      }
+      dispatch();
+   }
+
+   /**
+    * Restricts the start of the reports to a window of hours of the day, in
+    * the default time zone. None by default.
+    *
+    * @param startHour the first hour of the window, from 0 to 23.
+    * @param endHour the hour the window ends at, from 0 to 23, before the
+    *        start hour for a window over midnight.
+    */
+   public void setOffPeakWindow(int startHour, int endHour)
+   {
+      if (startHour < 0 || startHour > 23 || endHour < 0 || endHour > 23 || startHour == endHour)
+      {
+         throw new IllegalArgumentException("The hours must be from 0 to 23 and differ");
+      }
+      synchronized (m_lock)
+      {
+         m_windowStart = startHour;
+         m_windowEnd = endHour;
+         cancelWakeup();
+      }
+      dispatch();
+   }
+
+   /**
+    * Lets the reports start at any time.
+    */
+   public void clearOffPeakWindow()
+   {
+      synchronized (m_lock)
+      {
+         m_windowStart = -1;
+         m_windowEnd = -1;
+         cancelWakeup();
+      }
+      dispatch();
+   }
+
+   /**
+    * Sets the intervals between the polls of the history of a report being
+    * generated. 5 seconds to 5 minutes by default.
+    *
+    * @param minInterval the shortest interval, more than 0.
+    * @param maxInterval the longest interval, at least the shortest one.
+    * @param unit the unit of the intervals.
+    */
+   public void setPollInterval(long minInterval, long maxInterval, TimeUnit unit)
+   {
+      if (minInterval <= 0 || maxInterval < minInterval)
+      {
+         throw new IllegalArgumentException("minInterval must be more than 0 and maxInterval at least minInterval");
+      }
+      m_minInterval = unit.toMillis(minInterval);
+      m_maxInterval = unit.toMillis(maxInterval);
+   }
+
+   /**
+    * Queues the generation of a report.
+    *
+    * @param reportConfigId the id of the report configuration.
+    * @return the future report, done once it is written, or failed if it
+    *         could not be generated or downloaded. Cancelling it before it is
+    *         started removes it from the queue, and afterwards stops polling
+    *         the report.
+    */
+   public Future<GeneratedReport> submit(int reportConfigId)
+   {
+      final PendingReport report = new PendingReport(reportConfigId);
+      synchronized (m_lock)
+      {
+         if (m_shutdown)
+         {
+            throw new IllegalStateException("The queue is shut down");
+         }
+         m_queue.add(report);
+      }
+      dispatch();
+      return report;
+   }
+
+   /**
+    * Retrieves the number of reports waiting to be started.
+    *
+    * @return the number of reports.
+    */
+   public int getQueueLength()
+   {
+      synchronized (m_lock)
+      {
+         return m_queue.size();
+      }
+   }
+
+   /**
+    * Retrieves the number of reports being generated or downloaded.
+    *
+    * @return the number of reports.
+    */
+   public int getActiveReports()
+   {
+      synchronized (m_lock)
+      {
+         return m_active.size();
+      }
+   }
+
+   /**
+    * Cancels the reports queued and stops polling the ones being generated,
+    * which the console keeps generating. The threads of the queue are
+    * released if it created them.
+    */
+   public void shutdown()
+   {
+      final List<PendingReport> reports;
+      synchronized (m_lock)
+      {
+         m_shutdown = true;
+         cancelWakeup();
+         reports = new ArrayList<PendingReport>(m_queue);
+         reports.addAll(m_active);
+         m_queue.clear();
+      }
+      for (PendingReport report : reports)
+      {
+         report.cancel(false);
+      }
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdown();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private ReportQueue(APISession session, File directory, ScheduledExecutorService executor, boolean ownsExecutor)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (directory == null)
+      {
+         throw new IllegalArgumentException("directory cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_session = session;
+      m_directory = directory;
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   /**
+    * Starts the queued reports there is room for, or waits for the off-peak
+    * window.
+    */
+   private void dispatch()
+   {
+      synchronized (m_lock)
+      {
+         while (!m_shutdown && m_active.size() < m_maxReports && !m_queue.isEmpty())
+         {
+            final long now = System.currentTimeMillis();
+            if (!isInWindow(now))
+            {
+               scheduleWakeup(now);
+               return;
+            }
+            final PendingReport report = m_queue.poll();
+            if (!report.isCancelled())
+            {
+               m_active.add(report);
+               launch(report);
+            }
+         }
+      }
+   }
+
+   /**
+    * Starts the generation of a report from the executor.
+    */
+   private void launch(final PendingReport report)
+   {
+      submit(report, new Callable<Object>()
+      {
+         @Override
+         public Object call() throws IOException, APIException
+         {
+            report.m_launchedAt = System.currentTimeMillis();
+            final APIResponse response =
+               m_session.reportGenerateRequest(m_session.getSessionID(), null, String.valueOf(report.m_configId));
+            if (response.isFailure())
+            {
+               throw new APIException("ReportGenerateRequest failed");
+            }
+            final Element summary = (Element) response.grabNode("/ReportGenerateResponse/ReportSummary");
+            if (summary == null)
+            {
+               throw new APIException("Cannot parse the response, no ReportSummary for report " + report.m_configId);
+            }
+            check(report, new ReportSummary(summary));
+            return null;
+         }
+      }, 0);
+   }
+
+   /**
+    * Polls the history of the configuration of a report.
+    */
+   private void poll(final PendingReport report, long delay)
+   {
+      submit(report, new Callable<Object>()
+      {
+         @Override
+         public Object call() throws IOException, APIException
+         {
+            final List<ReportSummary> history =
+               m_session.reportHistoryRequest(m_session.getSessionID(), null, String.valueOf(report.m_configId));
+            if (history == null)
+            {
+               throw new APIException("ReportHistoryRequest failed");
+            }
+            report.m_polls++;
+            ReportSummary current = null;
+            for (ReportSummary summary : history)
+            {
+               if (summary.getId() == report.m_reportId)
+               {
+                  current = summary;
+               }
+            }
+            if (current == null)
+            {
+               poll(report, next(report));
+            }
+            else
+            {
+               check(report, current);
+            }
+            return null;
+         }
+      }, delay);
+   }
+
+   /**
+    * Downloads a report once generated, polls it again while it is being
+    * generated.
+    */
+   private void check(PendingReport report, ReportSummary summary) throws IOException, APIException
+   {
+      report.m_reportId = summary.getId();
+      if (summary.getReportURI().length() > 0)
+      {
+         report.m_reportURI = summary.getReportURI();
+      }
+      final String status = summary.getStatus();
+      if (GENERATED.equals(status))
+      {
+         download(report);
+      }
+      else if (FAILED.contains(status))
+      {
+         throw new APIException("Report " + report.m_reportId + " of configuration " + report.m_configId + " "
+            + status);
+      }
+      else if (report.m_polls == 0)
+      {
+         final double mean = m_meanGeneration;
+         report.m_interval = Math.max(m_minInterval, Math.min(m_maxInterval, (long) (mean * 0.75)));
+         poll(report, report.m_interval);
+      }
+      else
+      {
+         poll(report, next(report));
+      }
+   }
+
+   /**
+    * Doubles the interval of the polls of a report, up to the maximum.
+    */
+   private long next(PendingReport report)
+   {
+      report.m_interval = Math.max(m_minInterval, Math.min(m_maxInterval, report.m_interval * 2));
+      return report.m_interval;
+   }
+
+   /**
+    * Streams a generated report to its file.
+    */
+   private void download(PendingReport report) throws IOException, APIException
+   {
+      final long generatedAt = System.currentTimeMillis();
+      final double duration = generatedAt - report.m_launchedAt;
+      synchronized (m_lock)
+      {
+         m_meanGeneration = m_generated == 0 ? duration : m_meanGeneration + (duration - m_meanGeneration) * 0.2;
+         m_generated++;
+      }
+      if (report.m_reportURI == null)
+      {
+         throw new APIException("No report-URI for report " + report.m_reportId + " of configuration "
+            + report.m_configId);
+      }
+      final File file = new File(m_directory, fileName(report));
+      final File part = new File(m_directory, file.getName() + ".part");
+      final long size;
+      try
+      {
+         final OutputStream out = new BufferedOutputStream(new FileOutputStream(part), BUFFER_SIZE);
+         try
+         {
+            size = m_session.downloadReport(report.m_reportURI, out);
+         }
+         finally
+         {
+            out.close();
+         }
+         if (!part.renameTo(file) && !(file.delete() && part.renameTo(file)))
+         {
+            throw new IOException("Could not rename " + part + " to " + file);
+         }
+      }
+      finally
+      {
+         // gone once renamed, a partial download otherwise
+         part.delete();
+      }
+      finish(report, new GeneratedReport(report.m_configId, report.m_reportId, file, size, report.m_polls,
+         report.m_queuedAt, report.m_launchedAt, generatedAt, System.currentTimeMillis()), null);
+   }
+
+   /**
+    * The name of the file of a report: report-configuration-id and the
+    * extension of the report on the console.
+    */
+   private static String fileName(PendingReport report)
+   {
+      final String uri = report.m_reportURI;
+      final String name = uri.substring(uri.lastIndexOf('/') + 1);
+      final int dot = name.lastIndexOf('.');
+      return "report-" + report.m_configId + "-" + report.m_reportId + (dot >= 0 ? name.substring(dot) : "");
+   }
+
+   /**
+    * Runs a step of a report from the executor after a delay, failing the
+    * report if the step does.
+    */
+   private void submit(final PendingReport report, final Callable<Object> step, long delay)
+   {
+      if (report.isDone())
+      {
+         finish(report, null, null);
+         return;
+      }
+      try
+      {
+         m_executor.schedule(m_session.propagate(new Callable<Object>()
+         {
+            @Override
+            public Object call()
+            {
+               if (report.isDone())
+               {
+                  finish(report, null, null);
+                  return null;
+               }
+               try
+               {
+                  step.call();
+               }
+               catch (Exception e)
+               {
+                  finish(report, null, e);
+               }
+               return null;
+            }
+         }), delay, TimeUnit.MILLISECONDS);
+      }
+      catch (RejectedExecutionException e)
+      {
+         finish(report, null, e);
+      }
+   }
+
+   /**
+    * Completes or fails a report, and starts the next ones.
+    */
+   private void finish(PendingReport report, GeneratedReport result, Throwable error)
+   {
+      if (result != null)
+      {
+         report.complete(result);
+      }
+      else if (error != null)
+      {
+         report.fail(error);
+      }
+      synchronized (m_lock)
+      {
+         m_active.remove(report);
+      }
+      dispatch();
+   }
+
+   private boolean isInWindow(long now)
+   {
+      if (m_windowStart < 0)
+      {
+         return true;
+      }
+      final Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(now);
+      final int hour = calendar.get(Calendar.HOUR_OF_DAY);
+      return m_windowStart < m_windowEnd
+         ? hour >= m_windowStart && hour < m_windowEnd
+         : hour >= m_windowStart || hour < m_windowEnd;
+   }
+
+   /**
+    * Dispatches the queue again at the start of the off-peak window. The
+    * lock must be held.
+    */
+   private void scheduleWakeup(long now)
+   {
+      if (m_wakeup != null && !m_wakeup.isDone())
+      {
+         return;
+      }
+      final Calendar calendar = Calendar.getInstance();
+      calendar.setTimeInMillis(now);
+      calendar.set(Calendar.HOUR_OF_DAY, m_windowStart);
+      calendar.set(Calendar.MINUTE, 0);
+      calendar.set(Calendar.SECOND, 0);
+      calendar.set(Calendar.MILLISECOND, 0);
+      if (calendar.getTimeInMillis() <= now)
+      {
+         calendar.add(Calendar.DAY_OF_MONTH, 1);
+      }
+      try
+      {
+         m_wakeup = m_executor.schedule(new Callable<Object>()
+         {
+            @Override
+            public Object call()
+            {
+               dispatch();
+               return null;
+            }
+         }, calendar.getTimeInMillis() - now, TimeUnit.MILLISECONDS);
+      }
+      catch (RejectedExecutionException e)
+      {
+         // shut down
+      }
+   }
+
+   private void cancelWakeup()
+   {
+      if (m_wakeup != null)
+      {
+         m_wakeup.cancel(false);
+         m_wakeup = null;
+      }
+   }
+
+   /**
+    * A report waiting to be generated or being generated, and its future.
+    */
+   private static class PendingReport extends FutureTask<GeneratedReport>
+   {
+      PendingReport(int configId)
+      {
+         super(new Callable<GeneratedReport>()
+         {
+            @Override
+            public GeneratedReport call()
+            {
+               throw new IllegalStateException("A pending report is generated by the queue, not run");
+            }
+         });
+         m_configId = configId;
+         m_queuedAt = System.currentTimeMillis();
+      }
+
+      void complete(GeneratedReport report)
+      {
+         set(report);
+      }
+
+      void fail(Throwable error)
+      {
+         setException(error);
+      }
+
+      @Override
+      public void run()
+      {
+         // completed by complete() and fail() only
+      }
+
+      /** The id of the report configuration */
+      final int m_configId;
+      /** When the report was submitted */
+      final long m_queuedAt;
+      /** The fields below are only used by the step of the report running */
+      volatile long m_launchedAt;
+      volatile int m_reportId;
+      volatile String m_reportURI;
+      volatile int m_polls;
+      volatile long m_interval;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The status of the reports generated */
+   private static final String GENERATED = "Generated";
+   /** The statuses of the reports which will not be generated */
+   private static final Set<String> FAILED = new HashSet<String>();
+   static
+   {
+      FAILED.add("Failed");
+      FAILED.add("Aborted");
+      FAILED.add("Unknown");
+   }
+   private static final int BUFFER_SIZE = 64 * 1024;
+   /** Numbers the threads of the queues */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+
+   /** The session to generate the reports with */
+   private final APISession m_session;
+   /** The directory to write the reports to */
+   private final File m_directory;
+   /** The executor to send the requests from */
+   private final ScheduledExecutorService m_executor;
+   /** Whether the executor was created by the queue */
+   private final boolean m_ownsExecutor;
+   /** Guards the queue, the reports active and the window */
+   private final Object m_lock = new Object();
+   private final Queue<PendingReport> m_queue = new ArrayDeque<PendingReport>();
+   /** The reports being generated or downloaded */
+   private final Set<PendingReport> m_active = new HashSet<PendingReport>();
+   private int m_maxReports = 4;
+   /** The off-peak window, -1 for none */
+   private int m_windowStart = -1;
+   private int m_windowEnd = -1;
+   /** Dispatches the queue at the start of the window */
+   private ScheduledFuture<?> m_wakeup;
+   private boolean m_shutdown;
+   private volatile long m_minInterval = 5000;
+   private volatile long m_maxInterval = 300000;
+   /** The mean generation time of the reports, weighted towards the last ones */
+   private volatile double m_meanGeneration;
+   private int m_generated;
+}
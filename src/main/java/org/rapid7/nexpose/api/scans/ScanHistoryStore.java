@@ -0,0 +1,1185 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.scans;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.domain.ScanSummary;
+import org.rapid7.nexpose.api.domain.ScanSummary.Vulnerabilities;
+import org.rapid7.nexpose.api.domain.SiteSummary;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the history of the scans of every site in memory, to report on the
+ * capacity of the engines over years of scans without listing them again:
+ * <PRE>
+ * ScanHistoryStore store = new ScanHistoryStore();
+ * store.load(file);
+ * store.refresh(session);
+ * store.save(file);
+ * Map&lt;Integer, long[]&gt; durations = store.getDurationPercentiles(50, 95);
+ * List&lt;ScanTrend&gt; months = store.getTrend(-1, from, to, 30L * 24 * 3600 * 1000);
+ * </PRE>
+ * The scans are stored column by column in primitive arrays (scan, site
+ * and engine ids, start and end times in milliseconds since the epoch,
+ * status, node counts, and vulnerability counts by severity: critical 8 to
+ * 10, severe 4 to 7, moderate 1 to 3), about 70 bytes a scan instead of a
+ * {@link ScanSummary} with its strings and DOM.
+ * <P>
+ * A refresh lists the history of the sites with a SiteScanHistoryRequest
+ * per site, sent in parallel, and adds the scans of each site newer than
+ * the highest scan id stored for it. Only the scans which ended (finished,
+ * stopped, error or aborted) are stored; the scans of a site after one
+ * still running are left for a later refresh. The scans of the sites
+ * deleted are kept.
+ * <P>
+ * The aggregation queries split the scans over the threads of the store.
+ * The store is safe for concurrent use; queries run in parallel and wait
+ * for refreshes only while the scans they found are added.
+ */
+public class ScanHistoryStore
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an empty store sending its requests and running its queries
+    * from its own pool of daemon threads, released by {@link #shutdown()}.
+    */
+   public ScanHistoryStore()
+   {
+      this(Executors.newCachedThreadPool(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-scan-history-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates an empty store sending its requests and running its queries
+    * from the given executor, which is not shut down by {@link #shutdown()}.
+    *
+    * @param executor the executor to send the requests and run the queries
+    *        from.
+    */
+   public ScanHistoryStore(ExecutorService executor)
+   {
+      this(executor, false);
+   }
+
+   /**
+    * Sets the maximum number of requests sent at once by a refresh. 8 by
+    * default.
+    *
+    * @param maxInFlight the number of requests, at least 1.
+    */
+   public void setMaxInFlight(int maxInFlight)
+   {
+      if (maxInFlight < 1)
+      {
+         throw new IllegalArgumentException("maxInFlight must be at least 1");
+      }
+      m_maxInFlight = maxInFlight;
+   }
+
+   /**
+    * Adds the new scans of every site, listed with a SiteListingRequest,
+    * with a SiteScanHistoryRequest per site sent in parallel.
+    *
+    * @param session the logged in session to list the scans with.
+    * @return the number of scans added.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    * @throws InterruptedException If the thread is interrupted while
+    *         listing the scans.
+    */
+   public int refresh(final APISession session) throws IOException, APIException, InterruptedException
+   {
+      final Iterable<SiteSummary> sites = session.listSites(session.getSessionID(), null);
+      if (sites == null)
+      {
+         throw new APIException("SiteListingRequest failed");
+      }
+      final Semaphore permits = new Semaphore(m_maxInFlight);
+      final Map<Integer, Future<List<ScanSummary>>> histories =
+         new LinkedHashMap<Integer, Future<List<ScanSummary>>>();
+      try
+      {
+         for (SiteSummary site : sites)
+         {
+            final int siteId = site.getId();
+            permits.acquire();
+            try
+            {
+               histories.put(siteId, m_executor.submit(session.propagate(new Callable<List<ScanSummary>>()
+               {
+                  @Override
+                  public List<ScanSummary> call() throws IOException, APIException
+                  {
+                     try
+                     {
+                        return session.siteScanHistoryRequest(session.getSessionID(), null, String.valueOf(siteId));
+                     }
+                     finally
+                     {
+                        permits.release();
+                     }
+                  }
+               })));
+            }
+            catch (RejectedExecutionException e)
+            {
+               permits.release();
+               throw e;
+            }
+         }
+         int added = 0;
+         for (Map.Entry<Integer, Future<List<ScanSummary>>> history : histories.entrySet())
+         {
+            try
+            {
+               added += update(history.getKey(), history.getValue().get());
+            }
+            catch (ExecutionException e)
+            {
+               final Throwable cause = e.getCause();
+               if (cause instanceof IOException)
+               {
+                  throw (IOException) cause;
+               }
+               if (cause instanceof APIException)
+               {
+                  throw (APIException) cause;
+               }
+               throw new APIException("Could not list the scans of site " + history.getKey() + ": " + cause);
+            }
+         }
+         return added;
+      }
+      finally
+      {
+         for (Future<List<ScanSummary>> history : histories.values())
+         {
+            history.cancel(true);
+         }
+      }
+   }
+
+   /**
+    * Adds the new scans of a site with a SiteScanHistoryRequest.
+    *
+    * @param session the logged in session to list the scans with.
+    * @param siteId the id of the site.
+    * @return the number of scans added.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    */
+   public int refresh(APISession session, int siteId) throws IOException, APIException
+   {
+      return update(siteId, session.siteScanHistoryRequest(session.getSessionID(), null, String.valueOf(siteId)));
+   }
+
+   /**
+    * Adds the scans of a site with a higher id than the highest stored for
+    * it, in order of id, up to the first one which has not ended.
+    *
+    * @param siteId the id of the site.
+    * @param scans the scans of the site, in any order. Their site id is
+    *        ignored.
+    * @return the number of scans added.
+    */
+   public int update(int siteId, Iterable<ScanSummary> scans)
+   {
+      final List<ScanSummary> sorted = new ArrayList<ScanSummary>();
+      for (ScanSummary scan : scans)
+      {
+         sorted.add(scan);
+      }
+      Collections.sort(sorted, new Comparator<ScanSummary>()
+      {
+         @Override
+         public int compare(ScanSummary scan1, ScanSummary scan2)
+         {
+            return scan1.getScanID() < scan2.getScanID() ? -1 : scan1.getScanID() > scan2.getScanID() ? 1 : 0;
+         }
+      });
+      final SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT);
+      m_lock.writeLock().lock();
+      try
+      {
+         final Long highest = m_highestScanIds.get(siteId);
+         long highestScanId = highest == null ? -1 : highest;
+         int added = 0;
+         for (ScanSummary scan : sorted)
+         {
+            if (scan.getScanID() <= highestScanId)
+            {
+               continue;
+            }
+            final int status = status(scan.getStatus());
+            if (status < 0)
+            {
+               break;
+            }
+            add(siteId, scan, (byte) status, format);
+            highestScanId = scan.getScanID();
+            added++;
+         }
+         if (added > 0)
+         {
+            m_highestScanIds.put(siteId, highestScanId);
+         }
+         return added;
+      }
+      finally
+      {
+         m_lock.writeLock().unlock();
+      }
+   }
+
+   /**
+    * @param siteId the id of a site.
+    * @return the highest id of the scans of the site stored, -1 if none is.
+    */
+   public long getHighestScanId(int siteId)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         final Long highest = m_highestScanIds.get(siteId);
+         return highest == null ? -1 : highest;
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @return the number of scans stored.
+    */
+   public int size()
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_size;
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan, from 0 to {@link #size()} excluded, in
+    *        the order the scans were added.
+    * @return the id of the scan.
+    */
+   public long getScanId(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_scanIds[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the id of the site of the scan.
+    */
+   public int getSiteId(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_siteIds[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the id of the engine of the scan.
+    */
+   public int getEngineId(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_engineIds[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return when the scan started, in milliseconds since the epoch, 0 if
+    *         unknown.
+    */
+   public long getStartTime(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_starts[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return when the scan ended, in milliseconds since the epoch, 0 if
+    *         unknown.
+    */
+   public long getEndTime(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_ends[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the duration of the scan in milliseconds, -1 if unknown.
+    */
+   public long getDuration(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return duration(check(row));
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the status of the scan: finished, stopped, error or aborted.
+    */
+   public String getStatus(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return STATUSES[m_statuses[check(row)]];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the live nodes found by the scan.
+    */
+   public int getLiveNodes(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_liveNodes[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the nodes of the scan, live, dead, filtered, unresolved or
+    *         other.
+    */
+   public int getNodes(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_liveNodes[check(row)] + m_deadNodes[row] + m_filteredNodes[row] + m_unresolvedNodes[row]
+            + m_otherNodes[row];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the critical vulnerabilities (severity 8 to 10) found by the
+    *         scan.
+    */
+   public int getCriticalVulnerabilities(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_critical[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the severe vulnerabilities (severity 4 to 7) found by the scan.
+    */
+   public int getSevereVulnerabilities(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_severe[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * @param row the index of a scan.
+    * @return the moderate vulnerabilities (severity 1 to 3) found by the
+    *         scan.
+    */
+   public int getModerateVulnerabilities(int row)
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         return m_moderate[check(row)];
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Computes percentiles of the durations of the scans of every engine, the
+    * durations of each engine sorted in parallel. The scans of unknown
+    * duration are left out.
+    *
+    * @param percentiles the percentiles to compute, from 0 to 100.
+    * @return the percentiles of the durations in milliseconds, in the order
+    *         asked, by engine id in order.
+    * @throws InterruptedException If the thread is interrupted while
+    *         waiting for the durations to be sorted.
+    */
+   public Map<Integer, long[]> getDurationPercentiles(final double... percentiles) throws InterruptedException
+   {
+      for (double percentile : percentiles)
+      {
+         if (!(percentile >= 0 && percentile <= 100))
+         {
+            throw new IllegalArgumentException("percentiles must be from 0 to 100");
+         }
+      }
+      m_lock.readLock().lock();
+      try
+      {
+         final Map<Integer, int[]> counts = new TreeMap<Integer, int[]>();
+         for (int row = 0; row < m_size; row++)
+         {
+            if (duration(row) >= 0)
+            {
+               int[] count = counts.get(m_engineIds[row]);
+               if (count == null)
+               {
+                  count = new int[1];
+                  counts.put(m_engineIds[row], count);
+               }
+               count[0]++;
+            }
+         }
+         final Map<Integer, long[]> durations = new HashMap<Integer, long[]>();
+         for (Map.Entry<Integer, int[]> count : counts.entrySet())
+         {
+            durations.put(count.getKey(), new long[count.getValue()[0]]);
+            count.getValue()[0] = 0;
+         }
+         for (int row = 0; row < m_size; row++)
+         {
+            final long duration = duration(row);
+            if (duration >= 0)
+            {
+               durations.get(m_engineIds[row])[counts.get(m_engineIds[row])[0]++] = duration;
+            }
+         }
+         final List<Integer> engineIds = new ArrayList<Integer>(counts.keySet());
+         final List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+         for (Integer engineId : engineIds)
+         {
+            final long[] engineDurations = durations.get(engineId);
+            tasks.add(new Callable<long[]>()
+            {
+               @Override
+               public long[] call()
+               {
+                  Arrays.sort(engineDurations);
+                  final long[] values = new long[percentiles.length];
+                  for (int i = 0; i < percentiles.length; i++)
+                  {
+                     final int rank = (int) Math.ceil(percentiles[i] / 100 * engineDurations.length);
+                     values[i] = engineDurations[Math.min(engineDurations.length - 1, Math.max(0, rank - 1))];
+                  }
+                  return values;
+               }
+            });
+         }
+         final List<long[]> values = invokeAll(tasks);
+         final Map<Integer, long[]> result = new TreeMap<Integer, long[]>();
+         for (int i = 0; i < engineIds.size(); i++)
+         {
+            result.put(engineIds.get(i), values.get(i));
+         }
+         return result;
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Aggregates the scans started in consecutive intervals of time, the
+    * scans split in ranges summed in parallel.
+    *
+    * @param engineId the id of the engine whose scans to aggregate, -1 for
+    *        all the engines.
+    * @param from the start of the first interval, in milliseconds since the
+    *        epoch.
+    * @param to the end of the last interval, excluded.
+    * @param interval the length of the intervals in milliseconds, the last
+    *        one ending at to.
+    * @return the aggregates of the intervals, in order.
+    * @throws InterruptedException If the thread is interrupted while
+    *         waiting for the scans to be summed.
+    */
+   public List<ScanTrend> getTrend(final int engineId, final long from, final long to, final long interval)
+      throws InterruptedException
+   {
+      if (interval <= 0 || to <= from)
+      {
+         throw new IllegalArgumentException("interval must be more than 0 and to after from");
+      }
+      final long count = (to - from + interval - 1) / interval;
+      if (count > MAX_INTERVALS)
+      {
+         throw new IllegalArgumentException("Too many intervals: " + count);
+      }
+      final int intervals = (int) count;
+      m_lock.readLock().lock();
+      try
+      {
+         final int tasks = Math.max(1, Math.min(PARALLELISM, m_size / MIN_ROWS_PER_TASK));
+         final List<Callable<long[][]>> ranges = new ArrayList<Callable<long[][]>>();
+         for (int task = 0; task < tasks; task++)
+         {
+            final int start = (int) ((long) m_size * task / tasks);
+            final int end = (int) ((long) m_size * (task + 1) / tasks);
+            ranges.add(new Callable<long[][]>()
+            {
+               @Override
+               public long[][] call()
+               {
+                  return sum(engineId, from, to, interval, intervals, start, end);
+               }
+            });
+         }
+         final long[][] sums = new long[TREND_COLUMNS][intervals];
+         for (long[][] range : invokeAll(ranges))
+         {
+            for (int column = 0; column < TREND_COLUMNS; column++)
+            {
+               for (int i = 0; i < intervals; i++)
+               {
+                  sums[column][i] += range[column][i];
+               }
+            }
+         }
+         final List<ScanTrend> trend = new ArrayList<ScanTrend>(intervals);
+         for (int i = 0; i < intervals; i++)
+         {
+            final long start = from + i * interval;
+            trend.add(new ScanTrend(start, Math.min(to, start + interval), (int) sums[0][i], sums[1][i], sums[2][i],
+               sums[3][i], sums[4][i], sums[5][i]));
+         }
+         return trend;
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Writes the scans to a file, column by column and compressed with gzip.
+    *
+    * @param file the file to write.
+    * @throws IOException If the file cannot be written.
+    */
+   public void save(File file) throws IOException
+   {
+      m_lock.readLock().lock();
+      try
+      {
+         final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+         try
+         {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(m_size);
+            write(output, m_scanIds);
+            write(output, m_siteIds);
+            write(output, m_engineIds);
+            write(output, m_starts);
+            write(output, m_ends);
+            output.write(m_statuses, 0, m_size);
+            write(output, m_liveNodes);
+            write(output, m_deadNodes);
+            write(output, m_filteredNodes);
+            write(output, m_unresolvedNodes);
+            write(output, m_otherNodes);
+            write(output, m_critical);
+            write(output, m_severe);
+            write(output, m_moderate);
+         }
+         finally
+         {
+            output.close();
+         }
+      }
+      finally
+      {
+         m_lock.readLock().unlock();
+      }
+   }
+
+   /**
+    * Replaces the scans stored with the ones of a file written by
+    * {@link #save(File)}.
+    *
+    * @param file the file to read.
+    * @throws IOException If the file cannot be read or was not written by
+    *         the store.
+    */
+   public void load(File file) throws IOException
+   {
+      final DataInputStream input = new DataInputStream(new BufferedInputStream(
+         new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE), BUFFER_SIZE));
+      try
+      {
+         if (input.readInt() != MAGIC)
+         {
+            throw new IOException("Not a scan history file: " + file);
+         }
+         final int version = input.readInt();
+         if (version != VERSION)
+         {
+            throw new IOException("Unsupported scan history version " + version + ": " + file);
+         }
+         final int size = input.readInt();
+         if (size < 0)
+         {
+            throw new IOException("Corrupted scan history file: " + file);
+         }
+         final long[] scanIds = readLongs(input, size);
+         final int[] siteIds = readInts(input, size);
+         final int[] engineIds = readInts(input, size);
+         final long[] starts = readLongs(input, size);
+         final long[] ends = readLongs(input, size);
+         final byte[] statuses = readBytes(input, size);
+         for (int row = 0; row < size; row++)
+         {
+            if (statuses[row] < 0 || statuses[row] >= STATUSES.length)
+            {
+               throw new IOException("Corrupted scan history file: " + file);
+            }
+         }
+         final int[] liveNodes = readInts(input, size);
+         final int[] deadNodes = readInts(input, size);
+         final int[] filteredNodes = readInts(input, size);
+         final int[] unresolvedNodes = readInts(input, size);
+         final int[] otherNodes = readInts(input, size);
+         final int[] critical = readInts(input, size);
+         final int[] severe = readInts(input, size);
+         final int[] moderate = readInts(input, size);
+         final Map<Integer, Long> highestScanIds = new HashMap<Integer, Long>();
+         for (int row = 0; row < size; row++)
+         {
+            final Long highest = highestScanIds.get(siteIds[row]);
+            if (highest == null || highest < scanIds[row])
+            {
+               highestScanIds.put(siteIds[row], scanIds[row]);
+            }
+         }
+         m_lock.writeLock().lock();
+         try
+         {
+            m_scanIds = scanIds;
+            m_siteIds = siteIds;
+            m_engineIds = engineIds;
+            m_starts = starts;
+            m_ends = ends;
+            m_statuses = statuses;
+            m_liveNodes = liveNodes;
+            m_deadNodes = deadNodes;
+            m_filteredNodes = filteredNodes;
+            m_unresolvedNodes = unresolvedNodes;
+            m_otherNodes = otherNodes;
+            m_critical = critical;
+            m_severe = severe;
+            m_moderate = moderate;
+            m_size = size;
+            m_highestScanIds.clear();
+            m_highestScanIds.putAll(highestScanIds);
+         }
+         finally
+         {
+            m_lock.writeLock().unlock();
+         }
+      }
+      catch (EOFException e)
+      {
+         throw new IOException("Corrupted scan history file: " + file, e);
+      }
+      finally
+      {
+         input.close();
+      }
+   }
+
+   /**
+    * Releases the threads of the store if it created them.
+    */
+   public void shutdown()
+   {
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdown();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private ScanHistoryStore(ExecutorService executor, boolean ownsExecutor)
+   {
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+      allocate(INITIAL_CAPACITY);
+   }
+
+   private void allocate(int capacity)
+   {
+      m_scanIds = new long[capacity];
+      m_siteIds = new int[capacity];
+      m_engineIds = new int[capacity];
+      m_starts = new long[capacity];
+      m_ends = new long[capacity];
+      m_statuses = new byte[capacity];
+      m_liveNodes = new int[capacity];
+      m_deadNodes = new int[capacity];
+      m_filteredNodes = new int[capacity];
+      m_unresolvedNodes = new int[capacity];
+      m_otherNodes = new int[capacity];
+      m_critical = new int[capacity];
+      m_severe = new int[capacity];
+      m_moderate = new int[capacity];
+   }
+
+   /**
+    * Appends a scan, growing the columns as needed. The write lock must be
+    * held.
+    */
+   private void add(int siteId, ScanSummary scan, byte status, SimpleDateFormat format)
+   {
+      if (m_size == m_scanIds.length)
+      {
+         final int capacity = Math.max(INITIAL_CAPACITY, m_size + (m_size >> 1));
+         m_scanIds = Arrays.copyOf(m_scanIds, capacity);
+         m_siteIds = Arrays.copyOf(m_siteIds, capacity);
+         m_engineIds = Arrays.copyOf(m_engineIds, capacity);
+         m_starts = Arrays.copyOf(m_starts, capacity);
+         m_ends = Arrays.copyOf(m_ends, capacity);
+         m_statuses = Arrays.copyOf(m_statuses, capacity);
+         m_liveNodes = Arrays.copyOf(m_liveNodes, capacity);
+         m_deadNodes = Arrays.copyOf(m_deadNodes, capacity);
+         m_filteredNodes = Arrays.copyOf(m_filteredNodes, capacity);
+         m_unresolvedNodes = Arrays.copyOf(m_unresolvedNodes, capacity);
+         m_otherNodes = Arrays.copyOf(m_otherNodes, capacity);
+         m_critical = Arrays.copyOf(m_critical, capacity);
+         m_severe = Arrays.copyOf(m_severe, capacity);
+         m_moderate = Arrays.copyOf(m_moderate, capacity);
+      }
+      final int row = m_size++;
+      m_scanIds[row] = scan.getScanID();
+      m_siteIds[row] = siteId;
+      m_engineIds[row] = scan.getEngineID();
+      m_starts[row] = time(format, scan.getStartTime());
+      m_ends[row] = time(format, scan.getEndTime());
+      m_statuses[row] = status;
+      m_liveNodes[row] = scan.getLiveNodes();
+      m_deadNodes[row] = scan.getDeadNodes();
+      m_filteredNodes[row] = scan.getFilteredNodes();
+      m_unresolvedNodes[row] = scan.getUnresolvedNodes();
+      m_otherNodes[row] = scan.getOtherNodes();
+      m_critical[row] = 0;
+      m_severe[row] = 0;
+      m_moderate[row] = 0;
+      for (Vulnerabilities vulnerabilities : scan.getVulnerabilities())
+      {
+         final Integer severity = vulnerabilities.getSeverity();
+         if (severity == null)
+         {
+            continue;
+         }
+         if (severity >= 8)
+         {
+            m_critical[row] += vulnerabilities.getCount();
+         }
+         else if (severity >= 4)
+         {
+            m_severe[row] += vulnerabilities.getCount();
+         }
+         else if (severity >= 1)
+         {
+            m_moderate[row] += vulnerabilities.getCount();
+         }
+      }
+   }
+
+   /**
+    * Sums the scans of a range of rows by interval: scans, durations, live
+    * nodes, critical, severe and moderate vulnerabilities.
+    */
+   private long[][] sum(int engineId, long from, long to, long interval, int intervals, int start, int end)
+   {
+      final long[][] sums = new long[TREND_COLUMNS][intervals];
+      for (int row = start; row < end; row++)
+      {
+         final long time = m_starts[row];
+         if (time < from || time >= to || time == 0 || (engineId >= 0 && m_engineIds[row] != engineId))
+         {
+            continue;
+         }
+         final int i = (int) ((time - from) / interval);
+         sums[0][i]++;
+         sums[1][i] += Math.max(0, duration(row));
+         sums[2][i] += m_liveNodes[row];
+         sums[3][i] += m_critical[row];
+         sums[4][i] += m_severe[row];
+         sums[5][i] += m_moderate[row];
+      }
+      return sums;
+   }
+
+   /**
+    * Runs tasks on the executor, or on the current thread if there is only
+    * one.
+    */
+   private <T> List<T> invokeAll(List<Callable<T>> tasks) throws InterruptedException
+   {
+      final List<T> results = new ArrayList<T>(tasks.size());
+      try
+      {
+         if (tasks.size() == 1)
+         {
+            results.add(tasks.get(0).call());
+            return results;
+         }
+         for (Future<T> future : m_executor.invokeAll(tasks))
+         {
+            results.add(future.get());
+         }
+         return results;
+      }
+      catch (ExecutionException e)
+      {
+         final Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException)
+         {
+            throw (RuntimeException) cause;
+         }
+         throw new IllegalStateException(cause);
+      }
+      catch (InterruptedException e)
+      {
+         throw e;
+      }
+      catch (RuntimeException e)
+      {
+         throw e;
+      }
+      catch (Exception e)
+      {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * The code of the status of a scan which ended, -1 for the other ones.
+    */
+   private static int status(String status)
+   {
+      for (int code = 0; code < STATUSES.length; code++)
+      {
+         if (STATUSES[code].equals(status))
+         {
+            return code;
+         }
+      }
+      return -1;
+   }
+
+   private int check(int row)
+   {
+      if (row < 0 || row >= m_size)
+      {
+         throw new IndexOutOfBoundsException("row " + row + " of " + m_size);
+      }
+      return row;
+   }
+
+   private long duration(int row)
+   {
+      return m_starts[row] != 0 && m_ends[row] >= m_starts[row] ? m_ends[row] - m_starts[row] : -1;
+   }
+
+   private static long time(SimpleDateFormat format, String time)
+   {
+      try
+      {
+         return time == null || time.length() == 0 ? 0 : format.parse(time).getTime();
+      }
+      catch (ParseException e)
+      {
+         return 0;
+      }
+   }
+
+   private void write(DataOutputStream output, long[] column) throws IOException
+   {
+      for (int row = 0; row < m_size; row++)
+      {
+         output.writeLong(column[row]);
+      }
+   }
+
+   private void write(DataOutputStream output, int[] column) throws IOException
+   {
+      for (int row = 0; row < m_size; row++)
+      {
+         output.writeInt(column[row]);
+      }
+   }
+
+   /**
+    * Reads a column of a file. The column grows as its rows are read rather
+    * than from the size announced, so that a corrupted size fails on the end
+    * of the file instead of exhausting the heap.
+    */
+   private static long[] readLongs(DataInputStream input, int size) throws IOException
+   {
+      long[] column = new long[INITIAL_CAPACITY];
+      for (int row = 0; row < size; row++)
+      {
+         if (row == column.length)
+         {
+            column = Arrays.copyOf(column, grow(row, size));
+         }
+         column[row] = input.readLong();
+      }
+      return column;
+   }
+
+   /**
+    * Reads a column of a file, growing it as {@link #readLongs} does.
+    */
+   private static int[] readInts(DataInputStream input, int size) throws IOException
+   {
+      int[] column = new int[INITIAL_CAPACITY];
+      for (int row = 0; row < size; row++)
+      {
+         if (row == column.length)
+         {
+            column = Arrays.copyOf(column, grow(row, size));
+         }
+         column[row] = input.readInt();
+      }
+      return column;
+   }
+
+   /**
+    * Reads a column of a file, growing it as {@link #readLongs} does.
+    */
+   private static byte[] readBytes(DataInputStream input, int size) throws IOException
+   {
+      byte[] column = new byte[INITIAL_CAPACITY];
+      int row = 0;
+      while (row < size)
+      {
+         if (row == column.length)
+         {
+            column = Arrays.copyOf(column, grow(row, size));
+         }
+         final int count = Math.min(column.length, size) - row;
+         input.readFully(column, row, count);
+         row += count;
+      }
+      return column;
+   }
+
+   /**
+    * Doubles the capacity of a column being read, up to its size.
+    */
+   private static int grow(int capacity, int size)
+   {
+      return (int)Math.min(size, 2L * capacity);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The statuses of the scans stored, by code */
+   private static final String[] STATUSES = {"finished", "stopped", "error", "aborted"};
+   /** The format of the start and end times of the scans */
+   private static final String TIME_FORMAT = "yyyyMMdd'T'HHmmssSSS";
+   /** "NXSH", the first bytes of the files */
+   private static final int MAGIC = 0x4E585348;
+   private static final int VERSION = 1;
+   private static final int BUFFER_SIZE = 64 * 1024;
+   private static final int INITIAL_CAPACITY = 1024;
+   /** The sums of a trend: scans, durations, nodes and three severities */
+   private static final int TREND_COLUMNS = 6;
+   private static final int MAX_INTERVALS = 1 << 20;
+   /** The fewest scans summed by a task of a query */
+   private static final int MIN_ROWS_PER_TASK = 64 * 1024;
+   private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+   /** Numbers the threads of the stores */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+
+   /** The executor to send the requests and run the queries from */
+   private final ExecutorService m_executor;
+   /** Whether the executor was created by the store */
+   private final boolean m_ownsExecutor;
+   private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+   /** The highest id of the scans stored, by site id */
+   private final Map<Integer, Long> m_highestScanIds = new HashMap<Integer, Long>();
+   private volatile int m_maxInFlight = 8;
+   /** The columns of the scans, the first m_size rows used */
+   private long[] m_scanIds;
+   private int[] m_siteIds;
+   private int[] m_engineIds;
+   private long[] m_starts;
+   private long[] m_ends;
+   private byte[] m_statuses;
+   private int[] m_liveNodes;
+   private int[] m_deadNodes;
+   private int[] m_filteredNodes;
+   private int[] m_unresolvedNodes;
+   private int[] m_otherNodes;
+   private int[] m_critical;
+   private int[] m_severe;
+   private int[] m_moderate;
+   private int m_size;
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.scans;
+
+/**
+ * The scans of an interval of time, aggregated by the
+ * {@link ScanHistoryStore}.
+ */
+public class ScanTrend
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates the aggregate of the scans of an interval.
+    *
+    * @param start the start of the interval, in milliseconds since the epoch.
+    * @param end the end of the interval, excluded.
+    * @param scans the number of scans started in the interval.
+    * @param totalDuration the durations of the scans summed, in milliseconds.
+    * @param liveNodes the live nodes found by the scans.
+    * @param critical the critical vulnerabilities (severity 8 to 10) found.
+    * @param severe the severe vulnerabilities (severity 4 to 7) found.
+    * @param moderate the moderate vulnerabilities (severity 1 to 3) found.
+    */
+   public ScanTrend(long start, long end, int scans, long totalDuration, long liveNodes, long critical, long severe,
+      long moderate)
+   {
+      m_start = start;
+      m_end = end;
+      m_scans = scans;
+      m_totalDuration = totalDuration;
+      m_liveNodes = liveNodes;
+      m_critical = critical;
+      m_severe = severe;
+      m_moderate = moderate;
+   }
+
+   /**
+    * @return the start of the interval, in milliseconds since the epoch.
+    */
+   public long getStart()
+   {
+      return m_start;
+   }
+
+   /**
+    * @return the end of the interval, excluded, in milliseconds since the
+    *         epoch.
+    */
+   public long getEnd()
+   {
+      return m_end;
+   }
+
+   /**
+    * @return the number of scans started in the interval.
+    */
+   public int getScans()
+   {
+      return m_scans;
+   }
+
+   /**
+    * @return the durations of the scans summed, in milliseconds.
+    */
+   public long getTotalDuration()
+   {
+      return m_totalDuration;
+   }
+
+   /**
+    * @return the mean duration of the scans, in milliseconds, 0 without scans.
+    */
+   public long getMeanDuration()
+   {
+      return m_scans == 0 ? 0 : m_totalDuration / m_scans;
+   }
+
+   /**
+    * @return the live nodes found by the scans.
+    */
+   public long getLiveNodes()
+   {
+      return m_liveNodes;
+   }
+
+   /**
+    * @return the critical vulnerabilities (severity 8 to 10) found.
+    */
+   public long getCriticalVulnerabilities()
+   {
+      return m_critical;
+   }
+
+   /**
+    * @return the severe vulnerabilities (severity 4 to 7) found.
+    */
+   public long getSevereVulnerabilities()
+   {
+      return m_severe;
+   }
+
+   /**
+    * @return the moderate vulnerabilities (severity 1 to 3) found.
+    */
+   public long getModerateVulnerabilities()
+   {
+      return m_moderate;
+   }
+
+   /* (non-Javadoc)
+    * @see java.lang.Object#toString()
+    */
+   @Override
+   public String toString()
+   {
+      return "ScanTrend[" + m_start + ", " + m_scans + " scans, mean " + getMeanDuration() / 1000 + " s, "
+         + m_liveNodes + " nodes, " + m_critical + "/" + m_severe + "/" + m_moderate + " vulnerabilities]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final long m_start;
+   private final long m_end;
+   private final int m_scans;
+   private final long m_totalDuration;
+   private final long m_liveNodes;
+   private final long m_critical;
+   private final long m_severe;
+   private final long m_moderate;
+}
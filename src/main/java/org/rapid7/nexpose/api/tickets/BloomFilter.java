@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+/**
+ * A Bloom filter of long keys: tells for sure that a key was never added,
+ * and otherwise that it probably was. It is sized for an expected number of
+ * keys and false positive rate, and costs about 10 bits per key at 1%.
+ */
+class BloomFilter
+{
+   /**
+    * Creates an empty filter.
+    *
+    * @param expectedKeys the number of keys expected.
+    * @param falsePositiveRate the rate of false positives once the expected
+    *        keys are added, between 0 and 1 exclusive.
+    */
+   BloomFilter(int expectedKeys, double falsePositiveRate)
+   {
+      final double keys = Math.max(1, expectedKeys);
+      final long bits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+      final int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+      m_words = new long[words];
+      m_bits = (long) words << 6;
+      m_hashes = Math.max(1, (int) Math.round((double) m_bits / keys * Math.log(2)));
+   }
+
+   /**
+    * Adds a key.
+    *
+    * @param key the key.
+    */
+   void add(long key)
+   {
+      final long hash = mix(key);
+      final long h1 = hash >>> 32;
+      final long h2 = hash & 0xffffffffL;
+      for (int i = 0; i < m_hashes; i++)
+      {
+         final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % m_bits;
+         m_words[(int) (bit >>> 6)] |= 1L << bit;
+      }
+   }
+
+   /**
+    * Tells whether a key may have been added.
+    *
+    * @param key the key.
+    * @return false if the key was never added, true if it probably was.
+    */
+   boolean mightContain(long key)
+   {
+      final long hash = mix(key);
+      final long h1 = hash >>> 32;
+      final long h2 = hash & 0xffffffffL;
+      for (int i = 0; i < m_hashes; i++)
+      {
+         final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % m_bits;
+         if ((m_words[(int) (bit >>> 6)] & (1L << bit)) == 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Spreads the bits of a key (the finalizer of MurmurHash3).
+    */
+   static long mix(long key)
+   {
+      key ^= key >>> 33;
+      key *= 0xff51afd7ed558ccdL;
+      key ^= key >>> 33;
+      key *= 0xc4ceb9fe1a85ec53L;
+      key ^= key >>> 33;
+      return key;
+   }
+
+   /** The bits of the filter */
+   private final long[] m_words;
+   /** The number of bits of the filter */
+   private final long m_bits;
+   /** The number of bits set per key */
+   private final int m_hashes;
+}
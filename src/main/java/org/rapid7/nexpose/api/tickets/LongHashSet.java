@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+import java.util.Arrays;
+
+/**
+ * A set of long keys in a single open-addressing array, without the boxing
+ * and entry objects of a HashSet: 8 to 16 bytes per key instead of about 50.
+ */
+class LongHashSet
+{
+   /**
+    * Creates an empty set.
+    *
+    * @param expectedKeys the number of keys expected.
+    */
+   LongHashSet(int expectedKeys)
+   {
+      int capacity = 16;
+      while (capacity * 0.6 < expectedKeys)
+      {
+         capacity <<= 1;
+      }
+      m_keys = new long[capacity];
+      Arrays.fill(m_keys, FREE);
+   }
+
+   /**
+    * Adds a key.
+    *
+    * @param key the key.
+    * @return true if the key was not in the set.
+    */
+   boolean add(long key)
+   {
+      if (key == FREE)
+      {
+         final boolean added = !m_hasFree;
+         m_hasFree = true;
+         m_size += added ? 1 : 0;
+         return added;
+      }
+      int slot = slot(m_keys, key);
+      if (m_keys[slot] == key)
+      {
+         return false;
+      }
+      m_keys[slot] = key;
+      if (++m_size > m_keys.length * 0.6)
+      {
+         grow();
+      }
+      return true;
+   }
+
+   /**
+    * Tells whether a key is in the set.
+    *
+    * @param key the key.
+    * @return true if the key was added.
+    */
+   boolean contains(long key)
+   {
+      if (key == FREE)
+      {
+         return m_hasFree;
+      }
+      return m_keys[slot(m_keys, key)] == key;
+   }
+
+   /**
+    * Retrieves the number of keys.
+    *
+    * @return the number of keys in the set.
+    */
+   int size()
+   {
+      return m_size;
+   }
+
+   /**
+    * Finds the slot of a key, or the free slot where it belongs.
+    */
+   private static int slot(long[] keys, long key)
+   {
+      final int mask = keys.length - 1;
+      int slot = (int) BloomFilter.mix(key) & mask;
+      while (keys[slot] != FREE && keys[slot] != key)
+      {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+   private void grow()
+   {
+      final long[] keys = new long[m_keys.length << 1];
+      Arrays.fill(keys, FREE);
+      for (long key : m_keys)
+      {
+         if (key != FREE)
+         {
+            keys[slot(keys, key)] = key;
+         }
+      }
+      m_keys = keys;
+   }
+
+   /** Marks the free slots; the key itself is tracked apart */
+   private static final long FREE = Long.MIN_VALUE;
+   /** The slots */
+   private long[] m_keys;
+   /** The number of keys */
+   private int m_size;
+   /** Whether the key equal to FREE was added */
+   private boolean m_hasFree;
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the (device, vulnerability) pairs covered by tickets, to tell
+ * whether a new ticket would duplicate an existing one. Vulnerability ids are
+ * numbered once, and every pair is packed into a long held in a Bloom filter,
+ * which answers most lookups of pairs not in the index without touching the
+ * exact set behind it. Lookups are exact: the filter only saves work.
+ * <P>
+ * The index is thread safe.
+ */
+public class TicketIndex
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates an empty index.
+    *
+    * @param expectedPairs the number of pairs expected. More may be added,
+    *        at the cost of more lookups going past the filter.
+    */
+   public TicketIndex(int expectedPairs)
+   {
+      m_filter = new BloomFilter(expectedPairs, 0.01);
+      m_pairs = new LongHashSet(expectedPairs);
+   }
+
+   /**
+    * Adds a pair covered by a ticket.
+    *
+    * @param deviceId the id of the device.
+    * @param vulnerabilityId the id of the vulnerability, e.g.
+    *        "apache-httpd-cve-2017-9798".
+    * @return true if the pair was not in the index.
+    */
+   public synchronized boolean add(int deviceId, String vulnerabilityId)
+   {
+      Integer number = m_vulnerabilities.get(vulnerabilityId);
+      if (number == null)
+      {
+         number = m_vulnerabilities.size();
+         m_vulnerabilities.put(vulnerabilityId, number);
+      }
+      final long key = key(deviceId, number);
+      if (!m_pairs.add(key))
+      {
+         return false;
+      }
+      m_filter.add(key);
+      return true;
+   }
+
+   /**
+    * Tells whether a pair is covered by a ticket.
+    *
+    * @param deviceId the id of the device.
+    * @param vulnerabilityId the id of the vulnerability.
+    * @return true if the pair was added to the index.
+    */
+   public synchronized boolean contains(int deviceId, String vulnerabilityId)
+   {
+      m_lookups++;
+      final Integer number = m_vulnerabilities.get(vulnerabilityId);
+      if (number == null)
+      {
+         m_filtered++;
+         return false;
+      }
+      final long key = key(deviceId, number);
+      if (!m_filter.mightContain(key))
+      {
+         m_filtered++;
+         return false;
+      }
+      return m_pairs.contains(key);
+   }
+
+   /**
+    * Retrieves the number of pairs in the index.
+    *
+    * @return the number of pairs.
+    */
+   public synchronized int size()
+   {
+      return m_pairs.size();
+   }
+
+   /**
+    * Retrieves the number of lookups so far.
+    *
+    * @return the number of calls to {@link #contains(int, String)}.
+    */
+   public synchronized long getLookups()
+   {
+      return m_lookups;
+   }
+
+   /**
+    * Retrieves the number of lookups answered without the exact set, because
+    * the vulnerability or the pair was ruled out up front.
+    *
+    * @return the number of lookups.
+    */
+   public synchronized long getFilteredLookups()
+   {
+      return m_filtered;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private static long key(int deviceId, int vulnerability)
+   {
+      return ((long) deviceId << 32) | (vulnerability & 0xffffffffL);
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** The numbers of the vulnerability ids */
+   private final Map<String, Integer> m_vulnerabilities = new HashMap<String, Integer>();
+   /** The pre-filter of the pairs */
+   private final BloomFilter m_filter;
+   /** The pairs, device id in the high half and vulnerability number in the low one */
+   private final LongHashSet m_pairs;
+   /** The number of lookups */
+   private long m_lookups;
+   /** The number of lookups answered by the pre-filter */
+   private long m_filtered;
+}
@@ -0,0 +1,540 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.domain.TicketDetails;
+import org.rapid7.nexpose.api.generators.TicketRequestTicketIDContentGenerator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Batches the lookups and deletions of single tickets. A TicketDetailsRequest
+ * or TicketDeleteRequest carries any number of ticket ids, so the loader
+ * collects the ids asked for by its callers during a short window, or until
+ * a batch is full, and sends them in a single request:
+ * <PRE>
+ * TicketLoader loader = new TicketLoader(session);
+ * Future&lt;TicketDetails&gt; first = loader.load(12);
+ * Future&lt;TicketDetails&gt; second = loader.load(57);
+ * ... // both come back from the same request
+ * first.get().getVulnerabilityIds();
+ * loader.shutdown();
+ * </PRE>
+ * Details are kept for a while once loaded, see
+ * {@link #setCacheDuration(long, TimeUnit)}, so that asking for the same
+ * ticket again, e.g. from several parts of a report, costs nothing; asking
+ * for a ticket already in a pending batch returns the same future. Deleting
+ * a ticket drops its cached details.
+ * <P>
+ * A failed request fails the futures of the whole batch; a ticket missing
+ * from an answered batch fails its own future only.
+ */
+public class TicketLoader
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a loader sending its requests from its own pool of 4 daemon
+    * threads, released by {@link #shutdown()}.
+    *
+    * @param session the logged in session to send the requests with.
+    */
+   public TicketLoader(APISession session)
+   {
+      this(session, new ScheduledThreadPoolExecutor(4, new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-ticket-loader-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates a loader sending its requests from the given executor, which is
+    * not shut down by {@link #shutdown()}. The executor also times the batch
+    * windows.
+    *
+    * @param session the logged in session to send the requests with.
+    * @param executor the executor to run the requests on.
+    */
+   public TicketLoader(APISession session, ScheduledExecutorService executor)
+   {
+      this(session, executor, false);
+   }
+
+   /**
+    * Sets the maximum number of tickets per request; a full batch is sent
+    * right away. 100 by default.
+    *
+    * @param maxBatchSize the number of tickets, at least 1.
+    */
+   public void setMaxBatchSize(int maxBatchSize)
+   {
+      if (maxBatchSize < 1)
+      {
+         throw new IllegalArgumentException("maxBatchSize must be at least 1");
+      }
+      m_maxBatchSize = maxBatchSize;
+   }
+
+   /**
+    * Sets how long a batch collects tickets after the first one before it is
+    * sent. 10 milliseconds by default.
+    *
+    * @param window the duration, 0 to send the tickets asked for together
+    *        only when {@link #flush()} is called or the batch is full.
+    * @param unit the unit of the duration.
+    */
+   public void setBatchWindow(long window, TimeUnit unit)
+   {
+      if (window < 0)
+      {
+         throw new IllegalArgumentException("window cannot be negative");
+      }
+      m_windowNanos = unit.toNanos(window);
+   }
+
+   /**
+    * Sets how long loaded details are kept. One second by default.
+    *
+    * @param duration the duration, 0 to keep nothing once loaded.
+    * @param unit the unit of the duration.
+    */
+   public void setCacheDuration(long duration, TimeUnit unit)
+   {
+      if (duration < 0)
+      {
+         throw new IllegalArgumentException("duration cannot be negative");
+      }
+      m_cacheNanos = unit.toNanos(duration);
+   }
+
+   /**
+    * Asks for the details of a ticket.
+    *
+    * @param ticketId the id of the ticket.
+    * @return the future details of the ticket.
+    */
+   public synchronized Future<TicketDetails> load(int ticketId)
+   {
+      final Cached cached = m_cache.get(ticketId);
+      if (cached != null && !cached.isExpired(System.nanoTime(), m_cacheNanos))
+      {
+         m_cacheHits.incrementAndGet();
+         return cached.m_promise;
+      }
+      final Promise<TicketDetails> promise = new Promise<TicketDetails>();
+      // removed first so that the entry moves to the end of the cache
+      m_cache.remove(ticketId);
+      m_cache.put(ticketId, new Cached(promise));
+      m_details = add(m_details, new DetailsBatch(), ticketId, promise);
+      return promise;
+   }
+
+   /**
+    * Deletes a ticket.
+    *
+    * @param ticketId the id of the ticket.
+    * @return the future completed once the ticket is deleted.
+    */
+   public synchronized Future<Void> delete(int ticketId)
+   {
+      m_cache.remove(ticketId);
+      final Promise<Void> pending = m_deletes != null ? m_deletes.m_promises.get(ticketId) : null;
+      if (pending != null)
+      {
+         return pending;
+      }
+      final Promise<Void> promise = new Promise<Void>();
+      m_deletes = add(m_deletes, new DeleteBatch(), ticketId, promise);
+      return promise;
+   }
+
+   /**
+    * Sends the pending batches now, without waiting for their window.
+    */
+   public synchronized void flush()
+   {
+      dispatch(m_details);
+      dispatch(m_deletes);
+   }
+
+   /**
+    * Retrieves the number of requests sent.
+    *
+    * @return the number of batches.
+    */
+   public long getBatchCount()
+   {
+      return m_batches.get();
+   }
+
+   /**
+    * Retrieves the number of lookups answered by the cache.
+    *
+    * @return the number of cache hits.
+    */
+   public long getCacheHits()
+   {
+      return m_cacheHits.get();
+   }
+
+   /**
+    * Sends the pending batches and releases the threads of the loader, if it
+    * created them. The requests in progress are let finish.
+    */
+   public void shutdown()
+   {
+      flush();
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdown();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private TicketLoader(APISession session, ScheduledExecutorService executor, boolean ownsExecutor)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_session = session;
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   /**
+    * Adds a ticket to the pending batch, starting one if there is none, and
+    * sends the batch if it is full. Called with the lock held.
+    *
+    * @return the pending batch after the addition, null if it was sent.
+    */
+   private <T, B extends Batch<T>> B add(B pending, B fresh, int ticketId, Promise<T> promise)
+   {
+      B batch = pending;
+      if (batch == null)
+      {
+         batch = fresh;
+         if (m_windowNanos > 0)
+         {
+            final B timed = batch;
+            batch.m_timer = m_executor.schedule(new Runnable()
+            {
+               @Override
+               public void run()
+               {
+                  synchronized (TicketLoader.this)
+                  {
+                     if (timed == m_details || timed == m_deletes)
+                     {
+                        dispatch(timed);
+                     }
+                  }
+               }
+            }, m_windowNanos, TimeUnit.NANOSECONDS);
+         }
+      }
+      batch.m_promises.put(ticketId, promise);
+      if (batch.m_promises.size() >= m_maxBatchSize)
+      {
+         dispatch(batch);
+         return null;
+      }
+      return batch;
+   }
+
+   /**
+    * Sends a batch, unless it is null. Called with the lock held.
+    */
+   private void dispatch(final Batch<?> batch)
+   {
+      if (batch == null)
+      {
+         return;
+      }
+      if (batch == m_details)
+      {
+         m_details = null;
+      }
+      if (batch == m_deletes)
+      {
+         m_deletes = null;
+      }
+      if (batch.m_timer != null)
+      {
+         batch.m_timer.cancel(false);
+      }
+      pruneCache();
+      m_batches.incrementAndGet();
+      m_executor.submit(m_session.propagate(Executors.callable(batch)));
+   }
+
+   /**
+    * Drops the oldest cached details that expired. Called with the lock held.
+    */
+   private void pruneCache()
+   {
+      final long now = System.nanoTime();
+      for (Iterator<Cached> iterator = m_cache.values().iterator(); iterator.hasNext();)
+      {
+         if (!iterator.next().isExpired(now, m_cacheNanos))
+         {
+            // the next ones were asked for later
+            break;
+         }
+         iterator.remove();
+      }
+   }
+
+   /**
+    * Records the outcome of a loaded ticket. Called without the lock held.
+    */
+   private synchronized void loaded(int ticketId, Promise<TicketDetails> promise, boolean success)
+   {
+      final Cached cached = m_cache.get(ticketId);
+      if (cached == null || cached.m_promise != promise)
+      {
+         return;
+      }
+      if (success && m_cacheNanos > 0)
+      {
+         cached.m_loadedAt = System.nanoTime();
+      }
+      else
+      {
+         m_cache.remove(ticketId);
+      }
+   }
+
+   private static List<String> ids(Map<Integer, ?> promises)
+   {
+      final List<String> ids = new ArrayList<String>(promises.size());
+      for (Integer id : promises.keySet())
+      {
+         ids.add(String.valueOf(id));
+      }
+      return ids;
+   }
+
+   /**
+    * The tickets of one request, sent when run.
+    */
+   private abstract static class Batch<T> implements Runnable
+   {
+      @Override
+      public void run()
+      {
+         try
+         {
+            send();
+         }
+         catch (Exception e)
+         {
+            for (Promise<T> promise : m_promises.values())
+            {
+               promise.fail(e);
+            }
+         }
+         catch (Error e)
+         {
+            for (Promise<T> promise : m_promises.values())
+            {
+               promise.fail(e);
+            }
+            throw e;
+         }
+      }
+
+      /**
+       * Sends the request and completes the futures of the tickets.
+       */
+      abstract void send() throws Exception;
+
+      /** The futures by ticket id */
+      final Map<Integer, Promise<T>> m_promises = new LinkedHashMap<Integer, Promise<T>>();
+      /** Sends the batch once its window is over, null if there is no window */
+      ScheduledFuture<?> m_timer;
+   }
+
+   /**
+    * A batch of ticket lookups.
+    */
+   private class DetailsBatch extends Batch<TicketDetails>
+   {
+      @Override
+      public void run()
+      {
+         super.run();
+         for (Map.Entry<Integer, Promise<TicketDetails>> entry : m_promises.entrySet())
+         {
+            boolean success;
+            try
+            {
+               success = entry.getValue().isDone() && entry.getValue().get() != null;
+            }
+            catch (Exception e)
+            {
+               success = false;
+            }
+            loaded(entry.getKey(), entry.getValue(), success);
+         }
+      }
+
+      @Override
+      void send() throws Exception
+      {
+         final TicketRequestTicketIDContentGenerator ids = new TicketRequestTicketIDContentGenerator();
+         ids.setTickets(ids(m_promises));
+         final APIResponse response = m_session.ticketDetailsRequest(m_session.getSessionID(), null, ids);
+         if (response.isFailure())
+         {
+            throw new APIException("TicketDetailsRequest failed: " + response.grab("//Failure//message"));
+         }
+         final NodeList infos = response.grabNodes("/TicketDetailsResponse/TicketInfo");
+         final Map<Integer, TicketDetails> details = new HashMap<Integer, TicketDetails>();
+         for (int i = 0; i < infos.getLength(); i++)
+         {
+            final TicketDetails ticket = new TicketDetails((Element) infos.item(i));
+            details.put(ticket.getId(), ticket);
+         }
+         for (Map.Entry<Integer, Promise<TicketDetails>> entry : m_promises.entrySet())
+         {
+            final TicketDetails ticket = details.get(entry.getKey());
+            if (ticket != null)
+            {
+               entry.getValue().complete(ticket);
+            }
+            else
+            {
+               entry.getValue().fail(new APIException("Ticket " + entry.getKey() + " was not found"));
+            }
+         }
+      }
+   }
+
+   /**
+    * A batch of ticket deletions.
+    */
+   private class DeleteBatch extends Batch<Void>
+   {
+      @Override
+      void send() throws Exception
+      {
+         final TicketRequestTicketIDContentGenerator ids = new TicketRequestTicketIDContentGenerator();
+         ids.setTickets(ids(m_promises));
+         final APIResponse response = m_session.ticketDeleteRequest(m_session.getSessionID(), null, ids);
+         if (response.isFailure())
+         {
+            throw new APIException("TicketDeleteRequest failed: " + response.grab("//Failure//message"));
+         }
+         for (Promise<Void> promise : m_promises.values())
+         {
+            promise.complete(null);
+         }
+      }
+   }
+
+   /**
+    * The details of a ticket, loaded or on their way.
+    */
+   private static class Cached
+   {
+      Cached(Promise<TicketDetails> promise)
+      {
+         m_promise = promise;
+      }
+
+      /**
+       * Tells whether the details are too old to be handed out.
+       */
+      boolean isExpired(long now, long cacheNanos)
+      {
+         return m_loadedAt != 0 && now - m_loadedAt >= cacheNanos;
+      }
+
+      /** The future details */
+      final Promise<TicketDetails> m_promise;
+      /** When the details were loaded, in System.nanoTime() terms, 0 while on their way */
+      volatile long m_loadedAt;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Numbers the threads of the loader pools */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+   /** The session the requests are sent with */
+   private final APISession m_session;
+   /** The executor the requests run on */
+   private final ScheduledExecutorService m_executor;
+   /** Tells whether the executor was created by (and belongs to) the loader */
+   private final boolean m_ownsExecutor;
+   /** The details loaded or on their way, oldest first */
+   private final LinkedHashMap<Integer, Cached> m_cache = new LinkedHashMap<Integer, Cached>();
+   /** The lookups waiting to be sent, null if there are none */
+   private DetailsBatch m_details;
+   /** The deletions waiting to be sent, null if there are none */
+   private DeleteBatch m_deletes;
+   private final AtomicLong m_batches = new AtomicLong();
+   private final AtomicLong m_cacheHits = new AtomicLong();
+   private volatile int m_maxBatchSize = 100;
+   private volatile long m_windowNanos = TimeUnit.MILLISECONDS.toNanos(10);
+   private volatile long m_cacheNanos = TimeUnit.SECONDS.toNanos(1);
+}
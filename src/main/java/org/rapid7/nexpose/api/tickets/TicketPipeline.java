@@ -0,0 +1,499 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+import org.rapid7.nexpose.api.APIException;
+import org.rapid7.nexpose.api.APIResponse;
+import org.rapid7.nexpose.api.APISession;
+import org.rapid7.nexpose.api.domain.TicketDetails;
+import org.rapid7.nexpose.api.domain.TicketSummary;
+import org.rapid7.nexpose.api.generators.TicketRequestCommentsContentGenerator;
+import org.rapid7.nexpose.api.generators.TicketRequestTicketIDContentGenerator;
+import org.rapid7.nexpose.api.generators.TicketRequestVulnerabilitiesContentGenerator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Creates tickets in bulk without duplicating the open ones, e.g. after each
+ * scan cycle of a remediation feed:
+ * <PRE>
+ * TicketPipeline pipeline = new TicketPipeline(session);
+ * pipeline.setMaxInFlight(8);
+ * pipeline.loadOpenTickets();
+ * for (TicketResult result : pipeline.submit(tickets))
+ * {
+ *    if (result.getStatus() == TicketResult.Status.FAILED) ...
+ * }
+ * pipeline.shutdown();
+ * </PRE>
+ * The open tickets are loaded once, with one listing and their details
+ * fetched many ids per request, into a {@link TicketIndex} of the (device,
+ * vulnerability) pairs they cover. Submitted tickets are checked against it
+ * locally: the vulnerabilities already ticketed for the device are dropped,
+ * and tickets left with none are reported as duplicates without being sent.
+ * Tickets of the same submission are checked against each other as well.
+ * The rest are created concurrently, a bounded number at a time, and every
+ * created ticket joins the index so that later submissions skip it.
+ */
+public class TicketPipeline
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a pipeline running its requests on its own pool of daemon
+    * threads, released by {@link #shutdown()}.
+    *
+    * @param session the logged in session to create the tickets with.
+    */
+   public TicketPipeline(APISession session)
+   {
+      this(session, Executors.newCachedThreadPool(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable runnable)
+         {
+            final Thread thread = new Thread(runnable, "nexpose-tickets-" + ms_threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+         }
+      }), true);
+   }
+
+   /**
+    * Creates a pipeline running its requests on the given executor, which is
+    * not shut down by {@link #shutdown()}.
+    *
+    * @param session the logged in session to create the tickets with.
+    * @param executor the executor to run the requests on.
+    */
+   public TicketPipeline(APISession session, ExecutorService executor)
+   {
+      this(session, executor, false);
+   }
+
+   /**
+    * Sets the maximum number of requests in flight. 8 by default.
+    *
+    * @param maxInFlight the number of requests, at least 1.
+    */
+   public void setMaxInFlight(int maxInFlight)
+   {
+      if (maxInFlight < 1)
+      {
+         throw new IllegalArgumentException("maxInFlight must be at least 1");
+      }
+      m_maxInFlight = maxInFlight;
+   }
+
+   /**
+    * Sets the number of tickets whose details are fetched per request when
+    * loading the open tickets. 100 by default.
+    *
+    * @param detailsBatchSize the number of tickets, at least 1.
+    */
+   public void setDetailsBatchSize(int detailsBatchSize)
+   {
+      if (detailsBatchSize < 1)
+      {
+         throw new IllegalArgumentException("detailsBatchSize must be at least 1");
+      }
+      m_detailsBatchSize = detailsBatchSize;
+   }
+
+   /**
+    * Sets the ticket states that do not count as open: the vulnerabilities of
+    * such tickets get new tickets. C (closed), X (fixed) and N (not a
+    * vulnerability) by default.
+    *
+    * @param states the one letter states of the closed tickets.
+    */
+   public void setClosedStates(String... states)
+   {
+      m_closedStates = new HashSet<String>(Arrays.asList(states));
+   }
+
+   /**
+    * Retrieves the index of the ticketed pairs, filled by
+    * {@link #loadOpenTickets()} and the tickets created.
+    *
+    * @return the index.
+    */
+   public TicketIndex getIndex()
+   {
+      return m_index;
+   }
+
+   /**
+    * Loads the open tickets of the console into the index: lists the tickets
+    * and fetches the details of the open ones, which hold their
+    * vulnerabilities, several tickets per request. Loading again adds the
+    * tickets opened since.
+    *
+    * @return the number of open tickets.
+    * @throws IOException If an IO error occurs.
+    * @throws APIException If the API call is not successful or the parsing of
+    *         the response is not correct.
+    * @throws InterruptedException If the thread is interrupted while loading.
+    */
+   public int loadOpenTickets() throws IOException, APIException, InterruptedException
+   {
+      final Iterable<TicketSummary> tickets = m_session.ticketListRequest(m_session.getSessionID(), null, null);
+      final List<String> open = new ArrayList<String>();
+      if (tickets != null)
+      {
+         for (TicketSummary ticket : tickets)
+         {
+            if (!m_closedStates.contains(ticket.getState()))
+            {
+               open.add(String.valueOf(ticket.getId()));
+            }
+         }
+      }
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      final Semaphore inFlight = new Semaphore(m_maxInFlight);
+      try
+      {
+         for (int start = 0; start < open.size(); start += m_detailsBatchSize)
+         {
+            final List<String> batch = open.subList(start, Math.min(open.size(), start + m_detailsBatchSize));
+            inFlight.acquire();
+            futures.add(m_executor.submit(m_session.propagate(new Callable<Void>()
+            {
+               @Override
+               public Void call() throws Exception
+               {
+                  try
+                  {
+                     indexDetails(batch);
+                     return null;
+                  }
+                  finally
+                  {
+                     inFlight.release();
+                  }
+               }
+            })));
+         }
+         for (Future<Void> future : futures)
+         {
+            future.get();
+         }
+      }
+      catch (ExecutionException e)
+      {
+         final Throwable cause = e.getCause();
+         if (cause instanceof IOException)
+         {
+            throw (IOException) cause;
+         }
+         if (cause instanceof APIException)
+         {
+            throw (APIException) cause;
+         }
+         throw new APIException("Could not load the open tickets: " + cause);
+      }
+      finally
+      {
+         for (Future<Void> future : futures)
+         {
+            future.cancel(true);
+         }
+      }
+      return open.size();
+   }
+
+   /**
+    * Creates tickets, but for their vulnerabilities already ticketed. A
+    * vulnerability also in a ticket sent earlier in the list waits for that
+    * ticket: it is dropped once the ticket is created, and sent with this one
+    * if the ticket failed.
+    *
+    * @param tickets the tickets to create.
+    * @return the result of every ticket, in the order of the tickets. If the
+    *         thread is interrupted, the tickets not sent yet are skipped and
+    *         the thread keeps its interrupted status.
+    */
+   public List<TicketResult> submit(List<TicketSpec> tickets)
+   {
+      final TicketResult[] results = new TicketResult[tickets.size()];
+      final List<Future<TicketResult>> futures = new ArrayList<Future<TicketResult>>(tickets.size());
+      // the ticket sent for every pair, whose create may still fail
+      final Map<String, Integer> owners = new HashMap<String, Integer>();
+      final Semaphore inFlight = new Semaphore(m_maxInFlight);
+      boolean interrupted = false;
+      for (int i = 0; i < results.length; i++)
+      {
+         final TicketSpec ticket = tickets.get(i);
+         final List<String> vulnerabilities = new ArrayList<String>();
+         for (String vulnerability : ticket.getVulnerabilityIds())
+         {
+            if (m_index.contains(ticket.getDeviceId(), vulnerability))
+            {
+               continue;
+            }
+            final String pair = ticket.getDeviceId() + " " + vulnerability;
+            final Integer owner = owners.get(pair);
+            if (owner != null)
+            {
+               if (interrupted)
+               {
+                  // left to the ticket sent, not waited for
+                  continue;
+               }
+               // the pair is ticketed once the create of its owner succeeds
+               interrupted = await(futures.get(owner), results, tickets, owner);
+               if (m_index.contains(ticket.getDeviceId(), vulnerability))
+               {
+                  continue;
+               }
+            }
+            owners.put(pair, i);
+            vulnerabilities.add(vulnerability);
+         }
+         if (vulnerabilities.isEmpty())
+         {
+            results[i] = new TicketResult(ticket, TicketResult.Status.DUPLICATE, -1, null, null);
+            futures.add(null);
+            continue;
+         }
+         if (!interrupted)
+         {
+            try
+            {
+               inFlight.acquire();
+            }
+            catch (InterruptedException e)
+            {
+               interrupted = true;
+            }
+         }
+         if (interrupted)
+         {
+            results[i] = new TicketResult(ticket, TicketResult.Status.SKIPPED, -1, null, null);
+            futures.add(null);
+            continue;
+         }
+         futures.add(m_executor.submit(m_session.propagate(new Callable<TicketResult>()
+         {
+            @Override
+            public TicketResult call()
+            {
+               try
+               {
+                  return create(ticket, vulnerabilities);
+               }
+               finally
+               {
+                  inFlight.release();
+               }
+            }
+         })));
+      }
+      for (int i = 0; i < results.length; i++)
+      {
+         final Future<TicketResult> future = futures.get(i);
+         if (future != null && await(future, results, tickets, i))
+         {
+            interrupted = true;
+         }
+      }
+      if (interrupted)
+      {
+         Thread.currentThread().interrupt();
+      }
+      return Arrays.asList(results);
+   }
+
+   /**
+    * Releases the threads of the pipeline, if it created them.
+    */
+   public void shutdown()
+   {
+      if (m_ownsExecutor)
+      {
+         m_executor.shutdownNow();
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   private TicketPipeline(APISession session, ExecutorService executor, boolean ownsExecutor)
+   {
+      if (session == null)
+      {
+         throw new IllegalArgumentException("session cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("executor cannot be null");
+      }
+      m_session = session;
+      m_executor = executor;
+      m_ownsExecutor = ownsExecutor;
+   }
+
+   /**
+    * Fetches the details of tickets and adds their pairs to the index.
+    */
+   private void indexDetails(List<String> ticketIds) throws IOException, APIException
+   {
+      final TicketRequestTicketIDContentGenerator ids = new TicketRequestTicketIDContentGenerator();
+      ids.setTickets(new ArrayList<String>(ticketIds));
+      final APIResponse response = m_session.ticketDetailsRequest(m_session.getSessionID(), null, ids);
+      final NodeList infos = response.grabNodes("/TicketDetailsResponse/TicketInfo");
+      for (int i = 0; i < infos.getLength(); i++)
+      {
+         final TicketDetails ticket = new TicketDetails((Element) infos.item(i));
+         for (String vulnerability : ticket.getVulnerabilityIds())
+         {
+            m_index.add(ticket.getDeviceId(), vulnerability);
+         }
+      }
+   }
+
+   /**
+    * Waits for the result of a ticket sent, unless it is known already.
+    *
+    * @return true if the thread was interrupted while waiting.
+    */
+   private static boolean await(
+      Future<TicketResult> future,
+      TicketResult[] results,
+      List<TicketSpec> tickets,
+      int i)
+   {
+      boolean interrupted = false;
+      while (results[i] == null)
+      {
+         try
+         {
+            results[i] = future.get();
+         }
+         catch (InterruptedException e)
+         {
+            // the request is on its way, its result is still wanted
+            interrupted = true;
+         }
+         catch (ExecutionException e)
+         {
+            final Throwable cause = e.getCause();
+            results[i] = new TicketResult(tickets.get(i), TicketResult.Status.FAILED, -1, null,
+               cause instanceof Exception ? (Exception) cause : new APIException(String.valueOf(cause)));
+         }
+      }
+      return interrupted;
+   }
+
+   /**
+    * Creates a ticket for some of its vulnerabilities.
+    */
+   private TicketResult create(TicketSpec ticket, List<String> vulnerabilities)
+   {
+      try
+      {
+         final TicketRequestVulnerabilitiesContentGenerator vulnerabilitiesGenerator =
+            new TicketRequestVulnerabilitiesContentGenerator();
+         vulnerabilitiesGenerator.setVulnerabilities(vulnerabilities);
+         final TicketRequestCommentsContentGenerator commentsGenerator = new TicketRequestCommentsContentGenerator();
+         commentsGenerator.setComments(new ArrayList<String>(ticket.getComments()));
+         final APIResponse response = m_session.ticketCreateRequest(
+            m_session.getSessionID(),
+            null,
+            ticket.getName(),
+            ticket.getPriority(),
+            String.valueOf(ticket.getDeviceId()),
+            ticket.getAssignedTo(),
+            vulnerabilitiesGenerator,
+            commentsGenerator);
+         if (response.isFailure())
+         {
+            // the error handler of the session chose not to throw
+            throw new APIException("TicketCreateRequest failed: " + response.grab("//Failure//message"));
+         }
+         final int ticketId = Integer.parseInt(response.grab("/TicketCreateResponse/@id"));
+         for (String vulnerability : vulnerabilities)
+         {
+            m_index.add(ticket.getDeviceId(), vulnerability);
+         }
+         return new TicketResult(ticket, TicketResult.Status.CREATED, ticketId, vulnerabilities, null);
+      }
+      catch (NumberFormatException e)
+      {
+         return new TicketResult(ticket, TicketResult.Status.FAILED, -1, null,
+            new APIException("TicketCreateResponse carries no ticket id", e));
+      }
+      catch (IOException e)
+      {
+         return new TicketResult(ticket, TicketResult.Status.FAILED, -1, null, e);
+      }
+      catch (APIException e)
+      {
+         return new TicketResult(ticket, TicketResult.Status.FAILED, -1, null, e);
+      }
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   /** Numbers the threads of the pipeline pools */
+   private static final AtomicInteger ms_threadCount = new AtomicInteger();
+   /** The session the requests are sent with */
+   private final APISession m_session;
+   /** The executor the requests run on */
+   private final ExecutorService m_executor;
+   /** Tells whether the executor was created by (and belongs to) the pipeline */
+   private final boolean m_ownsExecutor;
+   /** The pairs covered by the open tickets and the ones created */
+   private final TicketIndex m_index = new TicketIndex(1 << 16);
+   /** The maximum number of requests in flight */
+   private volatile int m_maxInFlight = 8;
+   /** The number of tickets whose details are fetched per request */
+   private volatile int m_detailsBatchSize = 100;
+   /** The states of the tickets that are not open */
+   private volatile Set<String> m_closedStates = new HashSet<String>(Arrays.asList("C", "X", "N"));
+}
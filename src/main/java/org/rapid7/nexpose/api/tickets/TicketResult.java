@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What became of a ticket submitted to a {@link TicketPipeline}.
+ */
+public class TicketResult
+{
+   /**
+    * The outcomes of a submitted ticket.
+    */
+   public enum Status
+   {
+      /** The ticket was created, possibly without the vulnerabilities already ticketed */
+      CREATED,
+      /** All the vulnerabilities of the ticket are already ticketed, nothing was sent */
+      DUPLICATE,
+      /** The console refused the ticket or could not be reached */
+      FAILED,
+      /** The pipeline was cancelled before the ticket was sent */
+      SKIPPED
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * @return the submitted ticket.
+    */
+   public TicketSpec getSpec()
+   {
+      return m_spec;
+   }
+
+   /**
+    * @return what became of the ticket.
+    */
+   public Status getStatus()
+   {
+      return m_status;
+   }
+
+   /**
+    * @return the id of the created ticket, or -1 unless it was created.
+    */
+   public int getTicketId()
+   {
+      return m_ticketId;
+   }
+
+   /**
+    * @return the vulnerabilities the created ticket covers, the ones of the
+    *         spec less those already ticketed; empty unless it was created.
+    */
+   public List<String> getVulnerabilityIds()
+   {
+      return m_vulnerabilityIds;
+   }
+
+   /**
+    * @return the error the ticket failed with, or null unless it failed.
+    */
+   public Exception getError()
+   {
+      return m_error;
+   }
+
+   @Override
+   public String toString()
+   {
+      return m_status + (m_ticketId >= 0 ? " " + m_ticketId : "")
+         + (m_error != null ? " " + m_error : "") + " " + m_spec;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   TicketResult(TicketSpec spec, Status status, int ticketId, List<String> vulnerabilityIds, Exception error)
+   {
+      m_spec = spec;
+      m_status = status;
+      m_ticketId = ticketId;
+      m_vulnerabilityIds = vulnerabilityIds == null
+         ? Collections.<String>emptyList()
+         : Collections.unmodifiableList(vulnerabilityIds);
+      m_error = error;
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final TicketSpec m_spec;
+   private final Status m_status;
+   private final int m_ticketId;
+   private final List<String> m_vulnerabilityIds;
+   private final Exception m_error;
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2012, Rapid7 LLC, Boston, MA, USA.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *    * Redistributions of source code must retain the above copyright
+ *      notice, this list of conditions and the following disclaimer.
+ *    * Redistributions in binary form must reproduce the above copyright
+ *      notice, this list of conditions and the following disclaimer in the
+ *      documentation and/or other materials provided with the distribution.
+ *    * Neither the name of the <organization> nor the
+ *      names of its contributors may be used to endorse or promote products
+ *      derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL <COPYRIGHT HOLDER> BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.rapid7.nexpose.api.tickets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ticket to create: the remediation of some vulnerabilities of a device.
+ */
+public class TicketSpec
+{
+   /////////////////////////////////////////////////////////////////////////
+   // Public methods
+   /////////////////////////////////////////////////////////////////////////
+
+   /**
+    * Creates a ticket without comments.
+    *
+    * @param name the name of the ticket, at most 255 characters.
+    * @param priority the priority: low, moderate, normal, high or critical.
+    * @param deviceId the id of the device to remediate.
+    * @param assignedTo the name of the user the ticket is assigned to.
+    * @param vulnerabilityIds the ids of the vulnerabilities to remediate.
+    */
+   public TicketSpec(
+      String name,
+      String priority,
+      int deviceId,
+      String assignedTo,
+      List<String> vulnerabilityIds)
+   {
+      this(name, priority, deviceId, assignedTo, vulnerabilityIds, Collections.<String>emptyList());
+   }
+
+   /**
+    * Creates a ticket.
+    *
+    * @param name the name of the ticket, at most 255 characters.
+    * @param priority the priority: low, moderate, normal, high or critical.
+    * @param deviceId the id of the device to remediate.
+    * @param assignedTo the name of the user the ticket is assigned to.
+    * @param vulnerabilityIds the ids of the vulnerabilities to remediate.
+    * @param comments the comments of the ticket.
+    */
+   public TicketSpec(
+      String name,
+      String priority,
+      int deviceId,
+      String assignedTo,
+      List<String> vulnerabilityIds,
+      List<String> comments)
+   {
+      if (vulnerabilityIds == null || vulnerabilityIds.isEmpty())
+      {
+         throw new IllegalArgumentException("vulnerabilityIds cannot be empty");
+      }
+      m_name = name;
+      m_priority = priority;
+      m_deviceId = deviceId;
+      m_assignedTo = assignedTo;
+      m_vulnerabilityIds = Collections.unmodifiableList(new ArrayList<String>(vulnerabilityIds));
+      m_comments = comments == null
+         ? Collections.<String>emptyList()
+         : Collections.unmodifiableList(new ArrayList<String>(comments));
+   }
+
+   /**
+    * @return the name of the ticket.
+    */
+   public String getName()
+   {
+      return m_name;
+   }
+
+   /**
+    * @return the priority of the ticket.
+    */
+   public String getPriority()
+   {
+      return m_priority;
+   }
+
+   /**
+    * @return the id of the device to remediate.
+    */
+   public int getDeviceId()
+   {
+      return m_deviceId;
+   }
+
+   /**
+    * @return the name of the user the ticket is assigned to.
+    */
+   public String getAssignedTo()
+   {
+      return m_assignedTo;
+   }
+
+   /**
+    * @return the ids of the vulnerabilities to remediate.
+    */
+   public List<String> getVulnerabilityIds()
+   {
+      return m_vulnerabilityIds;
+   }
+
+   /**
+    * @return the comments of the ticket.
+    */
+   public List<String> getComments()
+   {
+      return m_comments;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "TicketSpec[" + m_name + ", device " + m_deviceId + ", " + m_vulnerabilityIds + "]";
+   }
+
+   /////////////////////////////////////////////////////////////////////////
+   // non-Public fields
+   /////////////////////////////////////////////////////////////////////////
+
+   private final String m_name;
+   private final String m_priority;
+   private final int m_deviceId;
+   private final String m_assignedTo;
+   private final List<String> m_vulnerabilityIds;
+   private final List<String> m_comments;
+}